@@ -55,6 +55,7 @@ import org.spout.api.plugin.ServiceManager;
 import org.spout.api.protocol.Protocol;
 import org.spout.api.protocol.Session;
 import org.spout.api.protocol.SessionRegistry;
+import org.spout.api.protocol.TrafficMetrics;
 import org.spout.api.scheduler.Scheduler;
 import org.spout.api.scheduler.TaskManager;
 import org.spout.api.util.Named;
@@ -422,6 +423,13 @@ public interface Engine extends Named {
 	 */
 	public SessionRegistry getSessionRegistry();
 
+	/**
+	 * Gets the traffic metrics summed over all sessions.
+	 *
+	 * @return The {@link TrafficMetrics}.
+	 */
+	public TrafficMetrics getTrafficMetrics();
+
 	/**
 	 * Gets the default world generator for this game. Specific generators can be specified when loading new worlds.
 	 *
@@ -47,7 +47,7 @@ public class TransformComponent extends EntityComponent {
 	@Override
 	public void onTick(float dt) {
 		if (!transform.getPosition().getWorld().equals(transformLive.getPosition().getWorld())) {
-			if (EntityChangeWorldEvent.getHandlerList().getRegisteredListeners().length > 0) {
+			if (EntityChangeWorldEvent.getHandlerList().hasListeners()) {
 				Spout.getEventManager().callEvent(new EntityChangeWorldEvent(getOwner(), transform.getPosition().getWorld(), transformLive.getPosition().getWorld()));
 			}
 		}
@@ -0,0 +1,262 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, SpoutDev <http://www.spout.org/>
+ * SpoutAPI is licensed under the SpoutDev License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://www.spout.org/SpoutDevLicenseV1.txt> for the full license,
+ * including the MIT license.
+ */
+package org.spout.api.event;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Delivers non-cancellable events asynchronously, in batches.<br>
+ * <br>
+ * Events are appended to a bounded, lock-free ring buffer by any number of threads. A single drain task at a time
+ * removes them in the order they were posted and passes each batch to {@link EventManager#callEventsBatch(java.util.Collection)}.
+ * Every listener therefore receives the events in the order they were posted.<br>
+ * <br>
+ * Cancellable events can not be posted, since the poster could never see the result.
+ */
+public class AsyncEventBus {
+	private static final int DEFAULT_CAPACITY = 8192;
+	private static final int DEFAULT_BATCH = 256;
+	private static final AtomicInteger threadCount = new AtomicInteger(0);
+	private final EventManager manager;
+	private final Executor executor;
+	private final ExecutorService ownedExecutor;
+	private final AtomicReferenceArray<Event> ring;
+	private final int mask;
+	private final int maxBatch;
+	/**
+	 * The sequence number of the next slot to be claimed by a producer
+	 */
+	private final AtomicLong tail = new AtomicLong(0);
+	/**
+	 * The sequence number of the next slot to be drained, only written by the drain task
+	 */
+	private volatile long head = 0;
+	private final AtomicBoolean scheduled = new AtomicBoolean(false);
+	private volatile Thread drainThread = null;
+	private final AtomicLong delivered = new AtomicLong(0);
+	private final AtomicLong batches = new AtomicLong(0);
+	private final Runnable drainTask = new Runnable() {
+		@Override
+		public void run() {
+			drainThread = Thread.currentThread();
+			try {
+				drain();
+			} catch (RuntimeException e) {
+				scheduled.set(false);
+				throw e;
+			} finally {
+				drainThread = null;
+			}
+		}
+	};
+
+	/**
+	 * Creates an event bus which delivers events on its own thread
+	 *
+	 * @param manager the event manager used to call the events
+	 */
+	public AsyncEventBus(EventManager manager) {
+		this(manager, DEFAULT_CAPACITY, DEFAULT_BATCH);
+	}
+
+	/**
+	 * Creates an event bus which delivers events on its own thread
+	 *
+	 * @param manager the event manager used to call the events
+	 * @param capacity the number of events which can be queued, rounded up to a power of 2
+	 * @param maxBatch the maximum number of events to deliver in one batch
+	 */
+	public AsyncEventBus(EventManager manager, int capacity, int maxBatch) {
+		this(manager, null, capacity, maxBatch);
+	}
+
+	/**
+	 * Creates an event bus which delivers events using the given executor.  Only one batch is delivered at a time.
+	 *
+	 * @param manager the event manager used to call the events
+	 * @param executor the executor for the drain task, or null to create a dedicated thread
+	 * @param capacity the number of events which can be queued, rounded up to a power of 2
+	 * @param maxBatch the maximum number of events to deliver in one batch
+	 */
+	public AsyncEventBus(EventManager manager, Executor executor, int capacity, int maxBatch) {
+		if (capacity < 1 || maxBatch < 1) {
+			throw new IllegalArgumentException("Capacity and batch size must be positive");
+		}
+		this.manager = manager;
+		if (executor == null) {
+			ownedExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "Async Event Bus - " + threadCount.incrementAndGet());
+					t.setDaemon(true);
+					return t;
+				}
+			});
+			this.executor = ownedExecutor;
+		} else {
+			ownedExecutor = null;
+			this.executor = executor;
+		}
+		int size = Integer.highestOneBit(capacity);
+		if (size < capacity) {
+			size <<= 1;
+		}
+		this.ring = new AtomicReferenceArray<Event>(size);
+		this.mask = size - 1;
+		this.maxBatch = maxBatch;
+	}
+
+	/**
+	 * Posts an event for asynchronous delivery, waiting for space if the buffer is full.<br>
+	 * <br>
+	 * If a listener posts an event while the buffer is full, the event is delivered immediately instead, since the
+	 * buffer can not be drained until the listener returns.
+	 *
+	 * @param event the event
+	 * @throws IllegalArgumentException if the event is cancellable
+	 */
+	public void post(Event event) {
+		while (!offer(event)) {
+			if (Thread.currentThread() == drainThread) {
+				manager.callEventsBatch(Collections.singletonList(event));
+				return;
+			}
+			schedule();
+			Thread.yield();
+		}
+	}
+
+	/**
+	 * Posts an event for asynchronous delivery, if there is space in the buffer
+	 *
+	 * @param event the event
+	 * @return true if the event was queued, false if the buffer was full
+	 * @throws IllegalArgumentException if the event is cancellable
+	 */
+	public boolean offer(Event event) {
+		if (event instanceof Cancellable) {
+			throw new IllegalArgumentException("Cancellable events can not be called asynchronously");
+		}
+		long seq;
+		do {
+			seq = tail.get();
+			if (seq - head >= ring.length()) {
+				return false;
+			}
+		} while (!tail.compareAndSet(seq, seq + 1));
+		ring.set((int) seq & mask, event);
+		schedule();
+		return true;
+	}
+
+	private void schedule() {
+		if (scheduled.compareAndSet(false, true)) {
+			executor.execute(drainTask);
+		}
+	}
+
+	private void drain() {
+		List<Event> batch = new ArrayList<Event>(Math.min(maxBatch, ring.length()));
+		while (true) {
+			long h = head;
+			while (batch.size() < maxBatch && h < tail.get()) {
+				int index = (int) h & mask;
+				Event event = ring.get(index);
+				if (event == null) {
+					// The slot has been claimed, but the producer has not published it yet
+					Thread.yield();
+					continue;
+				}
+				ring.set(index, null);
+				batch.add(event);
+				h++;
+			}
+			head = h;
+			if (!batch.isEmpty()) {
+				try {
+					manager.callEventsBatch(batch);
+				} finally {
+					delivered.addAndGet(batch.size());
+					batches.incrementAndGet();
+					batch.clear();
+				}
+				continue;
+			}
+			scheduled.set(false);
+			// An event may have been posted after the last check, but before the flag was cleared
+			if (h == tail.get() || !scheduled.compareAndSet(false, true)) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Gets the number of events waiting to be delivered
+	 *
+	 * @return the number of queued events
+	 */
+	public int getQueuedEvents() {
+		return (int) (tail.get() - head);
+	}
+
+	/**
+	 * Gets the number of events delivered by this bus
+	 *
+	 * @return the number of delivered events
+	 */
+	public long getDeliveredEvents() {
+		return delivered.get();
+	}
+
+	/**
+	 * Gets the number of batches delivered by this bus
+	 *
+	 * @return the number of batches
+	 */
+	public long getDeliveredBatches() {
+		return batches.get();
+	}
+
+	/**
+	 * Stops the dedicated delivery thread, if this bus created one.  Events which have not been delivered are discarded.
+	 */
+	public void shutdown() {
+		if (ownedExecutor != null) {
+			ownedExecutor.shutdown();
+		}
+	}
+}
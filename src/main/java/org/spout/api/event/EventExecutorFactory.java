@@ -0,0 +1,373 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, SpoutDev <http://www.spout.org/>
+ * SpoutAPI is licensed under the SpoutDev License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://www.spout.org/SpoutDevLicenseV1.txt> for the full license,
+ * including the MIT license.
+ */
+package org.spout.api.event;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates the {@link EventExecutor}s for {@link EventHandler} methods.<br>
+ * <br>
+ * Where possible, a small class is generated for each handler method which calls the method directly, avoiding the
+ * cost of {@link Method#invoke(Object, Object...)} on every dispatch. The generated class is defined in a child of the
+ * listener's class loader, so it can only call public methods of public classes. Other methods use a
+ * {@link ReflectiveEventExecutor}.
+ */
+public final class EventExecutorFactory {
+	private static final String PACKAGE = "org.spout.api.event.generated.";
+	private static final String SUPER_NAME = internalName(GeneratedEventExecutor.class);
+	private static final AtomicInteger classCount = new AtomicInteger(0);
+	private static final Map<ClassLoader, WeakReference<ExecutorClassLoader>> loaders = new WeakHashMap<ClassLoader, WeakReference<ExecutorClassLoader>>();
+	private static volatile boolean generationEnabled = true;
+
+	private EventExecutorFactory() {
+	}
+
+	/**
+	 * Creates an executor which passes events to the given handler method
+	 *
+	 * @param listener the listener which owns the method
+	 * @param method the handler method, with a single Event parameter
+	 * @return the executor
+	 */
+	public static EventExecutor create(Listener listener, Method method) {
+		if (generationEnabled && canGenerate(method)) {
+			try {
+				EventExecutor executor = generate(listener, method);
+				if (executor != null) {
+					return executor;
+				}
+			} catch (Throwable ignored) {
+				// Fall back to reflection, the method may not be visible from the listener's class loader
+			}
+		}
+		return new ReflectiveEventExecutor(listener, method);
+	}
+
+	/**
+	 * Sets if executors should be generated.  If disabled, all new executors use reflection.
+	 *
+	 * @param enabled true to generate executors
+	 */
+	public static void setGenerationEnabled(boolean enabled) {
+		generationEnabled = enabled;
+	}
+
+	/**
+	 * Gets if executors are generated
+	 *
+	 * @return true if executors are generated
+	 */
+	public static boolean isGenerationEnabled() {
+		return generationEnabled;
+	}
+
+	private static boolean canGenerate(Method method) {
+		Class<?>[] params = method.getParameterTypes();
+		if (params.length != 1) {
+			return false;
+		}
+		Class<?> owner = method.getDeclaringClass();
+		return !owner.isInterface() && Modifier.isPublic(method.getModifiers()) && Modifier.isPublic(owner.getModifiers()) && Modifier.isPublic(params[0].getModifiers());
+	}
+
+	private static EventExecutor generate(Listener listener, Method method) throws Exception {
+		Class<?> owner = method.getDeclaringClass();
+		Class<?> eventClass = method.getParameterTypes()[0];
+		ClassLoader parent = owner.getClassLoader();
+		if (parent == null) {
+			parent = EventExecutorFactory.class.getClassLoader();
+		}
+		// The generated class links against these classes by name, so they must resolve to the same classes
+		if (!isVisible(parent, owner) || !isVisible(parent, eventClass) || !isVisible(parent, GeneratedEventExecutor.class)) {
+			return null;
+		}
+
+		String name = PACKAGE + owner.getSimpleName() + "$" + method.getName() + "$" + classCount.incrementAndGet();
+		byte[] bytes = createClass(internalName(name), method);
+		Class<?> clazz = getClassLoader(parent).define(name, bytes);
+		boolean isStatic = Modifier.isStatic(method.getModifiers());
+		return (EventExecutor) clazz.getConstructor(Object.class).newInstance(isStatic ? null : listener);
+	}
+
+	private static boolean isVisible(ClassLoader loader, Class<?> clazz) {
+		try {
+			return Class.forName(clazz.getName(), false, loader) == clazz;
+		} catch (ClassNotFoundException e) {
+			return false;
+		}
+	}
+
+	private static ExecutorClassLoader getClassLoader(ClassLoader parent) {
+		synchronized (loaders) {
+			WeakReference<ExecutorClassLoader> ref = loaders.get(parent);
+			ExecutorClassLoader loader = ref == null ? null : ref.get();
+			if (loader == null) {
+				loader = new ExecutorClassLoader(parent);
+				loaders.put(parent, new WeakReference<ExecutorClassLoader>(loader));
+			}
+			return loader;
+		}
+	}
+
+	/**
+	 * Creates the class file for an executor.<br>
+	 * <br>
+	 * The class is equivalent to
+	 * <pre>
+	 * public final class Name extends GeneratedEventExecutor {
+	 *     public Name(Object listener) {
+	 *         super(listener);
+	 *     }
+	 *
+	 *     protected void dispatch(Event event) {
+	 *         ((Owner) listener).method((EventClass) event);
+	 *     }
+	 * }
+	 * </pre>
+	 * The class file version is 49, so no stack map frames are required.
+	 */
+	private static byte[] createClass(String name, Method method) throws IOException {
+		Class<?> owner = method.getDeclaringClass();
+		Class<?> eventClass = method.getParameterTypes()[0];
+		Class<?> returnType = method.getReturnType();
+		boolean isStatic = Modifier.isStatic(method.getModifiers());
+
+		ConstantPool pool = new ConstantPool();
+		int thisClass = pool.classRef(name);
+		int superClass = pool.classRef(SUPER_NAME);
+		int code = pool.utf8("Code");
+		int initName = pool.utf8("<init>");
+		int initDesc = pool.utf8("(Ljava/lang/Object;)V");
+		int superInit = pool.methodRef(SUPER_NAME, "<init>", "(Ljava/lang/Object;)V");
+		int dispatchName = pool.utf8("dispatch");
+		int dispatchDesc = pool.utf8("(L" + internalName(Event.class) + ";)V");
+		int listenerField = pool.fieldRef(SUPER_NAME, "listener", "Ljava/lang/Object;");
+		int ownerClass = pool.classRef(internalName(owner));
+		int eventClassRef = pool.classRef(internalName(eventClass));
+		int target = pool.methodRef(internalName(owner), method.getName(), "(" + descriptor(eventClass) + ")" + descriptor(returnType));
+
+		ByteArrayOutputStream initCode = new ByteArrayOutputStream();
+		initCode.write(0x2A); // aload_0
+		initCode.write(0x2B); // aload_1
+		initCode.write(0xB7); // invokespecial
+		writeShort(initCode, superInit);
+		initCode.write(0xB1); // return
+
+		ByteArrayOutputStream dispatchCode = new ByteArrayOutputStream();
+		if (!isStatic) {
+			dispatchCode.write(0x2A); // aload_0
+			dispatchCode.write(0xB4); // getfield
+			writeShort(dispatchCode, listenerField);
+			dispatchCode.write(0xC0); // checkcast
+			writeShort(dispatchCode, ownerClass);
+		}
+		dispatchCode.write(0x2B); // aload_1
+		dispatchCode.write(0xC0); // checkcast
+		writeShort(dispatchCode, eventClassRef);
+		dispatchCode.write(isStatic ? 0xB8 : 0xB6); // invokestatic or invokevirtual
+		writeShort(dispatchCode, target);
+		if (returnType == long.class || returnType == double.class) {
+			dispatchCode.write(0x58); // pop2
+		} else if (returnType != void.class) {
+			dispatchCode.write(0x57); // pop
+		}
+		dispatchCode.write(0xB1); // return
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(512);
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(0xCAFEBABE);
+		out.writeShort(0);
+		out.writeShort(49);
+		pool.write(out);
+		out.writeShort(Modifier.PUBLIC | Modifier.FINAL | 0x20); // ACC_SUPER
+		out.writeShort(thisClass);
+		out.writeShort(superClass);
+		out.writeShort(0); // interfaces
+		out.writeShort(0); // fields
+		out.writeShort(2); // methods
+		writeMethod(out, Modifier.PUBLIC, initName, initDesc, code, 2, 2, initCode.toByteArray());
+		writeMethod(out, Modifier.PROTECTED, dispatchName, dispatchDesc, code, 2, 2, dispatchCode.toByteArray());
+		out.writeShort(0); // attributes
+		out.flush();
+		return bytes.toByteArray();
+	}
+
+	private static void writeMethod(DataOutputStream out, int access, int name, int desc, int codeName, int maxStack, int maxLocals, byte[] code) throws IOException {
+		out.writeShort(access);
+		out.writeShort(name);
+		out.writeShort(desc);
+		out.writeShort(1); // attributes
+		out.writeShort(codeName);
+		out.writeInt(12 + code.length);
+		out.writeShort(maxStack);
+		out.writeShort(maxLocals);
+		out.writeInt(code.length);
+		out.write(code);
+		out.writeShort(0); // exception table
+		out.writeShort(0); // code attributes
+	}
+
+	private static void writeShort(ByteArrayOutputStream out, int value) {
+		out.write(value >> 8);
+		out.write(value);
+	}
+
+	private static String internalName(Class<?> clazz) {
+		return internalName(clazz.getName());
+	}
+
+	private static String internalName(String name) {
+		return name.replace('.', '/');
+	}
+
+	private static String descriptor(Class<?> clazz) {
+		if (clazz.isArray()) {
+			return internalName(clazz);
+		} else if (!clazz.isPrimitive()) {
+			return "L" + internalName(clazz) + ";";
+		} else if (clazz == void.class) {
+			return "V";
+		} else if (clazz == boolean.class) {
+			return "Z";
+		} else if (clazz == byte.class) {
+			return "B";
+		} else if (clazz == char.class) {
+			return "C";
+		} else if (clazz == short.class) {
+			return "S";
+		} else if (clazz == int.class) {
+			return "I";
+		} else if (clazz == long.class) {
+			return "J";
+		} else if (clazz == float.class) {
+			return "F";
+		} else {
+			return "D";
+		}
+	}
+
+	/**
+	 * The constant pool of a generated class
+	 */
+	private static class ConstantPool {
+		private final ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+		private final DataOutputStream out = new DataOutputStream(bytes);
+		private final Map<String, Integer> entries = new HashMap<String, Integer>();
+		private int count = 1;
+
+		public int utf8(String value) throws IOException {
+			Integer index = entries.get("U" + value);
+			if (index == null) {
+				out.writeByte(1);
+				out.writeUTF(value);
+				index = add("U" + value);
+			}
+			return index;
+		}
+
+		public int classRef(String name) throws IOException {
+			Integer index = entries.get("C" + name);
+			if (index == null) {
+				int nameIndex = utf8(name);
+				out.writeByte(7);
+				out.writeShort(nameIndex);
+				index = add("C" + name);
+			}
+			return index;
+		}
+
+		public int fieldRef(String owner, String name, String desc) throws IOException {
+			return memberRef(9, owner, name, desc);
+		}
+
+		public int methodRef(String owner, String name, String desc) throws IOException {
+			return memberRef(10, owner, name, desc);
+		}
+
+		private int memberRef(int tag, String owner, String name, String desc) throws IOException {
+			String key = tag + owner + "." + name + desc;
+			Integer index = entries.get(key);
+			if (index == null) {
+				int ownerIndex = classRef(owner);
+				int nameAndType = nameAndType(name, desc);
+				out.writeByte(tag);
+				out.writeShort(ownerIndex);
+				out.writeShort(nameAndType);
+				index = add(key);
+			}
+			return index;
+		}
+
+		private int nameAndType(String name, String desc) throws IOException {
+			String key = "N" + name + desc;
+			Integer index = entries.get(key);
+			if (index == null) {
+				int nameIndex = utf8(name);
+				int descIndex = utf8(desc);
+				out.writeByte(12);
+				out.writeShort(nameIndex);
+				out.writeShort(descIndex);
+				index = add(key);
+			}
+			return index;
+		}
+
+		private int add(String key) {
+			int index = count++;
+			entries.put(key, index);
+			return index;
+		}
+
+		public void write(DataOutputStream classOut) throws IOException {
+			out.flush();
+			classOut.writeShort(count);
+			bytes.writeTo(classOut);
+		}
+	}
+
+	/**
+	 * Defines the generated executor classes for a listener class loader
+	 */
+	private static class ExecutorClassLoader extends ClassLoader {
+		public ExecutorClassLoader(ClassLoader parent) {
+			super(parent);
+		}
+
+		public Class<?> define(String name, byte[] bytes) {
+			return defineClass(name, bytes, 0, bytes.length);
+		}
+	}
+}
@@ -26,6 +26,10 @@
  */
 package org.spout.api.event;
 
+import java.util.Collection;
+
+import org.spout.api.geo.cuboid.Region;
+
 /**
  * Manages event registration through {@link Listener}s and {@link EventExecutor}s,  It also handles calling of events, and delayed events.
  */
@@ -37,12 +41,48 @@ public interface EventManager {
 	 */
 	public <T extends Event> T callEvent(T event);
 
+	/**
+	 * Calls an event, only creating it if there are listeners for the event type.<br>
+	 * <br>
+	 * This should be used for frequent events which are rarely listened to.
+	 * @param type Event type
+	 * @param factory creates the event details
+	 * @return Called event, or null if there were no listeners
+	 */
+	public <T extends Event> T callEvent(Class<T> type, EventFactory<? extends T> factory);
+
+	/**
+	 * Gets if any listeners are registered for the given event type
+	 * @param type Event type
+	 * @return true if the event type has listeners
+	 */
+	public boolean isListened(Class<? extends Event> type);
+
 	/**
 	 * Calls an event with the given details, on the next tick
 	 * @param event Event details
 	 */
 	public <T extends Event> void callDelayedEvent(T event);
 
+	/**
+	 * Calls a non-cancellable event asynchronously.<br>
+	 * <br>
+	 * The event is queued and delivered in a batch on the event manager's async event thread. Each listener receives
+	 * the events in the order they were queued.
+	 * @param event Event details
+	 * @throws IllegalArgumentException if the event is cancellable
+	 */
+	public void callAsyncEvent(Event event);
+
+	/**
+	 * Calls a sequence of events.<br>
+	 * <br>
+	 * Consecutive non-cancellable events of the same type are passed to each listener in turn, so the listener array is
+	 * only read once for the run. Each listener receives the events in order. Cancellable events are called one at a time.
+	 * @param events Events to call, in order
+	 */
+	public void callEventsBatch(Collection<? extends Event> events);
+
 	/**
 	 * Registers all the events in the given listener class
 	 * @param listener Listener to register
@@ -58,4 +98,30 @@ public interface EventManager {
 	 * @param owner Plugin to register
 	 */
 	public void registerEvent(Class<? extends Event> event, Order priority, EventExecutor executor, Object owner);
+
+	/**
+	 * Registers all the events in the given listener class, scoped to a region.<br>
+	 * <br>
+	 * The listener only receives {@link RegionScopedEvent}s which happen inside the region.  It is called in order along
+	 * with the global listeners, ahead of the global listeners of the same order slot.<br>
+	 * <br>
+	 * The listener is called on whichever thread raised the event.  This is the region's own thread for events raised
+	 * during the region's tick, but events raised by the main thread, by async tasks or by a neighbouring region are
+	 * passed to the listener on that thread, so listeners must not assume they are confined to the region's thread.
+	 * @param region Region to listen to
+	 * @param listener Listener to register
+	 * @param owner Plugin to register
+	 */
+	public void registerEvents(Region region, Listener listener, Object owner);
+
+	/**
+	 * Registers the specified executor to the given event class, scoped to a region.
+	 * @param region Region to listen to
+	 * @param event Event type to register
+	 * @param priority Priority to register this event at, relative to the other listeners of the region
+	 * @param executor EventExecutor to register
+	 * @param owner Plugin to register
+	 * @see #registerEvents(Region, Listener, Object)
+	 */
+	public void registerEvent(Region region, Class<? extends Event> event, Order priority, EventExecutor executor, Object owner);
 }
@@ -0,0 +1,64 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, SpoutDev <http://www.spout.org/>
+ * SpoutAPI is licensed under the SpoutDev License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://www.spout.org/SpoutDevLicenseV1.txt> for the full license,
+ * including the MIT license.
+ */
+package org.spout.api.event;
+
+import org.spout.api.exception.EventException;
+
+/**
+ * The base class of the executors created by {@link EventExecutorFactory}.<br>
+ * <br>
+ * Subclasses are generated at runtime and call the {@link EventHandler} method directly from {@link #dispatch(Event)}.
+ */
+public abstract class GeneratedEventExecutor implements EventExecutor {
+	/**
+	 * The listener which owns the handler method, or null if the method is static
+	 */
+	protected final Object listener;
+
+	protected GeneratedEventExecutor(Object listener) {
+		this.listener = listener;
+	}
+
+	@Override
+	public final void execute(Event event) throws EventException {
+		try {
+			dispatch(event);
+		} catch (EventException e) {
+			throw e;
+		} catch (Throwable t) {
+			throw new EventException(t);
+		}
+	}
+
+	/**
+	 * Passes the event to the handler method
+	 *
+	 * @param event the event
+	 * @throws Throwable if the handler method throws an exception, or if the event is of the wrong type
+	 */
+	protected abstract void dispatch(Event event) throws Throwable;
+}
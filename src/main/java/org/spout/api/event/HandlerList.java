@@ -26,26 +26,56 @@
  */
 package org.spout.api.event;
 
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.EnumMap;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.collect.MapMaker;
 
 /**
- * A list of event handlers, stored per-event.
+ * A list of event handlers, stored per-event.<br>
+ * <br>
+ * Registration changes are serialized on the list and publish a new baked array, so the dispatch path only performs
+ * a single volatile read and never locks.  Listeners may be registered and unregistered from any thread.
  */
 public class HandlerList {
+	private static final ListenerRegistration[] EMPTY = new ListenerRegistration[0];
 	/**
 	 * Handler array. This field being an array is the key to this system's
-	 * speed.
+	 * speed.  The array is never modified once published.
+	 */
+	private volatile ListenerRegistration[] handlers = EMPTY;
+	/**
+	 * True if the baked array is not empty
+	 */
+	private volatile boolean hasListeners = false;
+	/**
+	 * The global list that this list is scoped from, or null if this is a global list
 	 */
-	private ListenerRegistration[] handlers = null;
+	private final HandlerList parent;
+	/**
+	 * The number of scoped lists derived from this list which have listeners
+	 */
+	private final AtomicInteger scopedListeners = new AtomicInteger(0);
+	/**
+	 * The reference counted by the parent while this scoped list has listeners
+	 */
+	private ScopedReference scopedReference = null;
 	/**
 	 * Returns the Dynamic handler lists. <br/>
 	 * These are changed using register() and unregister()<br/>
-	 * Changes automatically baked to the handlers array any time they have changed..
+	 * Changes are baked to the handlers array as they are made.  Access is guarded by this HandlerList.
 	 * @return map of Registered handlers
 	 */
 	private final EnumMap<Order, List<ListenerRegistration>> handlerSlots;
@@ -53,10 +83,22 @@ public class HandlerList {
 	 * List of all HandlerLists which have been created, for use in bakeAll()
 	 * @return the list of all Handlers.
 	 */
-	private static final ArrayList<HandlerList> ALL_LISTS = new ArrayList<HandlerList>();
+	private static final List<HandlerList> ALL_LISTS = new CopyOnWriteArrayList<HandlerList>();
+	/**
+	 * Scoped HandlerLists, which are weakly referenced so they can be released with their scope
+	 */
+	private static final Set<HandlerList> SCOPED_LISTS = Collections.newSetFromMap(new MapMaker().weakKeys().<HandlerList, Boolean>makeMap());
+	/**
+	 * The references counted by parent lists.  A scoped list collected while it still has listeners is
+	 * enqueued here, so it can be uncounted from its parent.
+	 */
+	private static final Set<ScopedReference> COUNTED_REFERENCES = Collections.newSetFromMap(new ConcurrentHashMap<ScopedReference, Boolean>());
+	private static final ReferenceQueue<HandlerList> COLLECTED_LISTS = new ReferenceQueue<HandlerList>();
 
 	/**
-	 * Bake all handler lists. Best used just after all normal event registration is complete.
+	 * Bake all handler lists.<br>
+	 * <br>
+	 * Handler lists are baked whenever they change, so this is no longer required.
 	 */
 	public static void bakeAll() {
 		for (HandlerList h : ALL_LISTS) {
@@ -66,10 +108,10 @@ public class HandlerList {
 
 	public static <T> void unregisterAll() {
 		for (HandlerList h : ALL_LISTS) {
-			for (List<ListenerRegistration> regs : h.handlerSlots.values()) {
-				regs.clear();
-			}
-			h.handlers = null;
+			h.clear();
+		}
+		for (HandlerList h : SCOPED_LISTS) {
+			h.clear();
 		}
 	}
 
@@ -77,6 +119,9 @@ public class HandlerList {
 		for (HandlerList h : ALL_LISTS) {
 			h.unregister(plugin);
 		}
+		for (HandlerList h : SCOPED_LISTS) {
+			h.unregister(plugin);
+		}
 	}
 
 	/**
@@ -84,43 +129,64 @@ public class HandlerList {
 	 * HandlerList is then added to meta-list for use in bakeAll()
 	 */
 	public HandlerList() {
+		this(null);
+	}
+
+	/**
+	 * Create a new handler list which is scoped from the given global list, such as the listeners for a single Region.<br>
+	 * Listeners in scoped lists are included in the parent's {@link #hasListeners()}.
+	 * @param parent the global handler list, or null to create a global list
+	 */
+	HandlerList(HandlerList parent) {
+		this.parent = parent;
 		handlerSlots = new EnumMap<Order, List<ListenerRegistration>>(Order.class);
 		for (Order o : Order.values()) {
 			handlerSlots.put(o, new ArrayList<ListenerRegistration>());
 		}
-		ALL_LISTS.add(this);
+		if (parent == null) {
+			ALL_LISTS.add(this);
+		} else {
+			SCOPED_LISTS.add(this);
+		}
 	}
 
 	/**
 	 * Register a new listener in this handler list
 	 * @param listener listener to register
 	 */
-	public void register(ListenerRegistration listener) {
-		if (handlerSlots.get(listener.getOrder()).contains(listener)) {
-			throw new IllegalStateException("This listener is already registered to priority " + listener.getOrder().toString());
+	public synchronized void register(ListenerRegistration listener) {
+		add(listener);
+		rebake();
+	}
+
+	public synchronized void registerAll(Collection<ListenerRegistration> listeners) {
+		try {
+			for (ListenerRegistration listener : listeners) {
+				add(listener);
+			}
+		} finally {
+			rebake();
 		}
-		handlers = null;
-		handlerSlots.get(listener.getOrder()).add(listener);
 	}
 
-	public void registerAll(Collection<ListenerRegistration> listeners) {
-		for (ListenerRegistration listener : listeners) {
-			register(listener);
+	private void add(ListenerRegistration listener) {
+		if (handlerSlots.get(listener.getOrder()).contains(listener)) {
+			throw new IllegalStateException("This listener is already registered to priority " + listener.getOrder().toString());
 		}
+		handlerSlots.get(listener.getOrder()).add(listener);
 	}
 
 	/**
 	 * Remove a listener from a specific order slot
 	 * @param listener listener to remove
 	 */
-	public void unregister(ListenerRegistration listener) {
-		if (handlerSlots.get(listener.getOrder()).contains(listener)) {
-			handlers = null;
-			handlerSlots.get(listener.getOrder()).remove(listener);
+	public synchronized void unregister(ListenerRegistration listener) {
+		if (handlerSlots.get(listener.getOrder()).remove(listener)) {
+			rebake();
 		}
 	}
 
-	public void unregister(Object plugin) {
+	public synchronized void unregister(Object plugin) {
 		boolean changed = false;
 		for (List<ListenerRegistration> list : handlerSlots.values()) {
 			for (ListIterator<ListenerRegistration> i = list.listIterator(); i.hasNext(); ) {
@@ -131,36 +197,109 @@ public class HandlerList {
 			}
 		}
 		if (changed) {
-			handlers = null;
+			rebake();
 		}
 	}
 
+	private synchronized void clear() {
+		for (List<ListenerRegistration> regs : handlerSlots.values()) {
+			regs.clear();
+		}
+		rebake();
+	}
+
 	/**
-	 * Bake HashMap and ArrayLists to 2d array - does nothing if not necessary
-	 * @return The baked array of ListenerRegistrations
+	 * Bakes the registered listeners into a new array, and publishes it for dispatch
 	 */
-	public ListenerRegistration[] bake() {
-		ListenerRegistration[] handlers = this.handlers;
-		if (handlers != null) {
-			return handlers; // don't re-bake when still valid
-		}
+	private void rebake() {
 		List<ListenerRegistration> entries = new ArrayList<ListenerRegistration>();
 		for (Entry<Order, List<ListenerRegistration>> entry : handlerSlots.entrySet()) {
 			entries.addAll(entry.getValue());
 		}
-		this.handlers = handlers = entries.toArray(new ListenerRegistration[entries.size()]);
+		boolean hadListeners = this.hasListeners;
+		this.handlers = entries.isEmpty() ? EMPTY : entries.toArray(new ListenerRegistration[entries.size()]);
+		this.hasListeners = !entries.isEmpty();
+		if (parent != null && hadListeners != hasListeners) {
+			if (hasListeners) {
+				scopedReference = new ScopedReference(this);
+				COUNTED_REFERENCES.add(scopedReference);
+				parent.scopedListeners.incrementAndGet();
+			} else {
+				scopedReference.release();
+				scopedReference = null;
+			}
+		}
+	}
+
+	/**
+	 * Uncounts the scoped lists which were collected without being emptied
+	 */
+	private static void releaseCollectedLists() {
+		Reference<? extends HandlerList> reference;
+		while ((reference = COLLECTED_LISTS.poll()) != null) {
+			((ScopedReference) reference).release();
+		}
+	}
+
+	/**
+	 * Gets the baked array of ListenerRegistrations.  The array is kept up to date as listeners are registered, so this never needs to bake.
+	 * @return The baked array of ListenerRegistrations
+	 */
+	public ListenerRegistration[] bake() {
 		return handlers;
 	}
 
 	/**
-	 * Gets an array of all currently ListenerRegistration, if the handlers list is currently null, it will attempt to bake new listeners prior to returning.
+	 * Gets if any listeners are registered, either to this list or to a list scoped from it.  This is cheap enough to check before constructing an event.
+	 * @return true if there are registered listeners
+	 */
+	public boolean hasListeners() {
+		return hasListeners || hasScopedListeners();
+	}
+
+	/**
+	 * Gets if any lists scoped from this list have listeners
+	 * @return true if there are scoped listeners
+	 */
+	public boolean hasScopedListeners() {
+		releaseCollectedLists();
+		return scopedListeners.get() > 0;
+	}
+
+	/**
+	 * Gets the global list that this list is scoped from
+	 * @return the parent list, or null if this is a global list
+	 */
+	public HandlerList getParent() {
+		return parent;
+	}
+
+	/**
+	 * Gets an array of all currently registered ListenerRegistrations, in order.<br>
+	 * <br>
+	 * The returned array is shared and must not be modified.
 	 * @return array of ListenerRegistrations
 	 */
 	public ListenerRegistration[] getRegisteredListeners() {
-		ListenerRegistration[] handlers = this.handlers;
-		if (handlers == null) {
-			handlers = bake();
-		}
 		return handlers;
 	}
+
+	/**
+	 * A weak reference to a scoped list with listeners, which is counted by the list's parent until released
+	 */
+	private static final class ScopedReference extends WeakReference<HandlerList> {
+		private final HandlerList parent;
+
+		public ScopedReference(HandlerList list) {
+			super(list, COLLECTED_LISTS);
+			this.parent = list.parent;
+		}
+
+		public void release() {
+			clear();
+			if (COUNTED_REFERENCES.remove(this)) {
+				parent.scopedListeners.decrementAndGet();
+			}
+		}
+	}
 }
@@ -0,0 +1,110 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, SpoutDev <http://www.spout.org/>
+ * SpoutAPI is licensed under the SpoutDev License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://www.spout.org/SpoutDevLicenseV1.txt> for the full license,
+ * including the MIT license.
+ */
+package org.spout.api.event;
+
+/**
+ * A snapshot of the time spent by the listeners of one owner for one event class.
+ *
+ * @see ListenerTimings
+ */
+public class ListenerTiming {
+	private final Class<?> eventClass;
+	private final Object owner;
+	private final long samples;
+	private final long estimatedNanos;
+	private final long maxNanos;
+	private final long slowCalls;
+
+	public ListenerTiming(Class<?> eventClass, Object owner, long samples, long estimatedNanos, long maxNanos, long slowCalls) {
+		this.eventClass = eventClass;
+		this.owner = owner;
+		this.samples = samples;
+		this.estimatedNanos = estimatedNanos;
+		this.maxNanos = maxNanos;
+		this.slowCalls = slowCalls;
+	}
+
+	/**
+	 * Gets the class of the events
+	 *
+	 * @return the event class
+	 */
+	public Class<?> getEventClass() {
+		return eventClass;
+	}
+
+	/**
+	 * Gets the owner of the listeners, usually a plugin
+	 *
+	 * @return the owner, or null if the listeners had no owner
+	 */
+	public Object getOwner() {
+		return owner;
+	}
+
+	/**
+	 * Gets the number of calls which were timed
+	 *
+	 * @return the number of samples
+	 */
+	public long getSamples() {
+		return samples;
+	}
+
+	/**
+	 * Gets the estimated total time spent in the listeners, which is the sampled time scaled by the sample interval
+	 *
+	 * @return the estimated time, in nanoseconds
+	 */
+	public long getEstimatedNanos() {
+		return estimatedNanos;
+	}
+
+	/**
+	 * Gets the longest sampled call
+	 *
+	 * @return the longest call, in nanoseconds
+	 */
+	public long getMaxNanos() {
+		return maxNanos;
+	}
+
+	/**
+	 * Gets the number of sampled calls above the slow threshold
+	 *
+	 * @return the number of slow calls
+	 */
+	public long getSlowCalls() {
+		return slowCalls;
+	}
+
+	@Override
+	public String toString() {
+		String ownerName = owner == null ? "none" : owner.getClass().getName();
+		return eventClass.getSimpleName() + " (" + ownerName + "): ~" + (estimatedNanos / 1000000L) + "ms total, " + samples + " samples, max " + (maxNanos / 1000L) + "us, " + slowCalls + " slow";
+	}
+}
@@ -0,0 +1,262 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, SpoutDev <http://www.spout.org/>
+ * SpoutAPI is licensed under the SpoutDev License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://www.spout.org/SpoutDevLicenseV1.txt> for the full license,
+ * including the MIT license.
+ */
+package org.spout.api.event;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Accumulates the time spent in event listeners, per event class and listener owner.<br>
+ * <br>
+ * Only one in every {@link #getSampleInterval()} listener calls is timed, and the result is scaled up, so timings are
+ * cheap enough to leave enabled. Counters are striped by thread, so listeners called from many region threads do not
+ * contend. A sampled call which takes longer than the slow threshold is counted as a slow call.
+ */
+public class ListenerTimings {
+	private static final int STRIPES = 8;
+	private static final int STRIPE_MASK = STRIPES - 1;
+	/**
+	 * Each stripe is padded to 64 bytes, so stripes used by different threads do not share a cache line
+	 */
+	private static final int STRIPE_WIDTH = 8;
+	private static final int SAMPLES = 0;
+	private static final int NANOS = 1;
+	private static final int SLOW = 2;
+	private static final Object NO_OWNER = new Object();
+
+	private final int sampleInterval;
+	private final int sampleMask;
+	private final long slowThreshold;
+	/**
+	 * Per stripe call counters used to pick the calls to sample.  Updates are racy, which only affects which calls are sampled.
+	 */
+	private final int[] callCounters = new int[STRIPES * 16];
+	private final ConcurrentMap<Class<?>, ConcurrentMap<Object, Counters>> counters = new ConcurrentHashMap<Class<?>, ConcurrentMap<Object, Counters>>();
+
+	/**
+	 * Creates listener timings
+	 *
+	 * @param sampleInterval the interval between timed calls, rounded up to a power of 2.  Use 1 to time every call
+	 * @param slowThreshold the duration, in nanoseconds, above which a call is counted as slow
+	 */
+	public ListenerTimings(int sampleInterval, long slowThreshold) {
+		if (sampleInterval < 1) {
+			throw new IllegalArgumentException("Sample interval must be positive");
+		}
+		int interval = Integer.highestOneBit(sampleInterval);
+		if (interval < sampleInterval) {
+			interval <<= 1;
+		}
+		this.sampleInterval = interval;
+		this.sampleMask = interval - 1;
+		this.slowThreshold = slowThreshold;
+	}
+
+	/**
+	 * Checks if the next listener call on this thread should be timed
+	 *
+	 * @return true to time the call
+	 */
+	public boolean shouldSample() {
+		if (sampleMask == 0) {
+			return true;
+		}
+		int index = ((int) Thread.currentThread().getId() & STRIPE_MASK) << 4;
+		return (++callCounters[index] & sampleMask) == 0;
+	}
+
+	/**
+	 * Records a timed listener call
+	 *
+	 * @param eventClass the class of the event
+	 * @param owner the owner of the listener
+	 * @param nanos the duration of the call
+	 */
+	public void record(Class<?> eventClass, Object owner, long nanos) {
+		getCounters(eventClass, owner).add(nanos, nanos > slowThreshold ? 1 : 0, sampleInterval);
+	}
+
+	private Counters getCounters(Class<?> eventClass, Object owner) {
+		if (owner == null) {
+			owner = NO_OWNER;
+		}
+		ConcurrentMap<Object, Counters> owners = counters.get(eventClass);
+		if (owners == null) {
+			owners = new ConcurrentHashMap<Object, Counters>();
+			ConcurrentMap<Object, Counters> oldOwners = counters.putIfAbsent(eventClass, owners);
+			if (oldOwners != null) {
+				owners = oldOwners;
+			}
+		}
+		Counters c = owners.get(owner);
+		if (c == null) {
+			c = new Counters();
+			Counters oldCounters = owners.putIfAbsent(owner, c);
+			if (oldCounters != null) {
+				c = oldCounters;
+			}
+		}
+		return c;
+	}
+
+	/**
+	 * Gets the interval between timed calls
+	 *
+	 * @return the sample interval
+	 */
+	public int getSampleInterval() {
+		return sampleInterval;
+	}
+
+	/**
+	 * Gets the duration above which a call is counted as slow
+	 *
+	 * @return the threshold, in nanoseconds
+	 */
+	public long getSlowThreshold() {
+		return slowThreshold;
+	}
+
+	/**
+	 * Gets a snapshot of the timings of every listener which has been sampled
+	 *
+	 * @return the timings, in no particular order
+	 */
+	public List<ListenerTiming> getTimings() {
+		List<ListenerTiming> list = new ArrayList<ListenerTiming>();
+		for (Map.Entry<Class<?>, ConcurrentMap<Object, Counters>> e : counters.entrySet()) {
+			for (Map.Entry<Object, Counters> o : e.getValue().entrySet()) {
+				Object owner = o.getKey() == NO_OWNER ? null : o.getKey();
+				list.add(o.getValue().snapshot(e.getKey(), owner));
+			}
+		}
+		return list;
+	}
+
+	/**
+	 * Gets the listeners with the highest estimated total time
+	 *
+	 * @param n the maximum number of listeners to return
+	 * @return the costliest listeners, costliest first
+	 */
+	public List<ListenerTiming> getTopListeners(int n) {
+		List<ListenerTiming> list = getTimings();
+		Collections.sort(list, new Comparator<ListenerTiming>() {
+			@Override
+			public int compare(ListenerTiming a, ListenerTiming b) {
+				return compareLongs(b.getEstimatedNanos(), a.getEstimatedNanos());
+			}
+		});
+		return list.size() > n ? new ArrayList<ListenerTiming>(list.subList(0, n)) : list;
+	}
+
+	/**
+	 * Gets the listeners which had at least one sampled call above the slow threshold
+	 *
+	 * @return the slow listeners, with the most slow calls first
+	 */
+	public List<ListenerTiming> getSlowListeners() {
+		List<ListenerTiming> list = new ArrayList<ListenerTiming>();
+		for (ListenerTiming timing : getTimings()) {
+			if (timing.getSlowCalls() > 0) {
+				list.add(timing);
+			}
+		}
+		Collections.sort(list, new Comparator<ListenerTiming>() {
+			@Override
+			public int compare(ListenerTiming a, ListenerTiming b) {
+				int c = compareLongs(b.getSlowCalls(), a.getSlowCalls());
+				return c != 0 ? c : compareLongs(b.getMaxNanos(), a.getMaxNanos());
+			}
+		});
+		return list;
+	}
+
+	/**
+	 * Creates a report of the slow listeners, one per line
+	 *
+	 * @return the report, or an empty string if there are no slow listeners
+	 */
+	public String getSlowListenerReport() {
+		StringBuilder sb = new StringBuilder();
+		for (ListenerTiming timing : getSlowListeners()) {
+			if (sb.length() > 0) {
+				sb.append('\n');
+			}
+			sb.append(timing.toString());
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Discards all timings
+	 */
+	public void reset() {
+		counters.clear();
+	}
+
+	private static int compareLongs(long a, long b) {
+		return a < b ? -1 : (a == b ? 0 : 1);
+	}
+
+	private static class Counters {
+		private final AtomicLongArray values = new AtomicLongArray(STRIPES * STRIPE_WIDTH);
+		private final AtomicLong max = new AtomicLong(0);
+
+		public void add(long nanos, int slow, int interval) {
+			int base = ((int) Thread.currentThread().getId() & STRIPE_MASK) * STRIPE_WIDTH;
+			values.incrementAndGet(base + SAMPLES);
+			values.addAndGet(base + NANOS, nanos * interval);
+			if (slow != 0) {
+				values.incrementAndGet(base + SLOW);
+			}
+			long oldMax = max.get();
+			while (nanos > oldMax && !max.compareAndSet(oldMax, nanos)) {
+				oldMax = max.get();
+			}
+		}
+
+		private long sum(int offset) {
+			long sum = 0;
+			for (int i = 0; i < STRIPES; i++) {
+				sum += values.get(i * STRIPE_WIDTH + offset);
+			}
+			return sum;
+		}
+
+		public ListenerTiming snapshot(Class<?> eventClass, Object owner) {
+			return new ListenerTiming(eventClass, owner, sum(SAMPLES), sum(NANOS), max.get(), sum(SLOW));
+		}
+	}
+}
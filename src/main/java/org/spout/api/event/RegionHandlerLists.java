@@ -0,0 +1,97 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, SpoutDev <http://www.spout.org/>
+ * SpoutAPI is licensed under the SpoutDev License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://www.spout.org/SpoutDevLicenseV1.txt> for the full license,
+ * including the MIT license.
+ */
+package org.spout.api.event;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.spout.api.geo.cuboid.Region;
+
+/**
+ * The {@link HandlerList}s for listeners which are scoped to a single {@link Region}.<br>
+ * <br>
+ * Region scoped listeners only receive {@link RegionScopedEvent}s for their Region, interleaved with the global
+ * listeners by {@link Order}. They are called on the thread which raised the event. For events raised during the
+ * Region's tick this is the Region's own thread, but dispatch is not confined to it: events raised by the main
+ * thread, async tasks or neighbouring Regions reach the listeners on those threads. Listeners of different Regions
+ * can therefore run concurrently, with no ordering between them.
+ */
+public class RegionHandlerLists {
+	private final ConcurrentMap<HandlerList, HandlerList> lists = new ConcurrentHashMap<HandlerList, HandlerList>();
+
+	/**
+	 * Gets the scoped handler list for an event type, creating it if required
+	 *
+	 * @param global the global handler list of the event type
+	 * @return the scoped handler list
+	 */
+	public HandlerList getHandlerList(HandlerList global) {
+		HandlerList list = lists.get(global);
+		if (list == null) {
+			list = new HandlerList(global);
+			HandlerList old = lists.putIfAbsent(global, list);
+			if (old != null) {
+				list = old;
+			}
+		}
+		return list;
+	}
+
+	/**
+	 * Gets the listeners registered for an event type
+	 *
+	 * @param global the global handler list of the event type
+	 * @return the scoped listeners, or null if none have been registered
+	 */
+	public ListenerRegistration[] getRegisteredListeners(HandlerList global) {
+		HandlerList list = lists.get(global);
+		return list == null ? null : list.getRegisteredListeners();
+	}
+
+	/**
+	 * Unregisters all listeners in this Region that belong to the given owner
+	 *
+	 * @param owner the owner of the listeners
+	 */
+	public void unregister(Object owner) {
+		for (HandlerList list : lists.values()) {
+			list.unregister(owner);
+		}
+	}
+
+	/**
+	 * Unregisters all listeners in this Region, and discards the scoped handler lists.  This is called when the Region is unloaded.
+	 */
+	public void unregisterAll() {
+		for (HandlerList list : lists.values()) {
+			for (ListenerRegistration registration : list.getRegisteredListeners()) {
+				list.unregister(registration);
+			}
+		}
+		lists.clear();
+	}
+}
@@ -26,70 +26,259 @@
  */
 package org.spout.api.event;
 
-import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Level;
 
 import org.spout.api.Spout;
-import org.spout.api.exception.EventException;
 import org.spout.api.exception.IllegalPluginAccessException;
+import org.spout.api.geo.cuboid.Region;
 
 /**
  * A simple implementation of the {@link EventManager} that handles all {@link Event}s for the server.
  */
 public class SimpleEventManager implements EventManager {
+	private final ConcurrentMap<Class<? extends Event>, HandlerList> handlerLists = new ConcurrentHashMap<Class<? extends Event>, HandlerList>();
+	private final AsyncEventBus asyncBus = new AsyncEventBus(this);
+	private final Queue<Event> delayedEvents = new ConcurrentLinkedQueue<Event>();
+	private final AtomicBoolean delayedScheduled = new AtomicBoolean(false);
+	private volatile ListenerTimings timings = null;
+	private final Runnable delayedTask = new Runnable() {
+		@Override
+		public void run() {
+			do {
+				delayedScheduled.set(false);
+				Event event;
+				while ((event = delayedEvents.poll()) != null) {
+					callEvent(event);
+				}
+			} while (!delayedEvents.isEmpty() && delayedScheduled.compareAndSet(false, true));
+		}
+	};
+
+	/**
+	 * Queues an event to be called on the next tick.<br>
+	 * <br>
+	 * All events queued before the next tick are called by a single task, one at a time and in the order they were
+	 * queued, exactly as {@link #callEvent(Event)} would call them.
+	 */
 	@Override
 	public <T extends Event> void callDelayedEvent(final T event) {
-		Spout.getEngine().getScheduler().scheduleSyncDelayedTask(null, new Runnable() {
-			@Override
-			public void run() {
-				callEvent(event);
+		delayedEvents.add(event);
+		if (delayedScheduled.compareAndSet(false, true)) {
+			Spout.getEngine().getScheduler().scheduleSyncDelayedTask(null, delayedTask);
+		}
+	}
+
+	@Override
+	public void callAsyncEvent(Event event) {
+		asyncBus.post(event);
+	}
+
+	/**
+	 * Gets the bus used to deliver asynchronous events
+	 * @return the async event bus
+	 */
+	public AsyncEventBus getAsyncEventBus() {
+		return asyncBus;
+	}
+
+	@Override
+	public void callEventsBatch(Collection<? extends Event> events) {
+		Event[] batch = events.toArray(new Event[events.size()]);
+		int start = 0;
+		while (start < batch.length) {
+			Event first = batch[start];
+			if (!canBatch(first)) {
+				callEvent(first);
+				start++;
+				continue;
+			}
+			HandlerList handlers = first.getHandlers();
+			int end = start + 1;
+			while (end < batch.length && batch[end].getHandlers() == handlers && canBatch(batch[end])) {
+				end++;
 			}
-		});
+			for (ListenerRegistration listener : handlers.getRegisteredListeners()) {
+				for (int i = start; i < end; i++) {
+					callListener(batch[i], listener);
+				}
+			}
+			for (int i = start; i < end; i++) {
+				batch[i].setHasBeenCalled(true);
+			}
+			start = end;
+		}
 	}
 
+	/**
+	 * Checks if an event can be passed to each listener as part of a run of events.  Cancellable events and events
+	 * which have region scoped listeners must be called individually.
+	 */
+	private boolean canBatch(Event event) {
+		return !(event instanceof Cancellable) && !(event instanceof RegionScopedEvent && event.getHandlers().hasScopedListeners());
+	}
+
+	/**
+	 * Calls an event.<br>
+	 * <br>
+	 * {@link RegionScopedEvent}s are also passed to the listeners registered to their region.  Region and global
+	 * listeners are called together in strict {@link Order}, with the region's listeners first within each order
+	 * slot, so {@link Order#MONITOR} listeners of either kind see the final state of the event.
+	 */
 	@Override
 	public <T extends Event> T callEvent(T event) {
 		HandlerList handlers = event.getHandlers();
 		ListenerRegistration[] listeners = handlers.getRegisteredListeners();
 
+		ListenerRegistration[] scoped = null;
+		if (handlers.hasScopedListeners() && event instanceof RegionScopedEvent) {
+			Region region = ((RegionScopedEvent) event).getRegion();
+			if (region != null) {
+				scoped = region.getHandlerLists().getRegisteredListeners(handlers);
+			}
+		}
+
+		if (scoped != null) {
+			callListeners(event, scoped, listeners);
+		} else if (listeners != null) {
+			callListeners(event, listeners);
+		}
 		if (listeners != null) {
-			for (ListenerRegistration listener : listeners) {
-				try {
-					if (!event.isCancelled() || listener.getOrder().ignoresCancelled()) {
+			event.setHasBeenCalled(true);
+		}
+		return event;
+	}
+
+	private void callListeners(Event event, ListenerRegistration[] listeners) {
+		for (ListenerRegistration listener : listeners) {
+			callListener(event, listener);
+		}
+	}
+
+	/**
+	 * Calls region and global listeners, which are each sorted by order, slot by slot
+	 */
+	private void callListeners(Event event, ListenerRegistration[] scoped, ListenerRegistration[] global) {
+		int globalLength = global == null ? 0 : global.length;
+		int i = 0;
+		int j = 0;
+		while (i < scoped.length || j < globalLength) {
+			if (j >= globalLength || (i < scoped.length && scoped[i].getOrder().getIndex() <= global[j].getOrder().getIndex())) {
+				callListener(event, scoped[i++]);
+			} else {
+				callListener(event, global[j++]);
+			}
+		}
+	}
+
+	private void callListener(Event event, ListenerRegistration listener) {
+		try {
+			if (!event.isCancelled() || listener.getOrder().ignoresCancelled()) {
+				ListenerTimings timings = this.timings;
+				if (timings != null && timings.shouldSample()) {
+					long start = System.nanoTime();
+					try {
 						listener.getExecutor().execute(event);
+					} finally {
+						timings.record(event.getClass(), listener.getOwner(), System.nanoTime() - start);
 					}
-				} catch (Throwable ex) {
-					Spout.getEngine().getLogger().log(Level.SEVERE, "Could not pass event " + event.getEventName() + " to " + listener.getOwner().getClass().getName(), ex);
+				} else {
+					listener.getExecutor().execute(event);
 				}
 			}
-			event.setHasBeenCalled(true);
+		} catch (Throwable ex) {
+			Spout.getEngine().getLogger().log(Level.SEVERE, "Could not pass event " + event.getEventName() + " to " + listener.getOwner().getClass().getName(), ex);
 		}
-		return event;
+	}
+
+	/**
+	 * Sets the timings used to record the time spent in listeners
+	 * @param timings the timings, or null to disable timing
+	 */
+	public void setListenerTimings(ListenerTimings timings) {
+		this.timings = timings;
+	}
+
+	/**
+	 * Gets the timings used to record the time spent in listeners
+	 * @return the timings, or null if timing is disabled
+	 */
+	public ListenerTimings getListenerTimings() {
+		return timings;
+	}
+
+	@Override
+	public <T extends Event> T callEvent(Class<T> type, EventFactory<? extends T> factory) {
+		if (!getEventListeners(type).hasListeners()) {
+			return null;
+		}
+		return callEvent(factory.createEvent());
+	}
+
+	@Override
+	public boolean isListened(Class<? extends Event> type) {
+		return getEventListeners(type).hasListeners();
 	}
 
 	@Override
 	public void registerEvents(Listener listener, Object owner) {
+		registerEvents(null, listener, owner);
+	}
+
+	@Override
+	public void registerEvent(Class<? extends Event> event, Order priority, EventExecutor executor, Object owner) {
+		getEventListeners(event).register(new ListenerRegistration(executor, priority, owner));
+	}
+
+	@Override
+	public void registerEvents(Region region, Listener listener, Object owner) {
 		for (Map.Entry<Class<? extends Event>, Set<ListenerRegistration>> entry : createRegisteredListeners(listener, owner).entrySet()) {
 			Class<? extends Event> delegatedClass = getRegistrationClass(entry.getKey());
 			if (!entry.getKey().equals(delegatedClass)) {
 				Spout.getEngine().getLogger().severe("Plugin attempted to register delegated event class " + entry.getKey() + ". It should be using " + delegatedClass + "!");
 				continue;
 			}
-			getEventListeners(delegatedClass).registerAll(entry.getValue());
+			if (region != null && !RegionScopedEvent.class.isAssignableFrom(delegatedClass)) {
+				Spout.getEngine().getLogger().severe("Plugin attempted to register " + delegatedClass + " to a region. Only region scoped events can be registered to a region.");
+				continue;
+			}
+			getEventListeners(region, delegatedClass).registerAll(entry.getValue());
 		}
 	}
 
 	@Override
-	public void registerEvent(Class<? extends Event> event, Order priority, EventExecutor executor, Object owner) {
-		getEventListeners(event).register(new ListenerRegistration(executor, priority, owner));
+	public void registerEvent(Region region, Class<? extends Event> event, Order priority, EventExecutor executor, Object owner) {
+		getEventListeners(region, event).register(new ListenerRegistration(executor, priority, owner));
+	}
+
+	/**
+	 * Returns the specified event type's HandlerList for a region
+	 * @param region Region to lookup, or null for the global HandlerList
+	 * @param type EventType to lookup
+	 * @return HandlerList The list of registered handlers for the event.
+	 */
+	private HandlerList getEventListeners(Region region, Class<? extends Event> type) {
+		HandlerList global = getEventListeners(type);
+		if (region == null) {
+			return global;
+		}
+		if (!RegionScopedEvent.class.isAssignableFrom(type)) {
+			throw new IllegalPluginAccessException("Event " + type.getName() + " does not happen within a region");
+		}
+		return region.getHandlerLists().getHandlerList(global);
 	}
 
 	/**
@@ -98,13 +287,19 @@ public class SimpleEventManager implements EventManager {
 	 * @return HandlerList The list of registered handlers for the event.
 	 */
 	private HandlerList getEventListeners(Class<? extends Event> type) {
+		HandlerList list = handlerLists.get(type);
+		if (list != null) {
+			return list;
+		}
 		try {
 			Method method = getRegistrationClass(type).getDeclaredMethod("getHandlerList");
 			method.setAccessible(true);
-			return (HandlerList) method.invoke(null);
+			list = (HandlerList) method.invoke(null);
 		} catch (Exception e) {
 			throw new IllegalPluginAccessException(e.toString());
 		}
+		handlerLists.putIfAbsent(type, list);
+		return list;
 	}
 
 	private Class<? extends Event> getRegistrationClass(Class<? extends Event> clazz) {
@@ -147,31 +342,12 @@ public class SimpleEventManager implements EventManager {
 
 			eventClass = checkClass.asSubclass(Event.class);
 
-			method.setAccessible(true);
 			Set<ListenerRegistration> eventSet = ret.get(eventClass);
 			if (eventSet == null) {
 				eventSet = new HashSet<ListenerRegistration>();
 				ret.put(eventClass, eventSet);
 			}
-			eventSet.add(new ListenerRegistration(new EventExecutor() {
-				@Override
-				public void execute(Event event) throws EventException {
-					try {
-						if (!checkClass.isAssignableFrom(event.getClass())) {
-							throw new EventException("Wrong event type passed to registered method");
-						}
-						method.invoke(listener, event);
-					} catch (InvocationTargetException e) {
-						if (e.getCause() instanceof EventException) {
-							throw (EventException) e.getCause();
-						}
-
-						throw new EventException(e.getCause());
-					} catch (Throwable t) {
-						throw new EventException(t);
-					}
-				}
-			}, eh.order(), plugin));
+			eventSet.add(new ListenerRegistration(EventExecutorFactory.create(listener, method), eh.order(), plugin));
 		}
 		return ret;
 	}
@@ -28,12 +28,14 @@ package org.spout.api.event.block;
 
 import org.spout.api.Source;
 import org.spout.api.event.Event;
+import org.spout.api.event.RegionScopedEvent;
 import org.spout.api.geo.cuboid.Block;
+import org.spout.api.geo.cuboid.Region;
 
 /**
  * Designates an event that occurs on a {@link Block} from a {@link Source}
  */
-public abstract class BlockEvent extends Event {
+public abstract class BlockEvent extends Event implements RegionScopedEvent {
 	private final Block block;
 	private final Source source;
 
@@ -57,4 +59,13 @@ public abstract class BlockEvent extends Event {
 	public Source getSource() {
 		return source;
 	}
+
+	/**
+	 * Gets the region containing the block
+	 * @return the region
+	 */
+	@Override
+	public Region getRegion() {
+		return block.getRegion();
+	}
 }
@@ -27,12 +27,14 @@
 package org.spout.api.event.chunk;
 
 import org.spout.api.event.Event;
+import org.spout.api.event.RegionScopedEvent;
 import org.spout.api.geo.cuboid.Chunk;
+import org.spout.api.geo.cuboid.Region;
 
 /**
  * Designates an event that occurs on a {@link Chunk}
  */
-public abstract class ChunkEvent extends Event {
+public abstract class ChunkEvent extends Event implements RegionScopedEvent {
 	protected ChunkEvent(Chunk chunk) {
 		this.chunk = chunk;
 	}
@@ -46,4 +48,13 @@ public abstract class ChunkEvent extends Event {
 	public Chunk getChunk() {
 		return chunk;
 	}
+
+	/**
+	 * Gets the region containing the chunk
+	 * @return the region
+	 */
+	@Override
+	public Region getRegion() {
+		return chunk.getRegion();
+	}
 }
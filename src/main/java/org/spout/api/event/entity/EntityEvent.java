@@ -28,11 +28,13 @@ package org.spout.api.event.entity;
 
 import org.spout.api.entity.Entity;
 import org.spout.api.event.Event;
+import org.spout.api.event.RegionScopedEvent;
+import org.spout.api.geo.cuboid.Region;
 
 /**
  * Represents an {@link Entity} related event.
  */
-public abstract class EntityEvent extends Event {
+public abstract class EntityEvent extends Event implements RegionScopedEvent {
 	private final Entity entity;
 
 	public EntityEvent(Entity e) {
@@ -46,4 +48,13 @@ public abstract class EntityEvent extends Event {
 	public Entity getEntity() {
 		return entity;
 	}
+
+	/**
+	 * Gets the region containing the entity, or null if the entity is not in a loaded region
+	 * @return the region
+	 */
+	@Override
+	public Region getRegion() {
+		return entity.getRegion();
+	}
 }
@@ -0,0 +1,231 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, SpoutDev <http://www.spout.org/>
+ * SpoutAPI is licensed under the SpoutDev License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://www.spout.org/SpoutDevLicenseV1.txt> for the full license,
+ * including the MIT license.
+ */
+package org.spout.api.geo;
+
+import gnu.trove.set.hash.TLongHashSet;
+
+import org.spout.api.Source;
+import org.spout.api.material.range.EffectRange;
+import org.spout.api.util.IntTripleConsumer;
+import org.spout.api.util.hashing.Int21TripleHashed;
+
+/**
+ * A queue of pending physics updates for a Region.<br>
+ * <br>
+ * Positions are keyed by their packed coordinates, so a block which is queued several times by overlapping
+ * effect ranges is only processed once per drain.  The source of the first queue request for a position is kept.<br>
+ * <br>
+ * Queueing is thread safe.  Draining should be performed by the Region thread during the physics stage.
+ */
+public class PhysicsQueue implements IntTripleConsumer {
+	private static final int DEFAULT_CAPACITY = 64;
+	private final TLongHashSet queued;
+	private long[] keys;
+	private Source[] sources;
+	private int size;
+	private long[] drainKeys;
+	private Source[] drainSources;
+	private Source currentSource;
+	private int duplicates;
+
+	public PhysicsQueue() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	public PhysicsQueue(int capacity) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("Capacity must be positive");
+		}
+		queued = new TLongHashSet(capacity);
+		keys = new long[capacity];
+		sources = new Source[capacity];
+		drainKeys = new long[capacity];
+		drainSources = new Source[capacity];
+	}
+
+	/**
+	 * Queues a physics update for the block at (x, y, z)
+	 *
+	 * @param x coordinate of the block
+	 * @param y coordinate of the block
+	 * @param z coordinate of the block
+	 * @param source of this physics update
+	 * @return true if the block was not already queued
+	 */
+	public synchronized boolean queue(int x, int y, int z, Source source) {
+		return add(Int21TripleHashed.key(x, y, z), source);
+	}
+
+	/**
+	 * Queues a physics update for all blocks within the given range of (x, y, z)
+	 *
+	 * @param x coordinate of the block
+	 * @param y coordinate of the block
+	 * @param z coordinate of the block
+	 * @param range the range of blocks to update
+	 * @param source of this physics update
+	 */
+	public synchronized void queue(int x, int y, int z, EffectRange range, Source source) {
+		currentSource = source;
+		try {
+			range.forEach(x, y, z, this);
+		} finally {
+			currentSource = null;
+		}
+	}
+
+	/**
+	 * Used internally to queue the blocks of an effect range
+	 */
+	@Override
+	public void accept(int x, int y, int z) {
+		add(Int21TripleHashed.key(x, y, z), currentSource);
+	}
+
+	private boolean add(long key, Source source) {
+		if (!queued.add(key)) {
+			duplicates++;
+			return false;
+		}
+		if (size == keys.length) {
+			int newLength = size << 1;
+			long[] newKeys = new long[newLength];
+			Source[] newSources = new Source[newLength];
+			System.arraycopy(keys, 0, newKeys, 0, size);
+			System.arraycopy(sources, 0, newSources, 0, size);
+			keys = newKeys;
+			sources = newSources;
+		}
+		keys[size] = key;
+		sources[size] = source;
+		size++;
+		return true;
+	}
+
+	/**
+	 * Passes all queued updates to the handler, in the order they were first queued, and empties the queue.<br>
+	 * <br>
+	 * Updates queued by the handler are not processed by this call, they are held for the next drain.
+	 *
+	 * @param handler the handler for the updates
+	 * @return the number of updates processed
+	 */
+	public int drain(Handler handler) {
+		long[] drainKeys;
+		Source[] drainSources;
+		int drainSize;
+		synchronized (this) {
+			drainSize = size;
+			if (drainSize == 0) {
+				return 0;
+			}
+			drainKeys = keys;
+			drainSources = sources;
+			if (this.drainKeys != null) {
+				keys = this.drainKeys;
+				sources = this.drainSources;
+				this.drainKeys = null;
+				this.drainSources = null;
+			} else {
+				keys = new long[drainKeys.length];
+				sources = new Source[drainSources.length];
+			}
+			size = 0;
+			queued.clear();
+		}
+		try {
+			for (int i = 0; i < drainSize; i++) {
+				long key = drainKeys[i];
+				handler.onPhysics(Int21TripleHashed.key1(key), Int21TripleHashed.key2(key), Int21TripleHashed.key3(key), drainSources[i]);
+			}
+		} finally {
+			for (int i = 0; i < drainSize; i++) {
+				drainSources[i] = null;
+			}
+			synchronized (this) {
+				if (this.drainKeys == null || this.drainKeys.length < drainKeys.length) {
+					this.drainKeys = drainKeys;
+					this.drainSources = drainSources;
+				}
+			}
+		}
+		return drainSize;
+	}
+
+	/**
+	 * Gets the number of distinct blocks queued
+	 *
+	 * @return the queue size
+	 */
+	public synchronized int size() {
+		return size;
+	}
+
+	/**
+	 * Gets if no blocks are queued
+	 *
+	 * @return true if the queue is empty
+	 */
+	public synchronized boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Gets the number of queue requests which were merged into an already queued block since the queue was created
+	 *
+	 * @return the number of duplicates
+	 */
+	public synchronized int getDuplicateCount() {
+		return duplicates;
+	}
+
+	/**
+	 * Empties the queue without processing the updates
+	 */
+	public synchronized void clear() {
+		for (int i = 0; i < size; i++) {
+			sources[i] = null;
+		}
+		size = 0;
+		queued.clear();
+	}
+
+	/**
+	 * Processes physics updates drained from a queue
+	 */
+	public static interface Handler {
+		/**
+		 * Called once for each queued block
+		 *
+		 * @param x coordinate of the block
+		 * @param y coordinate of the block
+		 * @param z coordinate of the block
+		 * @param source of the first physics update queued for the block
+		 */
+		public void onPhysics(int x, int y, int z, Source source);
+	}
+}
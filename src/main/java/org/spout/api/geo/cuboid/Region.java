@@ -30,9 +30,11 @@ import java.util.Iterator;
 import java.util.List;
 
 import org.spout.api.entity.Entity;
+import org.spout.api.event.RegionHandlerLists;
 import org.spout.api.geo.AreaChunkAccess;
 import org.spout.api.geo.AreaPhysicsAccess;
 import org.spout.api.geo.LoadOption;
+import org.spout.api.geo.PhysicsQueue;
 import org.spout.api.geo.World;
 import org.spout.api.geo.discrete.Point;
 import org.spout.api.math.BitSize;
@@ -63,6 +65,8 @@ public abstract class Region extends Cube implements AreaChunkAccess, AreaPhysic
 	private final int chunkX;
 	private final int chunkY;
 	private final int chunkZ;
+	private final PhysicsQueue physicsQueue = new PhysicsQueue(256);
+	private final RegionHandlerLists handlerLists = new RegionHandlerLists();
 
 	public Region(World world, float x, float y, float z) {
 		super(new Point(world, x, y, z), BLOCKS.SIZE);
@@ -98,6 +102,24 @@ public abstract class Region extends Cube implements AreaChunkAccess, AreaPhysic
 		return this.blockZ;
 	}
 
+	/**
+	 * Gets the queue of pending physics updates for this region.<br>
+	 * <br>
+	 * Blocks queued more than once before the queue is drained are only updated once.
+	 * @return the physics queue
+	 */
+	public PhysicsQueue getPhysicsQueue() {
+		return this.physicsQueue;
+	}
+
+	/**
+	 * Gets the event handler lists for listeners which are scoped to this region.
+	 * @return the region's handler lists
+	 */
+	public RegionHandlerLists getHandlerLists() {
+		return this.handlerLists;
+	}
+
 	/**
 	 * Gets the x-coordinate of this region as a Chunk coordinate
 	 * @return the x-coordinate of the first chunk in this region
@@ -194,12 +216,21 @@ public abstract class Region extends Cube implements AreaChunkAccess, AreaPhysic
 
 	/**
 	 * Performs the nessecary tasks to unload this region from the world, and
-	 * all associated chunks.
+	 * all associated chunks.<br>
+	 * Implementations must call {@link #onUnloaded()} once the region is unloaded.
 	 * @param save whether to save the region and associated data.
 	 */
 	@DelayedWrite
 	public abstract void unload(boolean save);
 
+	/**
+	 * Releases the state held by the API for this region, such as the event listeners scoped to it.<br>
+	 * This is called once the region has been unloaded.
+	 */
+	public void onUnloaded() {
+		handlerLists.unregisterAll();
+	}
+
 	/**
 	 * Gets all entities with the specified type.
 	 * @param type The {@link Class} for the type.
@@ -0,0 +1,381 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, SpoutDev <http://www.spout.org/>
+ * SpoutAPI is licensed under the SpoutDev License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://www.spout.org/SpoutDevLicenseV1.txt> for the full license,
+ * including the MIT license.
+ */
+package org.spout.api.material;
+
+import java.util.Arrays;
+
+import gnu.trove.map.hash.TLongIntHashMap;
+
+import org.spout.api.util.hashing.Int21TripleHashed;
+
+/**
+ * A hierarchical timing wheel of dynamic block updates, intended to be owned by a single region.<br>
+ * <br>
+ * Updates are stored in primitive arrays, indexed by entry number, with block coordinates packed
+ * into a long.  Freed entries are reused, so a steady state of queued updates does not allocate.
+ * Adding an update, resetting the updates for a block and firing an update are all constant time.<br>
+ * <br>
+ * Time is divided into ticks of a fixed resolution.  The wheel has four levels of 64 slots, each
+ * level covering 64 times the span of the level below, and updates further in the future than the
+ * top level covers are parked in the top level until they come into range.<br>
+ * <br>
+ * This class is not thread safe.  It should only be accessed from the thread of the owning region.
+ */
+public class DynamicUpdateWheel {
+	private static final int SLOT_BITS = 6;
+	private static final int SLOTS = 1 << SLOT_BITS;
+	private static final int SLOT_MASK = SLOTS - 1;
+	private static final int LEVELS = 4;
+	private static final long HORIZON = 1L << (SLOT_BITS * LEVELS);
+	private static final int NONE = -1;
+	private static final int DRAINING = -2;
+	private static final int CANCELLED = -3;
+	private static final int FREE = -4;
+
+	private final long resolution;
+	private long currentTick;
+	private final int[] heads = new int[SLOTS * LEVELS];
+
+	private int[] next;
+	private int[] prev;
+	private int[] bucket;
+	private int[] coordNext;
+	private int[] coordPrev;
+	private long[] coords;
+	private long[] times;
+	private long[] ticks;
+	private int[] data;
+	private int freeHead = NONE;
+	private int size = 0;
+	private int allocated = 0;
+
+	private final TLongIntHashMap coordHeads = new TLongIntHashMap(100, 0.5F, Long.MIN_VALUE, NONE);
+
+	/**
+	 * Creates a new wheel
+	 *
+	 * @param startTime the current time
+	 * @param resolution the length of a tick, in the same unit as the update times
+	 */
+	public DynamicUpdateWheel(long startTime, long resolution) {
+		this(startTime, resolution, 64);
+	}
+
+	/**
+	 * Creates a new wheel
+	 *
+	 * @param startTime the current time
+	 * @param resolution the length of a tick, in the same unit as the update times
+	 * @param capacity the initial number of entries
+	 */
+	public DynamicUpdateWheel(long startTime, long resolution, int capacity) {
+		if (resolution <= 0) {
+			throw new IllegalArgumentException("Resolution must be positive");
+		}
+		this.resolution = resolution;
+		this.currentTick = startTime / resolution;
+		Arrays.fill(heads, NONE);
+		allocate(Math.max(capacity, 16));
+	}
+
+	/**
+	 * Queues an update for a block.<br>
+	 * <br>
+	 * If an update is already queued for the block at the same time, its data is replaced instead.
+	 * Updates for times which have already passed are fired on the next call to {@link #advance}.
+	 *
+	 * @param x the block x coordinate
+	 * @param y the block y coordinate
+	 * @param z the block z coordinate
+	 * @param time the update time
+	 * @param data the data for the update
+	 * @return true if an update at the same time was replaced
+	 */
+	public boolean add(int x, int y, int z, long time, int data) {
+		long coord = Int21TripleHashed.key(x, y, z);
+		int head = coordHeads.get(coord);
+		for (int i = head; i != NONE; i = coordNext[i]) {
+			if (times[i] == time && bucket[i] != CANCELLED) {
+				this.data[i] = data;
+				return true;
+			}
+		}
+
+		int index = allocate();
+		coords[index] = coord;
+		times[index] = time;
+		this.data[index] = data;
+		ticks[index] = Math.max(time / resolution, currentTick + 1);
+
+		coordPrev[index] = NONE;
+		coordNext[index] = head;
+		if (head != NONE) {
+			coordPrev[head] = index;
+		}
+		coordHeads.put(coord, index);
+
+		schedule(index);
+		size++;
+		return false;
+	}
+
+	/**
+	 * Removes all the updates queued for a block
+	 *
+	 * @param x the block x coordinate
+	 * @param y the block y coordinate
+	 * @param z the block z coordinate
+	 * @return the number of updates removed
+	 */
+	public int remove(int x, int y, int z) {
+		int index = coordHeads.remove(Int21TripleHashed.key(x, y, z));
+		int removed = 0;
+		while (index != NONE) {
+			int nextIndex = coordNext[index];
+			coordNext[index] = NONE;
+			coordPrev[index] = NONE;
+			if (bucket[index] == DRAINING) {
+				// Freed by the drain loop which holds it
+				bucket[index] = CANCELLED;
+			} else if (bucket[index] != CANCELLED) {
+				unschedule(index);
+				free(index);
+			}
+			size--;
+			removed++;
+			index = nextIndex;
+		}
+		return removed;
+	}
+
+	/**
+	 * Gets if any update is queued for a block
+	 *
+	 * @param x the block x coordinate
+	 * @param y the block y coordinate
+	 * @param z the block z coordinate
+	 * @return true if an update is queued
+	 */
+	public boolean contains(int x, int y, int z) {
+		return coordHeads.containsKey(Int21TripleHashed.key(x, y, z));
+	}
+
+	/**
+	 * Gets the number of queued updates
+	 *
+	 * @return the number of updates
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Fires all the updates due at or before the given time, in tick order.<br>
+	 * <br>
+	 * The handler may add and remove updates.  Updates added for times which have passed are fired on the next call.
+	 *
+	 * @param time the current time
+	 * @param handler the handler to fire the updates with
+	 * @return the number of updates fired
+	 */
+	public int advance(long time, Handler handler) {
+		long targetTick = time / resolution;
+		int fired = 0;
+		while (currentTick < targetTick) {
+			currentTick++;
+			for (int level = 1; level < LEVELS; level++) {
+				if ((currentTick & ((1L << (SLOT_BITS * level)) - 1)) != 0) {
+					break;
+				}
+				cascade(level, (int) (currentTick >> (SLOT_BITS * level)) & SLOT_MASK);
+			}
+			fired += fire((int) currentTick & SLOT_MASK, handler);
+		}
+		return fired;
+	}
+
+	private int fire(int slot, Handler handler) {
+		int index = detach(slot);
+		int fired = 0;
+		while (index != NONE) {
+			int nextIndex = next[index];
+			if (bucket[index] == CANCELLED) {
+				free(index);
+			} else if (ticks[index] > currentTick) {
+				schedule(index);
+			} else {
+				long coord = coords[index];
+				long time = times[index];
+				int data = this.data[index];
+				unlinkCoord(index);
+				free(index);
+				size--;
+				fired++;
+				handler.onUpdate(Int21TripleHashed.key1(coord), Int21TripleHashed.key2(coord), Int21TripleHashed.key3(coord), time, data);
+			}
+			index = nextIndex;
+		}
+		return fired;
+	}
+
+	private void cascade(int level, int slot) {
+		int index = detach(level * SLOTS + slot);
+		while (index != NONE) {
+			int nextIndex = next[index];
+			schedule(index);
+			index = nextIndex;
+		}
+	}
+
+	/**
+	 * Removes all the entries from a bucket, marking them as draining
+	 */
+	private int detach(int b) {
+		int head = heads[b];
+		heads[b] = NONE;
+		for (int i = head; i != NONE; i = next[i]) {
+			bucket[i] = DRAINING;
+		}
+		return head;
+	}
+
+	private void schedule(int index) {
+		long tick = ticks[index];
+		long delta = tick - currentTick;
+		int b;
+		if (delta < SLOTS) {
+			b = (int) tick & SLOT_MASK;
+		} else {
+			int level = 1;
+			while (level < LEVELS - 1 && delta >= 1L << (SLOT_BITS * (level + 1))) {
+				level++;
+			}
+			if (delta >= HORIZON) {
+				tick = currentTick + HORIZON - 1;
+			}
+			b = level * SLOTS + ((int) (tick >> (SLOT_BITS * level)) & SLOT_MASK);
+		}
+		int head = heads[b];
+		bucket[index] = b;
+		prev[index] = NONE;
+		next[index] = head;
+		if (head != NONE) {
+			prev[head] = index;
+		}
+		heads[b] = index;
+	}
+
+	private void unschedule(int index) {
+		int n = next[index];
+		int p = prev[index];
+		if (p == NONE) {
+			heads[bucket[index]] = n;
+		} else {
+			next[p] = n;
+		}
+		if (n != NONE) {
+			prev[n] = p;
+		}
+	}
+
+	private void unlinkCoord(int index) {
+		int n = coordNext[index];
+		int p = coordPrev[index];
+		if (p == NONE) {
+			if (n == NONE) {
+				coordHeads.remove(coords[index]);
+			} else {
+				coordHeads.put(coords[index], n);
+			}
+		} else {
+			coordNext[p] = n;
+		}
+		if (n != NONE) {
+			coordPrev[n] = p;
+		}
+	}
+
+	private int allocate() {
+		if (freeHead == NONE) {
+			allocate(allocated << 1);
+		}
+		int index = freeHead;
+		freeHead = next[index];
+		return index;
+	}
+
+	private void free(int index) {
+		bucket[index] = FREE;
+		next[index] = freeHead;
+		freeHead = index;
+	}
+
+	private void allocate(int capacity) {
+		int old = allocated;
+		if (old == 0) {
+			next = new int[capacity];
+			prev = new int[capacity];
+			bucket = new int[capacity];
+			coordNext = new int[capacity];
+			coordPrev = new int[capacity];
+			coords = new long[capacity];
+			times = new long[capacity];
+			ticks = new long[capacity];
+			data = new int[capacity];
+		} else {
+			next = Arrays.copyOf(next, capacity);
+			prev = Arrays.copyOf(prev, capacity);
+			bucket = Arrays.copyOf(bucket, capacity);
+			coordNext = Arrays.copyOf(coordNext, capacity);
+			coordPrev = Arrays.copyOf(coordPrev, capacity);
+			coords = Arrays.copyOf(coords, capacity);
+			times = Arrays.copyOf(times, capacity);
+			ticks = Arrays.copyOf(ticks, capacity);
+			data = Arrays.copyOf(data, capacity);
+		}
+		for (int i = capacity - 1; i >= old; i--) {
+			free(i);
+		}
+		allocated = capacity;
+	}
+
+	/**
+	 * Receives the updates fired by {@link DynamicUpdateWheel#advance(long, Handler)}
+	 */
+	public interface Handler {
+		/**
+		 * Called when an update is due
+		 *
+		 * @param x the block x coordinate
+		 * @param y the block y coordinate
+		 * @param z the block z coordinate
+		 * @param time the time the update was queued for
+		 * @param data the data given when the update was queued
+		 */
+		public void onUpdate(int x, int y, int z, long time, int data);
+	}
+}
@@ -26,6 +26,8 @@
  */
 package org.spout.api.material.range;
 
+import org.spout.api.util.IntTripleConsumer;
+
 public class CubicEffectRange extends EffectRangeImpl {
 
 	private final int range;
@@ -39,4 +41,15 @@ public class CubicEffectRange extends EffectRangeImpl {
 	public void initEffectIterator(EffectIterator i) {
 		i.resetAsCubicIterator(range);
 	}
+
+	@Override
+	public void forEach(int x, int y, int z, IntTripleConsumer consumer) {
+		for (int dx = -range; dx <= range; dx++) {
+			for (int dy = -range; dy <= range; dy++) {
+				for (int dz = -range; dz <= range; dz++) {
+					consumer.accept(x + dx, y + dy, z + dz);
+				}
+			}
+		}
+	}
 }
@@ -27,6 +27,7 @@
 package org.spout.api.material.range;
 
 import org.spout.api.math.IntVector3;
+import org.spout.api.util.IntTripleConsumer;
 
 public class CuboidEffectRange extends EffectRangeImpl {
 
@@ -56,6 +57,17 @@ public class CuboidEffectRange extends EffectRangeImpl {
 		i.resetAsCubicInterator(bx, by, bz, tx, ty, tz);
 	}
 
+	@Override
+	public void forEach(int x, int y, int z, IntTripleConsumer consumer) {
+		for (int dx = bx; dx <= tx; dx++) {
+			for (int dy = by; dy <= ty; dy++) {
+				for (int dz = bz; dz <= tz; dz++) {
+					consumer.accept(x + dx, y + dy, z + dz);
+				}
+			}
+		}
+	}
+
 	@Override
 	public EffectRange translate(IntVector3 offset) {
 		IntVector3 bottom = new IntVector3(this.bx, this.by, this.bz);
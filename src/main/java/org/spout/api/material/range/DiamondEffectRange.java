@@ -26,6 +26,8 @@
  */
 package org.spout.api.material.range;
 
+import org.spout.api.util.IntTripleConsumer;
+
 public class DiamondEffectRange extends EffectRangeImpl {
 	
 	private final int startRange, endRange;
@@ -44,4 +46,27 @@ public class DiamondEffectRange extends EffectRangeImpl {
 	public void initEffectIterator(EffectIterator i) {
 		i.resetAsOutwardIterator(this.startRange, this.endRange);
  	}
+
+	/**
+	 * Visits the blocks in order of increasing distance, one layer at a time
+	 */
+	@Override
+	public void forEach(int x, int y, int z, IntTripleConsumer consumer) {
+		for (int d = Math.max(0, startRange); d <= endRange; d++) {
+			for (int dy = -d; dy <= d; dy++) {
+				int r = d - Math.abs(dy);
+				if (r == 0) {
+					consumer.accept(x, y + dy, z);
+					continue;
+				}
+				for (int dx = -r; dx <= r; dx++) {
+					int dz = r - Math.abs(dx);
+					consumer.accept(x + dx, y + dy, z + dz);
+					if (dz != 0) {
+						consumer.accept(x + dx, y + dy, z - dz);
+					}
+				}
+			}
+		}
+	}
 }
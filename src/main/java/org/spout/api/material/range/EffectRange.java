@@ -28,6 +28,7 @@ package org.spout.api.material.range;
 
 import org.spout.api.material.block.BlockFace;
 import org.spout.api.math.IntVector3;
+import org.spout.api.util.IntTripleConsumer;
 
 public interface EffectRange extends Iterable<IntVector3> {
 	public static EffectRange THIS = new CubicEffectRange(0);
@@ -50,6 +51,25 @@ public interface EffectRange extends Iterable<IntVector3> {
 	 * @return an effect iterator
 	 */
 	public void initEffectIterator(EffectIterator reuse);
+
+	/**
+	 * Applies an operation to all blocks in the effect range, offset by the given block position.<br>
+	 * <br>
+	 * Unlike {@link #iterator()}, this does not allocate an iterator or vectors.
+	 *
+	 * @param x the x coordinate of the block
+	 * @param y the y coordinate of the block
+	 * @param z the z coordinate of the block
+	 * @param consumer the operation to apply
+	 */
+	public void forEach(int x, int y, int z, IntTripleConsumer consumer);
+
+	/**
+	 * Applies an operation to the offsets of all blocks in the effect range.
+	 *
+	 * @param consumer the operation to apply
+	 */
+	public void forEach(IntTripleConsumer consumer);
 	
 	/**
 	 * Checks if the effect is contained within a Region for the given block position
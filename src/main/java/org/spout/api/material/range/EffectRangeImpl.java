@@ -33,6 +33,7 @@ import java.util.List;
 import org.spout.api.geo.cuboid.Region;
 import org.spout.api.material.block.BlockFace;
 import org.spout.api.math.IntVector3;
+import org.spout.api.util.IntTripleConsumer;
 
 public abstract class EffectRangeImpl implements EffectRange {
 
@@ -129,6 +130,24 @@ public abstract class EffectRangeImpl implements EffectRange {
 	@Override
 	public abstract void initEffectIterator(EffectIterator i);
 
+	/**
+	 * Iterates using an {@link EffectIterator}.  Subclasses should override this with a direct loop.
+	 */
+	@Override
+	public void forEach(int x, int y, int z, IntTripleConsumer consumer) {
+		EffectIterator iter = new EffectIterator();
+		this.initEffectIterator(iter);
+		while (iter.hasNext()) {
+			IntVector3 next = iter.next();
+			consumer.accept(x + next.getX(), y + next.getY(), z + next.getZ());
+		}
+	}
+
+	@Override
+	public void forEach(IntTripleConsumer consumer) {
+		forEach(0, 0, 0, consumer);
+	}
+
 	@Override
 	public boolean isRegionLocal(int x, int y, int z) {
 		x = x & Region.BLOCKS.MASK;
@@ -32,6 +32,7 @@ import java.util.List;
 import org.spout.api.material.block.BlockFace;
 import org.spout.api.material.block.BlockFaces;
 import org.spout.api.math.IntVector3;
+import org.spout.api.util.IntTripleConsumer;
 import org.spout.api.util.LogicUtil;
 import org.spout.api.util.map.TByteShortByteKeyedHashSet;
 
@@ -72,6 +73,14 @@ public class ListEffectRange extends EffectRangeImpl {
 		i.resetAsList(effectList);
 	}
 
+	@Override
+	public void forEach(int x, int y, int z, IntTripleConsumer consumer) {
+		for (int i = 0; i < effectList.size(); i++) {
+			IntVector3 v = effectList.get(i);
+			consumer.accept(x + v.getX(), y + v.getY(), z + v.getZ());
+		}
+	}
+
 	@Override
 	public EffectRange translate(IntVector3 offset) {
 		List<IntVector3> newEffectList = new ArrayList<IntVector3>(effectList.size());
@@ -28,11 +28,15 @@ package org.spout.api.protocol;
 
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Map;
 
+import org.apache.commons.lang3.tuple.Pair;
 import org.spout.api.util.StringMap;
 
 /**
@@ -50,6 +54,11 @@ public abstract class CodecLookupService {
 	 */
 	protected final Map<Class<? extends Message>, MessageCodec<?>> classTable = new HashMap<Class<? extends Message>, MessageCodec<?>>();
 
+	/**
+	 * A read-only copy of the opcode and class tables, or null if the tables have changed since it was built.
+	 */
+	private volatile CompiledTables compiledTables = null;
+
 	/**
 	 * Binds a codec by adding entries for it to the tables.
 	 *
@@ -75,7 +84,7 @@ public abstract class CodecLookupService {
 	 * @throws IllegalAccessException if the codec could not be instantiated due
 	 *             to an access violation.
 	 */
-	protected <T extends Message, C extends MessageCodec<T>> C bind(Class<C> clazz, StringMap dynamicPacketMap) throws InstantiationException, IllegalAccessException, InvocationTargetException {
+	protected synchronized <T extends Message, C extends MessageCodec<T>> C bind(Class<C> clazz, StringMap dynamicPacketMap) throws InstantiationException, IllegalAccessException, InvocationTargetException {
 		boolean dynamicId = false;
 		Constructor<C> constructor;
 		try {
@@ -111,9 +120,102 @@ public abstract class CodecLookupService {
 
 		opcodeTable[codec.getOpcode()] = codec;
 		classTable.put(codec.getType(), codec);
+		compiledTables = null;
 		return codec;
 	}
 
+	/**
+	 * Rebuilds the compiled lookup tables.<br>
+	 * <br>
+	 * Binding codecs only marks the compiled tables as stale, and they are rebuilt once, by the first
+	 * lookup after a batch of binds.  Subclasses which modify {@link #opcodeTable} or {@link #classTable}
+	 * directly must call this method afterwards, or the change is not seen by lookups.
+	 */
+	protected synchronized void compile() {
+		compiledTables = new CompiledTables(opcodeTable, classTable);
+	}
+
+	private CompiledTables getCompiledTables() {
+		CompiledTables tables = compiledTables;
+		if (tables == null) {
+			synchronized (this) {
+				tables = compiledTables;
+				if (tables == null) {
+					tables = new CompiledTables(opcodeTable, classTable);
+					compiledTables = tables;
+				}
+			}
+		}
+		return tables;
+	}
+
+	/**
+	 * Installs dynamically registered codecs at the opcodes agreed with the remote end.<br>
+	 * <br>
+	 * Once installed, the codecs are found in the opcode table like built-in codecs, so their messages
+	 * can be sent without a {@link org.spout.api.protocol.dynamicid.DynamicWrapperMessage}.  Entries for
+	 * codec classes which are not bound as dynamic codecs are ignored.<br>
+	 * <br>
+	 * The bound codecs are not modified.  Each is installed as a new codec with the agreed opcode, which
+	 * delegates to the bound codec, and the tables are republished as a single snapshot.  As the tables are
+	 * shared by every session using the protocol, this is only valid when the protocol is used by a single
+	 * connection, see {@link Protocol#installDynamicPackets(List)}.
+	 *
+	 * @param ids the opcode and codec class name pairs, as returned by {@link Protocol#getDynamicallyRegisteredPackets()}
+	 * @throws IllegalArgumentException if an opcode is out of range or used twice
+	 * @throws IllegalStateException if an opcode is used by a codec which is not being moved
+	 */
+	public synchronized void installDynamicCodecs(List<Pair<Integer, String>> ids) {
+		Map<String, MessageCodec<?>> dynamicCodecs = new HashMap<String, MessageCodec<?>>();
+		for (MessageCodec<?> codec : classTable.values()) {
+			if (codec.isDynamic()) {
+				dynamicCodecs.put(getBoundCodec(codec).getClass().getName(), codec);
+			}
+		}
+
+		List<MessageCodec<?>> codecs = new ArrayList<MessageCodec<?>>();
+		List<Integer> opcodes = new ArrayList<Integer>();
+		Map<MessageCodec<?>, Boolean> moving = new IdentityHashMap<MessageCodec<?>, Boolean>();
+		for (Pair<Integer, String> id : ids) {
+			MessageCodec<?> codec = dynamicCodecs.get(id.getValue());
+			if (codec == null) {
+				continue;
+			}
+			int opcode = id.getKey();
+			if ((opcode & ~0xFFFF) != 0) {
+				throw new IllegalArgumentException("Opcode out of range: " + opcode);
+			} else if (opcodes.contains(opcode)) {
+				throw new IllegalArgumentException("Opcode " + opcode + " is assigned more than once");
+			}
+			codecs.add(codec);
+			opcodes.add(opcode);
+			moving.put(codec, Boolean.TRUE);
+		}
+
+		for (int opcode : opcodes) {
+			MessageCodec<?> current = opcodeTable[opcode];
+			if (current != null && !moving.containsKey(current)) {
+				throw new IllegalStateException("Opcode " + opcode + " is already used by " + current.getClass().getName());
+			}
+		}
+
+		for (MessageCodec<?> codec : codecs) {
+			if (opcodeTable[codec.getOpcode()] == codec) {
+				opcodeTable[codec.getOpcode()] = null;
+			}
+		}
+		for (int i = 0; i < codecs.size(); i++) {
+			MessageCodec<?> codec = RemappedCodec.create(getBoundCodec(codecs.get(i)), opcodes.get(i));
+			opcodeTable[codec.getOpcode()] = codec;
+			classTable.put(codec.getType(), codec);
+		}
+		compile();
+	}
+
+	private static MessageCodec<?> getBoundCodec(MessageCodec<?> codec) {
+		return codec instanceof RemappedCodec ? ((RemappedCodec<?>) codec).getDelegate() : codec;
+	}
+
 	private int getNextId() {
 		while (opcodeTable[nextId] != null) {
 			nextId++;
@@ -122,8 +224,8 @@ public abstract class CodecLookupService {
 	}
 
 	public MessageCodec<?> find(int opcode) {
-		if (opcode > -1 && opcode < opcodeTable.length) {
-			return opcodeTable[opcode];
+		if ((opcode & ~0xFFFF) == 0) {
+			return getCompiledTables().opcodes[opcode];
 		}
 		return null;
 	}
@@ -137,7 +239,7 @@ public abstract class CodecLookupService {
 	 */
 	@SuppressWarnings("unchecked")
 	public <T extends Message> MessageCodec<T> find(Class<T> clazz) {
-		return (MessageCodec<T>) classTable.get(clazz);
+		return (MessageCodec<T>) getCompiledTables().get(clazz);
 	}
 
 	public Collection<MessageCodec<?>> getCodecs() {
@@ -149,4 +251,53 @@ public abstract class CodecLookupService {
 	 */
 	protected CodecLookupService() {
 	}
+
+	/**
+	 * A copy of the opcode table, and an open addressed, identity keyed table from message class to codec.<br>
+	 * <br>
+	 * The tables are never modified after construction, so lookups need no locking
+	 * and class lookups usually resolve with a single probe.
+	 */
+	private static final class CompiledTables {
+		private final MessageCodec<?>[] opcodes;
+		private final Class<?>[] keys;
+		private final MessageCodec<?>[] codecs;
+		private final int mask;
+
+		public CompiledTables(MessageCodec<?>[] opcodeTable, Map<Class<? extends Message>, MessageCodec<?>> table) {
+			opcodes = opcodeTable.clone();
+			int size = 16;
+			while (size < table.size() << 2) {
+				size <<= 1;
+			}
+			keys = new Class<?>[size];
+			codecs = new MessageCodec<?>[size];
+			mask = size - 1;
+			for (Map.Entry<Class<? extends Message>, MessageCodec<?>> entry : table.entrySet()) {
+				int i = hash(entry.getKey()) & mask;
+				while (keys[i] != null) {
+					i = (i + 1) & mask;
+				}
+				keys[i] = entry.getKey();
+				codecs[i] = entry.getValue();
+			}
+		}
+
+		public MessageCodec<?> get(Class<?> clazz) {
+			int i = hash(clazz) & mask;
+			Class<?> key;
+			while ((key = keys[i]) != null) {
+				if (key == clazz) {
+					return codecs[i];
+				}
+				i = (i + 1) & mask;
+			}
+			return null;
+		}
+
+		private static int hash(Class<?> clazz) {
+			int h = System.identityHashCode(clazz);
+			return h ^ (h >>> 16);
+		}
+	}
 }
@@ -35,6 +35,8 @@ import org.jboss.netty.handler.codec.replay.ReplayingDecoder;
 import org.spout.api.Client;
 import org.spout.api.Spout;
 import org.spout.api.exception.UnknownPacketException;
+import org.spout.api.protocol.proxy.ForwardedMessage;
+import org.spout.api.protocol.proxy.ProxyStartMessage;
 
 /**
  * A {@link ReplayingDecoder} which decodes {@link ChannelBuffer}s into
@@ -46,22 +48,25 @@ public class CommonDecoder extends PreprocessReplayingDecoder {
 	private int opcodeCounter = 0;
 	private volatile Protocol protocol;
 	private final boolean upstream;
+	private volatile boolean passthroughAllowed = false;
+	private volatile boolean passthrough = false;
+	private volatile TrafficMetrics metrics = null;
 
 	public CommonDecoder(boolean upstream) {
 		super(512);
 		this.upstream = upstream;
 	}
 
+	@Override
+	protected int getFrameLength(ChannelHandlerContext ctx, Channel c, ChannelBuffer buf) {
+		return getProtocol(c).getFrameLength(buf);
+	}
+
 	@Override
 	protected Object decodeProcessed(ChannelHandlerContext ctx, Channel c, ChannelBuffer buf) throws Exception {
-		if (protocol == null) {
-			if (Spout.getEngine() instanceof Client) {
-				protocol = ((Client) Spout.getEngine()).getAddress().getProtocol();
-			} else {
-				protocol = Spout.getEngine().getProtocol(c.getLocalAddress());
-			}
-		}
+		Protocol protocol = getProtocol(c);
 
+		int frameStart = buf.readerIndex();
 		MessageCodec<?> codec;
 		try {
 			codec = protocol.readHeader(buf);
@@ -81,7 +86,69 @@ public class CommonDecoder extends PreprocessReplayingDecoder {
 		}
 
 		previousOpcodes[(opcodeCounter++) & previousMask] = codec.getOpcode();
-		return codec.decode(upstream, buf);
+
+		if (passthrough && !protocol.isProxyDecodeRequired(codec)) {
+			int headerEnd = buf.readerIndex();
+			buf.readerIndex(frameStart);
+			int frameLength = protocol.getFrameLength(buf);
+			if (frameLength >= 0) {
+				TrafficMetrics metrics = this.metrics;
+				if (metrics != null) {
+					metrics.recordInbound(codec.getOpcode(), frameLength, 0);
+				}
+				return new ForwardedMessage(codec.getOpcode(), buf.readBytes(frameLength));
+			}
+			buf.readerIndex(headerEnd);
+		}
+
+		TrafficMetrics metrics = this.metrics;
+		Object message;
+		if (metrics == null) {
+			message = codec.decode(upstream, buf);
+		} else {
+			long start = System.nanoTime();
+			message = codec.decode(upstream, buf);
+			metrics.recordInbound(codec.getOpcode(), buf.readerIndex() - frameStart, System.nanoTime() - start);
+		}
+		if (message instanceof ProxyStartMessage && passthroughAllowed) {
+			passthrough = true;
+		}
+		return message;
+	}
+
+	/**
+	 * Sets if this decoder may forward packets without decoding them after a {@link ProxyStartMessage}
+	 * has been received.
+	 *
+	 * @param allowed true to allow pass-through
+	 */
+	public void setProxyPassthroughAllowed(boolean allowed) {
+		this.passthroughAllowed = allowed;
+		if (!allowed) {
+			passthrough = false;
+		}
+	}
+
+	/**
+	 * Sets the metrics decoded messages are recorded into
+	 *
+	 * @param metrics the metrics, or null to disable recording
+	 */
+	public void setTrafficMetrics(TrafficMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	private Protocol getProtocol(Channel c) {
+		Protocol protocol = this.protocol;
+		if (protocol == null) {
+			if (Spout.getEngine() instanceof Client) {
+				protocol = ((Client) Spout.getEngine()).getAddress().getProtocol();
+			} else {
+				protocol = Spout.getEngine().getProtocol(c.getLocalAddress());
+			}
+			this.protocol = protocol;
+		}
+		return protocol;
 	}
 
 	void setProtocol(Protocol proto) {
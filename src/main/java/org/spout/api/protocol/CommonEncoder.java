@@ -41,7 +41,13 @@ import org.spout.api.Spout;
  * {@link ChannelBuffer}s.
  */
 public class CommonEncoder extends PostprocessEncoder {
+	private static final int POOL_SIZE = 32;
+	private static final int POOL_INITIAL_CAPACITY = 256;
+	private static final int POOL_MAX_CAPACITY = 65536;
+
 	private volatile Protocol protocol = null;
+	private volatile TrafficMetrics metrics = null;
+	private final EncodeBufferPool bufferPool = new EncodeBufferPool(POOL_SIZE, POOL_INITIAL_CAPACITY, POOL_MAX_CAPACITY);
 
 	private final boolean upstream;
 
@@ -52,7 +58,15 @@ public class CommonEncoder extends PostprocessEncoder {
 	@SuppressWarnings("unchecked")
 	@Override
 	protected Object encode(ChannelHandlerContext ctx, Channel c, Object msg) throws Exception {
-		if (msg instanceof Message) {
+		if (msg instanceof EncodedMessage) {
+			EncodedMessage encoded = (EncodedMessage) msg;
+			ChannelBuffer frame = encoded.getFrame();
+			TrafficMetrics metrics = this.metrics;
+			if (metrics != null) {
+				metrics.recordOutbound(encoded.getOpcode(), frame.readableBytes(), 0);
+			}
+			return frame;
+		} else if (msg instanceof Message) {
 			if (protocol == null) {
 				if (Spout.getEngine() instanceof Client) {
 					protocol = ((Client) Spout.getEngine()).getAddress().getProtocol();
@@ -70,11 +84,50 @@ public class CommonEncoder extends PostprocessEncoder {
 				throw new IOException("Unknown message type: " + clazz + ".");
 			}
 
+			TrafficMetrics metrics = this.metrics;
+			if (metrics == null) {
+				return encode(codec, message);
+			}
+			long start = System.nanoTime();
+			ChannelBuffer buffer = encode(codec, message);
+			metrics.recordOutbound(codec.getOpcode(), buffer.readableBytes(), System.nanoTime() - start);
+			return buffer;
+		}
+		return msg;
+	}
+
+	private ChannelBuffer encode(MessageCodec<Message> codec, Message message) throws IOException {
+		int estimatedSize = codec.getEstimatedSize(message);
+		int headerSize = protocol.getMaxHeaderSize();
+		if (estimatedSize < 0 || headerSize < 0) {
 			ChannelBuffer messageBuf = codec.encode(upstream, message);
 			ChannelBuffer headerBuf = protocol.writeHeader(codec, messageBuf);
 			return ChannelBuffers.wrappedBuffer(headerBuf, messageBuf);
 		}
-		return msg;
+
+		ChannelBuffer buffer = bufferPool.acquire(headerSize + estimatedSize);
+		buffer.setIndex(headerSize, headerSize);
+		codec.encode(upstream, message, buffer);
+		buffer.readerIndex(protocol.writeHeader(codec, buffer, headerSize, buffer.writerIndex() - headerSize));
+		return buffer;
+	}
+
+	/**
+	 * Sets the metrics encoded messages are recorded into
+	 *
+	 * @param metrics the metrics, or null to disable recording
+	 */
+	public void setTrafficMetrics(TrafficMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Gets the pool used for directly encoded messages on this channel
+	 *
+	 * @return the buffer pool
+	 */
+	public EncodeBufferPool getBufferPool() {
+		return bufferPool;
 	}
 
 	void setProtocol(Protocol protocol) {
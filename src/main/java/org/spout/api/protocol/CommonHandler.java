@@ -115,6 +115,18 @@ public class CommonHandler extends SimpleChannelUpstreamHandler {
 		}
 	}
 
+	@Override
+	public void channelInterestChanged(ChannelHandlerContext ctx, ChannelStateEvent e) throws Exception {
+		Session session = this.session.get();
+		if (session != null && session.isPrimary(e.getChannel())) {
+			OutboundQueue queue = session.getOutboundQueue();
+			if (queue != null) {
+				queue.flush(e.getChannel());
+			}
+		}
+		super.channelInterestChanged(ctx, e);
+	}
+
 	@Override
 	public void messageReceived(ChannelHandlerContext ctx, MessageEvent e) {
 		Session session = this.session.get();
@@ -148,5 +160,7 @@ public class CommonHandler extends SimpleChannelUpstreamHandler {
 		}
 		decoder.setProtocol(session.getProtocol());
 		encoder.setProtocol(session.getProtocol());
+		decoder.setTrafficMetrics(session.getTrafficMetrics());
+		encoder.setTrafficMetrics(session.getTrafficMetrics());
 	}
 }
@@ -73,6 +73,7 @@ public final class CommonPipelineFactory implements ChannelPipelineFactory {
 	public ChannelPipeline getPipeline() throws Exception {
 		CommonEncoder encoder = new CommonEncoder(upstream);
 		CommonDecoder decoder = new CommonDecoder(upstream);
+		decoder.setProxyPassthroughAllowed(engine.getPlatform() == Platform.PROXY);
 		CommonHandler handler = new CommonHandler(engine, encoder, decoder, upstream);
 		DynamicMessageDecoder dynamicDecoder = new DynamicMessageDecoder();
 		DynamicMessageEncoder dynamicEncoder = new DynamicMessageEncoder();
@@ -0,0 +1,75 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, SpoutDev <http://www.spout.org/>
+ * SpoutAPI is licensed under the SpoutDev License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://www.spout.org/SpoutDevLicenseV1.txt> for the full license,
+ * including the MIT license.
+ */
+package org.spout.api.protocol;
+
+import java.util.List;
+
+import org.spout.api.entity.Entity;
+import org.spout.api.geo.discrete.Transform;
+
+/**
+ * An entity protocol which sends updates as deltas against the state last sent to clients.<br>
+ * <br>
+ * Updates for these protocols are computed once per entity per tick by the {@link EntityUpdateCache}
+ * and the encoded result is shared between all observers.
+ */
+public interface DeltaEntityProtocol extends EntityProtocol {
+
+	/**
+	 * Rounds a transform to the precision used by this protocol
+	 *
+	 * @param transform the transform
+	 * @return the quantized transform
+	 */
+	public QuantizedTransform quantize(Transform transform);
+
+	/**
+	 * Gets the messages to spawn the entity at a quantized transform.<br>
+	 * <br>
+	 * This is used instead of {@link #getSpawnMessages(Entity)}, so that new observers start
+	 * from the same state as the deltas sent to the other observers.
+	 *
+	 * @param entity the entity
+	 * @param transform the transform to spawn the entity at
+	 * @return messages to send
+	 */
+	public List<Message> getSpawnMessages(Entity entity, QuantizedTransform transform);
+
+	/**
+	 * Gets the messages to move the entity from the last sent state to the current state.  Metadata
+	 * changes since the last tick should also be included.<br>
+	 * <br>
+	 * Messages returned by this method must not depend on the observer.  If any messages are returned,
+	 * current becomes the previous state for the next update.
+	 *
+	 * @param entity the entity
+	 * @param previous the last sent transform, or null if none has been sent, in which case the messages must set the absolute state
+	 * @param current the current transform
+	 * @return messages to send
+	 */
+	public List<Message> getUpdateMessages(Entity entity, QuantizedTransform previous, QuantizedTransform current);
+}
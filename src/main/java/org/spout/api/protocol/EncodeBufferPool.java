@@ -0,0 +1,133 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, SpoutDev <http://www.spout.org/>
+ * SpoutAPI is licensed under the SpoutDev License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://www.spout.org/SpoutDevLicenseV1.txt> for the full license,
+ * including the MIT license.
+ */
+package org.spout.api.protocol;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.DynamicChannelBuffer;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelFutureListener;
+
+/**
+ * A pool of reusable buffers for encoding outgoing messages on a single channel.<br>
+ * <br>
+ * Buffers handed out by this pool are returned automatically when the write
+ * they were attached to completes.
+ */
+public class EncodeBufferPool {
+	private final Queue<PooledChannelBuffer> pool = new ConcurrentLinkedQueue<PooledChannelBuffer>();
+	private final AtomicInteger pooled = new AtomicInteger(0);
+	private final int maxPooled;
+	private final int initialCapacity;
+	private final int maxPooledCapacity;
+
+	/**
+	 * Creates a new buffer pool
+	 *
+	 * @param maxPooled the maximum number of idle buffers to keep
+	 * @param initialCapacity the minimum capacity of new buffers
+	 * @param maxPooledCapacity buffers which grow larger than this are discarded rather than returned to the pool
+	 */
+	public EncodeBufferPool(int maxPooled, int initialCapacity, int maxPooledCapacity) {
+		this.maxPooled = maxPooled;
+		this.initialCapacity = initialCapacity;
+		this.maxPooledCapacity = maxPooledCapacity;
+	}
+
+	/**
+	 * Gets an empty buffer with at least the given number of writable bytes.
+	 *
+	 * @param capacity the required capacity
+	 * @return the buffer
+	 */
+	public ChannelBuffer acquire(int capacity) {
+		PooledChannelBuffer buffer = pool.poll();
+		if (buffer == null) {
+			return new PooledChannelBuffer(this, Math.max(capacity, initialCapacity));
+		}
+		pooled.decrementAndGet();
+		buffer.free = false;
+		buffer.clear();
+		buffer.ensureWritableBytes(capacity);
+		return buffer;
+	}
+
+	/**
+	 * Arranges for a buffer to be returned to its pool when the given write completes.
+	 * Buffers which did not come from a pool are ignored.
+	 *
+	 * @param buffer the buffer being written
+	 * @param future the future of the write
+	 */
+	public static void releaseOnComplete(ChannelBuffer buffer, ChannelFuture future) {
+		if (buffer instanceof PooledChannelBuffer) {
+			future.addListener((PooledChannelBuffer) buffer);
+		}
+	}
+
+	/**
+	 * Gets the number of idle buffers in this pool
+	 *
+	 * @return the number of idle buffers
+	 */
+	public int getPooledCount() {
+		return pooled.get();
+	}
+
+	private void release(PooledChannelBuffer buffer) {
+		if (buffer.free) {
+			throw new IllegalStateException("Buffer released to the pool more than once");
+		}
+		buffer.free = true;
+		if (buffer.capacity() > maxPooledCapacity) {
+			return;
+		}
+		if (pooled.incrementAndGet() > maxPooled) {
+			pooled.decrementAndGet();
+			return;
+		}
+		pool.offer(buffer);
+	}
+
+	private static class PooledChannelBuffer extends DynamicChannelBuffer implements ChannelFutureListener {
+		private final EncodeBufferPool parent;
+		private volatile boolean free = false;
+
+		public PooledChannelBuffer(EncodeBufferPool parent, int estimatedLength) {
+			super(estimatedLength);
+			this.parent = parent;
+		}
+
+		@Override
+		public void operationComplete(ChannelFuture future) {
+			parent.release(this);
+		}
+	}
+}
@@ -0,0 +1,85 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, SpoutDev <http://www.spout.org/>
+ * SpoutAPI is licensed under the SpoutDev License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://www.spout.org/SpoutDevLicenseV1.txt> for the full license,
+ * including the MIT license.
+ */
+package org.spout.api.protocol;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+
+/**
+ * A packet which has already been encoded.<br>
+ * <br>
+ * The frame contains the complete packet, including its header.  When the message is sent,
+ * the frame is written as is, without being encoded again.  The frame is never modified, so
+ * the same message can be sent to any number of sessions using the same protocol.
+ */
+public class EncodedMessage implements Message {
+	private final int opcode;
+	private final ChannelBuffer frame;
+
+	public EncodedMessage(int opcode, ChannelBuffer frame) {
+		this.opcode = opcode;
+		this.frame = frame;
+	}
+
+	/**
+	 * Gets the opcode of the encoded packet
+	 *
+	 * @return the opcode
+	 */
+	public int getOpcode() {
+		return opcode;
+	}
+
+	/**
+	 * Gets the complete packet, including its header
+	 *
+	 * @return a buffer containing the packet
+	 */
+	public ChannelBuffer getFrame() {
+		return frame.duplicate();
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "{opcode=" + opcode + ",length=" + frame.readableBytes() + "}";
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		if (other == this) {
+			return true;
+		} else if (other == null || other.getClass() != getClass()) {
+			return false;
+		}
+		EncodedMessage message = (EncodedMessage) other;
+		return opcode == message.opcode && frame.equals(message.frame);
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * opcode + frame.hashCode();
+	}
+}
@@ -0,0 +1,198 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, SpoutDev <http://www.spout.org/>
+ * SpoutAPI is licensed under the SpoutDev License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://www.spout.org/SpoutDevLicenseV1.txt> for the full license,
+ * including the MIT license.
+ */
+package org.spout.api.protocol;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Level;
+
+import org.spout.api.Spout;
+import org.spout.api.entity.Entity;
+import org.spout.api.scheduler.TickStage;
+import org.spout.api.util.map.concurrent.TSyncIntObjectHashMap;
+
+/**
+ * Computes entity update messages once per entity per tick and shares the encoded
+ * result between all the observers which have the entity spawned.<br>
+ * <br>
+ * Results are cached per {@link EntityProtocol} and network {@link Protocol} pair.
+ * For {@link DeltaEntityProtocol}s, the last sent quantized transform is tracked here,
+ * so every observer receives the same delta.  Observers must spawn these entities with
+ * {@link #getSpawnMessages}, which builds the spawn from the state the shared delta starts from.<br>
+ * <br>
+ * A single cache should be shared by all the network synchronizers of a server.
+ */
+public class EntityUpdateCache {
+	private final TSyncIntObjectHashMap<Entry> entries = new TSyncIntObjectHashMap<Entry>();
+
+	/**
+	 * Gets the update messages for an entity for the current tick.<br>
+	 * <br>
+	 * The first call for a given entity and protocol pair in a tick computes and encodes the
+	 * messages; later calls in the same tick return the same list.  The returned list must
+	 * not be modified.
+	 *
+	 * @param entity the entity
+	 * @param entityProtocol the entity protocol for the entity
+	 * @param protocol the network protocol the messages will be sent with
+	 * @return the messages to send
+	 */
+	public List<Message> getUpdateMessages(Entity entity, EntityProtocol entityProtocol, Protocol protocol) {
+		Entry entry = getEntry(entity);
+		long tick = TickStage.getTick();
+		synchronized (entry) {
+			ProtocolState state = entry.getState(entityProtocol, protocol);
+			if (state.tick != tick) {
+				state.tick = tick;
+				state.messages = encode(computeUpdate(entity, entityProtocol, state), protocol);
+			}
+			return state.messages;
+		}
+	}
+
+	/**
+	 * Gets the messages to spawn an entity for an observer.<br>
+	 * <br>
+	 * For {@link DeltaEntityProtocol}s, the entity is spawned at the state the current tick's
+	 * update starts from, rather than at its current position.  The observer must also send the
+	 * update messages for the current tick, which move the entity on to the state every other
+	 * observer receives, so later deltas apply to the same baseline for all observers.
+	 *
+	 * @param entity the entity
+	 * @param entityProtocol the entity protocol for the entity
+	 * @param protocol the network protocol the messages will be sent with
+	 * @return the messages to send
+	 */
+	public List<Message> getSpawnMessages(Entity entity, EntityProtocol entityProtocol, Protocol protocol) {
+		if (!(entityProtocol instanceof DeltaEntityProtocol)) {
+			return entityProtocol.getSpawnMessages(entity);
+		}
+		DeltaEntityProtocol deltaProtocol = (DeltaEntityProtocol) entityProtocol;
+		Entry entry = getEntry(entity);
+		long tick = TickStage.getTick();
+		QuantizedTransform transform;
+		synchronized (entry) {
+			ProtocolState state = entry.getState(entityProtocol, protocol);
+			transform = state.tick == tick ? state.baseline : state.lastSent;
+			if (transform == null) {
+				transform = state.lastSent;
+			}
+			if (transform == null) {
+				transform = deltaProtocol.quantize(entity.getTransform().getTransformLive());
+				state.lastSent = transform;
+			}
+		}
+		return deltaProtocol.getSpawnMessages(entity, transform);
+	}
+
+	/**
+	 * Discards the cached state for an entity.  This should be called once the entity
+	 * has been removed from the world.
+	 *
+	 * @param entity the entity
+	 */
+	public void remove(Entity entity) {
+		entries.remove(entity.getId());
+	}
+
+	private List<Message> computeUpdate(Entity entity, EntityProtocol entityProtocol, ProtocolState state) {
+		if (!(entityProtocol instanceof DeltaEntityProtocol)) {
+			return entityProtocol.getUpdateMessages(entity);
+		}
+		DeltaEntityProtocol deltaProtocol = (DeltaEntityProtocol) entityProtocol;
+		QuantizedTransform current = deltaProtocol.quantize(entity.getTransform().getTransformLive());
+		state.baseline = state.lastSent;
+		List<Message> messages = deltaProtocol.getUpdateMessages(entity, state.lastSent, current);
+		if (messages != null && !messages.isEmpty()) {
+			state.lastSent = current;
+		}
+		return messages;
+	}
+
+	private Entry getEntry(Entity entity) {
+		Entry entry = entries.get(entity.getId());
+		if (entry == null) {
+			entry = new Entry();
+			Entry oldEntry = entries.putIfAbsent(entity.getId(), entry);
+			if (oldEntry != null) {
+				entry = oldEntry;
+			}
+		}
+		return entry;
+	}
+
+	private List<Message> encode(List<Message> messages, Protocol protocol) {
+		if (messages == null || messages.isEmpty()) {
+			return Collections.emptyList();
+		}
+		List<Message> encoded = new ArrayList<Message>(messages.size());
+		try {
+			for (Message message : messages) {
+				encoded.add(protocol.encodeMessage(false, message));
+			}
+		} catch (IOException e) {
+			Spout.getLogger().log(Level.WARNING, "Unable to pre-encode entity update, sending messages individually", e);
+			return Collections.unmodifiableList(messages);
+		}
+		return Collections.unmodifiableList(encoded);
+	}
+
+	private static class Entry {
+		private ProtocolState first;
+
+		public ProtocolState getState(EntityProtocol entityProtocol, Protocol protocol) {
+			ProtocolState state = first;
+			while (state != null) {
+				if (state.entityProtocol == entityProtocol && state.protocol == protocol) {
+					return state;
+				}
+				state = state.next;
+			}
+			state = new ProtocolState(entityProtocol, protocol);
+			state.next = first;
+			first = state;
+			return state;
+		}
+	}
+
+	private static class ProtocolState {
+		private final EntityProtocol entityProtocol;
+		private final Protocol protocol;
+		private ProtocolState next;
+		private long tick = -1;
+		private QuantizedTransform lastSent;
+		private QuantizedTransform baseline;
+		private List<Message> messages;
+
+		public ProtocolState(EntityProtocol entityProtocol, Protocol protocol) {
+			this.entityProtocol = entityProtocol;
+			this.protocol = protocol;
+		}
+	}
+}
@@ -0,0 +1,413 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, SpoutDev <http://www.spout.org/>
+ * SpoutAPI is licensed under the SpoutDev License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://www.spout.org/SpoutDevLicenseV1.txt> for the full license,
+ * including the MIT license.
+ */
+package org.spout.api.protocol;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import gnu.trove.set.hash.TLongHashSet;
+
+import org.spout.api.util.hashing.Int21TripleHashed;
+import org.spout.api.util.map.concurrent.TSyncInt21TripleObjectHashMap;
+
+/**
+ * Tracks which subscribers are interested in which entities using a sparse grid of cells.<br>
+ * <br>
+ * Each cell, normally a chunk, keeps the entities inside it and a bitset of the subscribers
+ * observing it.  When an entity moves from one cell to another, only the subscribers in the
+ * difference of the two bitsets are notified, so the cost of a move does not depend on the
+ * total number of subscribers or entities.<br>
+ * <br>
+ * Calls for a given entity, and calls for a given subscriber, should each be made from a single
+ * thread at a time.  Listener callbacks are made outside of any cell lock, on the thread making the
+ * call.  As an entity move notifies the subscribers of other threads, listeners must be thread safe,
+ * or hand the notification over to the thread owning the subscriber.
+ *
+ * @param <S> the subscriber type
+ * @param <E> the entity type
+ */
+public class InterestGrid<S, E> {
+	private final TSyncInt21TripleObjectHashMap<Cell<E>> cells = new TSyncInt21TripleObjectHashMap<Cell<E>>();
+	private final ConcurrentHashMap<S, Subscriber<S>> subscribers = new ConcurrentHashMap<S, Subscriber<S>>();
+	private final BitSet usedSlots = new BitSet();
+	private volatile AtomicReferenceArray<Subscriber<S>> slots = new AtomicReferenceArray<Subscriber<S>>(16);
+	private final InterestListener<S, E> listener;
+
+	public InterestGrid(InterestListener<S, E> listener) {
+		if (listener == null) {
+			throw new IllegalArgumentException("Listener may not be null");
+		}
+		this.listener = listener;
+	}
+
+	/**
+	 * Subscribes to a cell.  The subscriber is sent spawns for all the entities already in the cell.
+	 *
+	 * @param subscriber the subscriber
+	 * @param x the cell x coordinate
+	 * @param y the cell y coordinate
+	 * @param z the cell z coordinate
+	 * @return true if the subscriber was not already subscribed to the cell
+	 */
+	public boolean subscribe(S subscriber, int x, int y, int z) {
+		Subscriber<S> sub = getSubscriber(subscriber);
+		Object[] visible;
+		while (true) {
+			Cell<E> cell = getCell(x, y, z);
+			synchronized (cell) {
+				if (cell.dead) {
+					continue;
+				}
+				if (cell.subscribers.get(sub.index)) {
+					return false;
+				}
+				cell.subscribers.set(sub.index);
+				visible = cell.entities.toArray();
+				break;
+			}
+		}
+		synchronized (sub) {
+			sub.cells.add(Int21TripleHashed.key(x, y, z));
+		}
+		for (Object entity : visible) {
+			listener.onSpawn(subscriber, cast(entity));
+		}
+		return true;
+	}
+
+	/**
+	 * Unsubscribes from a cell.  The subscriber is sent destroys for all the entities in the cell.
+	 *
+	 * @param subscriber the subscriber
+	 * @param x the cell x coordinate
+	 * @param y the cell y coordinate
+	 * @param z the cell z coordinate
+	 * @return true if the subscriber was subscribed to the cell
+	 */
+	public boolean unsubscribe(S subscriber, int x, int y, int z) {
+		Subscriber<S> sub = subscribers.get(subscriber);
+		if (sub == null) {
+			return false;
+		}
+		Cell<E> cell = cells.get(x, y, z);
+		if (cell == null) {
+			return false;
+		}
+		Object[] visible;
+		synchronized (cell) {
+			if (cell.dead || !cell.subscribers.get(sub.index)) {
+				return false;
+			}
+			cell.subscribers.clear(sub.index);
+			visible = cell.entities.toArray();
+			release(cell, x, y, z);
+		}
+		synchronized (sub) {
+			sub.cells.remove(Int21TripleHashed.key(x, y, z));
+		}
+		for (Object entity : visible) {
+			listener.onDestroy(subscriber, cast(entity));
+		}
+		return true;
+	}
+
+	/**
+	 * Removes a subscriber from every cell it is subscribed to.  No destroys are sent.
+	 *
+	 * @param subscriber the subscriber
+	 */
+	public void removeSubscriber(S subscriber) {
+		Subscriber<S> sub = subscribers.remove(subscriber);
+		if (sub == null) {
+			return;
+		}
+		long[] keys;
+		synchronized (sub) {
+			keys = sub.cells.toArray();
+			sub.cells.clear();
+		}
+		for (long key : keys) {
+			int x = Int21TripleHashed.key1(key);
+			int y = Int21TripleHashed.key2(key);
+			int z = Int21TripleHashed.key3(key);
+			Cell<E> cell = cells.get(x, y, z);
+			if (cell != null) {
+				synchronized (cell) {
+					if (!cell.dead) {
+						cell.subscribers.clear(sub.index);
+						release(cell, x, y, z);
+					}
+				}
+			}
+		}
+		synchronized (usedSlots) {
+			slots.set(sub.index, null);
+			usedSlots.clear(sub.index);
+		}
+	}
+
+	/**
+	 * Adds an entity to a cell.  Subscribers of the cell are sent a spawn.
+	 *
+	 * @param entity the entity
+	 * @param x the cell x coordinate
+	 * @param y the cell y coordinate
+	 * @param z the cell z coordinate
+	 */
+	public void addEntity(E entity, int x, int y, int z) {
+		BitSet spawn;
+		while (true) {
+			Cell<E> cell = getCell(x, y, z);
+			synchronized (cell) {
+				if (cell.dead) {
+					continue;
+				}
+				if (!cell.entities.add(entity)) {
+					return;
+				}
+				spawn = (BitSet) cell.subscribers.clone();
+				break;
+			}
+		}
+		notify(spawn, entity, true);
+	}
+
+	/**
+	 * Removes an entity from a cell.  Subscribers of the cell are sent a destroy.
+	 *
+	 * @param entity the entity
+	 * @param x the cell x coordinate
+	 * @param y the cell y coordinate
+	 * @param z the cell z coordinate
+	 */
+	public void removeEntity(E entity, int x, int y, int z) {
+		Cell<E> cell = cells.get(x, y, z);
+		if (cell == null) {
+			return;
+		}
+		BitSet destroy;
+		synchronized (cell) {
+			if (cell.dead || !cell.entities.remove(entity)) {
+				return;
+			}
+			destroy = (BitSet) cell.subscribers.clone();
+			release(cell, x, y, z);
+		}
+		notify(destroy, entity, false);
+	}
+
+	/**
+	 * Moves an entity between two cells.<br>
+	 * <br>
+	 * Subscribers of the old cell which are not subscribed to the new cell are sent a destroy,
+	 * and subscribers of the new cell which were not subscribed to the old cell are sent a spawn.
+	 * If the entity was not in the old cell, it is added to the new cell.
+	 *
+	 * @param entity the entity
+	 * @param oldX the old cell x coordinate
+	 * @param oldY the old cell y coordinate
+	 * @param oldZ the old cell z coordinate
+	 * @param newX the new cell x coordinate
+	 * @param newY the new cell y coordinate
+	 * @param newZ the new cell z coordinate
+	 */
+	public void moveEntity(E entity, int oldX, int oldY, int oldZ, int newX, int newY, int newZ) {
+		long oldKey = Int21TripleHashed.key(oldX, oldY, oldZ);
+		long newKey = Int21TripleHashed.key(newX, newY, newZ);
+		if (oldKey == newKey) {
+			return;
+		}
+		BitSet spawn;
+		BitSet destroy;
+		while (true) {
+			Cell<E> from = cells.get(oldX, oldY, oldZ);
+			if (from == null) {
+				addEntity(entity, newX, newY, newZ);
+				return;
+			}
+			Cell<E> to = getCell(newX, newY, newZ);
+			// Lock in key order so that opposite moves can not deadlock
+			Cell<E> first = oldKey < newKey ? from : to;
+			Cell<E> second = oldKey < newKey ? to : from;
+			synchronized (first) {
+				synchronized (second) {
+					if (to.dead) {
+						continue;
+					}
+					boolean moved = !from.dead && from.entities.remove(entity);
+					if (!to.entities.add(entity) && !moved) {
+						return;
+					}
+					spawn = (BitSet) to.subscribers.clone();
+					if (moved) {
+						destroy = (BitSet) from.subscribers.clone();
+						destroy.andNot(to.subscribers);
+						spawn.andNot(from.subscribers);
+						release(from, oldX, oldY, oldZ);
+					} else {
+						destroy = null;
+					}
+					break;
+				}
+			}
+		}
+		if (destroy != null) {
+			notify(destroy, entity, false);
+		}
+		notify(spawn, entity, true);
+	}
+
+	/**
+	 * Gets the subscribers to a cell, which are the recipients for updates about entities in that cell
+	 *
+	 * @param x the cell x coordinate
+	 * @param y the cell y coordinate
+	 * @param z the cell z coordinate
+	 * @return the subscribers
+	 */
+	public List<S> getSubscribers(int x, int y, int z) {
+		Cell<E> cell = cells.get(x, y, z);
+		if (cell == null) {
+			return Collections.emptyList();
+		}
+		BitSet bits;
+		synchronized (cell) {
+			bits = (BitSet) cell.subscribers.clone();
+		}
+		List<S> list = new ArrayList<S>(bits.cardinality());
+		AtomicReferenceArray<Subscriber<S>> slots = this.slots;
+		for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1)) {
+			Subscriber<S> sub = i < slots.length() ? slots.get(i) : null;
+			if (sub != null) {
+				list.add(sub.subscriber);
+			}
+		}
+		return list;
+	}
+
+	/**
+	 * Gets the number of cells which currently have at least one entity or subscriber
+	 *
+	 * @return the number of cells
+	 */
+	public int getCellCount() {
+		return cells.size();
+	}
+
+	private void notify(BitSet targets, E entity, boolean spawn) {
+		AtomicReferenceArray<Subscriber<S>> slots = this.slots;
+		for (int i = targets.nextSetBit(0); i >= 0; i = targets.nextSetBit(i + 1)) {
+			Subscriber<S> sub = i < slots.length() ? slots.get(i) : null;
+			if (sub == null) {
+				continue;
+			}
+			if (spawn) {
+				listener.onSpawn(sub.subscriber, entity);
+			} else {
+				listener.onDestroy(sub.subscriber, entity);
+			}
+		}
+	}
+
+	private Cell<E> getCell(int x, int y, int z) {
+		Cell<E> cell = cells.get(x, y, z);
+		if (cell == null) {
+			cell = new Cell<E>();
+			Cell<E> oldCell = cells.putIfAbsent(x, y, z, cell);
+			if (oldCell != null) {
+				cell = oldCell;
+			}
+		}
+		return cell;
+	}
+
+	/**
+	 * Removes a cell from the map if it is empty.  Must be called with the cell locked.
+	 */
+	private void release(Cell<E> cell, int x, int y, int z) {
+		if (cell.entities.isEmpty() && cell.subscribers.isEmpty()) {
+			cell.dead = true;
+			cells.remove(x, y, z, cell);
+		}
+	}
+
+	private Subscriber<S> getSubscriber(S subscriber) {
+		Subscriber<S> sub = subscribers.get(subscriber);
+		if (sub != null) {
+			return sub;
+		}
+		synchronized (usedSlots) {
+			sub = subscribers.get(subscriber);
+			if (sub != null) {
+				return sub;
+			}
+			int index = usedSlots.nextClearBit(0);
+			usedSlots.set(index);
+			AtomicReferenceArray<Subscriber<S>> slots = this.slots;
+			if (index >= slots.length()) {
+				AtomicReferenceArray<Subscriber<S>> newSlots = new AtomicReferenceArray<Subscriber<S>>(slots.length() << 1);
+				for (int i = 0; i < slots.length(); i++) {
+					newSlots.set(i, slots.get(i));
+				}
+				slots = newSlots;
+				this.slots = newSlots;
+			}
+			sub = new Subscriber<S>(subscriber, index);
+			slots.set(index, sub);
+			subscribers.put(subscriber, sub);
+			return sub;
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private E cast(Object entity) {
+		return (E) entity;
+	}
+
+	private static class Cell<E> {
+		private final Set<E> entities = new HashSet<E>();
+		private final BitSet subscribers = new BitSet();
+		private boolean dead = false;
+	}
+
+	private static class Subscriber<S> {
+		private final S subscriber;
+		private final int index;
+		private final TLongHashSet cells = new TLongHashSet();
+
+		public Subscriber(S subscriber, int index) {
+			this.subscriber = subscriber;
+			this.index = index;
+		}
+	}
+}
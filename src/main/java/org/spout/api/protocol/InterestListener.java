@@ -0,0 +1,51 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, SpoutDev <http://www.spout.org/>
+ * SpoutAPI is licensed under the SpoutDev License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://www.spout.org/SpoutDevLicenseV1.txt> for the full license,
+ * including the MIT license.
+ */
+package org.spout.api.protocol;
+
+/**
+ * Receives the visibility changes computed by an {@link InterestGrid}
+ *
+ * @param <S> the subscriber type
+ * @param <E> the entity type
+ */
+public interface InterestListener<S, E> {
+	/**
+	 * Called when an entity comes into view of a subscriber
+	 *
+	 * @param subscriber the subscriber which can now see the entity
+	 * @param entity the entity
+	 */
+	public void onSpawn(S subscriber, E entity);
+
+	/**
+	 * Called when an entity leaves the view of a subscriber
+	 *
+	 * @param subscriber the subscriber which can no longer see the entity
+	 * @param entity the entity
+	 */
+	public void onDestroy(S subscriber, E entity);
+}
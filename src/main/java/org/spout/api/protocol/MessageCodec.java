@@ -76,6 +76,83 @@ public abstract class MessageCodec<T extends Message> {
 		return encode(message);
 	}
 
+	/**
+	 * Gets an estimate of the number of bytes the given message will encode to.<br>
+	 * <br>
+	 * Codecs which return a non-negative value are encoded directly into a
+	 * pooled buffer through {@link #encode(boolean, Message, ChannelBuffer)}.
+	 * The estimate is only a sizing hint, the buffer grows if it is exceeded.
+	 *
+	 * @param message the message
+	 * @return the estimated encoded size, or -1 if this codec does not support direct encoding
+	 */
+	public int getEstimatedSize(T message) {
+		return -1;
+	}
+
+	/**
+	 * Encodes the message into the given buffer, starting at its writer index.
+	 *
+	 * @param upstream true if the message is being sent to the server
+	 * @param message the message
+	 * @param buffer the buffer to write to
+	 * @throws IOException
+	 */
+	public void encode(boolean upstream, T message, ChannelBuffer buffer) throws IOException {
+		if (upstream) {
+			encodeToServer(message, buffer);
+		} else {
+			encodeToClient(message, buffer);
+		}
+	}
+
+	/**
+	 * Encodes a message being sent to a client into the given buffer.<br>
+	 * <br>
+	 * By default, this writes the result of {@link #encode(boolean, Message)}, so codecs which only
+	 * override the methods returning a buffer still encode correctly, but are not encoded in place.
+	 *
+	 * @param message the message
+	 * @param buffer the buffer to write to
+	 * @throws IOException
+	 */
+	public void encodeToClient(T message, ChannelBuffer buffer) throws IOException {
+		write(encode(false, message), buffer);
+	}
+
+	/**
+	 * Encodes a message being sent to the server into the given buffer.<br>
+	 * <br>
+	 * By default, this writes the result of {@link #encode(boolean, Message)}, so codecs which only
+	 * override the methods returning a buffer still encode correctly, but are not encoded in place.
+	 *
+	 * @param message the message
+	 * @param buffer the buffer to write to
+	 * @throws IOException
+	 */
+	public void encodeToServer(T message, ChannelBuffer buffer) throws IOException {
+		write(encode(true, message), buffer);
+	}
+
+	private static void write(ChannelBuffer encoded, ChannelBuffer buffer) {
+		if (encoded != null) {
+			buffer.writeBytes(encoded, encoded.readerIndex(), encoded.readableBytes());
+		}
+	}
+
+	/**
+	 * Gets the length of the encoded message body starting at the given index.<br>
+	 * <br>
+	 * This method must not modify the buffer's indexes.
+	 *
+	 * @param buffer the buffer to peek into
+	 * @param index the index of the first byte of the message body
+	 * @return the body length, {@link Protocol#INCOMPLETE_LENGTH} if more bytes are needed or {@link Protocol#UNKNOWN_LENGTH} if not supported
+	 */
+	public int getFrameLength(ChannelBuffer buffer, int index) {
+		return Protocol.UNKNOWN_LENGTH;
+	}
+
 	public T decode(boolean upstream, ChannelBuffer buffer) throws IOException {
 		return upstream ? decodeFromServer(buffer) : decodeFromClient(buffer);
 	}
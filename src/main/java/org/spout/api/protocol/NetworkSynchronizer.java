@@ -37,8 +37,12 @@ import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicReference;
 
+import com.google.common.collect.MapMaker;
+
 import gnu.trove.set.hash.TIntHashSet;
 
 import org.spout.api.Spout;
@@ -65,6 +69,18 @@ public abstract class NetworkSynchronizer {
 	protected final AtomicReference<Protocol> protocol = new AtomicReference<Protocol>(null);
 
 	private final static int CHUNKS_PER_TICK = 20;
+	private final static ConcurrentMap<World, InterestGrid<NetworkSynchronizer, Entity>> interestGrids = new MapMaker().weakKeys().makeMap();
+	private final static InterestListener<NetworkSynchronizer, Entity> interestListener = new InterestListener<NetworkSynchronizer, Entity>() {
+		@Override
+		public void onSpawn(NetworkSynchronizer subscriber, Entity entity) {
+			subscriber.interestChanges.add(new InterestChange(entity, true));
+		}
+
+		@Override
+		public void onDestroy(NetworkSynchronizer subscriber, Entity entity) {
+			subscriber.interestChanges.add(new InterestChange(entity, false));
+		}
+	};
 
 	private final int viewDistance;
 	private final int blockViewDistance;
@@ -94,6 +110,8 @@ public abstract class NetworkSynchronizer {
 
 	//Holds all entities that have ever been sync'd to this Synchronizer
 	private final TIntHashSet synchronizedEntities = new TIntHashSet();
+	//Interest grid changes, which may be reported from any region thread
+	private final ConcurrentLinkedQueue<InterestChange> interestChanges = new ConcurrentLinkedQueue<InterestChange>();
 
 	public NetworkSynchronizer(Session session, int minViewDistance) {
 		this.session = session;
@@ -207,6 +225,9 @@ public abstract class NetworkSynchronizer {
 		for (Point p : initializedChunks) {
 			removeObserver(p);
 		}
+		for (InterestGrid<NetworkSynchronizer, Entity> grid : interestGrids.values()) {
+			grid.removeSubscriber(this);
+		}
 	}
 
 	/**
@@ -266,10 +287,12 @@ public abstract class NetworkSynchronizer {
 	public void preSnapshot() {
 		if (removed) {
 			removed = false;
+			interestChanges.clear();
 			for (Point p : initializedChunks) {
 				freeChunk(p);
 			}
 		} else {
+			syncInterestChanges();
 			if (worldChanged) {
 				first = false;
 				Point ep = player.getTransform().getPosition();
@@ -379,19 +402,18 @@ public abstract class NetworkSynchronizer {
 	private void addObserver(Chunk c) {
 		observed.add(c);
 		c.refreshObserver(player);
+		getInterestGrid(c.getWorld()).subscribe(this, c.getX(), c.getY(), c.getZ());
 	}
 
 	private void removeObserver(Point p) {
 		Chunk c = p.getWorld().getChunkFromBlock(p, LoadOption.NO_LOAD);
 		if (c != null) {
-			removeObserver(c);
+			observed.remove(c);
+			c.removeObserver(player);
 		}
 		chunksToObserve.remove(p);
-	}
-
-	private void removeObserver(Chunk c) {
-		observed.remove(c);
-		c.removeObserver(player);
+		// The chunk may already be unloaded, so the cell is found by the point's chunk coordinates
+		getInterestGrid(p.getWorld()).unsubscribe(this, p.getChunkX(), p.getChunkY(), p.getChunkZ());
 	}
 
 	private void checkChunkUpdates(Point currentPosition) {
@@ -596,6 +618,45 @@ public abstract class NetworkSynchronizer {
 		}
 	}
 
+	/**
+	 * Passes the spawns and destroys queued by the interest grids to {@link #syncEntity}, in the order they were reported.
+	 */
+	private void syncInterestChanges() {
+		InterestChange change;
+		while ((change = interestChanges.poll()) != null) {
+			syncEntity(change.entity, change.spawn, !change.spawn, false);
+		}
+	}
+
+	/**
+	 * Gets the interest grid for a world.<br>
+	 * <br>
+	 * Network synchronizers subscribe to the cells of the chunks they observe.  Entity
+	 * movements between chunks reported to the grid are turned into {@link #syncEntity}
+	 * spawn and destroy calls for exactly the synchronizers which gain or lose sight of the entity.
+	 * The grid reports these from the thread moving the entity, so they are queued and passed
+	 * to {@link #syncEntity} by the synchronizer's own thread, during {@link #preSnapshot()}.<br>
+	 * <br>
+	 * The API only manages the subscriptions.  The grid knows nothing about entities until the engine
+	 * feeds it, by calling {@link InterestGrid#addEntity}, {@link InterestGrid#moveEntity} and
+	 * {@link InterestGrid#removeEntity} as entities spawn, cross chunk boundaries and despawn.  Until an
+	 * engine does so, spawns and destroys still come only from its own chunk observer scan.
+	 *
+	 * @param world the world
+	 * @return the interest grid, keyed by chunk coordinates
+	 */
+	public static InterestGrid<NetworkSynchronizer, Entity> getInterestGrid(World world) {
+		InterestGrid<NetworkSynchronizer, Entity> grid = interestGrids.get(world);
+		if (grid == null) {
+			grid = new InterestGrid<NetworkSynchronizer, Entity>(interestListener);
+			InterestGrid<NetworkSynchronizer, Entity> oldGrid = interestGrids.putIfAbsent(world, grid);
+			if (oldGrid != null) {
+				grid = oldGrid;
+			}
+		}
+		return grid;
+	}
+
 	/**
 	 * Sets the protocol associated with this network synchronizer
 	 *
@@ -612,4 +673,14 @@ public abstract class NetworkSynchronizer {
 	public boolean hasSpawned(Entity e) {
 		return synchronizedEntities.contains(e.getId());
 	}
+
+	private static final class InterestChange {
+		private final Entity entity;
+		private final boolean spawn;
+
+		public InterestChange(Entity entity, boolean spawn) {
+			this.entity = entity;
+			this.spawn = spawn;
+		}
+	}
 }
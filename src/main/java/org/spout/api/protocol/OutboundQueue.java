@@ -0,0 +1,366 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, SpoutDev <http://www.spout.org/>
+ * SpoutAPI is licensed under the SpoutDev License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://www.spout.org/SpoutDevLicenseV1.txt> for the full license,
+ * including the MIT license.
+ */
+package org.spout.api.protocol;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Map;
+
+import org.jboss.netty.channel.Channel;
+import org.spout.api.Spout;
+
+/**
+ * An outbound message queue for a single channel, which splits messages into {@link SendPriority} classes.<br>
+ * <br>
+ * Classes are written in priority order, starting with {@link SendPriority#CONTROL}, but only while the
+ * channel is writable, so a client which stops reading holds back messages here instead of in the channel's
+ * unbounded write buffer.<br>
+ * <br>
+ * Each class has a byte limit and an {@link OverflowPolicy}, so the memory a stalled client can use is
+ * bounded.  Messages which are never resent, such as chunks, are not dropped; a client which falls so far
+ * behind that they do not fit is disconnected instead.  {@link MergeableMessage}s replace any queued message of the same class with the same merge key.
+ * The replaced message is discarded and the new message is queued at the tail, so it is never written ahead
+ * of messages offered after the message it replaces.<br>
+ * <br>
+ * Messages of different classes may be written in a different order than they were offered.
+ */
+public class OutboundQueue {
+	private static final int DEFAULT_MESSAGE_SIZE = 64;
+	private static final SendPriority[] PRIORITIES = SendPriority.values();
+
+	private final Protocol protocol;
+	private final ClassQueue[] queues = new ClassQueue[PRIORITIES.length];
+
+	public OutboundQueue(Protocol protocol) {
+		this.protocol = protocol;
+		queues[SendPriority.CONTROL.ordinal()] = new ClassQueue(1024 * 1024, OverflowPolicy.DISCONNECT);
+		queues[SendPriority.ENTITY.ordinal()] = new ClassQueue(256 * 1024, OverflowPolicy.DROP_MERGEABLE);
+		queues[SendPriority.CHUNK.ordinal()] = new ClassQueue(4 * 1024 * 1024, OverflowPolicy.DISCONNECT);
+		queues[SendPriority.BULK.ordinal()] = new ClassQueue(4 * 1024 * 1024, OverflowPolicy.DISCONNECT);
+	}
+
+	/**
+	 * Sets the byte limit and overflow policy of a priority class.<br>
+	 * <br>
+	 * A message larger than the limit is still accepted when its class is empty, so it can always be sent eventually.
+	 *
+	 * @param priority the priority class
+	 * @param maxBytes the maximum number of bytes queued for the class
+	 * @param policy the policy used when the limit is reached
+	 */
+	public synchronized void setLimit(SendPriority priority, int maxBytes, OverflowPolicy policy) {
+		if (maxBytes <= 0) {
+			throw new IllegalArgumentException("Byte limit must be positive");
+		}
+		ClassQueue queue = queues[priority.ordinal()];
+		queue.maxBytes = maxBytes;
+		queue.policy = policy;
+	}
+
+	/**
+	 * Queues a message and writes as much of the queue as the channel allows.
+	 *
+	 * @param channel the channel to write to
+	 * @param message the message
+	 * @return false if the message was dropped
+	 */
+	public synchronized boolean send(Channel channel, Message message) {
+		boolean queued = offer(message);
+		flush(channel);
+		return queued;
+	}
+
+	/**
+	 * Queues a message without writing it
+	 *
+	 * @param message the message
+	 * @return false if the message was dropped
+	 */
+	public synchronized boolean offer(Message message) {
+		return queues[protocol.getSendPriority(message).ordinal()].offer(message, getSize(message));
+	}
+
+	/**
+	 * Writes the queued messages in priority order for as long as the channel is writable.<br>
+	 * <br>
+	 * This should be called again when the channel becomes writable.  If a class with the {@link OverflowPolicy#DISCONNECT}
+	 * policy has overflowed, the queue is discarded and the channel is closed instead.
+	 *
+	 * @param channel the channel to write to
+	 */
+	public synchronized void flush(Channel channel) {
+		if (!channel.isConnected()) {
+			return;
+		}
+		for (int i = 0; i < queues.length; i++) {
+			if (queues[i].overflowed) {
+				Spout.getLogger().warning("Closing " + channel + ", as it has more than " + queues[i].maxBytes + " bytes of " + PRIORITIES[i] + " messages waiting to be sent");
+				clear();
+				channel.close();
+				return;
+			}
+		}
+		Message message;
+		for (ClassQueue queue : queues) {
+			while (channel.isWritable() && (message = queue.poll()) != null) {
+				channel.write(message);
+			}
+		}
+	}
+
+	/**
+	 * Gets if a class has exceeded its limit in a way which requires the channel to be closed
+	 *
+	 * @return true if the channel will be closed by the next flush
+	 */
+	public synchronized boolean isOverflowed() {
+		for (ClassQueue queue : queues) {
+			if (queue.overflowed) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Gets the number of bytes waiting in a priority class
+	 *
+	 * @param priority the priority class
+	 * @return the estimated number of bytes
+	 */
+	public synchronized int getQueuedBytes(SendPriority priority) {
+		return queues[priority.ordinal()].bytes;
+	}
+
+	/**
+	 * Gets the number of messages waiting in a priority class
+	 *
+	 * @param priority the priority class
+	 * @return the number of messages
+	 */
+	public synchronized int getQueuedMessages(SendPriority priority) {
+		return queues[priority.ordinal()].count;
+	}
+
+	/**
+	 * Gets the number of messages of a priority class which were dropped because of its byte limit
+	 *
+	 * @param priority the priority class
+	 * @return the number of dropped messages
+	 */
+	public synchronized long getDroppedMessages(SendPriority priority) {
+		return queues[priority.ordinal()].dropped;
+	}
+
+	/**
+	 * Gets the number of messages of a priority class which were replaced by a newer {@link MergeableMessage}
+	 *
+	 * @param priority the priority class
+	 * @return the number of merged messages
+	 */
+	public synchronized long getMergedMessages(SendPriority priority) {
+		return queues[priority.ordinal()].merged;
+	}
+
+	/**
+	 * Discards all queued messages
+	 */
+	public synchronized void clear() {
+		for (ClassQueue queue : queues) {
+			queue.entries.clear();
+			queue.merges.clear();
+			queue.bytes = 0;
+			queue.count = 0;
+			queue.overflowed = false;
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private int getSize(Message message) {
+		if (message instanceof EncodedMessage) {
+			return ((EncodedMessage) message).getFrame().readableBytes();
+		}
+		MessageCodec<Message> codec = (MessageCodec<Message>) protocol.getCodecLookupService().find(message.getClass());
+		if (codec != null) {
+			int size = codec.getEstimatedSize(message);
+			if (size >= 0) {
+				return size;
+			}
+		}
+		return DEFAULT_MESSAGE_SIZE;
+	}
+
+	/**
+	 * The action taken when a message does not fit within the byte limit of its class
+	 */
+	public enum OverflowPolicy {
+		/**
+		 * The new message is dropped
+		 */
+		DROP_NEWEST,
+		/**
+		 * The oldest queued messages are dropped until the new message fits
+		 */
+		DROP_OLDEST,
+		/**
+		 * The oldest queued {@link MergeableMessage}s are dropped until the new message fits.  If it still does not
+		 * fit, a new mergeable message is dropped, and any other message is queued over the limit.  Once twice the
+		 * limit is queued, the channel is closed, as for {@link #DISCONNECT}.<br>
+		 * <br>
+		 * This is used for entity messages, where a lost position update is corrected by the next one,
+		 * but a lost spawn or destroy is not.
+		 */
+		DROP_MERGEABLE,
+		/**
+		 * Nothing is dropped.  The client has stopped reading, so the queue is discarded and the channel is
+		 * closed by the next flush.<br>
+		 * <br>
+		 * This is used for messages which are never resent, such as chunks, where a dropped message would leave
+		 * the client out of sync for good.
+		 */
+		DISCONNECT;
+	}
+
+	private static class Entry {
+		private Message message;
+		private final int size;
+		private final Object mergeKey;
+
+		public Entry(Message message, int size, Object mergeKey) {
+			this.message = message;
+			this.size = size;
+			this.mergeKey = mergeKey;
+		}
+	}
+
+	private static class ClassQueue {
+		private final LinkedList<Entry> entries = new LinkedList<Entry>();
+		private final Map<Object, Entry> merges = new HashMap<Object, Entry>();
+		private int maxBytes;
+		private OverflowPolicy policy;
+		private int bytes = 0;
+		private int count = 0;
+		private boolean overflowed = false;
+		private long dropped = 0;
+		private long merged = 0;
+
+		public ClassQueue(int maxBytes, OverflowPolicy policy) {
+			this.maxBytes = maxBytes;
+			this.policy = policy;
+		}
+
+		public boolean offer(Message message, int size) {
+			Object mergeKey = message instanceof MergeableMessage ? ((MergeableMessage) message).getMergeKey() : null;
+			Entry replaced = mergeKey == null ? null : merges.get(mergeKey);
+			if (replaced != null) {
+				discard(replaced);
+				merged++;
+				if (entries.size() > count << 1) {
+					purge();
+				}
+			} else if (count > 0 && isFull(size)) {
+				if (policy == OverflowPolicy.DROP_NEWEST) {
+					dropped++;
+					return false;
+				} else if (policy == OverflowPolicy.DISCONNECT) {
+					overflowed = true;
+					return false;
+				}
+				Iterator<Entry> i = entries.iterator();
+				while (i.hasNext() && isFull(size)) {
+					Entry entry = i.next();
+					if (entry.message == null) {
+						i.remove();
+					} else if (policy == OverflowPolicy.DROP_OLDEST || entry.mergeKey != null) {
+						i.remove();
+						discard(entry);
+						dropped++;
+					}
+				}
+				if (count > 0 && isFull(size)) {
+					if (mergeKey != null) {
+						dropped++;
+						return false;
+					} else if ((long) bytes + size > (long) maxBytes << 1) {
+						overflowed = true;
+						return false;
+					}
+				}
+			}
+			Entry entry = new Entry(message, size, mergeKey);
+			entries.addLast(entry);
+			if (mergeKey != null) {
+				merges.put(mergeKey, entry);
+			}
+			bytes += size;
+			count++;
+			return true;
+		}
+
+		public Message poll() {
+			Entry entry;
+			while ((entry = entries.pollFirst()) != null) {
+				if (entry.message != null) {
+					Message message = entry.message;
+					discard(entry);
+					return message;
+				}
+			}
+			return null;
+		}
+
+		/**
+		 * Removes the entries of discarded messages from the list
+		 */
+		private void purge() {
+			Iterator<Entry> i = entries.iterator();
+			while (i.hasNext()) {
+				if (i.next().message == null) {
+					i.remove();
+				}
+			}
+		}
+
+		private boolean isFull(int size) {
+			return (long) bytes + size > maxBytes;
+		}
+
+		/**
+		 * Removes an entry from the counts.  The entry is left in the list, and skipped when it reaches the
+		 * head or removed by {@link #purge()}.
+		 */
+		private void discard(Entry entry) {
+			if (entry.mergeKey != null) {
+				merges.remove(entry.mergeKey);
+			}
+			bytes -= entry.size;
+			count--;
+			entry.message = null;
+		}
+	}
+}
@@ -50,12 +50,7 @@ public abstract class PostprocessEncoder extends OneToOneEncoder implements Proc
 		}
 		
 		ChannelProcessor processor = this.processor.get();
-		if (processor == null) {
-			super.handleDownstream(ctx, evt);
-			if (evt instanceof MessageEvent) {
-				checkForSetupMessage(((MessageEvent)evt).getMessage());
-			}
-		} else if (!(evt instanceof MessageEvent)) {
+		if (!(evt instanceof MessageEvent)) {
 			super.handleDownstream(ctx, evt);
 		} else {
 			MessageEvent e = (MessageEvent) evt;
@@ -64,14 +59,17 @@ public abstract class PostprocessEncoder extends OneToOneEncoder implements Proc
 			if (originalMessage == encodedMessage) {
 				ctx.sendDownstream(evt);
 			} else if (encodedMessage != null) {
-				if (encodedMessage instanceof ChannelBuffer) {
+				if (processor != null && encodedMessage instanceof ChannelBuffer) {
 					synchronized (this) {
-						encodedMessage = processor.write(ctx, (ChannelBuffer)encodedMessage);
-						write(ctx, e.getFuture(), encodedMessage, e.getRemoteAddress());
+						ChannelBuffer processedMessage = processor.write(ctx, (ChannelBuffer)encodedMessage);
+						write(ctx, e.getFuture(), processedMessage, e.getRemoteAddress());
 					}
 				} else {
 					write(ctx, e.getFuture(), encodedMessage, e.getRemoteAddress());
 				}
+				if (encodedMessage instanceof ChannelBuffer) {
+					EncodeBufferPool.releaseOnComplete((ChannelBuffer) encodedMessage, e.getFuture());
+				}
 			}
 			checkForSetupMessage(originalMessage);
 		}
@@ -95,13 +95,26 @@ public abstract class PreprocessReplayingDecoder extends FrameDecoder implements
 				liveBuffer = processedBuffer;
 			}
 			int readPointer = liveBuffer.readerIndex();
-			try {
-				newFrame = decodeProcessed(ctx, c, replayableBuffer.setBuffer(liveBuffer));
-			} catch (ReplayableError e) {
-				// roll back liveBuffer read to state prior to calling decodeProcessed
-				liveBuffer.readerIndex(readPointer);
-				// No frame returned
+			int frameLength = liveBuffer.readable() ? getFrameLength(ctx, c, liveBuffer) : Protocol.INCOMPLETE_LENGTH;
+			if (frameLength == Protocol.UNKNOWN_LENGTH) {
+				try {
+					newFrame = decodeProcessed(ctx, c, replayableBuffer.setBuffer(liveBuffer));
+				} catch (ReplayableError e) {
+					// roll back liveBuffer read to state prior to calling decodeProcessed
+					liveBuffer.readerIndex(readPointer);
+					// No frame returned
+					newFrame = null;
+				}
+			} else if (frameLength < 0 || liveBuffer.readableBytes() < frameLength) {
+				// wait for the rest of the frame to arrive
 				newFrame = null;
+			} else {
+				int frameEnd = readPointer + frameLength;
+				newFrame = decodeProcessed(ctx, c, liveBuffer);
+				if (liveBuffer.readerIndex() > frameEnd) {
+					throw new IllegalStateException("Decoder read " + (liveBuffer.readerIndex() - readPointer) + " bytes from a frame of length " + frameLength);
+				}
+				liveBuffer.readerIndex(frameEnd);
 			}
 			
 			if (newFrame != null) {
@@ -171,6 +184,21 @@ public abstract class PreprocessReplayingDecoder extends FrameDecoder implements
 	 */
 	protected abstract Object decodeProcessed(ChannelHandlerContext ctx, Channel channel, ChannelBuffer buffer) throws Exception;
 
+	/**
+	 * Gets the length of the next frame in the buffer, without modifying the buffer's reader index.<br>
+	 * <br>
+	 * If the length is known, {@link #decodeProcessed} is only called once the whole frame has
+	 * arrived, and it is passed the live buffer rather than a replayable one.
+	 *
+	 * @param ctx the channel handler context
+	 * @param channel the channel
+	 * @param buffer the channel buffer
+	 * @return the frame length, {@link Protocol#INCOMPLETE_LENGTH} if more bytes are needed or {@link Protocol#UNKNOWN_LENGTH} to decode speculatively
+	 */
+	protected int getFrameLength(ChannelHandlerContext ctx, Channel channel, ChannelBuffer buffer) {
+		return Protocol.UNKNOWN_LENGTH;
+	}
+
 	private static ChannelBuffer getNewBuffer(ChannelHandlerContext ctx, int capacity) {
 		return ctx.getChannel().getConfig().getBufferFactory().getBuffer(capacity);
 	}
@@ -36,14 +36,31 @@ import java.util.logging.Level;
 
 import org.apache.commons.lang3.tuple.Pair;
 import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.spout.api.Client;
 import org.spout.api.Spout;
 import org.spout.api.chat.ChatArguments;
 import org.spout.api.command.Command;
 import org.spout.api.exception.UnknownPacketException;
 import org.spout.api.io.store.simple.MemoryStore;
+import org.spout.api.protocol.proxy.ConnectionInfoMessage;
+import org.spout.api.protocol.proxy.ForwardedMessage;
+import org.spout.api.protocol.proxy.ProxyStartMessage;
+import org.spout.api.protocol.proxy.RedirectMessage;
+import org.spout.api.protocol.proxy.TransformableMessage;
 import org.spout.api.util.StringMap;
+import org.spout.api.util.StringMapEvent;
 
 public abstract class Protocol {
+	/**
+	 * Frame length returned when the length of a packet can not be determined without decoding it
+	 */
+	public static final int UNKNOWN_LENGTH = -1;
+	/**
+	 * Frame length returned when more bytes are needed before the length of a packet is known
+	 */
+	public static final int INCOMPLETE_LENGTH = -2;
+
 	private static final ConcurrentHashMap<String, Protocol> map = new ConcurrentHashMap<String, Protocol>();
 
 	private final StringMap dynamicPacketLookup;
@@ -128,6 +145,27 @@ public abstract class Protocol {
 		return dynamicPacketLookup.getItems();
 	}
 
+	/**
+	 * Installs the dynamic packet ids received from the server during the handshake.<br>
+	 * <br>
+	 * The dynamically registered codecs are installed at the given opcodes in the codec lookup
+	 * service.  Once both ends agree on the ids, {@link org.spout.api.protocol.dynamicid.DynamicMessageEncoder#setDirect(org.jboss.netty.channel.Channel, boolean)}
+	 * can be used to send dynamic messages without wrapping them.<br>
+	 * <br>
+	 * The codec lookup service is shared by every session using this protocol, so this may only be
+	 * used on a client.  A server always uses its own ids, so has nothing to install.
+	 *
+	 * @param ids the opcode and codec class name pairs, as returned by {@link #getDynamicallyRegisteredPackets()} on the server
+	 * @throws IllegalStateException if the engine is not a client
+	 */
+	public void installDynamicPackets(List<Pair<Integer, String>> ids) {
+		if (!(Spout.getEngine() instanceof Client)) {
+			throw new IllegalStateException("Dynamic packet ids can only be installed on a client, as the codecs are shared by every session");
+		}
+		getCodecLookupService().installDynamicCodecs(ids);
+		dynamicPacketLookup.handleUpdate(new StringMapEvent(dynamicPacketLookup, StringMapEvent.Action.ADD, ids));
+	}
+
 	/**
 	 * Allows applying a wrapper to messages with dynamically allocated id's, in case this protocol needs to provide special treatment for them.
 	 *
@@ -148,6 +186,54 @@ public abstract class Protocol {
 	 */
 	public abstract MessageCodec<?> readHeader(ChannelBuffer buf) throws UnknownPacketException;
 
+	/**
+	 * Gets the total length, including the header, of the packet starting at the buffer's reader index.<br>
+	 * <br>
+	 * This method must not modify the buffer's reader index. When the length is known, the decoder
+	 * waits until the whole packet has arrived and then decodes it exactly once, rather than
+	 * speculatively decoding and rolling back each time a fragment arrives.<br>
+	 * <br>
+	 * Protocols which only have an opcode in the header can use {@link MessageCodec#getFrameLength(ChannelBuffer, int)}
+	 * to find the length of the message body.
+	 *
+	 * @param buf The buffer to peek into
+	 * @return The packet length, {@link #INCOMPLETE_LENGTH} if more bytes are needed or {@link #UNKNOWN_LENGTH} if not supported
+	 */
+	public int getFrameLength(ChannelBuffer buf) {
+		return UNKNOWN_LENGTH;
+	}
+
+	/**
+	 * Gets if messages handled by the given codec must be decoded when this node is acting as a proxy.<br>
+	 * <br>
+	 * Once a {@link ProxyStartMessage} has been received, packets for which this returns false are
+	 * forwarded as raw {@link ForwardedMessage} frames, provided that {@link #getFrameLength(ChannelBuffer)}
+	 * is supported.  By default, only the messages which the proxy itself acts on are decoded.
+	 *
+	 * @param codec The codec for the packet
+	 * @return true if the packet must be decoded
+	 */
+	public boolean isProxyDecodeRequired(MessageCodec<?> codec) {
+		Class<?> type = codec.getType();
+		return TransformableMessage.class.isAssignableFrom(type) || ConnectionInfoMessage.class.isAssignableFrom(type)
+				|| RedirectMessage.class.isAssignableFrom(type) || ProxyStartMessage.class.isAssignableFrom(type)
+				|| ProcessorSetupMessage.class.isAssignableFrom(type);
+	}
+
+	/**
+	 * Gets the priority class a message is queued with when sent through an {@link OutboundQueue}.<br>
+	 * <br>
+	 * By default, all messages are {@link SendPriority#CONTROL} messages, which are written first and never dropped.
+	 * A client which stops reading is disconnected once the control class reaches its limit, so protocols should
+	 * classify their entity, chunk and bulk messages, which have their own limits and overflow policies.
+	 *
+	 * @param message The message
+	 * @return the priority class
+	 */
+	public SendPriority getSendPriority(Message message) {
+		return SendPriority.CONTROL;
+	}
+
 	/**
 	 * Writes a packet header to a new buffer.
 	 *
@@ -157,6 +243,72 @@ public abstract class Protocol {
 	 */
 	public abstract ChannelBuffer writeHeader(MessageCodec<?> codec, ChannelBuffer data);
 
+	/**
+	 * Gets the maximum number of bytes a packet header can take up.<br>
+	 * <br>
+	 * This much space is reserved in front of directly encoded messages, so that the
+	 * header can be written into the same buffer once the message length is known.
+	 *
+	 * @return the maximum header size, or -1 if headers must be written to a separate buffer
+	 */
+	public int getMaxHeaderSize() {
+		return -1;
+	}
+
+	/**
+	 * Writes a packet header into the space reserved in front of the encoded message.<br>
+	 * <br>
+	 * The header must end immediately before dataIndex and may not be larger than
+	 * {@link #getMaxHeaderSize()}.
+	 *
+	 * @param codec The codec the message was written with
+	 * @param buffer The buffer containing the encoded message
+	 * @param dataIndex The index of the first byte of the message
+	 * @param dataLength The length of the message
+	 * @return The index of the first byte of the header
+	 */
+	public int writeHeader(MessageCodec<?> codec, ChannelBuffer buffer, int dataIndex, int dataLength) {
+		ChannelBuffer header = writeHeader(codec, buffer.slice(dataIndex, dataLength));
+		int headerLength = header.readableBytes();
+		if (headerLength > dataIndex) {
+			throw new IllegalStateException("Header for " + codec.getType() + " is " + headerLength + " bytes, but only " + dataIndex + " bytes were reserved");
+		}
+		int headerIndex = dataIndex - headerLength;
+		buffer.setBytes(headerIndex, header, header.readerIndex(), headerLength);
+		return headerIndex;
+	}
+
+	/**
+	 * Encodes a message into a standalone frame, including its header.<br>
+	 * <br>
+	 * The result can be sent to any number of sessions using this protocol without being encoded again.
+	 *
+	 * @param upstream true if the message is being sent to the server
+	 * @param message The message to encode
+	 * @return The encoded message
+	 * @throws IOException if the message could not be encoded
+	 */
+	@SuppressWarnings("unchecked")
+	public EncodedMessage encodeMessage(boolean upstream, Message message) throws IOException {
+		if (message instanceof EncodedMessage) {
+			return (EncodedMessage) message;
+		}
+		MessageCodec<Message> codec = (MessageCodec<Message>) getCodecLookupService().find(message.getClass());
+		if (codec != null && codec.isDynamic()) {
+			message = getWrappedMessage(upstream, message);
+			codec = (MessageCodec<Message>) getCodecLookupService().find(message.getClass());
+		}
+		if (codec == null) {
+			throw new IOException("Unknown message type: " + message.getClass() + ".");
+		}
+		ChannelBuffer body = codec.encode(upstream, message);
+		ChannelBuffer header = writeHeader(codec, body);
+		ChannelBuffer frame = ChannelBuffers.buffer(header.readableBytes() + body.readableBytes());
+		frame.writeBytes(header, header.readerIndex(), header.readableBytes());
+		frame.writeBytes(body, body.readerIndex(), body.readableBytes());
+		return new EncodedMessage(codec.getOpcode(), frame);
+	}
+
 	/**
 	 * Gets a packet for kicking a player
 	 *
@@ -0,0 +1,151 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, SpoutDev <http://www.spout.org/>
+ * SpoutAPI is licensed under the SpoutDev License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://www.spout.org/SpoutDevLicenseV1.txt> for the full license,
+ * including the MIT license.
+ */
+package org.spout.api.protocol;
+
+import org.spout.api.geo.discrete.Point;
+import org.spout.api.geo.discrete.Transform;
+import org.spout.api.math.Quaternion;
+
+/**
+ * An entity transform rounded to the fixed point precision used by a protocol.<br>
+ * <br>
+ * Positions are stored in units of 1 / positionScale blocks, and rotations in units
+ * of 360 / rotationScale degrees.  Deltas between two quantized transforms can be
+ * accumulated by the client without drift.
+ */
+public final class QuantizedTransform {
+	private final int x;
+	private final int y;
+	private final int z;
+	private final int yaw;
+	private final int pitch;
+	private final int roll;
+
+	public QuantizedTransform(int x, int y, int z, int yaw, int pitch, int roll) {
+		this.x = x;
+		this.y = y;
+		this.z = z;
+		this.yaw = yaw;
+		this.pitch = pitch;
+		this.roll = roll;
+	}
+
+	/**
+	 * Quantizes a transform
+	 *
+	 * @param transform the transform
+	 * @param positionScale the number of position units per block
+	 * @param rotationScale the number of rotation units per full turn
+	 * @return the quantized transform
+	 */
+	public static QuantizedTransform quantize(Transform transform, float positionScale, int rotationScale) {
+		Point p = transform.getPosition();
+		Quaternion r = transform.getRotation();
+		return new QuantizedTransform(
+				Math.round(p.getX() * positionScale),
+				Math.round(p.getY() * positionScale),
+				Math.round(p.getZ() * positionScale),
+				quantizeAngle(r.getYaw(), rotationScale),
+				quantizeAngle(r.getPitch(), rotationScale),
+				quantizeAngle(r.getRoll(), rotationScale));
+	}
+
+	private static int quantizeAngle(float degrees, int rotationScale) {
+		int angle = Math.round(degrees * rotationScale / 360F) % rotationScale;
+		return angle < 0 ? angle + rotationScale : angle;
+	}
+
+	public int getX() {
+		return x;
+	}
+
+	public int getY() {
+		return y;
+	}
+
+	public int getZ() {
+		return z;
+	}
+
+	public int getYaw() {
+		return yaw;
+	}
+
+	public int getPitch() {
+		return pitch;
+	}
+
+	public int getRoll() {
+		return roll;
+	}
+
+	/**
+	 * Gets if the position of this transform differs from another
+	 *
+	 * @param other the other transform
+	 * @return true if the positions differ
+	 */
+	public boolean isPositionChanged(QuantizedTransform other) {
+		return other == null || x != other.x || y != other.y || z != other.z;
+	}
+
+	/**
+	 * Gets if the rotation of this transform differs from another
+	 *
+	 * @param other the other transform
+	 * @return true if the rotations differ
+	 */
+	public boolean isRotationChanged(QuantizedTransform other) {
+		return other == null || yaw != other.yaw || pitch != other.pitch || roll != other.roll;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (obj == this) {
+			return true;
+		} else if (!(obj instanceof QuantizedTransform)) {
+			return false;
+		}
+		QuantizedTransform other = (QuantizedTransform) obj;
+		return !isPositionChanged(other) && !isRotationChanged(other);
+	}
+
+	@Override
+	public int hashCode() {
+		int hash = x;
+		hash = 31 * hash + y;
+		hash = 31 * hash + z;
+		hash = 31 * hash + yaw;
+		hash = 31 * hash + pitch;
+		return 31 * hash + roll;
+	}
+
+	@Override
+	public String toString() {
+		return "QuantizedTransform{" + x + ", " + y + ", " + z + ", yaw=" + yaw + ", pitch=" + pitch + ", roll=" + roll + "}";
+	}
+}
@@ -0,0 +1,126 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, SpoutDev <http://www.spout.org/>
+ * SpoutAPI is licensed under the SpoutDev License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://www.spout.org/SpoutDevLicenseV1.txt> for the full license,
+ * including the MIT license.
+ */
+package org.spout.api.protocol;
+
+import java.io.IOException;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+
+/**
+ * A codec installed at an opcode agreed with the remote end, which delegates to the codec bound locally.<br>
+ * <br>
+ * The opcode is fixed at construction, so a remapped codec can be published to other threads without
+ * modifying the bound codec they may be using.
+ */
+final class RemappedCodec<T extends Message> extends MessageCodec<T> {
+	private final MessageCodec<T> delegate;
+
+	private RemappedCodec(MessageCodec<T> delegate, int opcode) {
+		super(delegate.getType(), opcode);
+		this.delegate = delegate;
+		setDynamic(delegate.isDynamic());
+	}
+
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	public static MessageCodec<?> create(MessageCodec<?> delegate, int opcode) {
+		return new RemappedCodec(delegate, opcode);
+	}
+
+	/**
+	 * Gets the codec which was bound locally
+	 *
+	 * @return the bound codec
+	 */
+	public MessageCodec<T> getDelegate() {
+		return delegate;
+	}
+
+	@Override
+	public ChannelBuffer encode(boolean upstream, T message) throws IOException {
+		return delegate.encode(upstream, message);
+	}
+
+	@Override
+	public ChannelBuffer encode(T message) throws IOException {
+		return delegate.encode(message);
+	}
+
+	@Override
+	public ChannelBuffer encodeToClient(T message) throws IOException {
+		return delegate.encodeToClient(message);
+	}
+
+	@Override
+	public ChannelBuffer encodeToServer(T message) throws IOException {
+		return delegate.encodeToServer(message);
+	}
+
+	@Override
+	public int getEstimatedSize(T message) {
+		return delegate.getEstimatedSize(message);
+	}
+
+	@Override
+	public void encode(boolean upstream, T message, ChannelBuffer buffer) throws IOException {
+		delegate.encode(upstream, message, buffer);
+	}
+
+	@Override
+	public void encodeToClient(T message, ChannelBuffer buffer) throws IOException {
+		delegate.encodeToClient(message, buffer);
+	}
+
+	@Override
+	public void encodeToServer(T message, ChannelBuffer buffer) throws IOException {
+		delegate.encodeToServer(message, buffer);
+	}
+
+	@Override
+	public int getFrameLength(ChannelBuffer buffer, int index) {
+		return delegate.getFrameLength(buffer, index);
+	}
+
+	@Override
+	public T decode(boolean upstream, ChannelBuffer buffer) throws IOException {
+		return delegate.decode(upstream, buffer);
+	}
+
+	@Override
+	public T decode(ChannelBuffer buffer) throws IOException {
+		return delegate.decode(buffer);
+	}
+
+	@Override
+	public T decodeFromClient(ChannelBuffer buffer) throws IOException {
+		return delegate.decodeFromClient(buffer);
+	}
+
+	@Override
+	public T decodeFromServer(ChannelBuffer buffer) throws IOException {
+		return delegate.decodeFromServer(buffer);
+	}
+}
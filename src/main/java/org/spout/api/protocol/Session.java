@@ -226,4 +226,20 @@ public interface Session {
 	 * @return data map
 	 */
 	public SerializableMap getDataMap();
+
+	/**
+	 * Gets the traffic metrics for this session.<br>
+	 * <br>
+	 * Session metrics normally have the {@link Engine#getTrafficMetrics() engine metrics} as their parent.
+	 *
+	 * @return the metrics, or null if traffic is not recorded for this session
+	 */
+	public TrafficMetrics getTrafficMetrics();
+
+	/**
+	 * Gets the queue which messages sent to the primary channel are written through.
+	 *
+	 * @return the queue, or null if messages are written directly to the channel
+	 */
+	public OutboundQueue getOutboundQueue();
 }
@@ -0,0 +1,102 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, SpoutDev <http://www.spout.org/>
+ * SpoutAPI is licensed under the SpoutDev License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://www.spout.org/SpoutDevLicenseV1.txt> for the full license,
+ * including the MIT license.
+ */
+package org.spout.api.protocol;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.channel.ChannelHandlerContext;
+
+/**
+ * Base class for processors which produce exactly one output byte for each input byte, such as stream ciphers.<br>
+ * <br>
+ * Since the output length is known up front, data is processed directly from the input buffer's backing
+ * array into a single correctly sized output buffer, without an intermediate copy or composite buffers.
+ */
+public abstract class StreamChannelProcessor implements ChannelProcessor {
+
+	private final byte[] scratch;
+	protected final int capacity;
+
+	public StreamChannelProcessor(int capacity) {
+		this.capacity = capacity;
+		this.scratch = new byte[capacity];
+	}
+
+	@Override
+	public final ChannelBuffer write(ChannelHandlerContext ctx, ChannelBuffer input) {
+		return write(ctx, input, null);
+	}
+
+	@Override
+	public final synchronized ChannelBuffer write(ChannelHandlerContext ctx, ChannelBuffer input, ChannelBuffer buffer) {
+		int length = input.readableBytes();
+		ChannelBuffer output;
+		if (buffer == null) {
+			output = getNewBufferInstance(ctx, Math.max(length, capacity));
+		} else if (buffer.writableBytes() >= length) {
+			output = buffer;
+		} else {
+			output = getNewBufferInstance(ctx, Math.max(buffer.readableBytes() + length, capacity));
+			output.writeBytes(buffer);
+		}
+
+		if (input.hasArray() && output.hasArray()) {
+			int writerIndex = output.writerIndex();
+			process(input.array(), input.arrayOffset() + input.readerIndex(), length, output.array(), output.arrayOffset() + writerIndex);
+			input.skipBytes(length);
+			output.writerIndex(writerIndex + length);
+		} else {
+			int remaining;
+			while ((remaining = input.readableBytes()) > 0) {
+				int clamped = (remaining > scratch.length) ? scratch.length : remaining;
+				input.readBytes(scratch, 0, clamped);
+				process(scratch, 0, clamped, scratch, 0);
+				output.writeBytes(scratch, 0, clamped);
+			}
+		}
+		return output;
+	}
+
+	/**
+	 * Processes the given bytes.<br>
+	 * <br>
+	 * Exactly length bytes must be written to the output array. The input and output
+	 * arrays may be the same array with the same offset.<br>
+	 * <br>
+	 * This method does not need to be thread safe
+	 *
+	 * @param input the input array
+	 * @param inputOffset the offset of the first input byte
+	 * @param length the number of bytes to process
+	 * @param output the output array
+	 * @param outputOffset the offset to write the first output byte to
+	 */
+	protected abstract void process(byte[] input, int inputOffset, int length, byte[] output, int outputOffset);
+
+	private ChannelBuffer getNewBufferInstance(ChannelHandlerContext ctx, int capacity) {
+		return ctx.getChannel().getConfig().getBufferFactory().getBuffer(capacity);
+	}
+}
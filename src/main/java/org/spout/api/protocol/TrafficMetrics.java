@@ -0,0 +1,200 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, SpoutDev <http://www.spout.org/>
+ * SpoutAPI is licensed under the SpoutDev License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://www.spout.org/SpoutDevLicenseV1.txt> for the full license,
+ * including the MIT license.
+ */
+package org.spout.api.protocol;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Counts the messages, bytes and codec time spent per opcode, in each direction.<br>
+ * <br>
+ * Counters are striped by thread, so recording from many I/O threads at once does not
+ * contend on a single memory location.  Recording is lock-free and allocation free once an
+ * opcode has been seen.<br>
+ * <br>
+ * Metrics may have a parent, in which case everything recorded is also added to the parent.
+ * This is used to aggregate session metrics into the engine wide metrics.
+ */
+public class TrafficMetrics {
+	private static final int STRIPES = 8;
+	private static final int STRIPE_MASK = STRIPES - 1;
+	/**
+	 * Each stripe is padded to 64 bytes, so stripes used by different threads do not share a cache line
+	 */
+	private static final int STRIPE_WIDTH = 8;
+	private static final int DIRECT_OPCODES = 256;
+
+	private static final int INBOUND_COUNT = 0;
+	private static final int INBOUND_BYTES = 1;
+	private static final int INBOUND_NANOS = 2;
+	private static final int OUTBOUND_COUNT = 3;
+	private static final int OUTBOUND_BYTES = 4;
+	private static final int OUTBOUND_NANOS = 5;
+
+	private final TrafficMetrics parent;
+	private final AtomicReferenceArray<Counters> direct = new AtomicReferenceArray<Counters>(DIRECT_OPCODES);
+	private final ConcurrentHashMap<Integer, Counters> overflow = new ConcurrentHashMap<Integer, Counters>();
+
+	public TrafficMetrics() {
+		this(null);
+	}
+
+	/**
+	 * Creates metrics which also record into a parent
+	 *
+	 * @param parent the parent metrics, or null for none
+	 */
+	public TrafficMetrics(TrafficMetrics parent) {
+		this.parent = parent;
+	}
+
+	/**
+	 * Records a received message
+	 *
+	 * @param opcode the opcode of the message
+	 * @param bytes the length of the message, including its header
+	 * @param nanos the time spent decoding the message
+	 */
+	public void recordInbound(int opcode, int bytes, long nanos) {
+		getCounters(opcode).add(INBOUND_COUNT, bytes, nanos);
+		if (parent != null) {
+			parent.recordInbound(opcode, bytes, nanos);
+		}
+	}
+
+	/**
+	 * Records a sent message
+	 *
+	 * @param opcode the opcode of the message
+	 * @param bytes the length of the message, including its header
+	 * @param nanos the time spent encoding the message
+	 */
+	public void recordOutbound(int opcode, int bytes, long nanos) {
+		getCounters(opcode).add(OUTBOUND_COUNT, bytes, nanos);
+		if (parent != null) {
+			parent.recordOutbound(opcode, bytes, nanos);
+		}
+	}
+
+	/**
+	 * Gets the statistics for an opcode
+	 *
+	 * @param opcode the opcode
+	 * @return the statistics, which are all zero if the opcode has not been seen
+	 */
+	public TrafficStatistics getStatistics(int opcode) {
+		Counters counters = findCounters(opcode);
+		if (counters == null) {
+			return new TrafficStatistics(opcode, 0, 0, 0, 0, 0, 0);
+		}
+		return counters.snapshot(opcode);
+	}
+
+	/**
+	 * Gets a snapshot of the statistics for every opcode which has been seen
+	 *
+	 * @return an unmodifiable map of opcode to statistics, sorted by opcode
+	 */
+	public Map<Integer, TrafficStatistics> getStatistics() {
+		Map<Integer, TrafficStatistics> map = new TreeMap<Integer, TrafficStatistics>();
+		for (int i = 0; i < DIRECT_OPCODES; i++) {
+			Counters counters = direct.get(i);
+			if (counters != null) {
+				map.put(i, counters.snapshot(i));
+			}
+		}
+		for (Map.Entry<Integer, Counters> e : overflow.entrySet()) {
+			map.put(e.getKey(), e.getValue().snapshot(e.getKey()));
+		}
+		return Collections.unmodifiableMap(map);
+	}
+
+	/**
+	 * Gets the statistics summed over all opcodes
+	 *
+	 * @return the totals, with an opcode of -1
+	 */
+	public TrafficStatistics getTotal() {
+		TrafficStatistics total = new TrafficStatistics(-1, 0, 0, 0, 0, 0, 0);
+		for (TrafficStatistics statistics : getStatistics().values()) {
+			total = total.add(statistics);
+		}
+		return total;
+	}
+
+	private Counters getCounters(int opcode) {
+		Counters counters = findCounters(opcode);
+		if (counters == null) {
+			counters = new Counters();
+			if (opcode >= 0 && opcode < DIRECT_OPCODES) {
+				if (!direct.compareAndSet(opcode, null, counters)) {
+					counters = direct.get(opcode);
+				}
+			} else {
+				Counters oldCounters = overflow.putIfAbsent(opcode, counters);
+				if (oldCounters != null) {
+					counters = oldCounters;
+				}
+			}
+		}
+		return counters;
+	}
+
+	private Counters findCounters(int opcode) {
+		if (opcode >= 0 && opcode < DIRECT_OPCODES) {
+			return direct.get(opcode);
+		}
+		return overflow.get(opcode);
+	}
+
+	private static class Counters {
+		private final AtomicLongArray values = new AtomicLongArray(STRIPES * STRIPE_WIDTH);
+
+		public void add(int offset, int bytes, long nanos) {
+			int base = ((int) Thread.currentThread().getId() & STRIPE_MASK) * STRIPE_WIDTH + offset;
+			values.incrementAndGet(base);
+			values.addAndGet(base + 1, bytes);
+			values.addAndGet(base + 2, nanos);
+		}
+
+		private long sum(int offset) {
+			long sum = 0;
+			for (int i = 0; i < STRIPES; i++) {
+				sum += values.get(i * STRIPE_WIDTH + offset);
+			}
+			return sum;
+		}
+
+		public TrafficStatistics snapshot(int opcode) {
+			return new TrafficStatistics(opcode, sum(INBOUND_COUNT), sum(INBOUND_BYTES), sum(INBOUND_NANOS), sum(OUTBOUND_COUNT), sum(OUTBOUND_BYTES), sum(OUTBOUND_NANOS));
+		}
+	}
+}
@@ -0,0 +1,128 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, SpoutDev <http://www.spout.org/>
+ * SpoutAPI is licensed under the SpoutDev License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://www.spout.org/SpoutDevLicenseV1.txt> for the full license,
+ * including the MIT license.
+ */
+package org.spout.api.protocol;
+
+/**
+ * An immutable snapshot of the {@link TrafficMetrics} for a single opcode
+ */
+public class TrafficStatistics {
+	private final int opcode;
+	private final long inboundCount;
+	private final long inboundBytes;
+	private final long inboundNanos;
+	private final long outboundCount;
+	private final long outboundBytes;
+	private final long outboundNanos;
+
+	public TrafficStatistics(int opcode, long inboundCount, long inboundBytes, long inboundNanos, long outboundCount, long outboundBytes, long outboundNanos) {
+		this.opcode = opcode;
+		this.inboundCount = inboundCount;
+		this.inboundBytes = inboundBytes;
+		this.inboundNanos = inboundNanos;
+		this.outboundCount = outboundCount;
+		this.outboundBytes = outboundBytes;
+		this.outboundNanos = outboundNanos;
+	}
+
+	/**
+	 * Gets the opcode these statistics are for
+	 *
+	 * @return the opcode, or -1 for totals
+	 */
+	public int getOpcode() {
+		return opcode;
+	}
+
+	/**
+	 * Gets the number of messages received
+	 *
+	 * @return the number of messages
+	 */
+	public long getInboundCount() {
+		return inboundCount;
+	}
+
+	/**
+	 * Gets the number of bytes received, including headers
+	 *
+	 * @return the number of bytes
+	 */
+	public long getInboundBytes() {
+		return inboundBytes;
+	}
+
+	/**
+	 * Gets the total time spent decoding received messages
+	 *
+	 * @return the time, in nanoseconds
+	 */
+	public long getInboundNanos() {
+		return inboundNanos;
+	}
+
+	/**
+	 * Gets the number of messages sent
+	 *
+	 * @return the number of messages
+	 */
+	public long getOutboundCount() {
+		return outboundCount;
+	}
+
+	/**
+	 * Gets the number of bytes sent, including headers
+	 *
+	 * @return the number of bytes
+	 */
+	public long getOutboundBytes() {
+		return outboundBytes;
+	}
+
+	/**
+	 * Gets the total time spent encoding sent messages
+	 *
+	 * @return the time, in nanoseconds
+	 */
+	public long getOutboundNanos() {
+		return outboundNanos;
+	}
+
+	/**
+	 * Adds the counts of other statistics to these statistics.  The opcode of these statistics is kept.
+	 *
+	 * @param other the statistics to add
+	 * @return the sum
+	 */
+	public TrafficStatistics add(TrafficStatistics other) {
+		return new TrafficStatistics(opcode, inboundCount + other.inboundCount, inboundBytes + other.inboundBytes, inboundNanos + other.inboundNanos, outboundCount + other.outboundCount, outboundBytes + other.outboundBytes, outboundNanos + other.outboundNanos);
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "{opcode=" + opcode + ",in=" + inboundCount + "/" + inboundBytes + "b/" + inboundNanos + "ns,out=" + outboundCount + "/" + outboundBytes + "b/" + outboundNanos + "ns}";
+	}
+}
@@ -36,10 +36,20 @@ public class CompoundMessageField extends MessageFieldImpl {
 	private final MessageField[] fields;
 	private final MessageField[] fieldsCompressed;
 	private final int fixedLength;
+	private final int[] fixedOffsets;
 	
 	public CompoundMessageField(MessageField[] fields) {
 		this.fields = fields;
 		this.fieldsCompressed = compressFields(fields);
+		this.fixedOffsets = new int[fields.length];
+		int offset = 0;
+		for (int i = 0; i < fields.length; i++) {
+			fixedOffsets[i] = offset;
+			if (offset >= 0) {
+				int length = fields[i].getFixedLength();
+				offset = length >= 0 ? offset + length : -1;
+			}
+		}
 		if (fieldsCompressed.length == 0) {
 			fixedLength = 0;
 		} else if (fieldsCompressed.length == 1) {
@@ -127,6 +137,27 @@ public class CompoundMessageField extends MessageFieldImpl {
 		return fields.length;
 	}
 	
+	/**
+	 * Gets a sub-field of this field
+	 * 
+	 * @param index the index of the sub-field
+	 * @return the sub-field
+	 */
+	public MessageField getSubField(int index) {
+		return fields[index];
+	}
+	
+	/**
+	 * Gets the offset of a sub-field from the start of this field, if all the
+	 * sub-fields before it have a fixed length.
+	 * 
+	 * @param index the index of the sub-field
+	 * @return the offset, or -1 if it depends on the contents of the buffer
+	 */
+	public int getFixedOffset(int index) {
+		return fixedOffsets[index];
+	}
+	
 	public static MessageField[] compressFields(MessageField[] fields) {
 		List<MessageField> compressedArray = new ArrayList<MessageField>();
 		int i = 0;
@@ -36,6 +36,8 @@ import org.spout.api.protocol.MessageCodec;
 public abstract class GenericMessage<T extends Message> extends MessageCodec<T> implements Message {
 	
 	protected ChannelBuffer buffer;
+	private CompoundMessageField root;
+	private int[] offsets;
 
 	public GenericMessage(Class<T> clazz, int opcode) {
 		super(clazz, opcode);
@@ -62,61 +64,82 @@ public abstract class GenericMessage<T extends Message> extends MessageCodec<T>
 	 * Gets the field loop up table for the message
 	 *
 	 * @return
+	 * @deprecated field offsets are now computed from the field root, see {@link #getFieldOffset(int)}
 	 */
-	public abstract int[] getFieldLoopup();
+	@Deprecated
+	public int[] getFieldLoopup() {
+		int[] lookup = new int[getRoot().getSubFieldCount()];
+		for (int i = 0; i < lookup.length; i++) {
+			lookup[i] = getFieldOffset(i);
+		}
+		return lookup;
+	}
 	
 	@SuppressWarnings("unchecked")
 	public <T> T get(FieldRef<T> ref) {
-		setupBuffer(ref);
-		
-		CompoundMessageField f = getFieldRoot();
-		
-		return (T) f.read(this.buffer);	
+		int index = ref.getIndex();
+		int readerIndex = this.buffer.readerIndex();
+		this.buffer.readerIndex(getFieldOffset(index));
+		try {
+			return (T) getRoot().getSubField(index).read(this.buffer);
+		} finally {
+			this.buffer.readerIndex(readerIndex);
+		}
 	}
 	
 	public long getLong(FieldRef<Long> ref) {
-		setupBuffer(ref);
-		
-		CompoundMessageField f = getFieldRoot();
-		
-		return f.readLong(this.buffer);
+		int index = ref.getIndex();
+		return getRoot().getSubField(index).readLong(this.buffer, getFieldOffset(index));
 	}
 	
 	public int getInt(FieldRef<Integer> ref) {
-		setupBuffer(ref);
-		
-		CompoundMessageField f = getFieldRoot();
-		
-		return f.readInt(this.buffer);
+		int index = ref.getIndex();
+		return getRoot().getSubField(index).readInt(this.buffer, getFieldOffset(index));
 	}
 	
 	public short getShort(FieldRef<Integer> ref) {
-		setupBuffer(ref);
-		
-		CompoundMessageField f = getFieldRoot();
-		
-		return f.readShort(this.buffer);
+		int index = ref.getIndex();
+		return getRoot().getSubField(index).readShort(this.buffer, getFieldOffset(index));
 	}
 	
 	public byte getByte(FieldRef<Byte> ref) {
-		setupBuffer(ref);
-		
-		CompoundMessageField f = getFieldRoot();
-		
-		return f.readByte(this.buffer);
+		int index = ref.getIndex();
+		return getRoot().getSubField(index).readByte(this.buffer, getFieldOffset(index));
 	}
 	
 	public short getUnsignedByte(FieldRef<Short> ref) {
-		setupBuffer(ref);
-		
-		CompoundMessageField f = getFieldRoot();
-		
-		return f.readUnsignedByte(this.buffer);
+		int index = ref.getIndex();
+		return getRoot().getSubField(index).readUnsignedByte(this.buffer, getFieldOffset(index));
 	}
 	
-	private void setupBuffer(FieldRef<?> ref) {
-		int index = ref.getIndex();
-		this.buffer.readerIndex(getFieldLoopup()[index]);
+	/**
+	 * Gets the index of a field in the message buffer.<br>
+	 * <br>
+	 * Fields which are only preceded by fixed length fields have offsets computed once
+	 * for the message type.  The offsets of other fields are found by parsing the buffer
+	 * once and are then cached.
+	 * 
+	 * @param index the index of the field
+	 * @return the index of the start of the field in the buffer
+	 */
+	protected int getFieldOffset(int index) {
+		CompoundMessageField root = getRoot();
+		int offset = root.getFixedOffset(index);
+		if (offset >= 0) {
+			return offset;
+		}
+		int[] offsets = this.offsets;
+		if (offsets == null) {
+			offsets = new int[root.getSubFieldCount()];
+			root.skip(this.buffer.slice(0, this.buffer.writerIndex()), offsets);
+			this.offsets = offsets;
+		}
+		return offsets[index];
+	}
+	
+	private CompoundMessageField getRoot() {
+		CompoundMessageField root = this.root;
+		return root == null ? getFieldRoot() : root;
 	}
 	
 	@Override
@@ -134,6 +157,9 @@ public abstract class GenericMessage<T extends Message> extends MessageCodec<T>
 		int length = root.skip(b, indexArray);
 		this.buffer = ChannelBuffers.buffer(length);
 		b.getBytes(start, this.buffer, 0, length);
+		this.buffer.writerIndex(length);
+		this.root = root;
+		this.offsets = indexArray;
 		return (T) this;
 	}
 
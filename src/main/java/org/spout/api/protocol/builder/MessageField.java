@@ -109,6 +109,51 @@ public interface MessageField {
 	 */
 	public short readUnsignedByte(ChannelBuffer buffer);
 	
+	/**
+	 * Reads a long field at the given index without moving the read pointer
+	 * 
+	 * @param buffer
+	 * @param index the index of the start of the field
+	 * @return
+	 */
+	public long readLong(ChannelBuffer buffer, int index);
+	
+	/**
+	 * Reads an int field at the given index without moving the read pointer
+	 * 
+	 * @param buffer
+	 * @param index the index of the start of the field
+	 * @return
+	 */
+	public int readInt(ChannelBuffer buffer, int index);
+	
+	/**
+	 * Reads a short field at the given index without moving the read pointer
+	 * 
+	 * @param buffer
+	 * @param index the index of the start of the field
+	 * @return
+	 */
+	public short readShort(ChannelBuffer buffer, int index);
+	
+	/**
+	 * Reads a byte field at the given index without moving the read pointer
+	 * 
+	 * @param buffer
+	 * @param index the index of the start of the field
+	 * @return
+	 */
+	public byte readByte(ChannelBuffer buffer, int index);
+	
+	/**
+	 * Reads an unsigned byte field at the given index without moving the read pointer
+	 * 
+	 * @param buffer
+	 * @param index the index of the start of the field
+	 * @return
+	 */
+	public short readUnsignedByte(ChannelBuffer buffer, int index);
+	
 	/**
 	 * Writes a field to the buffer
 	 * 
@@ -61,6 +61,61 @@ public abstract class MessageFieldImpl implements MessageField {
 		throw new UnsupportedOperationException("This field does not support unsigned byte read");
 	}
 	
+	@Override
+	public long readLong(ChannelBuffer buffer, int index) {
+		int readerIndex = buffer.readerIndex();
+		buffer.readerIndex(index);
+		try {
+			return readLong(buffer);
+		} finally {
+			buffer.readerIndex(readerIndex);
+		}
+	}
+	
+	@Override
+	public int readInt(ChannelBuffer buffer, int index) {
+		int readerIndex = buffer.readerIndex();
+		buffer.readerIndex(index);
+		try {
+			return readInt(buffer);
+		} finally {
+			buffer.readerIndex(readerIndex);
+		}
+	}
+	
+	@Override
+	public short readShort(ChannelBuffer buffer, int index) {
+		int readerIndex = buffer.readerIndex();
+		buffer.readerIndex(index);
+		try {
+			return readShort(buffer);
+		} finally {
+			buffer.readerIndex(readerIndex);
+		}
+	}
+	
+	@Override
+	public byte readByte(ChannelBuffer buffer, int index) {
+		int readerIndex = buffer.readerIndex();
+		buffer.readerIndex(index);
+		try {
+			return readByte(buffer);
+		} finally {
+			buffer.readerIndex(readerIndex);
+		}
+	}
+	
+	@Override
+	public short readUnsignedByte(ChannelBuffer buffer, int index) {
+		int readerIndex = buffer.readerIndex();
+		buffer.readerIndex(index);
+		try {
+			return readUnsignedByte(buffer);
+		} finally {
+			buffer.readerIndex(readerIndex);
+		}
+	}
+	
 	@Override
 	public void writeLong(ChannelBuffer buffer, long value) {
 		throw new UnsupportedOperationException("This field does not support long write");
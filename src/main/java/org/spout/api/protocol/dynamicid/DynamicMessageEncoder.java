@@ -40,9 +40,11 @@ import org.spout.api.protocol.Session;
  * Process dynamically registered messages before sending them to give extra usefulness
  */
 public class DynamicMessageEncoder extends OneToOneEncoder {
+	private volatile boolean direct = false;
+
 	@Override
 	protected Object encode(ChannelHandlerContext ctx, Channel channel, Object o) throws Exception {
-		if (o instanceof Message) {
+		if (!direct && o instanceof Message) {
 			Session session = ctx.getPipeline().get(CommonHandler.class).getSession();
 			if (session != null) {
 				Protocol protocol = session.getProtocol();
@@ -54,4 +56,41 @@ public class DynamicMessageEncoder extends OneToOneEncoder {
 		}
 		return o;
 	}
+
+	/**
+	 * Sets if dynamically registered messages are sent as they are, rather than wrapped by the protocol.<br>
+	 * <br>
+	 * This should only be enabled once the remote end has installed the same dynamic ids, see
+	 * {@link Protocol#installDynamicPackets(java.util.List)}.
+	 *
+	 * @param direct true to send dynamic messages without wrapping
+	 */
+	public void setDirect(boolean direct) {
+		this.direct = direct;
+	}
+
+	/**
+	 * Gets if dynamically registered messages are sent without wrapping
+	 *
+	 * @return true if messages are not wrapped
+	 */
+	public boolean isDirect() {
+		return direct;
+	}
+
+	/**
+	 * Sets if dynamically registered messages are sent without wrapping on a channel
+	 *
+	 * @param channel the channel
+	 * @param direct true to send dynamic messages without wrapping
+	 * @return false if the channel has no dynamic message encoder
+	 */
+	public static boolean setDirect(Channel channel, boolean direct) {
+		DynamicMessageEncoder encoder = channel.getPipeline().get(DynamicMessageEncoder.class);
+		if (encoder == null) {
+			return false;
+		}
+		encoder.setDirect(direct);
+		return true;
+	}
 }
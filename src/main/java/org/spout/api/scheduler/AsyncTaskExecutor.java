@@ -0,0 +1,333 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, SpoutDev <http://www.spout.org/>
+ * SpoutAPI is licensed under the SpoutDev License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://www.spout.org/SpoutDevLicenseV1.txt> for the full license,
+ * including the MIT license.
+ */
+package org.spout.api.scheduler;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+
+import org.spout.api.Spout;
+
+/**
+ * Runs async tasks, either on a new virtual thread for each task, or on a bounded pool of platform threads.<br>
+ * <br>
+ * Virtual threads are used when the JVM supports them, so that async tasks which block on I/O do not hold an OS
+ * thread each. On older JVMs, tasks are queued for a fixed size pool of daemon threads instead.<br>
+ * <br>
+ * Each task is given a {@link Worker}. In virtual mode, {@link Worker#getThread()} returns the task's own thread as
+ * soon as it is submitted. In pooled mode, it returns null until a pool thread picks the task up, and again once the
+ * task has completed, as the pool thread goes on to run other tasks.
+ */
+public class AsyncTaskExecutor {
+	private static final Method OF_VIRTUAL;
+	private static final Method BUILDER_NAME;
+	private static final Method BUILDER_FACTORY;
+
+	static {
+		Method ofVirtual = null;
+		Method name = null;
+		Method factory = null;
+		try {
+			// Thread.ofVirtual().name(prefix, start).factory(), looked up reflectively so this still loads on older JVMs
+			Class<?> builder = Class.forName("java.lang.Thread$Builder");
+			ofVirtual = Thread.class.getMethod("ofVirtual");
+			name = builder.getMethod("name", String.class, long.class);
+			factory = builder.getMethod("factory");
+			// Virtual threads are a preview feature on some JVMs, in which case this throws
+			ofVirtual.invoke(null);
+		} catch (Throwable t) {
+			ofVirtual = null;
+		}
+		OF_VIRTUAL = ofVirtual;
+		BUILDER_NAME = name;
+		BUILDER_FACTORY = factory;
+	}
+
+	private final String name;
+	private final ThreadFactory virtualFactory;
+	private final ThreadPoolExecutor pool;
+	private final Set<AsyncWorker> active = Collections.newSetFromMap(new ConcurrentHashMap<AsyncWorker, Boolean>());
+	private final AtomicInteger queued = new AtomicInteger(0);
+	private final AtomicInteger pending = new AtomicInteger(0);
+	private volatile boolean shutdown = false;
+
+	/**
+	 * Creates an executor which uses virtual threads if they are supported
+	 *
+	 * @param name the prefix for the names of the threads
+	 * @param poolSize the number of threads in the pool, if virtual threads are not supported
+	 */
+	public AsyncTaskExecutor(String name, int poolSize) {
+		this(name, poolSize, true);
+	}
+
+	/**
+	 * Creates an executor
+	 *
+	 * @param name the prefix for the names of the threads
+	 * @param poolSize the number of threads in the pool, if virtual threads are not used
+	 * @param allowVirtual true to use virtual threads if they are supported
+	 */
+	public AsyncTaskExecutor(final String name, int poolSize, boolean allowVirtual) {
+		if (poolSize < 1) {
+			throw new IllegalArgumentException("Pool size must be positive");
+		}
+		this.name = name;
+		ThreadFactory factory = allowVirtual ? createVirtualFactory(name + " - ") : null;
+		if (factory != null) {
+			virtualFactory = factory;
+			pool = null;
+		} else {
+			virtualFactory = null;
+			pool = new ThreadPoolExecutor(poolSize, poolSize, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+				private final AtomicInteger threadCount = new AtomicInteger(0);
+
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, name + " - " + threadCount.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+			pool.allowCoreThreadTimeOut(true);
+		}
+	}
+
+	/**
+	 * Gets if the JVM supports virtual threads
+	 *
+	 * @return true if virtual threads are supported
+	 */
+	public static boolean isVirtualThreadSupported() {
+		return OF_VIRTUAL != null;
+	}
+
+	/**
+	 * Gets if this executor runs each task on its own virtual thread
+	 *
+	 * @return true for virtual threads, false for a platform thread pool
+	 */
+	public boolean isVirtual() {
+		return virtualFactory != null;
+	}
+
+	/**
+	 * Submits a task to be run
+	 *
+	 * @param task the scheduler task
+	 * @param runnable the code to run for the task
+	 * @return the worker for the task
+	 * @throws RejectedExecutionException if the executor has been shut down
+	 */
+	public Worker execute(Task task, Runnable runnable) {
+		if (shutdown) {
+			throw new RejectedExecutionException("Async executor " + name + " has been shut down");
+		}
+		AsyncWorker worker = new AsyncWorker(task, runnable);
+		pending.incrementAndGet();
+		queued.incrementAndGet();
+		try {
+			if (virtualFactory != null) {
+				Thread thread = virtualFactory.newThread(worker);
+				worker.thread = thread;
+				thread.start();
+			} else {
+				pool.execute(worker);
+			}
+		} catch (RuntimeException e) {
+			queued.decrementAndGet();
+			finished();
+			throw e;
+		}
+		return worker;
+	}
+
+	/**
+	 * Gets the workers for the tasks which are currently running
+	 *
+	 * @return the active workers
+	 */
+	public List<Worker> getActiveWorkers() {
+		return new ArrayList<Worker>(active);
+	}
+
+	/**
+	 * Gets the number of tasks which are currently running, including those which are blocked
+	 *
+	 * @return the number of active tasks
+	 */
+	public int getActiveCount() {
+		return active.size();
+	}
+
+	/**
+	 * Gets the number of running tasks which are blocked, waiting or sleeping.<br>
+	 * <br>
+	 * In virtual mode, these tasks do not hold an OS thread.
+	 *
+	 * @return the number of parked tasks
+	 */
+	public int getParkedCount() {
+		int parked = 0;
+		for (AsyncWorker worker : active) {
+			Thread thread = worker.thread;
+			if (thread != null) {
+				switch (thread.getState()) {
+					case BLOCKED:
+					case WAITING:
+					case TIMED_WAITING:
+						parked++;
+						break;
+					default:
+						break;
+				}
+			}
+		}
+		return parked;
+	}
+
+	/**
+	 * Gets the number of tasks which have been submitted but have not started
+	 *
+	 * @return the number of queued tasks
+	 */
+	public int getQueuedCount() {
+		return queued.get();
+	}
+
+	/**
+	 * Stops accepting new tasks.  Tasks which have already been submitted are still run.
+	 */
+	public void shutdown() {
+		shutdown = true;
+		if (pool != null) {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Waits for all the submitted tasks to complete, after a shutdown
+	 *
+	 * @param timeout the maximum time to wait, in ms
+	 * @return true if all tasks completed
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public boolean awaitTermination(long timeout) throws InterruptedException {
+		long end = System.currentTimeMillis() + timeout;
+		synchronized (pending) {
+			while (pending.get() > 0) {
+				long remaining = end - System.currentTimeMillis();
+				if (remaining <= 0) {
+					return false;
+				}
+				pending.wait(remaining);
+			}
+		}
+		return true;
+	}
+
+	private void finished() {
+		if (pending.decrementAndGet() == 0) {
+			synchronized (pending) {
+				pending.notifyAll();
+			}
+		}
+	}
+
+	private static ThreadFactory createVirtualFactory(String prefix) {
+		if (OF_VIRTUAL == null) {
+			return null;
+		}
+		try {
+			Object builder = OF_VIRTUAL.invoke(null);
+			builder = BUILDER_NAME.invoke(builder, prefix, 1L);
+			return (ThreadFactory) BUILDER_FACTORY.invoke(builder);
+		} catch (Throwable t) {
+			Spout.getLogger().log(Level.WARNING, "Unable to create virtual thread factory, falling back to a thread pool", t);
+			return null;
+		}
+	}
+
+	private class AsyncWorker implements Worker, Runnable {
+		private final Task task;
+		private final Runnable runnable;
+		private volatile Thread thread;
+
+		public AsyncWorker(Task task, Runnable runnable) {
+			this.task = task;
+			this.runnable = runnable;
+		}
+
+		@Override
+		public void run() {
+			queued.decrementAndGet();
+			thread = Thread.currentThread();
+			active.add(this);
+			try {
+				runnable.run();
+			} catch (Throwable t) {
+				Spout.getLogger().log(Level.SEVERE, "Exception in async task " + task.getTaskId() + " owned by " + task.getOwner(), t);
+			} finally {
+				if (virtualFactory == null) {
+					thread = null;
+				}
+				active.remove(this);
+				finished();
+			}
+		}
+
+		@Override
+		public int getTaskId() {
+			return task.getTaskId();
+		}
+
+		@Override
+		public Object getOwner() {
+			return task.getOwner();
+		}
+
+		@Override
+		public Thread getThread() {
+			return thread;
+		}
+
+		@Override
+		public Task getTask() {
+			return task;
+		}
+	}
+}
@@ -0,0 +1,293 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, SpoutDev <http://www.spout.org/>
+ * SpoutAPI is licensed under the SpoutDev License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://www.spout.org/SpoutDevLicenseV1.txt> for the full license,
+ * including the MIT license.
+ */
+package org.spout.api.scheduler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+
+import org.spout.api.Spout;
+
+/**
+ * Runs sync tasks in priority order, within a time budget for each tick.<br>
+ * <br>
+ * Tasks may be submitted from any thread. Each call to {@link #runTasks} runs the queued tasks with the lowest
+ * {@link TaskPriority#getMaxDeferred()} first, until the budget is spent. After that, only tasks which have been
+ * waiting for their full deferral window are run, and the rest are left for a later tick. {@link TaskPriority#CRITICAL}
+ * tasks can never be deferred. Under a lag spike, low priority work is pushed back instead of extending the overrun.<br>
+ * <br>
+ * Tasks submitted while the queue is being run wait for the next call.
+ */
+public class BudgetedTaskExecutor {
+	private final ConcurrentMap<TaskPriority, PriorityQueue> queues = new ConcurrentHashMap<TaskPriority, PriorityQueue>();
+	/**
+	 * The queues sorted by max deferral, replaced when a new priority is first used
+	 */
+	private volatile PriorityQueue[] sorted = new PriorityQueue[0];
+
+	/**
+	 * Queues a task
+	 *
+	 * @param task the task to run
+	 * @param priority the priority of the task
+	 */
+	public void submit(Runnable task, TaskPriority priority) {
+		getQueue(priority).add(task, System.currentTimeMillis());
+	}
+
+	/**
+	 * Runs the queued tasks, using the remaining time of the scheduler's current tick as the budget
+	 *
+	 * @param scheduler the scheduler
+	 * @return the number of tasks run
+	 */
+	public int runTasks(Scheduler scheduler) {
+		return runTasks(System.currentTimeMillis(), scheduler.getRemainingTickTime() * 1000000L);
+	}
+
+	/**
+	 * Runs the queued tasks
+	 *
+	 * @param now the current time, in ms, used to check if tasks have reached their deferral limit
+	 * @param budget the time available, in nanoseconds
+	 * @return the number of tasks run
+	 */
+	public int runTasks(long now, long budget) {
+		long end = System.nanoTime() + budget;
+		int run = 0;
+		for (PriorityQueue queue : sorted) {
+			// Only run the tasks queued before this call, so a task which queues itself can not starve the tick
+			int limit = queue.depth.get();
+			for (int i = 0; i < limit; i++) {
+				Entry entry = queue.tasks.peek();
+				if (entry == null) {
+					break;
+				}
+				boolean overdue = now - entry.submitted >= queue.maxDeferred;
+				if (!overdue && System.nanoTime() >= end) {
+					// Tasks are in submission order, so none of the rest of this queue are overdue either
+					queue.deferrals.incrementAndGet();
+					break;
+				}
+				if (queue.tasks.poll() != entry) {
+					break;
+				}
+				queue.depth.decrementAndGet();
+				queue.record(now - entry.submitted);
+				try {
+					entry.task.run();
+				} catch (Throwable t) {
+					Spout.getLogger().log(Level.SEVERE, "Exception while running budgeted task", t);
+				}
+				run++;
+			}
+		}
+		return run;
+	}
+
+	/**
+	 * Gets the number of tasks waiting to be run
+	 *
+	 * @return the number of queued tasks
+	 */
+	public int getQueuedTasks() {
+		int queued = 0;
+		for (PriorityQueue queue : sorted) {
+			queued += queue.depth.get();
+		}
+		return queued;
+	}
+
+	/**
+	 * Gets the statistics for each priority which has been used, sorted by max deferral
+	 *
+	 * @return the statistics
+	 */
+	public List<PriorityStatistics> getStatistics() {
+		List<PriorityStatistics> list = new ArrayList<PriorityStatistics>();
+		for (PriorityQueue queue : sorted) {
+			list.add(queue.snapshot());
+		}
+		return Collections.unmodifiableList(list);
+	}
+
+	private PriorityQueue getQueue(TaskPriority priority) {
+		PriorityQueue queue = queues.get(priority);
+		if (queue == null) {
+			synchronized (queues) {
+				queue = queues.get(priority);
+				if (queue == null) {
+					queue = new PriorityQueue(priority);
+					queues.put(priority, queue);
+					PriorityQueue[] newSorted = Arrays.copyOf(sorted, sorted.length + 1);
+					newSorted[sorted.length] = queue;
+					Arrays.sort(newSorted, new Comparator<PriorityQueue>() {
+						@Override
+						public int compare(PriorityQueue a, PriorityQueue b) {
+							return a.maxDeferred < b.maxDeferred ? -1 : (a.maxDeferred == b.maxDeferred ? 0 : 1);
+						}
+					});
+					sorted = newSorted;
+				}
+			}
+		}
+		return queue;
+	}
+
+	private static class Entry {
+		private final Runnable task;
+		private final long submitted;
+
+		public Entry(Runnable task, long submitted) {
+			this.task = task;
+			this.submitted = submitted;
+		}
+	}
+
+	private static class PriorityQueue {
+		private final TaskPriority priority;
+		private final long maxDeferred;
+		private final Queue<Entry> tasks = new ConcurrentLinkedQueue<Entry>();
+		private final AtomicInteger depth = new AtomicInteger(0);
+		private final AtomicLong executed = new AtomicLong(0);
+		private final AtomicLong deferrals = new AtomicLong(0);
+		private final AtomicLong totalLatency = new AtomicLong(0);
+		private final AtomicLong maxLatency = new AtomicLong(0);
+
+		public PriorityQueue(TaskPriority priority) {
+			this.priority = priority;
+			this.maxDeferred = priority.getMaxDeferred();
+		}
+
+		public void add(Runnable task, long now) {
+			tasks.add(new Entry(task, now));
+			depth.incrementAndGet();
+		}
+
+		public void record(long latency) {
+			executed.incrementAndGet();
+			totalLatency.addAndGet(latency);
+			long max = maxLatency.get();
+			while (latency > max && !maxLatency.compareAndSet(max, latency)) {
+				max = maxLatency.get();
+			}
+		}
+
+		public PriorityStatistics snapshot() {
+			return new PriorityStatistics(priority, depth.get(), executed.get(), deferrals.get(), totalLatency.get(), maxLatency.get());
+		}
+	}
+
+	/**
+	 * A snapshot of the queue for one task priority
+	 */
+	public static class PriorityStatistics {
+		private final TaskPriority priority;
+		private final int queued;
+		private final long executed;
+		private final long deferrals;
+		private final long totalLatency;
+		private final long maxLatency;
+
+		public PriorityStatistics(TaskPriority priority, int queued, long executed, long deferrals, long totalLatency, long maxLatency) {
+			this.priority = priority;
+			this.queued = queued;
+			this.executed = executed;
+			this.deferrals = deferrals;
+			this.totalLatency = totalLatency;
+			this.maxLatency = maxLatency;
+		}
+
+		/**
+		 * Gets the task priority
+		 *
+		 * @return the priority
+		 */
+		public TaskPriority getPriority() {
+			return priority;
+		}
+
+		/**
+		 * Gets the number of tasks waiting to be run
+		 *
+		 * @return the queue depth
+		 */
+		public int getQueued() {
+			return queued;
+		}
+
+		/**
+		 * Gets the number of tasks which have been run
+		 *
+		 * @return the number of tasks run
+		 */
+		public long getExecuted() {
+			return executed;
+		}
+
+		/**
+		 * Gets the number of ticks which ended with tasks of this priority deferred
+		 *
+		 * @return the number of deferrals
+		 */
+		public long getDeferrals() {
+			return deferrals;
+		}
+
+		/**
+		 * Gets the average time between a task being submitted and being run
+		 *
+		 * @return the average latency, in ms
+		 */
+		public double getAverageLatency() {
+			return executed == 0 ? 0 : totalLatency / (double) executed;
+		}
+
+		/**
+		 * Gets the longest time between a task being submitted and being run
+		 *
+		 * @return the maximum latency, in ms
+		 */
+		public long getMaxLatency() {
+			return maxLatency;
+		}
+
+		@Override
+		public String toString() {
+			return "maxDeferred " + priority.getMaxDeferred() + "ms: " + queued + " queued, " + executed + " run, " + deferrals + " deferrals, latency avg " + getAverageLatency() + "ms max " + maxLatency + "ms";
+		}
+	}
+}
@@ -63,4 +63,15 @@ public interface Scheduler extends TaskManager {
 	 */
 	@Threadsafe
 	public boolean isServerLoaded();
+
+	/**
+	 * Gets the profiler which records the time spent in each tick stage, the time per region and the tick duration histogram.<br>
+	 * <br>
+	 * The scheduler creates the profiler, with an overrun threshold matching its tick length, and installs it with
+	 * {@link TickStage#setProfiler(TickProfiler)} so that stage changes are recorded.
+	 *
+	 * @return the tick profiler
+	 */
+	@Threadsafe
+	public TickProfiler getTickProfiler();
 }
@@ -0,0 +1,330 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, SpoutDev <http://www.spout.org/>
+ * SpoutAPI is licensed under the SpoutDev License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://www.spout.org/SpoutDevLicenseV1.txt> for the full license,
+ * including the MIT license.
+ */
+package org.spout.api.scheduler;
+
+import java.util.Arrays;
+
+import org.spout.api.math.MathHelper;
+
+/**
+ * A hashed timing wheel of scheduled tasks, with a resolution of one scheduler tick.<br>
+ * <br>
+ * Tasks are stored in pooled entries held in parallel arrays, so scheduling, cancelling and expiring a task are
+ * constant time and a steady state of scheduled tasks does not allocate.  Each call to {@link #advance} collects
+ * all the tasks which expire in a tick as one batch.  Tasks which expire in the same tick are passed to the handler
+ * in the order they were scheduled.<br>
+ * <br>
+ * When the tick is overloaded, tasks which may be deferred according to their {@link TaskPriority#getMaxDeferred()}
+ * are moved to later ticks instead of being run. Deferred tasks are spread over the rest of their deferral window,
+ * so they do not all expire together once the load drops. Critical tasks, and tasks which have reached their
+ * deferral limit, always run.<br>
+ * <br>
+ * Tasks may be scheduled and cancelled from any thread.  The wheel should only be advanced by the scheduler thread.
+ */
+public class TaskWheel<T> {
+	private static final int NONE = -1;
+	private static final int FREE = -2;
+	private static final int EXPIRED = -3;
+
+	private final long resolution;
+	private final int mask;
+	private final int[] heads;
+	private final int[] tails;
+	private long currentTick;
+
+	private int[] next;
+	private int[] prev;
+	private int[] slot;
+	private int[] rounds;
+	private int[] generation;
+	private long[] dueTimes;
+	private long[] maxDeferred;
+	private Object[] tasks;
+	private int freeHead = NONE;
+	private int allocated = 0;
+	private int size = 0;
+	private long deferred = 0;
+
+	private Object[] batchTasks = new Object[16];
+	private long[] batchDue = new long[16];
+
+	/**
+	 * Creates a new wheel
+	 *
+	 * @param startTime the current time, in ms
+	 * @param resolution the length of a tick, in ms
+	 * @param slots the number of slots in the wheel, rounded up to a power of 2
+	 */
+	public TaskWheel(long startTime, long resolution, int slots) {
+		if (resolution <= 0 || slots <= 0) {
+			throw new IllegalArgumentException("Resolution and slot count must be positive");
+		}
+		this.resolution = resolution;
+		int size = MathHelper.roundUpPow2(slots);
+		this.mask = size - 1;
+		this.heads = new int[size];
+		this.tails = new int[size];
+		Arrays.fill(heads, NONE);
+		Arrays.fill(tails, NONE);
+		this.currentTick = startTime / resolution;
+		grow(64);
+	}
+
+	/**
+	 * Schedules a task
+	 *
+	 * @param task the task
+	 * @param time the time the task is due, in ms.  Tasks which are already due expire on the next tick
+	 * @param priority the priority of the task, which sets how long it may be deferred under load
+	 * @return a handle which can be used to cancel the task
+	 */
+	public synchronized long schedule(T task, long time, TaskPriority priority) {
+		int index = allocate();
+		tasks[index] = task;
+		dueTimes[index] = time;
+		maxDeferred[index] = priority == null ? 0 : priority.getMaxDeferred();
+		// Round up, so a task never expires before it is due
+		insert(index, (time + resolution - 1) / resolution);
+		size++;
+		return ((long) index << 32) | (generation[index] & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * Cancels a scheduled task
+	 *
+	 * @param handle the handle returned when the task was scheduled
+	 * @return true if the task was cancelled, false if it has already expired or been cancelled
+	 */
+	public synchronized boolean cancel(long handle) {
+		int index = (int) (handle >>> 32);
+		if (index < 0 || index >= allocated || generation[index] != (int) handle || slot[index] < 0) {
+			return false;
+		}
+		unlink(index);
+		free(index);
+		size--;
+		return true;
+	}
+
+	/**
+	 * Checks if a task is still scheduled
+	 *
+	 * @param handle the handle returned when the task was scheduled
+	 * @return true if the task is scheduled
+	 */
+	public synchronized boolean isScheduled(long handle) {
+		int index = (int) (handle >>> 32);
+		return index >= 0 && index < allocated && generation[index] == (int) handle && slot[index] >= 0;
+	}
+
+	/**
+	 * Advances the wheel to the given time, passing the tasks which expire to the handler.<br>
+	 * <br>
+	 * The handler is called without holding the wheel's lock, so it may schedule or cancel tasks.
+	 *
+	 * @param time the current time, in ms
+	 * @param overloaded true if the tick is overloaded and deferrable tasks should be moved to later ticks
+	 * @param handler the handler for expired tasks
+	 * @return the number of tasks which expired
+	 */
+	@SuppressWarnings("unchecked")
+	public int advance(long time, boolean overloaded, Handler<? super T> handler) {
+		int count = collect(time, overloaded);
+		try {
+			for (int i = 0; i < count; i++) {
+				handler.onExpire((T) batchTasks[i], batchDue[i]);
+			}
+		} finally {
+			Arrays.fill(batchTasks, 0, count, null);
+		}
+		return count;
+	}
+
+	private synchronized int collect(long time, boolean overloaded) {
+		int count = 0;
+		long targetTick = time / resolution;
+		while (currentTick < targetTick) {
+			currentTick++;
+			int s = (int) currentTick & mask;
+			// Deferred tasks may be appended to this slot for a later round, so stop at the current tail
+			int last = tails[s];
+			int index = last == NONE ? NONE : heads[s];
+			while (index != NONE) {
+				int nextIndex = index == last ? NONE : next[index];
+				if (rounds[index] > 0) {
+					rounds[index]--;
+				} else {
+					unlink(index);
+					long deadline = dueTimes[index] + maxDeferred[index];
+					long remainingTicks = deadline / resolution - currentTick;
+					if (overloaded && remainingTicks > 0) {
+						// Spread deferred tasks over the rest of their window, by entry index
+						long offset = 1 + index % Math.min(remainingTicks, (long) mask + 1);
+						insert(index, currentTick + offset);
+						deferred++;
+					} else {
+						if (count == batchTasks.length) {
+							batchTasks = Arrays.copyOf(batchTasks, count << 1);
+							batchDue = Arrays.copyOf(batchDue, count << 1);
+						}
+						batchTasks[count] = tasks[index];
+						batchDue[count] = dueTimes[index];
+						count++;
+						free(index);
+						size--;
+					}
+				}
+				index = nextIndex;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Gets the number of scheduled tasks
+	 *
+	 * @return the number of tasks
+	 */
+	public synchronized int size() {
+		return size;
+	}
+
+	/**
+	 * Gets the number of times a task has been deferred to a later tick because the tick was overloaded
+	 *
+	 * @return the number of deferrals
+	 */
+	public synchronized long getDeferredCount() {
+		return deferred;
+	}
+
+	/**
+	 * Gets the last tick which was processed
+	 *
+	 * @return the current tick
+	 */
+	public synchronized long getCurrentTick() {
+		return currentTick;
+	}
+
+	/**
+	 * Cancels all scheduled tasks
+	 */
+	public synchronized void clear() {
+		for (int s = 0; s < heads.length; s++) {
+			int index = heads[s];
+			while (index != NONE) {
+				int nextIndex = next[index];
+				free(index);
+				index = nextIndex;
+			}
+			heads[s] = NONE;
+			tails[s] = NONE;
+		}
+		size = 0;
+	}
+
+	private void insert(int index, long tick) {
+		tick = Math.max(tick, currentTick + 1);
+		int s = (int) tick & mask;
+		long r = (tick - currentTick - 1) / (mask + 1);
+		rounds[index] = r > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) r;
+		slot[index] = s;
+		// Append, so tasks which expire in the same tick keep their scheduling order
+		next[index] = NONE;
+		prev[index] = tails[s];
+		if (tails[s] == NONE) {
+			heads[s] = index;
+		} else {
+			next[tails[s]] = index;
+		}
+		tails[s] = index;
+	}
+
+	private void unlink(int index) {
+		int s = slot[index];
+		if (prev[index] == NONE) {
+			heads[s] = next[index];
+		} else {
+			next[prev[index]] = next[index];
+		}
+		if (next[index] == NONE) {
+			tails[s] = prev[index];
+		} else {
+			prev[next[index]] = prev[index];
+		}
+		slot[index] = EXPIRED;
+	}
+
+	private int allocate() {
+		if (freeHead == NONE) {
+			grow(allocated << 1);
+		}
+		int index = freeHead;
+		freeHead = next[index];
+		return index;
+	}
+
+	private void free(int index) {
+		tasks[index] = null;
+		slot[index] = FREE;
+		generation[index]++;
+		next[index] = freeHead;
+		freeHead = index;
+	}
+
+	private void grow(int capacity) {
+		int old = allocated;
+		next = Arrays.copyOf(next == null ? new int[0] : next, capacity);
+		prev = Arrays.copyOf(prev == null ? new int[0] : prev, capacity);
+		slot = Arrays.copyOf(slot == null ? new int[0] : slot, capacity);
+		rounds = Arrays.copyOf(rounds == null ? new int[0] : rounds, capacity);
+		generation = Arrays.copyOf(generation == null ? new int[0] : generation, capacity);
+		dueTimes = Arrays.copyOf(dueTimes == null ? new long[0] : dueTimes, capacity);
+		maxDeferred = Arrays.copyOf(maxDeferred == null ? new long[0] : maxDeferred, capacity);
+		tasks = Arrays.copyOf(tasks == null ? new Object[0] : tasks, capacity);
+		for (int i = capacity - 1; i >= old; i--) {
+			slot[i] = FREE;
+			next[i] = freeHead;
+			freeHead = i;
+		}
+		allocated = capacity;
+	}
+
+	/**
+	 * Receives the tasks which expire as the wheel advances
+	 */
+	public static interface Handler<T> {
+		/**
+		 * Called for each task which expires, in tick order and, within a tick, in the order the tasks were scheduled
+		 *
+		 * @param task the task
+		 * @param dueTime the time the task was scheduled for
+		 */
+		public void onExpire(T task, long dueTime);
+	}
+}
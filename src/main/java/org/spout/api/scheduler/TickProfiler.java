@@ -0,0 +1,529 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, SpoutDev <http://www.spout.org/>
+ * SpoutAPI is licensed under the SpoutDev License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://www.spout.org/SpoutDevLicenseV1.txt> for the full license,
+ * including the MIT license.
+ */
+package org.spout.api.scheduler;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.spout.api.geo.cuboid.Region;
+
+import com.google.common.collect.MapMaker;
+
+/**
+ * Records the wall time spent in each {@link TickStage}, for each tick.<br>
+ * <br>
+ * The last ticks are kept in a fixed size ring buffer, along with the time each region contributed to them, and a
+ * histogram of all tick durations is maintained. When a tick takes longer than the overrun threshold, the ticks
+ * before and after it are captured in an {@link OverrunDump}, so that lag spikes can be diagnosed after the fact.<br>
+ * <br>
+ * The profiler is owned and configured by the {@link Scheduler}, which installs it with
+ * {@link TickStage#setProfiler(TickProfiler)}. Stage changes are then recorded by {@link TickStage#setStage(int)} and
+ * the end of each tick by {@link TickStage#endTick()}. Region time may be recorded from any thread.
+ */
+public class TickProfiler {
+	/**
+	 * The number of tick stages which are recorded, from {@link TickStage#TICKSTART} to {@link TickStage#SNAPSHOT}
+	 */
+	public static final int STAGES = Integer.numberOfTrailingZeros(TickStage.SNAPSHOT) + 1;
+	/**
+	 * The number of histogram buckets.  Bucket 0 counts ticks under 1ms, bucket n counts ticks from 2^(n-1) ms up to
+	 * 2^n ms, and the last bucket counts all longer ticks.
+	 */
+	public static final int HISTOGRAM_BUCKETS = 12;
+	private static final int MAX_DUMPS = 8;
+
+	private final TickRecord[] ring;
+	private final int mask;
+	private final long[] histogram = new long[HISTOGRAM_BUCKETS];
+	private final int dumpBefore;
+	private final int dumpAfter;
+	private long overrunThreshold;
+	private long completedTicks = 0;
+
+	private boolean inTick = false;
+	private long tickNumber;
+	private long tickStartMillis;
+	private long tickStartNanos;
+	private int stageIndex = -1;
+	private long stageStartNanos;
+	private long[] stageNanos = new long[STAGES];
+	private volatile ConcurrentMap<RegionKey, AtomicLong> regionNanos = new ConcurrentHashMap<RegionKey, AtomicLong>();
+	private final ConcurrentMap<Region, RegionTotal> regionTotals = new MapMaker().weakKeys().<Region, RegionTotal>makeMap();
+
+	private OverrunDump pendingDump = null;
+	private final LinkedList<OverrunDump> dumps = new LinkedList<OverrunDump>();
+
+	/**
+	 * Creates a profiler
+	 *
+	 * @param capacity the number of ticks to keep, rounded up to a power of 2
+	 * @param overrunThreshold the tick duration, in ms, above which a tick is considered an overrun
+	 * @param dumpBefore the number of ticks before an overrun to include in its dump
+	 * @param dumpAfter the number of ticks after an overrun to include in its dump
+	 */
+	public TickProfiler(int capacity, long overrunThreshold, int dumpBefore, int dumpAfter) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("Capacity must be positive");
+		}
+		int size = Integer.highestOneBit(capacity);
+		if (size < capacity) {
+			size <<= 1;
+		}
+		if (dumpBefore < 0 || dumpAfter < 0 || dumpBefore >= size) {
+			throw new IllegalArgumentException("Dump sizes must be non-negative and less than the capacity");
+		}
+		this.ring = new TickRecord[size];
+		this.mask = size - 1;
+		this.dumpBefore = dumpBefore;
+		this.dumpAfter = dumpAfter;
+		setOverrunThreshold(overrunThreshold);
+	}
+
+	/**
+	 * Records the start of a stage.  Entering {@link TickStage#TICKSTART} starts a new tick, ending the previous tick
+	 * if {@link #endTick()} was not called.
+	 *
+	 * @param stage the stage
+	 * @param tick the number of the tick
+	 */
+	public synchronized void startStage(int stage, long tick) {
+		long now = System.nanoTime();
+		if (stage == TickStage.TICKSTART) {
+			if (inTick) {
+				endTick(now);
+			}
+			inTick = true;
+			tickNumber = tick;
+			tickStartMillis = System.currentTimeMillis();
+			tickStartNanos = now;
+		} else if (!inTick) {
+			return;
+		} else {
+			endStage(now);
+		}
+		stageIndex = Integer.bitCount(stage) == 1 ? Integer.numberOfTrailingZeros(stage) : -1;
+		stageStartNanos = now;
+		if (stageIndex >= STAGES) {
+			stageIndex = -1;
+		}
+	}
+
+	/**
+	 * Records the end of the current tick.  Time until the next tick starts is not counted.
+	 */
+	public synchronized void endTick() {
+		if (inTick) {
+			endTick(System.nanoTime());
+		}
+	}
+
+	/**
+	 * Records time spent on a region during the current tick.  This may be called from any thread.<br>
+	 * <br>
+	 * Time recorded after a tick ends, including calls which race the end of the tick, is charged to the next tick.
+	 * A call which is already adding to the ending tick's counters as they are read may be missed by that tick's
+	 * {@link TickRecord}, but is always included in {@link #getRegionTotals()}.
+	 *
+	 * @param region the region
+	 * @param nanos the time spent, in nanoseconds
+	 */
+	public void recordRegion(Region region, long nanos) {
+		RegionTotal total = regionTotals.get(region);
+		if (total == null) {
+			total = new RegionTotal(new RegionKey(region));
+			RegionTotal oldTotal = regionTotals.putIfAbsent(region, total);
+			if (oldTotal != null) {
+				total = oldTotal;
+			}
+		}
+		total.nanos.addAndGet(nanos);
+
+		ConcurrentMap<RegionKey, AtomicLong> regionNanos = this.regionNanos;
+		AtomicLong counter = regionNanos.get(total.key);
+		if (counter == null) {
+			counter = new AtomicLong(0);
+			AtomicLong oldCounter = regionNanos.putIfAbsent(total.key, counter);
+			if (oldCounter != null) {
+				counter = oldCounter;
+			}
+		}
+		counter.addAndGet(nanos);
+	}
+
+	private void endStage(long now) {
+		if (stageIndex >= 0) {
+			stageNanos[stageIndex] += now - stageStartNanos;
+		}
+		stageIndex = -1;
+	}
+
+	private void endTick(long now) {
+		endStage(now);
+		inTick = false;
+		// Region time recorded from here on is charged to the next tick
+		ConcurrentMap<RegionKey, AtomicLong> tickRegions = regionNanos;
+		regionNanos = new ConcurrentHashMap<RegionKey, AtomicLong>();
+		Map<RegionKey, Long> regions = new HashMap<RegionKey, Long>();
+		for (Map.Entry<RegionKey, AtomicLong> e : tickRegions.entrySet()) {
+			regions.put(e.getKey(), e.getValue().get());
+		}
+		long duration = now - tickStartNanos;
+		TickRecord record = new TickRecord(tickNumber, tickStartMillis, duration, stageNanos, Collections.unmodifiableMap(regions));
+		stageNanos = new long[STAGES];
+
+		histogram[getHistogramBucket(duration)]++;
+
+		if (pendingDump != null) {
+			pendingDump.ticks.add(record);
+			if (--pendingDump.remaining <= 0) {
+				addDump(pendingDump);
+				pendingDump = null;
+			}
+		} else if (duration > overrunThreshold) {
+			// An overrun while a dump is pending is included in that dump instead of starting a new one
+			OverrunDump dump = new OverrunDump(record, dumpAfter);
+			for (int i = Math.min(dumpBefore, (int) Math.min(completedTicks, ring.length)); i > 0; i--) {
+				dump.ticks.add(ring[(int) (completedTicks - i) & mask]);
+			}
+			dump.ticks.add(record);
+			if (dumpAfter == 0) {
+				addDump(dump);
+			} else {
+				pendingDump = dump;
+			}
+		}
+
+		ring[(int) completedTicks & mask] = record;
+		completedTicks++;
+	}
+
+	private void addDump(OverrunDump dump) {
+		dumps.addLast(dump);
+		if (dumps.size() > MAX_DUMPS) {
+			dumps.removeFirst();
+		}
+	}
+
+	/**
+	 * Gets the ticks in the ring buffer, oldest first
+	 *
+	 * @param count the maximum number of ticks to return
+	 * @return the most recent ticks
+	 */
+	public synchronized List<TickRecord> getRecentTicks(int count) {
+		int n = (int) Math.min(Math.min(count, ring.length), completedTicks);
+		List<TickRecord> ticks = new ArrayList<TickRecord>(n);
+		for (int i = n; i > 0; i--) {
+			ticks.add(ring[(int) (completedTicks - i) & mask]);
+		}
+		return ticks;
+	}
+
+	/**
+	 * Gets the number of ticks recorded
+	 *
+	 * @return the number of completed ticks
+	 */
+	public synchronized long getCompletedTicks() {
+		return completedTicks;
+	}
+
+	/**
+	 * Gets the histogram of tick durations
+	 *
+	 * @return a copy of the histogram, indexed by bucket
+	 */
+	public synchronized long[] getHistogram() {
+		return histogram.clone();
+	}
+
+	/**
+	 * Gets the shortest tick duration counted by a histogram bucket
+	 *
+	 * @param bucket the bucket
+	 * @return the lower bound of the bucket, in ms
+	 */
+	public static long getHistogramLowerBound(int bucket) {
+		return bucket == 0 ? 0 : 1L << (bucket - 1);
+	}
+
+	private static int getHistogramBucket(long nanos) {
+		long millis = nanos / 1000000L;
+		return Math.min(64 - Long.numberOfLeadingZeros(millis), HISTOGRAM_BUCKETS - 1);
+	}
+
+	/**
+	 * Gets the total time recorded for each region, for regions which are still loaded
+	 *
+	 * @return the total time per region, in nanoseconds
+	 */
+	public Map<Region, Long> getRegionTotals() {
+		Map<Region, Long> totals = new HashMap<Region, Long>();
+		for (Map.Entry<Region, RegionTotal> e : regionTotals.entrySet()) {
+			totals.put(e.getKey(), e.getValue().nanos.get());
+		}
+		return totals;
+	}
+
+	/**
+	 * Gets the completed overrun dumps, oldest first.  Only the most recent dumps are kept.
+	 *
+	 * @return the dumps
+	 */
+	public synchronized List<OverrunDump> getOverrunDumps() {
+		return new ArrayList<OverrunDump>(dumps);
+	}
+
+	/**
+	 * Gets the tick duration above which a tick is considered an overrun
+	 *
+	 * @return the threshold, in ms
+	 */
+	public synchronized long getOverrunThreshold() {
+		return overrunThreshold / 1000000L;
+	}
+
+	/**
+	 * Sets the tick duration above which a tick is considered an overrun
+	 *
+	 * @param overrunThreshold the threshold, in ms
+	 */
+	public synchronized void setOverrunThreshold(long overrunThreshold) {
+		this.overrunThreshold = overrunThreshold * 1000000L;
+	}
+
+	/**
+	 * The times recorded for a single tick
+	 */
+	public static class TickRecord {
+		private final long tick;
+		private final long startTime;
+		private final long duration;
+		private final long[] stageNanos;
+		private final Map<RegionKey, Long> regionNanos;
+
+		public TickRecord(long tick, long startTime, long duration, long[] stageNanos, Map<RegionKey, Long> regionNanos) {
+			this.tick = tick;
+			this.startTime = startTime;
+			this.duration = duration;
+			this.stageNanos = stageNanos;
+			this.regionNanos = regionNanos;
+		}
+
+		/**
+		 * Gets the tick number, as given by {@link TickStage#getTick()}
+		 *
+		 * @return the tick number
+		 */
+		public long getTick() {
+			return tick;
+		}
+
+		/**
+		 * Gets the time the tick started
+		 *
+		 * @return the start time, in ms since the epoch
+		 */
+		public long getStartTime() {
+			return startTime;
+		}
+
+		/**
+		 * Gets the wall time of the tick
+		 *
+		 * @return the duration, in nanoseconds
+		 */
+		public long getDuration() {
+			return duration;
+		}
+
+		/**
+		 * Gets the wall time spent in a stage
+		 *
+		 * @param stage the stage, such as {@link TickStage#STAGE1}
+		 * @return the time spent, in nanoseconds
+		 */
+		public long getStageTime(int stage) {
+			if (Integer.bitCount(stage) != 1) {
+				throw new IllegalArgumentException("Exactly one stage must be given");
+			}
+			int index = Integer.numberOfTrailingZeros(stage);
+			return index < STAGES ? stageNanos[index] : 0;
+		}
+
+		/**
+		 * Gets the time recorded for each region during the tick.  Regions are identified by their coordinates, so
+		 * records do not keep unloaded regions in memory.
+		 *
+		 * @return an unmodifiable map of region to time, in nanoseconds
+		 */
+		public Map<RegionKey, Long> getRegionTimes() {
+			return regionNanos;
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder sb = new StringBuilder();
+			sb.append("Tick ").append(tick).append(": ").append(duration / 1000L / 1000.0).append("ms");
+			for (int i = 0; i < STAGES; i++) {
+				if (stageNanos[i] != 0) {
+					sb.append(", ").append(TickStage.getStage(1 << i)).append(' ').append(stageNanos[i] / 1000L / 1000.0).append("ms");
+				}
+			}
+			return sb.toString();
+		}
+	}
+
+	/**
+	 * The ticks around a tick which took longer than the overrun threshold
+	 */
+	public static class OverrunDump {
+		private final TickRecord overrun;
+		private final List<TickRecord> ticks = new ArrayList<TickRecord>();
+		private int remaining;
+
+		private OverrunDump(TickRecord overrun, int remaining) {
+			this.overrun = overrun;
+			this.remaining = remaining;
+		}
+
+		/**
+		 * Gets the tick which overran
+		 *
+		 * @return the overrun tick
+		 */
+		public TickRecord getOverrun() {
+			return overrun;
+		}
+
+		/**
+		 * Gets the ticks before, including and after the overrun, oldest first
+		 *
+		 * @return the ticks
+		 */
+		public List<TickRecord> getTicks() {
+			return Collections.unmodifiableList(ticks);
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder sb = new StringBuilder();
+			sb.append("Overrun at tick ").append(overrun.getTick()).append(" (").append(overrun.getDuration() / 1000L / 1000.0).append("ms)");
+			for (TickRecord record : ticks) {
+				sb.append('\n').append(record == overrun ? "> " : "  ").append(record);
+				if (record == overrun) {
+					for (Map.Entry<RegionKey, Long> e : record.getRegionTimes().entrySet()) {
+						sb.append("\n    ").append(e.getKey()).append(' ').append(e.getValue() / 1000L / 1000.0).append("ms");
+					}
+				}
+			}
+			return sb.toString();
+		}
+	}
+
+	/**
+	 * Identifies a region in a {@link TickRecord} by its world name and region coordinates
+	 */
+	public static final class RegionKey {
+		private final String world;
+		private final int x;
+		private final int y;
+		private final int z;
+
+		public RegionKey(Region region) {
+			this(region.getWorld() == null ? null : region.getWorld().getName(), region.getX(), region.getY(), region.getZ());
+		}
+
+		public RegionKey(String world, int x, int y, int z) {
+			this.world = world;
+			this.x = x;
+			this.y = y;
+			this.z = z;
+		}
+
+		/**
+		 * Gets the name of the world the region is in
+		 *
+		 * @return the world name
+		 */
+		public String getWorld() {
+			return world;
+		}
+
+		public int getX() {
+			return x;
+		}
+
+		public int getY() {
+			return y;
+		}
+
+		public int getZ() {
+			return z;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (obj == this) {
+				return true;
+			} else if (!(obj instanceof RegionKey)) {
+				return false;
+			}
+			RegionKey other = (RegionKey) obj;
+			return x == other.x && y == other.y && z == other.z && (world == null ? other.world == null : world.equals(other.world));
+		}
+
+		@Override
+		public int hashCode() {
+			int hash = world == null ? 0 : world.hashCode();
+			hash = 31 * hash + x;
+			hash = 31 * hash + y;
+			return 31 * hash + z;
+		}
+
+		@Override
+		public String toString() {
+			return "Region{" + world + ", " + x + ", " + y + ", " + z + "}";
+		}
+	}
+
+	private static class RegionTotal {
+		private final RegionKey key;
+		private final AtomicLong nanos = new AtomicLong(0);
+
+		public RegionTotal(RegionKey key) {
+			this.key = key;
+		}
+	}
+}
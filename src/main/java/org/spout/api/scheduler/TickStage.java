@@ -127,25 +127,29 @@ public class TickStage {
 	
 	public static String getStage(int num) {
 		switch (num) {
-			case 1 << 0:
+			case TICKSTART:
 				return "TICKSTART";
-			case 1 << 1:
+			case STAGE1:
 				return "STAGE1";
-			case 1 << 2:
+			case STAGE2P:
 				return "STAGE2P";
-			case 1 << 3:
+			case PHYSICS:
 				return "PHYSICS";
-			case 1 << 4:
+			case GLOBAL_PHYSICS:
 				return "GLOBAL_PHYSICS";
-			case 1 << 5:
+			case DYNAMIC_BLOCKS:
 				return "DYNAMIC_BLOCKS";
-			case 1 << 6:
+			case GLOBAL_DYNAMIC_BLOCKS:
 				return "GLOBAL_DYNAMIC_BLOCKS";
-			case 1 << 7:
+			case LIGHTING:
+				return "LIGHTING";
+			case GLOBAL_LIGHTING:
+				return "GLOBAL_LIGHTING";
+			case FINALIZE:
 				return "FINALIZE";
-			case 1 << 8:
+			case PRESNAPSHOT:
 				return "PRESNAPSHOT";
-			case 1 << 9:
+			case SNAPSHOT:
 				return "SNAPSHOT";
 			default:
 				return "UNKNOWN";
@@ -173,6 +177,8 @@ public class TickStage {
 	}
 
 	private static int stage = TICKSTART;
+	private static volatile long tick = 0;
+	private static volatile TickProfiler profiler = null;
 
 	/**
 	 * Sets the current stage. This is not synchronised, so should only be
@@ -181,7 +187,46 @@ public class TickStage {
 	 * @param stage the stage
 	 */
 	public static void setStage(int stage) {
+		if (stage == TICKSTART) {
+			tick++;
+		}
 		TickStage.stage = stage;
+		TickProfiler profiler = TickStage.profiler;
+		if (profiler != null) {
+			profiler.startStage(stage, tick);
+		}
+	}
+
+	/**
+	 * Marks the end of the current tick, after the {@link #SNAPSHOT} stage has completed.
+	 * Time between this call and the next {@link #TICKSTART} is not counted by the profiler.
+	 */
+	public static void endTick() {
+		TickProfiler profiler = TickStage.profiler;
+		if (profiler != null) {
+			profiler.endTick();
+		}
+	}
+
+	/**
+	 * Sets the profiler which records the time spent in each stage.  The profiler is owned and configured by the
+	 * {@link Scheduler}, which should install it before the first tick.
+	 *
+	 * @param profiler the profiler, or null to stop recording stages
+	 * @see Scheduler#getTickProfiler()
+	 */
+	public static void setProfiler(TickProfiler profiler) {
+		TickStage.profiler = profiler;
+	}
+
+	/**
+	 * Gets the number of the current tick.  This is incremented each time the
+	 * {@link #TICKSTART} stage is entered.
+	 *
+	 * @return the tick number
+	 */
+	public static long getTick() {
+		return tick;
 	}
 
 	/**
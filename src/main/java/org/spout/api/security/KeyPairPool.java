@@ -0,0 +1,168 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, SpoutDev <http://www.spout.org/>
+ * SpoutAPI is licensed under the SpoutDev License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://www.spout.org/SpoutDevLicenseV1.txt> for the full license,
+ * including the MIT license.
+ */
+package org.spout.api.security;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.bouncycastle.crypto.AsymmetricCipherKeyPair;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+
+/**
+ * A pool of pre-generated key pairs, which is refilled in the background.<br>
+ * <br>
+ * Each key pair is handed out once.  When the pool is empty, key pairs are generated on the
+ * executor instead of the calling thread, so a burst of handshakes never blocks the caller on
+ * key generation.  Callers waiting for a key pair are served by the next key pair generated,
+ * ahead of refilling the pool.
+ */
+public class KeyPairPool {
+	private final SecurityHandler handler;
+	private final Executor executor;
+	private final int keySize;
+	private final String algorithm;
+	private final BlockingQueue<AsymmetricCipherKeyPair> pairs;
+	private final int capacity;
+	private final AtomicInteger pending = new AtomicInteger(0);
+	private final BlockingQueue<SettableFuture<AsymmetricCipherKeyPair>> waiting = new LinkedBlockingQueue<SettableFuture<AsymmetricCipherKeyPair>>();
+
+	public KeyPairPool(SecurityHandler handler, Executor executor, int keySize, String algorithm, int capacity) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("Capacity must be positive");
+		}
+		this.handler = handler;
+		this.executor = executor;
+		this.keySize = keySize;
+		this.algorithm = algorithm;
+		this.capacity = capacity;
+		this.pairs = new ArrayBlockingQueue<AsymmetricCipherKeyPair>(capacity);
+	}
+
+	/**
+	 * Takes a key pair from the pool, if one is available.  The pool is refilled in the background.
+	 *
+	 * @return the key pair, or null if the pool is empty
+	 */
+	public AsymmetricCipherKeyPair poll() {
+		AsymmetricCipherKeyPair pair = pairs.poll();
+		refill();
+		return pair;
+	}
+
+	/**
+	 * Takes a key pair from the pool, or waits for the next key pair generated on the executor if the pool is empty.<br>
+	 * <br>
+	 * A waiting caller does not queue a new generation behind the refill already scheduled, but is handed the
+	 * first key pair any of them generates.
+	 *
+	 * @return a future for the key pair, which is null if generation failed
+	 */
+	public ListenableFuture<AsymmetricCipherKeyPair> take() {
+		AsymmetricCipherKeyPair pair = pairs.poll();
+		if (pair != null) {
+			refill();
+			return Futures.immediateFuture(pair);
+		}
+		SettableFuture<AsymmetricCipherKeyPair> future = SettableFuture.create();
+		waiting.add(future);
+		refill();
+		return future;
+	}
+
+	/**
+	 * Schedules generation of key pairs until the pool is full and every waiting caller will be served
+	 */
+	public void refill() {
+		while (true) {
+			int pending = this.pending.get();
+			if (pairs.size() + pending >= capacity + waiting.size()) {
+				return;
+			}
+			if (this.pending.compareAndSet(pending, pending + 1)) {
+				executor.execute(new Runnable() {
+					@Override
+					public void run() {
+						try {
+							AsymmetricCipherKeyPair pair = generate();
+							if (!handOver(pair) && pair != null) {
+								pairs.offer(pair);
+							}
+						} finally {
+							KeyPairPool.this.pending.decrementAndGet();
+						}
+						if (!waiting.isEmpty()) {
+							refill();
+						}
+					}
+				});
+			}
+		}
+	}
+
+	/**
+	 * Passes a newly generated key pair to the longest waiting caller
+	 *
+	 * @return false if no caller is waiting
+	 */
+	private boolean handOver(AsymmetricCipherKeyPair pair) {
+		SettableFuture<AsymmetricCipherKeyPair> future;
+		while ((future = waiting.poll()) != null) {
+			if (future.set(pair)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Gets the number of key pairs ready to be taken
+	 *
+	 * @return the number of key pairs
+	 */
+	public int getAvailable() {
+		return pairs.size();
+	}
+
+	/**
+	 * Gets the maximum number of key pairs held by the pool
+	 *
+	 * @return the capacity
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+
+	private AsymmetricCipherKeyPair generate() {
+		return handler.generateKeyPair(keySize, algorithm, "SHA1PRNG", "SUN");
+	}
+}
@@ -27,6 +27,7 @@
 package org.spout.api.security;
 
 import java.math.BigInteger;
+import java.security.GeneralSecurityException;
 import java.security.NoSuchAlgorithmException;
 import java.security.NoSuchProviderException;
 import java.security.Provider;
@@ -34,7 +35,15 @@ import java.security.SecureRandom;
 import java.security.Security;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
 
 import org.bouncycastle.asn1.ASN1EncodableVector;
 import org.bouncycastle.asn1.ASN1Integer;
@@ -55,11 +64,18 @@ import org.bouncycastle.crypto.engines.RSAEngine;
 import org.bouncycastle.crypto.generators.RSAKeyPairGenerator;
 import org.bouncycastle.crypto.modes.CFBBlockCipher;
 import org.bouncycastle.crypto.paddings.PaddedBufferedBlockCipher;
+import org.bouncycastle.crypto.params.KeyParameter;
+import org.bouncycastle.crypto.params.ParametersWithIV;
 import org.bouncycastle.crypto.params.RSAKeyGenerationParameters;
 import org.bouncycastle.crypto.params.RSAKeyParameters;
 import org.bouncycastle.jcajce.provider.asymmetric.util.KeyUtil;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
 import org.spout.api.Spout;
+import org.spout.api.protocol.ChannelProcessor;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
 
 public class SecurityHandler {
 	
@@ -68,6 +84,9 @@ public class SecurityHandler {
 	
 
 	private static final ConcurrentHashMap<String, AsymmetricCipherKeyPair > serverKeys = new ConcurrentHashMap<String, AsymmetricCipherKeyPair >();
+	private static final ConcurrentHashMap<String, KeyPairPool> keyPairPools = new ConcurrentHashMap<String, KeyPairPool>();
+	private static final int KEY_PAIR_POOL_SIZE = 16;
+	private static final ListeningExecutorService cryptoExecutor = MoreExecutors.listeningDecorator(Executors.newFixedThreadPool(Math.max(1, Runtime.getRuntime().availableProcessors()), new CryptoThreadFactory()));
 	private static final Provider provider;
 	private static final SecurityHandler instance;
 	
@@ -131,6 +150,43 @@ public class SecurityHandler {
 		return new BufferedBlockCipher(rawCipher);
 	}
 	
+	/**
+	 * Gets a channel processor for a symmetric cipher.<br>
+	 * <br>
+	 * If the cipher operates in a stream mode, such as CFB8, the JCE implementation is
+	 * preferred when available, since the JVM provides intrinsics for it.  Otherwise the
+	 * BouncyCastle cipher is used.
+	 *
+	 * @param cipher the cipher name, such as "AES"
+	 * @param wrapper the mode, such as "CFB8"
+	 * @param mode {@link #ENCRYPT_MODE} or {@link #DECRYPT_MODE}
+	 * @param key the secret key
+	 * @param iv the initialisation vector
+	 * @param capacity the default capacity of the processor's buffers
+	 * @return the processor, or null if the cipher is not supported
+	 */
+	public ChannelProcessor getSymmetricCipherProcessor(String cipher, String wrapper, boolean mode, byte[] key, byte[] iv, int capacity) {
+		if (wrapper.equals("CFB8")) {
+			try {
+				Cipher jceCipher = Cipher.getInstance(cipher + "/" + wrapper + "/NoPadding");
+				jceCipher.init(mode == ENCRYPT_MODE ? Cipher.ENCRYPT_MODE : Cipher.DECRYPT_MODE, new SecretKeySpec(key, cipher), new IvParameterSpec(iv));
+				return new StreamCipherChannelProcessor(jceCipher, capacity);
+			} catch (GeneralSecurityException e) {
+				Spout.getLogger().info("JCE cipher " + cipher + "/" + wrapper + " unavailable, falling back to BouncyCastle: " + e.getMessage());
+			}
+		}
+
+		BufferedBlockCipher bcCipher = getSymmetricCipher(cipher, wrapper);
+		if (bcCipher == null) {
+			return null;
+		}
+		bcCipher.init(mode, new ParametersWithIV(new KeyParameter(key), iv));
+		if (bcCipher.getBlockSize() == 1) {
+			return new StreamCipherChannelProcessor(bcCipher, capacity);
+		}
+		return new EncryptionChannelProcessor(bcCipher, capacity);
+	}
+	
 	public PaddedBufferedBlockCipher addSymmetricPadding(BlockCipher rawCipher, String padding) {
 		if (padding.equals("PKCS7")) {
 			return new PaddedBufferedBlockCipher(rawCipher);
@@ -206,6 +262,65 @@ public class SecurityHandler {
 		return output;
 	}
 
+	/**
+	 * Processes data with an asymmetric cipher on the crypto executor, so that RSA operations do not block network threads.<br>
+	 * <br>
+	 * The cipher must not be used by any other thread until the future has completed.  Listeners can be added
+	 * to the future to continue the handshake once the result is ready, instead of blocking on it.
+	 *
+	 * @param cipher the initialised cipher
+	 * @param input the data to process
+	 * @return a future for the result of {@link #processAll(AsymmetricBlockCipher, byte[])}
+	 */
+	public ListenableFuture<byte[]> processAllAsync(final AsymmetricBlockCipher cipher, final byte[] input) {
+		return cryptoExecutor.submit(new Callable<byte[]>() {
+			@Override
+			public byte[] call() {
+				return processAll(cipher, input);
+			}
+		});
+	}
+
+	/**
+	 * Gets the shared key pair for an algorithm on the crypto executor.  The key pair is only generated once.
+	 *
+	 * @param keySize the key size
+	 * @param algorithm the algorithm
+	 * @return a future for the result of {@link #getKeyPair(int, String)}
+	 */
+	public ListenableFuture<AsymmetricCipherKeyPair> getKeyPairAsync(final int keySize, final String algorithm) {
+		return cryptoExecutor.submit(new Callable<AsymmetricCipherKeyPair>() {
+			@Override
+			public AsymmetricCipherKeyPair call() {
+				return getKeyPair(keySize, algorithm);
+			}
+		});
+	}
+
+	/**
+	 * Gets the pool of pre-generated key pairs for a key size and algorithm.<br>
+	 * <br>
+	 * The pool is refilled in the background on the crypto executor.
+	 *
+	 * @param keySize the key size
+	 * @param algorithm the algorithm
+	 * @return the pool
+	 */
+	public KeyPairPool getKeyPairPool(int keySize, String algorithm) {
+		String key = algorithm + ":" + keySize;
+		KeyPairPool pool = keyPairPools.get(key);
+		if (pool == null) {
+			pool = new KeyPairPool(this, cryptoExecutor, keySize, algorithm, KEY_PAIR_POOL_SIZE);
+			KeyPairPool oldPool = keyPairPools.putIfAbsent(key, pool);
+			if (oldPool != null) {
+				pool = oldPool;
+			} else {
+				pool.refill();
+			}
+		}
+		return pool;
+	}
+
 	public AsymmetricCipherKeyPair  getKeyPair(String algorithm) {
 		return getKeyPair(1024, algorithm);
 	}
@@ -220,8 +335,31 @@ public class SecurityHandler {
 			return pair;
 		}
 
+		AsymmetricCipherKeyPair newPair = generateKeyPair(keySize, algorithm, RNGAlgorithm, RNGProvider);
+		if (newPair == null) {
+			return null;
+		}
+
+		AsymmetricCipherKeyPair oldPair = serverKeys.putIfAbsent(algorithm, newPair);
+		if (oldPair != null) {
+			return oldPair;
+		}
+
+		return newPair;
+	}
+
+	/**
+	 * Generates a new key pair.  Unlike {@link #getKeyPair(int, String, String, String)}, the result is not cached.
+	 *
+	 * @param keySize the key size
+	 * @param algorithm the algorithm
+	 * @param RNGAlgorithm the random number generator algorithm
+	 * @param RNGProvider the random number generator provider
+	 * @return the key pair, or null on failure
+	 */
+	public AsymmetricCipherKeyPair generateKeyPair(int keySize, String algorithm, String RNGAlgorithm, String RNGProvider) {
 		if (provider == null) {
-			return pair;
+			return null;
 		}
 
 		SecureRandom secureRandom = getSecureRandom(RNGAlgorithm, RNGProvider);
@@ -237,14 +375,7 @@ public class SecurityHandler {
 
 		initGenerator(keySize, algorithm, generator, secureRandom);
 
-		AsymmetricCipherKeyPair newPair = generator.generateKeyPair();
-
-		AsymmetricCipherKeyPair oldPair = serverKeys.putIfAbsent(algorithm, newPair);
-		if (oldPair != null) {
-			return oldPair;
-		}
-
-		return newPair;
+		return generator.generateKeyPair();
 	}
 	
 	private SecureRandom getSecureRandom(String RNGAlgorithm, String RNGProvider) {
@@ -262,4 +393,15 @@ public class SecurityHandler {
 			return null;
 		}
 	}
+
+	private static class CryptoThreadFactory implements ThreadFactory {
+		private final AtomicInteger threadCount = new AtomicInteger(0);
+
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "Crypto Thread " + threadCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
 }
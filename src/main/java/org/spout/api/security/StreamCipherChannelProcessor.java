@@ -0,0 +1,90 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, SpoutDev <http://www.spout.org/>
+ * SpoutAPI is licensed under the SpoutDev License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://www.spout.org/SpoutDevLicenseV1.txt> for the full license,
+ * including the MIT license.
+ */
+package org.spout.api.security;
+
+import javax.crypto.Cipher;
+import javax.crypto.ShortBufferException;
+
+import org.bouncycastle.crypto.BufferedBlockCipher;
+import org.spout.api.protocol.StreamChannelProcessor;
+
+/**
+ * A processor for ciphers which operate in a stream mode, such as AES/CFB8.<br>
+ * <br>
+ * The processor is backed either by a JCE {@link Cipher}, which allows the JVM to use
+ * its AES intrinsics, or by a BouncyCastle {@link BufferedBlockCipher} with a block size of 1.
+ */
+public class StreamCipherChannelProcessor extends StreamChannelProcessor {
+
+	private final Cipher jceCipher;
+	private final BufferedBlockCipher bcCipher;
+
+	/**
+	 * Creates a processor backed by an initialised JCE cipher.  The cipher must
+	 * use a stream mode without padding.
+	 *
+	 * @param cipher the cipher
+	 * @param capacity the default capacity of output buffers
+	 */
+	public StreamCipherChannelProcessor(Cipher cipher, int capacity) {
+		super(capacity);
+		this.jceCipher = cipher;
+		this.bcCipher = null;
+	}
+
+	/**
+	 * Creates a processor backed by an initialised BouncyCastle cipher
+	 *
+	 * @param cipher the cipher
+	 * @param capacity the default capacity of output buffers
+	 */
+	public StreamCipherChannelProcessor(BufferedBlockCipher cipher, int capacity) {
+		super(capacity);
+		if (cipher.getBlockSize() != 1) {
+			throw new IllegalArgumentException("Cipher " + cipher.getUnderlyingCipher().getAlgorithmName() + " is not a stream cipher");
+		}
+		this.jceCipher = null;
+		this.bcCipher = cipher;
+	}
+
+	@Override
+	protected void process(byte[] input, int inputOffset, int length, byte[] output, int outputOffset) {
+		int processed;
+		if (jceCipher != null) {
+			try {
+				processed = jceCipher.update(input, inputOffset, length, output, outputOffset);
+			} catch (ShortBufferException e) {
+				throw new IllegalStateException("Output buffer too small for stream cipher", e);
+			}
+		} else {
+			processed = bcCipher.processBytes(input, inputOffset, length, output, outputOffset);
+		}
+		if (processed != length) {
+			throw new IllegalStateException("Stream cipher produced " + processed + " bytes from " + length + " input bytes");
+		}
+	}
+}
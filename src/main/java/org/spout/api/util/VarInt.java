@@ -29,7 +29,12 @@ package org.spout.api.util;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 
+import org.jboss.netty.buffer.ChannelBuffer;
 import org.spout.api.util.list.ByteCircularBufferFIFO;
 
 /**
@@ -38,8 +43,16 @@ import org.spout.api.util.list.ByteCircularBufferFIFO;
  * 0 - 127:      1 byte
  * 128 - 32511:  2 bytes
  * Rest:         5 bytes
+ *
+ * Longs use the same format, except that the rest take 9 bytes.
+ *
+ * Signed values which are usually small can be zigzag encoded first, so that small negative values also use fewer bytes.
  */
 public class VarInt {
+	private static final int TWO_BYTE_THRESHOLD = 0x00000080;
+	private static final int FULL_THRESHOLD = 0x00007F00;
+	private static final int FULL_MARKER = 0xFF;
+
 	public static void writeString(OutputStream buf, String data) throws IOException {
 		if (data == null) {
 			writeInt(buf, -1);
@@ -149,4 +162,495 @@ public class VarInt {
 		return data;
 	}
 
+	/**
+	 * Gets the number of bytes an int is written as
+	 *
+	 * @param data the int
+	 * @return the number of bytes
+	 */
+	public static int getSize(int data) {
+		if (data < 0 || data >= FULL_THRESHOLD) {
+			return 5;
+		} else if (data >= TWO_BYTE_THRESHOLD) {
+			return 2;
+		} else {
+			return 1;
+		}
+	}
+
+	/**
+	 * Gets the number of bytes a long is written as
+	 *
+	 * @param data the long
+	 * @return the number of bytes
+	 */
+	public static int getSize(long data) {
+		if (data < 0 || data >= FULL_THRESHOLD) {
+			return 9;
+		} else if (data >= TWO_BYTE_THRESHOLD) {
+			return 2;
+		} else {
+			return 1;
+		}
+	}
+
+	/**
+	 * Maps a signed int to an unsigned int, so that values close to zero map to small values
+	 *
+	 * @param n the signed int
+	 * @return the zigzag encoded int
+	 */
+	public static int encodeZigZag(int n) {
+		return (n << 1) ^ (n >> 31);
+	}
+
+	/**
+	 * Reverses {@link #encodeZigZag(int)}
+	 *
+	 * @param n the zigzag encoded int
+	 * @return the signed int
+	 */
+	public static int decodeZigZag(int n) {
+		return (n >>> 1) ^ -(n & 1);
+	}
+
+	/**
+	 * Maps a signed long to an unsigned long, so that values close to zero map to small values
+	 *
+	 * @param n the signed long
+	 * @return the zigzag encoded long
+	 */
+	public static long encodeZigZag(long n) {
+		return (n << 1) ^ (n >> 63);
+	}
+
+	/**
+	 * Reverses {@link #encodeZigZag(long)}
+	 *
+	 * @param n the zigzag encoded long
+	 * @return the signed long
+	 */
+	public static long decodeZigZag(long n) {
+		return (n >>> 1) ^ -(n & 1);
+	}
+
+	public static void writeInt(ChannelBuffer buf, int data) {
+		boolean bigEndian = buf.order() == ByteOrder.BIG_ENDIAN;
+		if (data < 0 || data >= FULL_THRESHOLD) {
+			buf.ensureWritableBytes(5);
+			buf.writeByte(FULL_MARKER);
+			buf.writeInt(bigEndian ? data : Integer.reverseBytes(data));
+		} else if (data >= TWO_BYTE_THRESHOLD) {
+			short s = (short) (0x8000 | data);
+			buf.writeShort(bigEndian ? s : Short.reverseBytes(s));
+		} else {
+			buf.writeByte(data);
+		}
+	}
+
+	public static int readInt(ChannelBuffer buf) {
+		int b1 = buf.readUnsignedByte();
+		if (b1 < TWO_BYTE_THRESHOLD) {
+			return b1;
+		} else if (b1 != FULL_MARKER) {
+			return ((b1 & 0x7F) << 8) | buf.readUnsignedByte();
+		}
+		int data = buf.readInt();
+		return buf.order() == ByteOrder.BIG_ENDIAN ? data : Integer.reverseBytes(data);
+	}
+
+	public static void writeLong(ChannelBuffer buf, long data) {
+		boolean bigEndian = buf.order() == ByteOrder.BIG_ENDIAN;
+		if (data < 0 || data >= FULL_THRESHOLD) {
+			buf.ensureWritableBytes(9);
+			buf.writeByte(FULL_MARKER);
+			buf.writeLong(bigEndian ? data : Long.reverseBytes(data));
+		} else if (data >= TWO_BYTE_THRESHOLD) {
+			short s = (short) (0x8000 | data);
+			buf.writeShort(bigEndian ? s : Short.reverseBytes(s));
+		} else {
+			buf.writeByte((int) data);
+		}
+	}
+
+	public static long readLong(ChannelBuffer buf) {
+		int b1 = buf.readUnsignedByte();
+		if (b1 < TWO_BYTE_THRESHOLD) {
+			return b1;
+		} else if (b1 != FULL_MARKER) {
+			return ((b1 & 0x7F) << 8) | buf.readUnsignedByte();
+		}
+		long data = buf.readLong();
+		return buf.order() == ByteOrder.BIG_ENDIAN ? data : Long.reverseBytes(data);
+	}
+
+	public static void writeInt(ByteBuffer buf, int data) {
+		boolean bigEndian = buf.order() == ByteOrder.BIG_ENDIAN;
+		if (data < 0 || data >= FULL_THRESHOLD) {
+			if (buf.remaining() < 5) {
+				throw new BufferOverflowException();
+			}
+			buf.put((byte) FULL_MARKER);
+			buf.putInt(bigEndian ? data : Integer.reverseBytes(data));
+		} else if (data >= TWO_BYTE_THRESHOLD) {
+			short s = (short) (0x8000 | data);
+			buf.putShort(bigEndian ? s : Short.reverseBytes(s));
+		} else {
+			buf.put((byte) data);
+		}
+	}
+
+	public static int readInt(ByteBuffer buf) {
+		int b1 = buf.get() & 0xFF;
+		if (b1 < TWO_BYTE_THRESHOLD) {
+			return b1;
+		} else if (b1 != FULL_MARKER) {
+			return ((b1 & 0x7F) << 8) | (buf.get() & 0xFF);
+		}
+		int data = buf.getInt();
+		return buf.order() == ByteOrder.BIG_ENDIAN ? data : Integer.reverseBytes(data);
+	}
+
+	public static void writeLong(ByteBuffer buf, long data) {
+		boolean bigEndian = buf.order() == ByteOrder.BIG_ENDIAN;
+		if (data < 0 || data >= FULL_THRESHOLD) {
+			if (buf.remaining() < 9) {
+				throw new BufferOverflowException();
+			}
+			buf.put((byte) FULL_MARKER);
+			buf.putLong(bigEndian ? data : Long.reverseBytes(data));
+		} else if (data >= TWO_BYTE_THRESHOLD) {
+			short s = (short) (0x8000 | data);
+			buf.putShort(bigEndian ? s : Short.reverseBytes(s));
+		} else {
+			buf.put((byte) data);
+		}
+	}
+
+	public static long readLong(ByteBuffer buf) {
+		int b1 = buf.get() & 0xFF;
+		if (b1 < TWO_BYTE_THRESHOLD) {
+			return b1;
+		} else if (b1 != FULL_MARKER) {
+			return ((b1 & 0x7F) << 8) | (buf.get() & 0xFF);
+		}
+		long data = buf.getLong();
+		return buf.order() == ByteOrder.BIG_ENDIAN ? data : Long.reverseBytes(data);
+	}
+
+	/**
+	 * Writes an array of ints.  Heap buffers are written to directly, after the total size has been computed.
+	 *
+	 * @param buf the buffer to write to
+	 * @param data the ints
+	 * @param offset the index of the first int to write
+	 * @param length the number of ints to write
+	 * @param zigzag true to zigzag encode the ints
+	 */
+	public static void writeInts(ChannelBuffer buf, int[] data, int offset, int length, boolean zigzag) {
+		int size = getSize(data, offset, length, zigzag);
+		buf.ensureWritableBytes(size);
+		if (buf.hasArray()) {
+			int writerIndex = buf.writerIndex();
+			writeInts(buf.array(), buf.arrayOffset() + writerIndex, data, offset, length, zigzag);
+			buf.writerIndex(writerIndex + size);
+		} else {
+			for (int i = offset; i < offset + length; i++) {
+				writeInt(buf, zigzag ? encodeZigZag(data[i]) : data[i]);
+			}
+		}
+	}
+
+	/**
+	 * Reads an array of ints written by {@link #writeInts(ChannelBuffer, int[], int, int, boolean)}
+	 *
+	 * @param buf the buffer to read from
+	 * @param data the array to read into
+	 * @param offset the index of the first int to read
+	 * @param length the number of ints to read
+	 * @param zigzag true if the ints are zigzag encoded
+	 */
+	public static void readInts(ChannelBuffer buf, int[] data, int offset, int length, boolean zigzag) {
+		if (buf.hasArray()) {
+			int arrayOffset = buf.arrayOffset();
+			int end = readInts(buf.array(), arrayOffset + buf.readerIndex(), arrayOffset + buf.writerIndex(), data, offset, length, zigzag);
+			buf.readerIndex(end - arrayOffset);
+		} else {
+			for (int i = offset; i < offset + length; i++) {
+				int value = readInt(buf);
+				data[i] = zigzag ? decodeZigZag(value) : value;
+			}
+		}
+	}
+
+	/**
+	 * Writes an array of longs.  Heap buffers are written to directly, after the total size has been computed.
+	 *
+	 * @param buf the buffer to write to
+	 * @param data the longs
+	 * @param offset the index of the first long to write
+	 * @param length the number of longs to write
+	 * @param zigzag true to zigzag encode the longs
+	 */
+	public static void writeLongs(ChannelBuffer buf, long[] data, int offset, int length, boolean zigzag) {
+		int size = getSize(data, offset, length, zigzag);
+		buf.ensureWritableBytes(size);
+		if (buf.hasArray()) {
+			int writerIndex = buf.writerIndex();
+			writeLongs(buf.array(), buf.arrayOffset() + writerIndex, data, offset, length, zigzag);
+			buf.writerIndex(writerIndex + size);
+		} else {
+			for (int i = offset; i < offset + length; i++) {
+				writeLong(buf, zigzag ? encodeZigZag(data[i]) : data[i]);
+			}
+		}
+	}
+
+	/**
+	 * Reads an array of longs written by {@link #writeLongs(ChannelBuffer, long[], int, int, boolean)}
+	 *
+	 * @param buf the buffer to read from
+	 * @param data the array to read into
+	 * @param offset the index of the first long to read
+	 * @param length the number of longs to read
+	 * @param zigzag true if the longs are zigzag encoded
+	 */
+	public static void readLongs(ChannelBuffer buf, long[] data, int offset, int length, boolean zigzag) {
+		if (buf.hasArray()) {
+			int arrayOffset = buf.arrayOffset();
+			int end = readLongs(buf.array(), arrayOffset + buf.readerIndex(), arrayOffset + buf.writerIndex(), data, offset, length, zigzag);
+			buf.readerIndex(end - arrayOffset);
+		} else {
+			for (int i = offset; i < offset + length; i++) {
+				long value = readLong(buf);
+				data[i] = zigzag ? decodeZigZag(value) : value;
+			}
+		}
+	}
+
+	/**
+	 * Writes an array of ints.  Heap buffers are written to directly, after the total size has been computed.
+	 *
+	 * @param buf the buffer to write to
+	 * @param data the ints
+	 * @param offset the index of the first int to write
+	 * @param length the number of ints to write
+	 * @param zigzag true to zigzag encode the ints
+	 * @throws BufferOverflowException if the buffer does not have enough space remaining
+	 */
+	public static void writeInts(ByteBuffer buf, int[] data, int offset, int length, boolean zigzag) {
+		int size = getSize(data, offset, length, zigzag);
+		if (buf.remaining() < size) {
+			throw new BufferOverflowException();
+		}
+		if (buf.hasArray()) {
+			int position = buf.position();
+			writeInts(buf.array(), buf.arrayOffset() + position, data, offset, length, zigzag);
+			buf.position(position + size);
+		} else {
+			for (int i = offset; i < offset + length; i++) {
+				writeInt(buf, zigzag ? encodeZigZag(data[i]) : data[i]);
+			}
+		}
+	}
+
+	/**
+	 * Reads an array of ints written by {@link #writeInts(ByteBuffer, int[], int, int, boolean)}
+	 *
+	 * @param buf the buffer to read from
+	 * @param data the array to read into
+	 * @param offset the index of the first int to read
+	 * @param length the number of ints to read
+	 * @param zigzag true if the ints are zigzag encoded
+	 */
+	public static void readInts(ByteBuffer buf, int[] data, int offset, int length, boolean zigzag) {
+		if (buf.hasArray()) {
+			int arrayOffset = buf.arrayOffset();
+			int end;
+			try {
+				end = readInts(buf.array(), arrayOffset + buf.position(), arrayOffset + buf.limit(), data, offset, length, zigzag);
+			} catch (IndexOutOfBoundsException e) {
+				throw new BufferUnderflowException();
+			}
+			buf.position(end - arrayOffset);
+		} else {
+			for (int i = offset; i < offset + length; i++) {
+				int value = readInt(buf);
+				data[i] = zigzag ? decodeZigZag(value) : value;
+			}
+		}
+	}
+
+	/**
+	 * Writes an array of longs.  Heap buffers are written to directly, after the total size has been computed.
+	 *
+	 * @param buf the buffer to write to
+	 * @param data the longs
+	 * @param offset the index of the first long to write
+	 * @param length the number of longs to write
+	 * @param zigzag true to zigzag encode the longs
+	 * @throws BufferOverflowException if the buffer does not have enough space remaining
+	 */
+	public static void writeLongs(ByteBuffer buf, long[] data, int offset, int length, boolean zigzag) {
+		int size = getSize(data, offset, length, zigzag);
+		if (buf.remaining() < size) {
+			throw new BufferOverflowException();
+		}
+		if (buf.hasArray()) {
+			int position = buf.position();
+			writeLongs(buf.array(), buf.arrayOffset() + position, data, offset, length, zigzag);
+			buf.position(position + size);
+		} else {
+			for (int i = offset; i < offset + length; i++) {
+				writeLong(buf, zigzag ? encodeZigZag(data[i]) : data[i]);
+			}
+		}
+	}
+
+	/**
+	 * Reads an array of longs written by {@link #writeLongs(ByteBuffer, long[], int, int, boolean)}
+	 *
+	 * @param buf the buffer to read from
+	 * @param data the array to read into
+	 * @param offset the index of the first long to read
+	 * @param length the number of longs to read
+	 * @param zigzag true if the longs are zigzag encoded
+	 */
+	public static void readLongs(ByteBuffer buf, long[] data, int offset, int length, boolean zigzag) {
+		if (buf.hasArray()) {
+			int arrayOffset = buf.arrayOffset();
+			int end;
+			try {
+				end = readLongs(buf.array(), arrayOffset + buf.position(), arrayOffset + buf.limit(), data, offset, length, zigzag);
+			} catch (IndexOutOfBoundsException e) {
+				throw new BufferUnderflowException();
+			}
+			buf.position(end - arrayOffset);
+		} else {
+			for (int i = offset; i < offset + length; i++) {
+				long value = readLong(buf);
+				data[i] = zigzag ? decodeZigZag(value) : value;
+			}
+		}
+	}
+
+	private static int getSize(int[] data, int offset, int length, boolean zigzag) {
+		int size = 0;
+		for (int i = offset; i < offset + length; i++) {
+			size += getSize(zigzag ? encodeZigZag(data[i]) : data[i]);
+		}
+		return size;
+	}
+
+	private static int getSize(long[] data, int offset, int length, boolean zigzag) {
+		int size = 0;
+		for (int i = offset; i < offset + length; i++) {
+			size += getSize(zigzag ? encodeZigZag(data[i]) : data[i]);
+		}
+		return size;
+	}
+
+	private static int writeInts(byte[] dest, int pos, int[] data, int offset, int length, boolean zigzag) {
+		for (int i = offset; i < offset + length; i++) {
+			int value = zigzag ? encodeZigZag(data[i]) : data[i];
+			if (value < 0 || value >= FULL_THRESHOLD) {
+				dest[pos] = (byte) FULL_MARKER;
+				dest[pos + 1] = (byte) (value >> 24);
+				dest[pos + 2] = (byte) (value >> 16);
+				dest[pos + 3] = (byte) (value >> 8);
+				dest[pos + 4] = (byte) value;
+				pos += 5;
+			} else if (value >= TWO_BYTE_THRESHOLD) {
+				dest[pos] = (byte) (0x80 | (value >> 8));
+				dest[pos + 1] = (byte) value;
+				pos += 2;
+			} else {
+				dest[pos++] = (byte) value;
+			}
+		}
+		return pos;
+	}
+
+	private static int readInts(byte[] src, int pos, int limit, int[] data, int offset, int length, boolean zigzag) {
+		for (int i = offset; i < offset + length; i++) {
+			if (pos >= limit) {
+				throw new IndexOutOfBoundsException("Not enough readable bytes to read " + length + " ints");
+			}
+			int b1 = src[pos] & 0xFF;
+			int value;
+			if (b1 < TWO_BYTE_THRESHOLD) {
+				value = b1;
+				pos++;
+			} else if (b1 != FULL_MARKER) {
+				if (pos + 2 > limit) {
+					throw new IndexOutOfBoundsException("Not enough readable bytes to read " + length + " ints");
+				}
+				value = ((b1 & 0x7F) << 8) | (src[pos + 1] & 0xFF);
+				pos += 2;
+			} else {
+				if (pos + 5 > limit) {
+					throw new IndexOutOfBoundsException("Not enough readable bytes to read " + length + " ints");
+				}
+				value = (src[pos + 1] << 24) | ((src[pos + 2] & 0xFF) << 16) | ((src[pos + 3] & 0xFF) << 8) | (src[pos + 4] & 0xFF);
+				pos += 5;
+			}
+			data[i] = zigzag ? decodeZigZag(value) : value;
+		}
+		return pos;
+	}
+
+	private static int writeLongs(byte[] dest, int pos, long[] data, int offset, int length, boolean zigzag) {
+		for (int i = offset; i < offset + length; i++) {
+			long value = zigzag ? encodeZigZag(data[i]) : data[i];
+			if (value < 0 || value >= FULL_THRESHOLD) {
+				dest[pos] = (byte) FULL_MARKER;
+				dest[pos + 1] = (byte) (value >> 56);
+				dest[pos + 2] = (byte) (value >> 48);
+				dest[pos + 3] = (byte) (value >> 40);
+				dest[pos + 4] = (byte) (value >> 32);
+				dest[pos + 5] = (byte) (value >> 24);
+				dest[pos + 6] = (byte) (value >> 16);
+				dest[pos + 7] = (byte) (value >> 8);
+				dest[pos + 8] = (byte) value;
+				pos += 9;
+			} else if (value >= TWO_BYTE_THRESHOLD) {
+				dest[pos] = (byte) (0x80 | (value >> 8));
+				dest[pos + 1] = (byte) value;
+				pos += 2;
+			} else {
+				dest[pos++] = (byte) value;
+			}
+		}
+		return pos;
+	}
+
+	private static int readLongs(byte[] src, int pos, int limit, long[] data, int offset, int length, boolean zigzag) {
+		for (int i = offset; i < offset + length; i++) {
+			if (pos >= limit) {
+				throw new IndexOutOfBoundsException("Not enough readable bytes to read " + length + " longs");
+			}
+			int b1 = src[pos] & 0xFF;
+			long value;
+			if (b1 < TWO_BYTE_THRESHOLD) {
+				value = b1;
+				pos++;
+			} else if (b1 != FULL_MARKER) {
+				if (pos + 2 > limit) {
+					throw new IndexOutOfBoundsException("Not enough readable bytes to read " + length + " longs");
+				}
+				value = ((b1 & 0x7F) << 8) | (src[pos + 1] & 0xFF);
+				pos += 2;
+			} else {
+				if (pos + 9 > limit) {
+					throw new IndexOutOfBoundsException("Not enough readable bytes to read " + length + " longs");
+				}
+				int high = (src[pos + 1] << 24) | ((src[pos + 2] & 0xFF) << 16) | ((src[pos + 3] & 0xFF) << 8) | (src[pos + 4] & 0xFF);
+				int low = (src[pos + 5] << 24) | ((src[pos + 6] & 0xFF) << 16) | ((src[pos + 7] & 0xFF) << 8) | (src[pos + 8] & 0xFF);
+				value = ((long) high << 32) | (low & 0xFFFFFFFFL);
+				pos += 9;
+			}
+			data[i] = zigzag ? decodeZigZag(value) : value;
+		}
+		return pos;
+	}
 }
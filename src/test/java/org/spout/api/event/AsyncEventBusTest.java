@@ -0,0 +1,195 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, SpoutDev <http://www.spout.org/>
+ * SpoutAPI is licensed under the SpoutDev License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://www.spout.org/SpoutDevLicenseV1.txt> for the full license,
+ * including the MIT license.
+ */
+package org.spout.api.event;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import org.spout.api.exception.EventException;
+
+public class AsyncEventBusTest {
+	private static final int PRODUCERS = 4;
+	private static final int EVENTS = 20000;
+
+	@Test
+	public void testBatchOrdering() {
+		SimpleEventManager eventManager = new SimpleEventManager();
+		final List<String> calls = new ArrayList<String>();
+		Object owner = new Object();
+		for (final String name : new String[] {"a", "b"}) {
+			EventExecutor executor = new EventExecutor() {
+				@Override
+				public void execute(Event event) throws EventException {
+					calls.add(name + event.toString());
+				}
+			};
+			eventManager.registerEvent(SequenceEvent.class, Order.DEFAULT, executor, owner);
+			eventManager.registerEvent(CancellableSequenceEvent.class, Order.DEFAULT, executor, owner);
+		}
+
+		List<Event> events = new ArrayList<Event>();
+		events.add(new SequenceEvent(0, 1));
+		events.add(new SequenceEvent(0, 2));
+		events.add(new CancellableSequenceEvent(3));
+		events.add(new SequenceEvent(0, 4));
+		eventManager.callEventsBatch(events);
+
+		String[] expected = {"a1", "a2", "b1", "b2", "ac3", "bc3", "a4", "b4"};
+		assertEquals(expected.length, calls.size());
+		for (int i = 0; i < expected.length; i++) {
+			assertEquals(expected[i], calls.get(i));
+		}
+		for (Event event : events) {
+			assertTrue(event.hasBeenCalled());
+		}
+		HandlerList.unregisterAll(owner);
+	}
+
+	@Test
+	public void testAsyncOrdering() throws InterruptedException {
+		final SimpleEventManager eventManager = new SimpleEventManager();
+		final AsyncEventBus bus = new AsyncEventBus(eventManager, 64, 16);
+		final CountDownLatch done = new CountDownLatch(PRODUCERS * EVENTS);
+		final int[] last = new int[PRODUCERS];
+		final int[] errors = new int[1];
+		Object owner = new Object();
+		eventManager.registerEvent(SequenceEvent.class, Order.DEFAULT, new EventExecutor() {
+			@Override
+			public void execute(Event event) throws EventException {
+				SequenceEvent e = (SequenceEvent) event;
+				// Only the bus thread calls this, so no synchronization is needed
+				if (e.getSequence() != last[e.getProducer()] + 1) {
+					errors[0]++;
+				}
+				last[e.getProducer()] = e.getSequence();
+				done.countDown();
+			}
+		}, owner);
+
+		for (int p = 0; p < PRODUCERS; p++) {
+			final int producer = p;
+			new Thread() {
+				@Override
+				public void run() {
+					for (int i = 1; i <= EVENTS; i++) {
+						bus.post(new SequenceEvent(producer, i));
+					}
+				}
+			}.start();
+		}
+		assertTrue("Events were not delivered", done.await(30, TimeUnit.SECONDS));
+		assertEquals(0, errors[0]);
+		// The delivered count is updated after the last batch returns
+		for (int i = 0; i < 100 && bus.getDeliveredEvents() < PRODUCERS * EVENTS; i++) {
+			Thread.sleep(10);
+		}
+		assertEquals(PRODUCERS * EVENTS, bus.getDeliveredEvents());
+		assertEquals(0, bus.getQueuedEvents());
+		System.out.println("Async event bus delivered " + bus.getDeliveredEvents() + " events in " + bus.getDeliveredBatches() + " batches");
+		bus.shutdown();
+		HandlerList.unregisterAll(owner);
+	}
+
+	@Test
+	public void testCancellableRejected() {
+		SimpleEventManager eventManager = new SimpleEventManager();
+		try {
+			eventManager.callAsyncEvent(new CancellableSequenceEvent(1));
+			fail("Cancellable event was accepted");
+		} catch (IllegalArgumentException expected) {
+		}
+	}
+}
+
+class SequenceEvent extends Event {
+	private static final HandlerList handlers = new HandlerList();
+	private final int producer;
+	private final int sequence;
+
+	public SequenceEvent(int producer, int sequence) {
+		this.producer = producer;
+		this.sequence = sequence;
+	}
+
+	public int getProducer() {
+		return producer;
+	}
+
+	public int getSequence() {
+		return sequence;
+	}
+
+	@Override
+	public String toString() {
+		return Integer.toString(sequence);
+	}
+
+	@Override
+	public HandlerList getHandlers() {
+		return handlers;
+	}
+
+	public static HandlerList getHandlerList() {
+		return handlers;
+	}
+}
+
+class CancellableSequenceEvent extends Event implements Cancellable {
+	private static final HandlerList handlers = new HandlerList();
+	private final int sequence;
+
+	public CancellableSequenceEvent(int sequence) {
+		this.sequence = sequence;
+	}
+
+	@Override
+	public void setCancelled(boolean cancelled) {
+		super.setCancelled(cancelled);
+	}
+
+	@Override
+	public String toString() {
+		return "c" + sequence;
+	}
+
+	@Override
+	public HandlerList getHandlers() {
+		return handlers;
+	}
+
+	public static HandlerList getHandlerList() {
+		return handlers;
+	}
+}
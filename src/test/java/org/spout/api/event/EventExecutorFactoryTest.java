@@ -0,0 +1,170 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, SpoutDev <http://www.spout.org/>
+ * SpoutAPI is licensed under the SpoutDev License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://www.spout.org/SpoutDevLicenseV1.txt> for the full license,
+ * including the MIT license.
+ */
+package org.spout.api.event;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.Method;
+
+import org.junit.Test;
+
+import org.spout.api.exception.EventException;
+
+public class EventExecutorFactoryTest {
+	private static final int ROUNDS = 10;
+	private static final int CALLS = 1000000;
+
+	@Test
+	public void testGenerated() throws Exception {
+		CountingListener listener = new CountingListener();
+		EventExecutor executor = EventExecutorFactory.create(listener, CountingListener.class.getMethod("onEvent", PublicEvent.class));
+		assertTrue(executor instanceof GeneratedEventExecutor);
+		PublicEvent event = new PublicEvent();
+		executor.execute(event);
+		executor.execute(event);
+		assertEquals(2, listener.count);
+		assertSame(event, listener.last);
+	}
+
+	@Test
+	public void testStaticAndReturnValue() throws Exception {
+		CountingListener listener = new CountingListener();
+		EventExecutor executor = EventExecutorFactory.create(listener, CountingListener.class.getMethod("onStatic", PublicEvent.class));
+		assertTrue(executor instanceof GeneratedEventExecutor);
+		int before = CountingListener.staticCount;
+		executor.execute(new PublicEvent());
+		assertEquals(before + 1, CountingListener.staticCount);
+
+		executor = EventExecutorFactory.create(listener, CountingListener.class.getMethod("onReturning", PublicEvent.class));
+		assertTrue(executor instanceof GeneratedEventExecutor);
+		executor.execute(new PublicEvent());
+		assertEquals(1, listener.count);
+	}
+
+	@Test
+	public void testExceptions() throws Exception {
+		CountingListener listener = new CountingListener();
+		EventExecutor executor = EventExecutorFactory.create(listener, CountingListener.class.getMethod("onThrow", PublicEvent.class));
+		assertTrue(executor instanceof GeneratedEventExecutor);
+		try {
+			executor.execute(new PublicEvent());
+			fail("Exception not thrown");
+		} catch (EventException e) {
+			assertTrue(e.getCause() instanceof IllegalStateException);
+		}
+		try {
+			executor.execute(new TestEvent());
+			fail("Wrong event type accepted");
+		} catch (EventException e) {
+			assertTrue(e.getCause() instanceof ClassCastException);
+		}
+	}
+
+	@Test
+	public void testFallback() throws Exception {
+		TestListener listener = new TestListener();
+		EventExecutor executor = EventExecutorFactory.create(listener, TestListener.class.getMethod("onTestEvent", TestEvent.class));
+		assertFalse(executor instanceof GeneratedEventExecutor);
+		executor.execute(new TestEvent());
+		assertTrue(listener.hasBeenCalled());
+	}
+
+	@Test
+	public void testDispatchSpeed() throws Exception {
+		Method method = CountingListener.class.getMethod("onEvent", PublicEvent.class);
+		CountingListener generatedListener = new CountingListener();
+		CountingListener reflectiveListener = new CountingListener();
+		EventExecutor generated = EventExecutorFactory.create(generatedListener, method);
+		EventExecutor reflective = new ReflectiveEventExecutor(reflectiveListener, method);
+		PublicEvent event = new PublicEvent();
+
+		// Alternate the executors and keep the best round, so both are measured after warm up
+		long generatedTime = Long.MAX_VALUE;
+		long reflectiveTime = Long.MAX_VALUE;
+		for (int i = 0; i < ROUNDS; i++) {
+			generatedTime = Math.min(generatedTime, time(generated, event, CALLS));
+			reflectiveTime = Math.min(reflectiveTime, time(reflective, event, CALLS));
+		}
+		assertEquals(ROUNDS * CALLS, generatedListener.count);
+		assertEquals(ROUNDS * CALLS, reflectiveListener.count);
+
+		System.out.println("Generated executor: " + (generatedTime / (double) CALLS) + "ns per dispatch");
+		System.out.println("Reflective executor: " + (reflectiveTime / (double) CALLS) + "ns per dispatch");
+	}
+
+	private static long time(EventExecutor executor, Event event, int calls) throws EventException {
+		long start = System.nanoTime();
+		for (int i = 0; i < calls; i++) {
+			executor.execute(event);
+		}
+		return System.nanoTime() - start;
+	}
+
+	public static class PublicEvent extends Event {
+		private static final HandlerList handlers = new HandlerList();
+
+		@Override
+		public HandlerList getHandlers() {
+			return handlers;
+		}
+
+		public static HandlerList getHandlerList() {
+			return handlers;
+		}
+	}
+
+	public static class CountingListener implements Listener {
+		public static int staticCount = 0;
+		public int count = 0;
+		public Event last;
+
+		@EventHandler
+		public void onEvent(PublicEvent event) {
+			count++;
+			last = event;
+		}
+
+		@EventHandler
+		public static void onStatic(PublicEvent event) {
+			staticCount++;
+		}
+
+		@EventHandler
+		public long onReturning(PublicEvent event) {
+			return ++count;
+		}
+
+		@EventHandler
+		public void onThrow(PublicEvent event) {
+			throw new IllegalStateException();
+		}
+	}
+}
@@ -0,0 +1,116 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, SpoutDev <http://www.spout.org/>
+ * SpoutAPI is licensed under the SpoutDev License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://www.spout.org/SpoutDevLicenseV1.txt> for the full license,
+ * including the MIT license.
+ */
+package org.spout.api.event;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+import org.spout.api.exception.EventException;
+
+public class HandlerListTest {
+	private static final int THREADS = 4;
+	private static final int REGISTRATIONS = 500;
+
+	private static final EventExecutor NOOP = new EventExecutor() {
+		@Override
+		public void execute(Event event) throws EventException {
+		}
+	};
+
+	@Test
+	public void testBakedOrder() {
+		HandlerList list = new HandlerList();
+		ListenerRegistration latest = new ListenerRegistration(NOOP, Order.LATEST, this);
+		ListenerRegistration earliest = new ListenerRegistration(NOOP, Order.EARLIEST, this);
+		list.register(latest);
+		list.register(earliest);
+		ListenerRegistration[] baked = list.getRegisteredListeners();
+		assertEquals(2, baked.length);
+		assertSame(earliest, baked[0]);
+		assertSame(latest, baked[1]);
+		assertSame(baked, list.getRegisteredListeners());
+
+		list.unregister(earliest);
+		assertEquals(1, list.getRegisteredListeners().length);
+		assertEquals(2, baked.length);
+		list.unregister(this);
+		assertEquals(0, list.getRegisteredListeners().length);
+	}
+
+	@Test
+	public void testConcurrentRegistration() throws InterruptedException {
+		final HandlerList list = new HandlerList();
+		final CountDownLatch start = new CountDownLatch(1);
+		final CountDownLatch done = new CountDownLatch(THREADS);
+		final AtomicBoolean running = new AtomicBoolean(true);
+
+		Thread reader = new Thread() {
+			@Override
+			public void run() {
+				while (running.get()) {
+					for (ListenerRegistration registration : list.getRegisteredListeners()) {
+						registration.getOrder();
+					}
+				}
+			}
+		};
+		reader.start();
+
+		for (int t = 0; t < THREADS; t++) {
+			final Object owner = new Object();
+			new Thread() {
+				@Override
+				public void run() {
+					try {
+						start.await();
+						for (int i = 0; i < REGISTRATIONS; i++) {
+							list.register(new ListenerRegistration(NOOP, Order.values()[i % Order.values().length], owner));
+						}
+					} catch (InterruptedException ignored) {
+					} finally {
+						done.countDown();
+					}
+				}
+			}.start();
+		}
+		start.countDown();
+		done.await();
+		running.set(false);
+		reader.join();
+
+		ListenerRegistration[] baked = list.getRegisteredListeners();
+		assertEquals(THREADS * REGISTRATIONS, baked.length);
+		for (int i = 1; i < baked.length; i++) {
+			assertEquals(true, baked[i - 1].getOrder().getIndex() <= baked[i].getOrder().getIndex());
+		}
+	}
+}
@@ -0,0 +1,118 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, SpoutDev <http://www.spout.org/>
+ * SpoutAPI is licensed under the SpoutDev License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://www.spout.org/SpoutDevLicenseV1.txt> for the full license,
+ * including the MIT license.
+ */
+package org.spout.api.event;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import org.spout.api.exception.EventException;
+
+public class ListenerTimingsTest {
+	private static final long SLOW_NANOS = 1000000L;
+
+	@Test
+	public void testSlowListeners() {
+		SimpleEventManager eventManager = new SimpleEventManager();
+		ListenerTimings timings = new ListenerTimings(1, SLOW_NANOS);
+		eventManager.setListenerTimings(timings);
+		Object fastOwner = new Object();
+		Object slowOwner = new Object();
+		eventManager.registerEvent(TimedTestEvent.class, Order.EARLIEST, new EventExecutor() {
+			@Override
+			public void execute(Event event) throws EventException {
+			}
+		}, fastOwner);
+		eventManager.registerEvent(TimedTestEvent.class, Order.LATEST, new EventExecutor() {
+			@Override
+			public void execute(Event event) throws EventException {
+				try {
+					Thread.sleep(2);
+				} catch (InterruptedException e) {
+					throw new EventException(e);
+				}
+			}
+		}, slowOwner);
+
+		for (int i = 0; i < 5; i++) {
+			eventManager.callEvent(new TimedTestEvent());
+		}
+
+		List<ListenerTiming> top = timings.getTopListeners(1);
+		assertEquals(1, top.size());
+		assertSame(slowOwner, top.get(0).getOwner());
+		assertSame(TimedTestEvent.class, top.get(0).getEventClass());
+		assertEquals(5, top.get(0).getSamples());
+		assertTrue(top.get(0).getMaxNanos() >= 2 * SLOW_NANOS);
+
+		List<ListenerTiming> slow = timings.getSlowListeners();
+		assertEquals(1, slow.size());
+		assertEquals(5, slow.get(0).getSlowCalls());
+		assertEquals(2, timings.getTimings().size());
+		assertTrue(timings.getSlowListenerReport().startsWith("TimedTestEvent"));
+
+		timings.reset();
+		assertEquals(0, timings.getTimings().size());
+		HandlerList.unregisterAll(fastOwner);
+		HandlerList.unregisterAll(slowOwner);
+	}
+
+	@Test
+	public void testSampling() {
+		ListenerTimings timings = new ListenerTimings(100, SLOW_NANOS);
+		assertEquals(128, timings.getSampleInterval());
+		int sampled = 0;
+		for (int i = 0; i < 128 * 10; i++) {
+			if (timings.shouldSample()) {
+				sampled++;
+				timings.record(TimedTestEvent.class, null, 10);
+			}
+		}
+		assertEquals(10, sampled);
+		ListenerTiming timing = timings.getTimings().get(0);
+		assertEquals(null, timing.getOwner());
+		assertEquals(10, timing.getSamples());
+		assertEquals(10 * 10 * 128, timing.getEstimatedNanos());
+	}
+}
+
+class TimedTestEvent extends Event {
+	private static final HandlerList handlers = new HandlerList();
+
+	@Override
+	public HandlerList getHandlers() {
+		return handlers;
+	}
+
+	public static HandlerList getHandlerList() {
+		return handlers;
+	}
+}
@@ -0,0 +1,208 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, SpoutDev <http://www.spout.org/>
+ * SpoutAPI is licensed under the SpoutDev License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://www.spout.org/SpoutDevLicenseV1.txt> for the full license,
+ * including the MIT license.
+ */
+package org.spout.api.event;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import org.spout.api.exception.EventException;
+import org.spout.api.exception.IllegalPluginAccessException;
+import org.spout.api.geo.cuboid.Region;
+
+public class RegionEventDispatchTest {
+	private EventManager eventManager;
+	private Region region1;
+	private Region region2;
+	private final List<String> calls = new ArrayList<String>();
+
+	@Before
+	public void setUp() {
+		eventManager = new SimpleEventManager();
+		region1 = mock(Region.class);
+		region2 = mock(Region.class);
+		when(region1.getHandlerLists()).thenReturn(new RegionHandlerLists());
+		when(region2.getHandlerLists()).thenReturn(new RegionHandlerLists());
+	}
+
+	@Test
+	public void testScopedDispatch() {
+		Object owner = new Object();
+		eventManager.registerEvent(RegionTestEvent.class, Order.EARLIEST, record("global"), owner);
+		eventManager.registerEvent(region1, RegionTestEvent.class, Order.LATEST, record("region1 latest"), owner);
+		eventManager.registerEvent(region1, RegionTestEvent.class, Order.EARLIEST, record("region1 earliest"), owner);
+		eventManager.registerEvent(region2, RegionTestEvent.class, Order.DEFAULT, record("region2"), owner);
+
+		eventManager.callEvent(new RegionTestEvent(region1));
+		assertEquals(3, calls.size());
+		assertEquals("region1 earliest", calls.get(0));
+		assertEquals("global", calls.get(1));
+		assertEquals("region1 latest", calls.get(2));
+
+		calls.clear();
+		eventManager.callEvent(new RegionTestEvent(region2));
+		assertEquals(2, calls.size());
+		assertEquals("global", calls.get(0));
+		assertEquals("region2", calls.get(1));
+
+		calls.clear();
+		eventManager.callEvent(new RegionTestEvent(null));
+		assertEquals(1, calls.size());
+		assertEquals("global", calls.get(0));
+
+		HandlerList.unregisterAll(owner);
+		calls.clear();
+		eventManager.callEvent(new RegionTestEvent(region1));
+		assertEquals(0, calls.size());
+	}
+
+	@Test
+	public void testScopedListenersAreListened() {
+		Object owner = new Object();
+		assertFalse(eventManager.isListened(RegionOnlyTestEvent.class));
+		eventManager.registerEvent(region1, RegionOnlyTestEvent.class, Order.DEFAULT, record("region1"), owner);
+		assertTrue(eventManager.isListened(RegionOnlyTestEvent.class));
+		assertTrue(RegionOnlyTestEvent.getHandlerList().hasScopedListeners());
+		HandlerList.unregisterAll(owner);
+		assertFalse(eventManager.isListened(RegionOnlyTestEvent.class));
+	}
+
+	@Test
+	public void testOrderSlots() {
+		Object owner = new Object();
+		eventManager.registerEvent(region1, RegionTestEvent.class, Order.MONITOR, record("region1 monitor"), owner);
+		eventManager.registerEvent(RegionTestEvent.class, Order.LATEST, record("global latest"), owner);
+		eventManager.registerEvent(RegionTestEvent.class, Order.MONITOR, record("global monitor"), owner);
+		eventManager.registerEvent(RegionTestEvent.class, Order.EARLIEST, record("global earliest"), owner);
+		eventManager.registerEvent(region1, RegionTestEvent.class, Order.DEFAULT, record("region1 default"), owner);
+
+		// Region monitors run after every global listener which may still change the event
+		eventManager.callEvent(new RegionTestEvent(region1));
+		assertEquals(5, calls.size());
+		assertEquals("global earliest", calls.get(0));
+		assertEquals("region1 default", calls.get(1));
+		assertEquals("global latest", calls.get(2));
+		assertEquals("region1 monitor", calls.get(3));
+		assertEquals("global monitor", calls.get(4));
+		HandlerList.unregisterAll(owner);
+	}
+
+	@Test
+	public void testUnloadedRegion() {
+		Object owner = new Object();
+		eventManager.registerEvent(region1, RegionOnlyTestEvent.class, Order.DEFAULT, record("region1"), owner);
+		assertTrue(eventManager.isListened(RegionOnlyTestEvent.class));
+		region1.getHandlerLists().unregisterAll();
+		assertFalse(eventManager.isListened(RegionOnlyTestEvent.class));
+		assertEquals(null, region1.getHandlerLists().getRegisteredListeners(RegionOnlyTestEvent.getHandlerList()));
+	}
+
+	@Test
+	public void testCollectedRegion() throws InterruptedException {
+		registerUnreachable();
+		assertTrue(eventManager.isListened(RegionOnlyTestEvent.class));
+		// The scoped list of a region which is collected without being unloaded is uncounted from the global list
+		long end = System.currentTimeMillis() + 10000;
+		while (RegionOnlyTestEvent.getHandlerList().hasScopedListeners() && System.currentTimeMillis() < end) {
+			System.gc();
+			Thread.sleep(10);
+		}
+		assertFalse(eventManager.isListened(RegionOnlyTestEvent.class));
+	}
+
+	private void registerUnreachable() {
+		RegionHandlerLists lists = new RegionHandlerLists();
+		lists.getHandlerList(RegionOnlyTestEvent.getHandlerList()).register(new ListenerRegistration(record("collected"), Order.DEFAULT, new Object()));
+	}
+
+	@Test
+	public void testGlobalEventRejected() {
+		try {
+			eventManager.registerEvent(region1, TestEvent.class, Order.DEFAULT, record("region1"), this);
+			fail("Registered an event which is not region scoped to a region");
+		} catch (IllegalPluginAccessException expected) {
+		}
+	}
+
+	private EventExecutor record(final String name) {
+		return new EventExecutor() {
+			@Override
+			public void execute(Event event) throws EventException {
+				calls.add(name);
+			}
+		};
+	}
+}
+
+class RegionTestEvent extends Event implements RegionScopedEvent {
+	private static final HandlerList handlers = new HandlerList();
+	private final Region region;
+
+	public RegionTestEvent(Region region) {
+		this.region = region;
+	}
+
+	@Override
+	public Region getRegion() {
+		return region;
+	}
+
+	@Override
+	public HandlerList getHandlers() {
+		return handlers;
+	}
+
+	public static HandlerList getHandlerList() {
+		return handlers;
+	}
+}
+
+class RegionOnlyTestEvent extends RegionTestEvent {
+	private static final HandlerList handlers = new HandlerList();
+
+	public RegionOnlyTestEvent(Region region) {
+		super(region);
+	}
+
+	@Override
+	public HandlerList getHandlers() {
+		return handlers;
+	}
+
+	public static HandlerList getHandlerList() {
+		return handlers;
+	}
+}
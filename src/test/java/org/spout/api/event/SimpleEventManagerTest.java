@@ -72,6 +72,52 @@ public class SimpleEventManagerTest {
 			assertEquals(calledOrders.get(order.getIndex()), order);
 		}
 	}
+
+	@Test
+	public void testCallEventFactory() {
+		final int[] created = new int[1];
+		EventFactory<FactoryTestEvent> factory = new EventFactory<FactoryTestEvent>() {
+			@Override
+			public FactoryTestEvent createEvent() {
+				created[0]++;
+				return new FactoryTestEvent();
+			}
+		};
+		assertFalse(eventManager.isListened(FactoryTestEvent.class));
+		assertNull(eventManager.callEvent(FactoryTestEvent.class, factory));
+		assertEquals(0, created[0]);
+
+		final List<Event> called = new ArrayList<Event>();
+		eventManager.registerEvent(FactoryTestEvent.class, Order.DEFAULT, new EventExecutor() {
+			@Override
+			public void execute(Event event) throws EventException {
+				called.add(event);
+			}
+		}, this);
+		assertTrue(eventManager.isListened(FactoryTestEvent.class));
+		assertTrue(FactoryTestEvent.getHandlerList().hasListeners());
+		FactoryTestEvent event = eventManager.callEvent(FactoryTestEvent.class, factory);
+		assertEquals(1, created[0]);
+		assertEquals(1, called.size());
+		assertSame(event, called.get(0));
+		assertTrue(event.hasBeenCalled());
+
+		FactoryTestEvent.getHandlerList().unregister(this);
+		assertFalse(eventManager.isListened(FactoryTestEvent.class));
+	}
+}
+
+class FactoryTestEvent extends Event {
+	private static final HandlerList handlers = new HandlerList();
+
+	@Override
+	public HandlerList getHandlers() {
+		return handlers;
+	}
+
+	public static HandlerList getHandlerList() {
+		return handlers;
+	}
 }
 
 class TestEvent extends Event {
@@ -0,0 +1,135 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, SpoutDev <http://www.spout.org/>
+ * SpoutAPI is licensed under the SpoutDev License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://www.spout.org/SpoutDevLicenseV1.txt> for the full license,
+ * including the MIT license.
+ */
+package org.spout.api.geo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+import org.spout.api.Source;
+import org.spout.api.material.range.CubicEffectRange;
+import org.spout.api.material.range.CuboidEffectRange;
+import org.spout.api.material.range.DiamondEffectRange;
+import org.spout.api.material.range.EffectRange;
+import org.spout.api.material.range.PlusEffectRange;
+import org.spout.api.math.IntVector3;
+import org.spout.api.util.IntTripleConsumer;
+import org.spout.api.util.hashing.Int21TripleHashed;
+
+public class PhysicsQueueTest {
+	private static final Source SOURCE_A = new Source() {};
+	private static final Source SOURCE_B = new Source() {};
+
+	@Test
+	public void testForEachMatchesIterator() {
+		EffectRange[] ranges = new EffectRange[] {
+				EffectRange.THIS,
+				new CubicEffectRange(2),
+				new CuboidEffectRange(-1, 0, -2, 3, 1, 0),
+				new DiamondEffectRange(0),
+				new DiamondEffectRange(3),
+				new DiamondEffectRange(2, 4),
+				new PlusEffectRange(2, true)
+		};
+		for (EffectRange range : ranges) {
+			Set<Long> expected = new HashSet<Long>();
+			for (IntVector3 v : range) {
+				expected.add(Int21TripleHashed.key(v.getX() + 10, v.getY() - 5, v.getZ() + 7));
+			}
+			final Set<Long> actual = new HashSet<Long>();
+			final int[] count = new int[1];
+			range.forEach(10, -5, 7, new IntTripleConsumer() {
+				@Override
+				public void accept(int x, int y, int z) {
+					actual.add(Int21TripleHashed.key(x, y, z));
+					count[0]++;
+				}
+			});
+			assertEquals(range.getClass().getSimpleName(), expected, actual);
+			assertEquals(range.getClass().getSimpleName() + " visited a block twice", actual.size(), count[0]);
+		}
+	}
+
+	@Test
+	public void testDuplicatesMerged() {
+		PhysicsQueue queue = new PhysicsQueue(4);
+		assertTrue(queue.queue(0, 0, 0, SOURCE_A));
+		assertFalse(queue.queue(0, 0, 0, SOURCE_B));
+		queue.queue(0, 0, 0, new CubicEffectRange(1), SOURCE_B);
+		queue.queue(1, 0, 0, new CubicEffectRange(1), SOURCE_B);
+		// 27 + 9 new blocks for the second cube
+		assertEquals(36, queue.size());
+		assertEquals(1 + 1 + 18, queue.getDuplicateCount());
+
+		final Set<Long> seen = new HashSet<Long>();
+		int drained = queue.drain(new PhysicsQueue.Handler() {
+			@Override
+			public void onPhysics(int x, int y, int z, Source source) {
+				assertTrue(seen.add(Int21TripleHashed.key(x, y, z)));
+				if (x == 0 && y == 0 && z == 0) {
+					assertSame(SOURCE_A, source);
+				} else {
+					assertSame(SOURCE_B, source);
+				}
+			}
+		});
+		assertEquals(36, drained);
+		assertEquals(36, seen.size());
+		assertTrue(queue.isEmpty());
+	}
+
+	@Test
+	public void testQueueDuringDrain() {
+		final PhysicsQueue queue = new PhysicsQueue();
+		queue.queue(-100, 5, 100, SOURCE_A);
+		final int[] calls = new int[1];
+		queue.drain(new PhysicsQueue.Handler() {
+			@Override
+			public void onPhysics(int x, int y, int z, Source source) {
+				calls[0]++;
+				assertEquals(-100, x);
+				assertEquals(5, y);
+				assertEquals(100, z);
+				// The same block may be queued again for the next stage
+				assertTrue(queue.queue(x, y, z, source));
+			}
+		});
+		assertEquals(1, calls[0]);
+		assertEquals(1, queue.size());
+		assertEquals(1, queue.drain(new PhysicsQueue.Handler() {
+			@Override
+			public void onPhysics(int x, int y, int z, Source source) {
+			}
+		}));
+		assertEquals(0, queue.drain(null));
+	}
+}
@@ -0,0 +1,137 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, SpoutDev <http://www.spout.org/>
+ * SpoutAPI is licensed under the SpoutDev License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://www.spout.org/SpoutDevLicenseV1.txt> for the full license,
+ * including the MIT license.
+ */
+package org.spout.api.material;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class DynamicUpdateWheelTest {
+
+	@Test
+	public void testRandomTimes() {
+		Random r = new Random(42);
+		DynamicUpdateWheel wheel = new DynamicUpdateWheel(1000, 1);
+		long[] expected = new long[5000];
+		for (int i = 0; i < expected.length; i++) {
+			// Spread across all levels, including some beyond the top level
+			int bits = r.nextInt(27);
+			expected[i] = 1001 + (r.nextLong() & ((1L << bits) - 1));
+			wheel.add(i, -i, i & 0xFF, expected[i], i);
+		}
+		assertEquals(expected.length, wheel.size());
+
+		final long[] firedAt = new long[expected.length];
+		final long[] now = new long[1];
+		DynamicUpdateWheel.Handler handler = new DynamicUpdateWheel.Handler() {
+			@Override
+			public void onUpdate(int x, int y, int z, long time, int data) {
+				assertEquals(x, data);
+				assertEquals(-x, y);
+				assertEquals(0, firedAt[data]);
+				firedAt[data] = now[0];
+			}
+		};
+
+		// Step through the first few ticks one at a time, then in larger jumps
+		for (now[0] = 1000; now[0] < 1000 + (1L << 27); now[0] += now[0] < 100000 ? 1 : 97) {
+			wheel.advance(now[0], handler);
+		}
+		now[0] = 1000 + (1L << 27);
+		wheel.advance(now[0], handler);
+
+		assertEquals(0, wheel.size());
+		for (int i = 0; i < expected.length; i++) {
+			assertTrue("Update " + i + " for " + expected[i] + " fired early at " + firedAt[i], firedAt[i] >= expected[i]);
+			assertTrue("Update " + i + " for " + expected[i] + " fired late at " + firedAt[i], firedAt[i] - expected[i] < 97);
+		}
+	}
+
+	@Test
+	public void testRemoveAndReplace() {
+		DynamicUpdateWheel wheel = new DynamicUpdateWheel(0, 50);
+		RecordingHandler handler = new RecordingHandler();
+
+		assertFalse(wheel.add(1, 2, 3, 100, 7));
+		assertTrue(wheel.add(1, 2, 3, 100, 8));
+		assertFalse(wheel.add(1, 2, 3, 5000, 9));
+		assertFalse(wheel.add(4, 5, 6, 100, 10));
+		assertEquals(3, wheel.size());
+		assertTrue(wheel.contains(1, 2, 3));
+
+		assertEquals(2, wheel.remove(1, 2, 3));
+		assertFalse(wheel.contains(1, 2, 3));
+		assertEquals(1, wheel.size());
+
+		wheel.advance(10000, handler);
+		assertEquals(1, handler.updates.size());
+		assertEquals("4,5,6@100:10", handler.updates.get(0));
+		assertEquals(0, wheel.size());
+	}
+
+	@Test
+	public void testReentrantHandler() {
+		final DynamicUpdateWheel wheel = new DynamicUpdateWheel(0, 1);
+		final List<String> updates = new ArrayList<String>();
+		wheel.add(0, 0, 0, 1, 0);
+		wheel.add(1, 0, 0, 1, 0);
+		DynamicUpdateWheel.Handler handler = new DynamicUpdateWheel.Handler() {
+			@Override
+			public void onUpdate(int x, int y, int z, long time, int data) {
+				updates.add(x + "@" + time);
+				// Reschedule in the past and cancel the other pending update
+				if (data < 3) {
+					wheel.add(x, y, z, time, data + 1);
+				}
+				wheel.remove(1 - x, 0, 0);
+			}
+		};
+
+		assertEquals(1, wheel.advance(1, handler));
+		assertEquals(1, wheel.size());
+		assertEquals(1, wheel.advance(2, handler));
+		assertEquals(1, wheel.advance(3, handler));
+		assertEquals(1, wheel.advance(4, handler));
+		assertEquals(0, wheel.advance(5, handler));
+		assertEquals(4, updates.size());
+	}
+
+	private static class RecordingHandler implements DynamicUpdateWheel.Handler {
+		private final List<String> updates = new ArrayList<String>();
+
+		@Override
+		public void onUpdate(int x, int y, int z, long time, int data) {
+			updates.add(x + "," + y + "," + z + "@" + time + ":" + data);
+		}
+	}
+}
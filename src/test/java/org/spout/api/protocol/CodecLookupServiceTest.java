@@ -0,0 +1,118 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, SpoutDev <http://www.spout.org/>
+ * SpoutAPI is licensed under the SpoutDev License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://www.spout.org/SpoutDevLicenseV1.txt> for the full license,
+ * including the MIT license.
+ */
+package org.spout.api.protocol;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+public class CodecLookupServiceTest {
+
+	@Test
+	public void testLookup() throws Exception {
+		TestCodecLookupService service = new TestCodecLookupService();
+		service.bind(FirstCodec.class);
+		service.bind(SecondCodec.class);
+
+		MessageCodec<FirstMessage> first = service.find(FirstMessage.class);
+		MessageCodec<SecondMessage> second = service.find(SecondMessage.class);
+
+		assertSame(FirstCodec.class, first.getClass());
+		assertSame(SecondCodec.class, second.getClass());
+		assertSame(first, service.find(1));
+		assertSame(second, service.find(0xFFFF));
+
+		assertNull(service.find(2));
+		assertNull(service.find(-1));
+		assertNull(service.find(0x10000));
+		assertNull(service.find(UnboundMessage.class));
+	}
+
+	@Test
+	public void testBindAfterLookup() throws Exception {
+		TestCodecLookupService service = new TestCodecLookupService();
+		service.bind(FirstCodec.class);
+		assertNull(service.find(SecondMessage.class));
+
+		// Binding marks the compiled tables as stale, so the next lookup sees the new codec
+		service.bind(SecondCodec.class);
+		assertSame(SecondCodec.class, service.find(SecondMessage.class).getClass());
+		assertSame(SecondCodec.class, service.find(0xFFFF).getClass());
+
+		// Direct modifications are only seen after compiling
+		SecondCodec codec = new SecondCodec();
+		service.put(UnboundMessage.class, codec);
+		assertNull(service.find(UnboundMessage.class));
+		service.compile();
+		assertSame(codec, service.find(UnboundMessage.class));
+	}
+
+	private static class TestCodecLookupService extends CodecLookupService {
+		public void put(Class<? extends Message> clazz, MessageCodec<?> codec) {
+			classTable.put(clazz, codec);
+		}
+	}
+
+	public static class FirstCodec extends MessageCodec<FirstMessage> {
+		public FirstCodec() {
+			super(FirstMessage.class, 1);
+		}
+	}
+
+	public static class SecondCodec extends MessageCodec<SecondMessage> {
+		public SecondCodec() {
+			super(SecondMessage.class, 0xFFFF);
+		}
+	}
+
+	private static class TestMessage implements Message {
+		@Override
+		public boolean equals(Object other) {
+			return other != null && other.getClass() == getClass();
+		}
+
+		@Override
+		public int hashCode() {
+			return getClass().hashCode();
+		}
+
+		@Override
+		public String toString() {
+			return getClass().getSimpleName();
+		}
+	}
+
+	private static class FirstMessage extends TestMessage {
+	}
+
+	private static class SecondMessage extends TestMessage {
+	}
+
+	private static class UnboundMessage extends TestMessage {
+	}
+}
@@ -0,0 +1,214 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, SpoutDev <http://www.spout.org/>
+ * SpoutAPI is licensed under the SpoutDev License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://www.spout.org/SpoutDevLicenseV1.txt> for the full license,
+ * including the MIT license.
+ */
+package org.spout.api.protocol;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelEvent;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.UpstreamMessageEvent;
+import org.junit.Test;
+import org.spout.api.protocol.fake.FakeChannelHandlerContext;
+import org.spout.api.protocol.fake.FakeProtocol;
+import org.spout.api.protocol.proxy.ForwardedMessage;
+import org.spout.api.protocol.proxy.ProxyStartMessage;
+
+public class CommonDecoderTest {
+	@Test
+	public void testProxyPassthrough() throws Exception {
+		FakeProtocol protocol = new FakeProtocol(StartCodec.class, ValueCodec.class, RequiredCodec.class) {
+			@Override
+			public boolean isProxyDecodeRequired(MessageCodec<?> codec) {
+				return codec instanceof RequiredCodec || super.isProxyDecodeRequired(codec);
+			}
+		};
+		CommonDecoder decoder = new CommonDecoder(false);
+		decoder.setProtocol(protocol);
+		decoder.setProxyPassthroughAllowed(true);
+
+		ChannelBuffer stream = ChannelBuffers.dynamicBuffer();
+		// Decoded, as pass-through has not started
+		frame(stream, ValueCodec.OPCODE, 1);
+		frame(stream, StartCodec.OPCODE);
+		byte[] forwarded = frame(stream, ValueCodec.OPCODE, 2, 3, 4);
+		frame(stream, RequiredCodec.OPCODE, 5);
+		// A frame with no body at all, which the value codec could not decode
+		byte[] forwardedEmpty = frame(stream, ValueCodec.OPCODE);
+
+		List<Object> messages = decode(decoder, stream);
+		assertEquals(5, messages.size());
+
+		assertArrayEquals(new byte[] {1}, ((ValueMessage) messages.get(0)).body);
+		assertTrue(messages.get(1) instanceof StartMessage);
+
+		// Frames which the proxy does not need are forwarded with their header and body intact
+		ForwardedMessage message = (ForwardedMessage) messages.get(2);
+		assertEquals(ValueCodec.OPCODE, message.getOpcode());
+		assertArrayEquals(forwarded, toArray(message.getFrame()));
+
+		// Frames which the proxy needs are still decoded
+		assertTrue(messages.get(3) instanceof RequiredMessage);
+		assertArrayEquals(new byte[] {5}, ((ValueMessage) messages.get(3)).body);
+
+		message = (ForwardedMessage) messages.get(4);
+		assertArrayEquals(forwardedEmpty, toArray(message.getFrame()));
+	}
+
+	/**
+	 * Writes a frame to the stream.  Bodies start with a byte giving their length, as codecs are not told the frame length.
+	 */
+	private static byte[] frame(ChannelBuffer stream, int opcode, int... body) {
+		int bodyLength = body.length == 0 ? 0 : body.length + 1;
+		ChannelBuffer frame = ChannelBuffers.buffer(FakeProtocol.HEADER_SIZE + bodyLength);
+		frame.writeShort(opcode);
+		frame.writeShort(bodyLength);
+		if (bodyLength > 0) {
+			frame.writeByte(body.length);
+		}
+		for (int b : body) {
+			frame.writeByte(b);
+		}
+		byte[] bytes = toArray(frame);
+		stream.writeBytes(bytes);
+		return bytes;
+	}
+
+	private static byte[] toArray(ChannelBuffer buffer) {
+		byte[] bytes = new byte[buffer.readableBytes()];
+		buffer.getBytes(buffer.readerIndex(), bytes);
+		return bytes;
+	}
+
+	private static List<Object> decode(CommonDecoder decoder, ChannelBuffer stream) throws Exception {
+		List<ChannelEvent> events = new LinkedList<ChannelEvent>();
+		ChannelHandlerContext ctx = new FakeChannelHandlerContext(events);
+		while (stream.readable()) {
+			// Deliver in small segments, so frames arrive split
+			final ChannelBuffer segment = stream.readBytes(Math.min(3, stream.readableBytes()));
+			decoder.messageReceived(ctx, new MessageEvent() {
+				@Override
+				public Channel getChannel() {
+					return null;
+				}
+
+				@Override
+				public ChannelFuture getFuture() {
+					return null;
+				}
+
+				@Override
+				public Object getMessage() {
+					return segment;
+				}
+
+				@Override
+				public SocketAddress getRemoteAddress() {
+					return null;
+				}
+			});
+		}
+		List<Object> messages = new ArrayList<Object>();
+		for (ChannelEvent event : events) {
+			messages.add(((UpstreamMessageEvent) event).getMessage());
+		}
+		return messages;
+	}
+
+	private static byte[] readBody(ChannelBuffer buffer) {
+		byte[] body = new byte[buffer.readUnsignedByte()];
+		buffer.readBytes(body);
+		return body;
+	}
+
+	public static class StartCodec extends MessageCodec<StartMessage> {
+		public static final int OPCODE = 1;
+
+		public StartCodec() {
+			super(StartMessage.class, OPCODE);
+		}
+
+		@Override
+		public StartMessage decode(ChannelBuffer buffer) {
+			return new StartMessage();
+		}
+	}
+
+	public static class ValueCodec extends MessageCodec<ValueMessage> {
+		public static final int OPCODE = 2;
+
+		public ValueCodec() {
+			super(ValueMessage.class, OPCODE);
+		}
+
+		@Override
+		public ValueMessage decode(ChannelBuffer buffer) {
+			return new ValueMessage(readBody(buffer));
+		}
+	}
+
+	public static class RequiredCodec extends MessageCodec<RequiredMessage> {
+		public static final int OPCODE = 3;
+
+		public RequiredCodec() {
+			super(RequiredMessage.class, OPCODE);
+		}
+
+		@Override
+		public RequiredMessage decode(ChannelBuffer buffer) {
+			return new RequiredMessage(readBody(buffer));
+		}
+	}
+
+	private static class StartMessage implements ProxyStartMessage {
+	}
+
+	private static class ValueMessage implements Message {
+		private final byte[] body;
+
+		public ValueMessage(byte[] body) {
+			this.body = body;
+		}
+	}
+
+	private static class RequiredMessage extends ValueMessage {
+		public RequiredMessage(byte[] body) {
+			super(body);
+		}
+	}
+}
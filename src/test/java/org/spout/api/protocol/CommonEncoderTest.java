@@ -0,0 +1,130 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, SpoutDev <http://www.spout.org/>
+ * SpoutAPI is licensed under the SpoutDev License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://www.spout.org/SpoutDevLicenseV1.txt> for the full license,
+ * including the MIT license.
+ */
+package org.spout.api.protocol;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.io.IOException;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.DefaultChannelFuture;
+import org.jboss.netty.channel.DownstreamMessageEvent;
+import org.junit.Test;
+import org.spout.api.protocol.fake.FakeChannelHandlerContext;
+import org.spout.api.protocol.fake.FakeProtocol;
+
+public class CommonEncoderTest {
+	@Test
+	public void testPooledRoundTrip() throws Exception {
+		FakeProtocol protocol = new FakeProtocol(DirectionalCodec.class);
+		CommonEncoder encoder = new CommonEncoder(false);
+		encoder.setProtocol(protocol);
+		ChannelHandlerContext ctx = new FakeChannelHandlerContext();
+		EncodeBufferPool pool = encoder.getBufferPool();
+
+		ChannelBuffer first = (ChannelBuffer) encoder.encode(ctx, ctx.getChannel(), new ValueMessage(7));
+		assertEquals(7, decode(protocol, first.duplicate()).value);
+		// The codec only overrides the directional methods returning a buffer, which must still be used
+		assertEquals(DirectionalCodec.TO_CLIENT, first.getInt(first.readerIndex() + FakeProtocol.HEADER_SIZE + 4));
+
+		// Send through the encoder, so the buffer is attached to the write future
+		ChannelFuture future = new DefaultChannelFuture(ctx.getChannel(), false);
+		encoder.handleDownstream(ctx, new DownstreamMessageEvent(ctx.getChannel(), future, new ValueMessage(8), null));
+		assertEquals(0, pool.getPooledCount());
+		future.setSuccess();
+		assertEquals(1, pool.getPooledCount());
+
+		// The released buffer is reused for the next message
+		ChannelBuffer second = (ChannelBuffer) encoder.encode(ctx, ctx.getChannel(), new ValueMessage(9));
+		assertEquals(0, pool.getPooledCount());
+		assertEquals(9, decode(protocol, second.duplicate()).value);
+		ChannelFuture secondFuture = new DefaultChannelFuture(ctx.getChannel(), false);
+		EncodeBufferPool.releaseOnComplete(second, secondFuture);
+		secondFuture.setSuccess();
+		assertEquals(1, pool.getPooledCount());
+		assertSame(second, encoder.encode(ctx, ctx.getChannel(), new ValueMessage(10)));
+	}
+
+	private static ValueMessage decode(Protocol protocol, ChannelBuffer frame) throws IOException {
+		int length = protocol.getFrameLength(frame);
+		assertEquals(frame.readableBytes(), length);
+		DirectionalCodec codec = (DirectionalCodec) protocol.readHeader(frame);
+		ValueMessage message = codec.decode(false, frame);
+		assertEquals(0, frame.readableBytes());
+		return message;
+	}
+
+	public static class DirectionalCodec extends MessageCodec<ValueMessage> {
+		public static final int TO_CLIENT = 1;
+		public static final int TO_SERVER = 2;
+
+		public DirectionalCodec() {
+			super(ValueMessage.class, 3);
+		}
+
+		@Override
+		public int getEstimatedSize(ValueMessage message) {
+			return 8;
+		}
+
+		@Override
+		public ChannelBuffer encodeToClient(ValueMessage message) {
+			return encode(message.value, TO_CLIENT);
+		}
+
+		@Override
+		public ChannelBuffer encodeToServer(ValueMessage message) {
+			return encode(message.value, TO_SERVER);
+		}
+
+		private ChannelBuffer encode(int value, int direction) {
+			ChannelBuffer buffer = ChannelBuffers.buffer(8);
+			buffer.writeInt(value);
+			buffer.writeInt(direction);
+			return buffer;
+		}
+
+		@Override
+		public ValueMessage decode(ChannelBuffer buffer) {
+			ValueMessage message = new ValueMessage(buffer.readInt());
+			buffer.readInt();
+			return message;
+		}
+	}
+
+	private static class ValueMessage implements Message {
+		private final int value;
+
+		public ValueMessage(int value) {
+			this.value = value;
+		}
+	}
+}
@@ -0,0 +1,208 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, SpoutDev <http://www.spout.org/>
+ * SpoutAPI is licensed under the SpoutDev License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://www.spout.org/SpoutDevLicenseV1.txt> for the full license,
+ * including the MIT license.
+ */
+package org.spout.api.protocol;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.lang3.tuple.ImmutablePair;
+import org.apache.commons.lang3.tuple.Pair;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.junit.Test;
+import org.spout.api.io.store.simple.MemoryStore;
+import org.spout.api.util.StringMap;
+
+public class DynamicCodecTest {
+	private static final int ENCODES = 200000;
+
+	@Test
+	public void testInstall() throws Exception {
+		TestCodecLookupService service = new TestCodecLookupService();
+		service.bind(FixedCodec.class);
+		PluginCodec codec = service.bind(PluginCodec.class, newStringMap());
+		assertTrue(codec.isDynamic());
+		assertEquals(FixedCodec.OPCODE + 1, codec.getOpcode());
+
+		service.installDynamicCodecs(ids(300, PluginCodec.class));
+		// The bound codec is not modified, as other threads may be using it
+		assertEquals(FixedCodec.OPCODE + 1, codec.getOpcode());
+		MessageCodec<PluginMessage> installed = service.find(PluginMessage.class);
+		assertEquals(300, installed.getOpcode());
+		assertTrue(installed.isDynamic());
+		assertSame(installed, service.find(300));
+		assertNull(service.find(FixedCodec.OPCODE + 1));
+
+		ChannelBuffer buffer = ChannelBuffers.buffer(4);
+		installed.encode(false, new PluginMessage(42), buffer);
+		assertEquals(42, buffer.readInt());
+
+		try {
+			service.installDynamicCodecs(ids(FixedCodec.OPCODE, PluginCodec.class));
+			fail("Installed a dynamic codec over a fixed codec");
+		} catch (IllegalStateException e) {
+		}
+		assertSame(installed, service.find(300));
+
+		// Installing again moves the codec, rather than wrapping the installed codec
+		service.installDynamicCodecs(ids(400, PluginCodec.class));
+		MessageCodec<PluginMessage> moved = service.find(PluginMessage.class);
+		assertEquals(400, moved.getOpcode());
+		assertSame(moved, service.find(400));
+		assertNull(service.find(300));
+		assertSame(codec, ((RemappedCodec<PluginMessage>) moved).getDelegate());
+	}
+
+	@Test
+	public void testWrappedVersusDirect() throws Exception {
+		PluginCodec codec = new PluginCodec(300);
+		WrapperCodec wrapperCodec = new WrapperCodec();
+		PluginMessage message = new PluginMessage(0x12345678);
+		ChannelBuffer buffer = ChannelBuffers.buffer(64);
+
+		// Warm up both paths before timing them
+		encodeWrapped(codec, wrapperCodec, message, buffer, ENCODES);
+		encodeDirect(codec, message, buffer, ENCODES);
+
+		long start = System.nanoTime();
+		encodeWrapped(codec, wrapperCodec, message, buffer, ENCODES);
+		long wrapped = System.nanoTime() - start;
+		int wrappedLength = buffer.readableBytes();
+
+		start = System.nanoTime();
+		encodeDirect(codec, message, buffer, ENCODES);
+		long direct = System.nanoTime() - start;
+		int directLength = buffer.readableBytes();
+
+		assertEquals(directLength + 4, wrappedLength);
+		System.out.println("Time for " + ENCODES + " wrapped dynamic encodes was " + wrapped + "ns");
+		System.out.println("Time for " + ENCODES + " direct dynamic encodes was " + direct + "ns");
+	}
+
+	private static void encodeWrapped(PluginCodec codec, WrapperCodec wrapperCodec, PluginMessage message, ChannelBuffer buffer, int count) throws IOException {
+		for (int i = 0; i < count; i++) {
+			buffer.clear();
+			WrapperMessage wrapper = new WrapperMessage(codec.getOpcode(), codec.encode(false, message));
+			wrapperCodec.encode(false, wrapper, buffer);
+		}
+	}
+
+	private static void encodeDirect(PluginCodec codec, PluginMessage message, ChannelBuffer buffer, int count) throws IOException {
+		for (int i = 0; i < count; i++) {
+			buffer.clear();
+			codec.encode(false, message, buffer);
+		}
+	}
+
+	private static StringMap newStringMap() {
+		return new StringMap(null, new MemoryStore<Integer>(), Integer.MAX_VALUE, Integer.MAX_VALUE, "DynamicCodecTest");
+	}
+
+	private static List<Pair<Integer, String>> ids(int opcode, Class<?> codec) {
+		List<Pair<Integer, String>> ids = new ArrayList<Pair<Integer, String>>();
+		ids.add(new ImmutablePair<Integer, String>(opcode, codec.getName()));
+		return ids;
+	}
+
+	private static class TestCodecLookupService extends CodecLookupService {
+	}
+
+	public static class FixedCodec extends MessageCodec<FixedMessage> {
+		public static final int OPCODE = 1;
+
+		public FixedCodec() {
+			super(FixedMessage.class, OPCODE);
+		}
+	}
+
+	public static class PluginCodec extends MessageCodec<PluginMessage> {
+		public PluginCodec(int opcode) {
+			super(PluginMessage.class, opcode);
+		}
+
+		@Override
+		public ChannelBuffer encode(PluginMessage message) {
+			ChannelBuffer buffer = ChannelBuffers.buffer(4);
+			buffer.writeInt(message.value);
+			return buffer;
+		}
+
+		@Override
+		public int getEstimatedSize(PluginMessage message) {
+			return 4;
+		}
+
+		@Override
+		public void encode(boolean upstream, PluginMessage message, ChannelBuffer buffer) {
+			buffer.writeInt(message.value);
+		}
+	}
+
+	/**
+	 * A codec in the style of a custom payload packet, which carries the dynamic opcode and the encoded body
+	 */
+	public static class WrapperCodec extends MessageCodec<WrapperMessage> {
+		public WrapperCodec() {
+			super(WrapperMessage.class, 0xFA);
+		}
+
+		@Override
+		public void encode(boolean upstream, WrapperMessage message, ChannelBuffer buffer) {
+			buffer.writeShort(message.opcode);
+			buffer.writeShort(message.body.readableBytes());
+			buffer.writeBytes(message.body);
+		}
+	}
+
+	private static class FixedMessage implements Message {
+	}
+
+	private static class PluginMessage implements Message {
+		private final int value;
+
+		public PluginMessage(int value) {
+			this.value = value;
+		}
+	}
+
+	private static class WrapperMessage implements Message {
+		private final int opcode;
+		private final ChannelBuffer body;
+
+		public WrapperMessage(int opcode, ChannelBuffer body) {
+			this.opcode = opcode;
+			this.body = body;
+		}
+	}
+}
@@ -0,0 +1,276 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, SpoutDev <http://www.spout.org/>
+ * SpoutAPI is licensed under the SpoutDev License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://www.spout.org/SpoutDevLicenseV1.txt> for the full license,
+ * including the MIT license.
+ */
+package org.spout.api.protocol;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.junit.Before;
+import org.junit.Test;
+import org.spout.api.component.components.TransformComponent;
+import org.spout.api.entity.Entity;
+import org.spout.api.geo.discrete.Transform;
+import org.spout.api.protocol.fake.FakeProtocol;
+import org.spout.api.scheduler.TickStage;
+
+public class EntityUpdateCacheTest {
+	private static final float SCALE = 32F;
+	private EntityUpdateCache cache;
+	private Protocol protocol;
+	private TestEntityProtocol entityProtocol;
+	private Entity entity;
+	private TransformComponent transform;
+
+	@Before
+	public void setUp() throws Exception {
+		cache = new EntityUpdateCache();
+		protocol = new FakeProtocol(MoveCodec.class);
+		entityProtocol = new TestEntityProtocol();
+		entity = mock(Entity.class);
+		transform = mock(TransformComponent.class);
+		when(entity.getId()).thenReturn(1);
+		when(entity.getTransform()).thenReturn(transform);
+		moveTo(0, 0, 0);
+	}
+
+	@Test
+	public void testSharedUpdate() throws Exception {
+		nextTick();
+		Observer a = new Observer();
+		Observer b = new Observer();
+		a.spawn();
+		b.spawn();
+		List<Message> updateA = cache.getUpdateMessages(entity, entityProtocol, protocol);
+		List<Message> updateB = cache.getUpdateMessages(entity, entityProtocol, protocol);
+		assertSame(updateA, updateB);
+		assertEquals(1, entityProtocol.updates);
+
+		nextTick();
+		moveTo(1.5F, 0.01F, -2F);
+		a.update();
+		b.update();
+		assertEquals(2, entityProtocol.updates);
+		a.assertAt(48, 0, -64);
+		b.assertAt(48, 0, -64);
+		// Encoded once, and sent as the same frame to both observers
+		assertTrue(cache.getUpdateMessages(entity, entityProtocol, protocol).get(0) instanceof EncodedMessage);
+
+		// Movements smaller than the protocol precision are not sent
+		nextTick();
+		moveTo(1.51F, 0F, -2F);
+		assertTrue(cache.getUpdateMessages(entity, entityProtocol, protocol).isEmpty());
+	}
+
+	@Test
+	public void testSpawnAfterUpdate() throws Exception {
+		nextTick();
+		Observer a = new Observer();
+		a.spawn();
+		a.update();
+
+		nextTick();
+		moveTo(1F, 0F, 0F);
+		a.update();
+		// Spawned after the shared delta was computed, so the spawn must be at the state it starts from
+		Observer b = new Observer();
+		b.spawn();
+		assertEquals(0, b.x);
+		b.update();
+		a.assertAt(32, 0, 0);
+		b.assertAt(32, 0, 0);
+
+		nextTick();
+		moveTo(2F, 1F, 0F);
+		a.update();
+		b.update();
+		a.assertAt(64, 32, 0);
+		b.assertAt(64, 32, 0);
+	}
+
+	@Test
+	public void testSpawnBeforeUpdate() throws Exception {
+		nextTick();
+		Observer a = new Observer();
+		a.spawn();
+		a.update();
+
+		nextTick();
+		moveTo(0F, 0F, 3F);
+		Observer b = new Observer();
+		b.spawn();
+		a.update();
+		b.update();
+		a.assertAt(0, 0, 96);
+		b.assertAt(0, 0, 96);
+	}
+
+	@Test
+	public void testRemove() throws Exception {
+		nextTick();
+		Observer a = new Observer();
+		a.spawn();
+		moveTo(1F, 1F, 1F);
+		cache.remove(entity);
+		// With the baseline discarded, the next update sets the absolute position
+		a.update();
+		a.assertAt(32, 32, 32);
+	}
+
+	private void nextTick() {
+		TickStage.setStage(TickStage.TICKSTART);
+	}
+
+	private void moveTo(float x, float y, float z) {
+		Transform live = QuantizedTransformTest.transform(x, y, z, 0, 0, 0);
+		when(transform.getTransformLive()).thenReturn(live);
+	}
+
+	/**
+	 * A client, which applies the messages it receives to its copy of the entity
+	 */
+	private class Observer {
+		private int x, y, z;
+
+		public void spawn() throws Exception {
+			receive(cache.getSpawnMessages(entity, entityProtocol, protocol));
+		}
+
+		public void update() throws Exception {
+			receive(cache.getUpdateMessages(entity, entityProtocol, protocol));
+		}
+
+		private void receive(List<Message> messages) throws Exception {
+			for (Message message : messages) {
+				MoveMessage move;
+				if (message instanceof EncodedMessage) {
+					ChannelBuffer frame = ((EncodedMessage) message).getFrame().duplicate();
+					move = ((MoveCodec) protocol.readHeader(frame)).decode(false, frame);
+				} else {
+					move = (MoveMessage) message;
+				}
+				if (move.relative) {
+					x += move.x;
+					y += move.y;
+					z += move.z;
+				} else {
+					x = move.x;
+					y = move.y;
+					z = move.z;
+				}
+			}
+		}
+
+		public void assertAt(int x, int y, int z) {
+			assertEquals(x, this.x);
+			assertEquals(y, this.y);
+			assertEquals(z, this.z);
+		}
+	}
+
+	private static class TestEntityProtocol implements DeltaEntityProtocol {
+		private int updates = 0;
+
+		@Override
+		public List<Message> getSpawnMessages(Entity entity) {
+			throw new UnsupportedOperationException("Delta protocols spawn from a quantized transform");
+		}
+
+		@Override
+		public List<Message> getDestroyMessages(Entity entity) {
+			return Collections.emptyList();
+		}
+
+		@Override
+		public List<Message> getUpdateMessages(Entity entity) {
+			throw new UnsupportedOperationException("Delta protocols send updates from a quantized transform");
+		}
+
+		@Override
+		public QuantizedTransform quantize(Transform transform) {
+			return QuantizedTransform.quantize(transform, SCALE, 256);
+		}
+
+		@Override
+		public List<Message> getSpawnMessages(Entity entity, QuantizedTransform transform) {
+			return Collections.<Message>singletonList(new MoveMessage(false, transform.getX(), transform.getY(), transform.getZ()));
+		}
+
+		@Override
+		public List<Message> getUpdateMessages(Entity entity, QuantizedTransform previous, QuantizedTransform current) {
+			updates++;
+			List<Message> messages = new ArrayList<Message>();
+			if (previous == null) {
+				messages.add(new MoveMessage(false, current.getX(), current.getY(), current.getZ()));
+			} else if (current.isPositionChanged(previous)) {
+				messages.add(new MoveMessage(true, current.getX() - previous.getX(), current.getY() - previous.getY(), current.getZ() - previous.getZ()));
+			}
+			return messages;
+		}
+	}
+
+	public static class MoveCodec extends MessageCodec<MoveMessage> {
+		public MoveCodec() {
+			super(MoveMessage.class, 5);
+		}
+
+		@Override
+		public ChannelBuffer encode(MoveMessage message) {
+			ChannelBuffer buffer = ChannelBuffers.buffer(13);
+			buffer.writeByte(message.relative ? 1 : 0);
+			buffer.writeInt(message.x);
+			buffer.writeInt(message.y);
+			buffer.writeInt(message.z);
+			return buffer;
+		}
+
+		@Override
+		public MoveMessage decode(ChannelBuffer buffer) {
+			return new MoveMessage(buffer.readByte() != 0, buffer.readInt(), buffer.readInt(), buffer.readInt());
+		}
+	}
+
+	private static class MoveMessage implements Message {
+		private final boolean relative;
+		private final int x, y, z;
+
+		public MoveMessage(boolean relative, int x, int y, int z) {
+			this.relative = relative;
+			this.x = x;
+			this.y = y;
+			this.z = z;
+		}
+	}
+}
@@ -0,0 +1,150 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, SpoutDev <http://www.spout.org/>
+ * SpoutAPI is licensed under the SpoutDev License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://www.spout.org/SpoutDevLicenseV1.txt> for the full license,
+ * including the MIT license.
+ */
+package org.spout.api.protocol;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.net.SocketAddress;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelEvent;
+import org.jboss.netty.channel.ChannelFuture;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.UpstreamMessageEvent;
+import org.junit.Test;
+import org.spout.api.protocol.fake.FakeChannelHandlerContext;
+
+public class FrameLengthDecoderTest {
+
+	private final int MESSAGES = 200;
+	private final int MAX_MESSAGE_LENGTH = 4096;
+	private final int SEGMENT_LENGTH = 64;
+
+	@Test
+	public void test() throws Exception {
+		Random r = new Random();
+		byte[][] messages = new byte[MESSAGES][];
+		ChannelBuffer stream = ChannelBuffers.dynamicBuffer();
+		for (int i = 0; i < MESSAGES; i++) {
+			messages[i] = new byte[r.nextInt(MAX_MESSAGE_LENGTH) + 1];
+			r.nextBytes(messages[i]);
+			stream.writeShort(messages[i].length);
+			stream.writeBytes(messages[i]);
+		}
+
+		LengthPrefixedDecoder replaying = new LengthPrefixedDecoder(false);
+		LengthPrefixedDecoder framed = new LengthPrefixedDecoder(true);
+
+		long replayingTime = System.nanoTime();
+		List<ChannelEvent> replayingOutput = decode(replaying, stream.duplicate());
+		replayingTime = System.nanoTime() - replayingTime;
+
+		long framedTime = System.nanoTime();
+		List<ChannelEvent> framedOutput = decode(framed, stream.duplicate());
+		framedTime = System.nanoTime() - framedTime;
+
+		System.out.println("Fragmented decode of " + MESSAGES + " messages: replaying " + replaying.decodeCalls + " decode calls (" + (replayingTime / 1000) + "us), framed " + framed.decodeCalls + " decode calls (" + (framedTime / 1000) + "us)");
+
+		assertEquals(MESSAGES, replayingOutput.size());
+		assertEquals(MESSAGES, framedOutput.size());
+		for (int i = 0; i < MESSAGES; i++) {
+			assertArrayEquals(messages[i], (byte[]) ((UpstreamMessageEvent) replayingOutput.get(i)).getMessage());
+			assertArrayEquals(messages[i], (byte[]) ((UpstreamMessageEvent) framedOutput.get(i)).getMessage());
+		}
+
+		assertEquals("Each message should be parsed exactly once", MESSAGES, framed.decodeCalls);
+		assertTrue("Replaying decoder should re-parse fragmented messages", replaying.decodeCalls > framed.decodeCalls);
+	}
+
+	private List<ChannelEvent> decode(LengthPrefixedDecoder decoder, ChannelBuffer stream) throws Exception {
+		List<ChannelEvent> outputList = new LinkedList<ChannelEvent>();
+		ChannelHandlerContext fake = new FakeChannelHandlerContext(outputList);
+		while (stream.readable()) {
+			final ChannelBuffer segment = stream.readBytes(Math.min(SEGMENT_LENGTH, stream.readableBytes()));
+			decoder.messageReceived(fake, new MessageEvent() {
+				@Override
+				public Channel getChannel() {
+					return null;
+				}
+
+				@Override
+				public ChannelFuture getFuture() {
+					return null;
+				}
+
+				@Override
+				public Object getMessage() {
+					return segment;
+				}
+
+				@Override
+				public SocketAddress getRemoteAddress() {
+					return null;
+				}
+			});
+		}
+		return outputList;
+	}
+
+	private static class LengthPrefixedDecoder extends PreprocessReplayingDecoder {
+
+		private final boolean useFrameLength;
+		private int decodeCalls = 0;
+
+		public LengthPrefixedDecoder(boolean useFrameLength) {
+			super(512);
+			this.useFrameLength = useFrameLength;
+		}
+
+		@Override
+		protected int getFrameLength(ChannelHandlerContext ctx, Channel channel, ChannelBuffer buffer) {
+			if (!useFrameLength) {
+				return Protocol.UNKNOWN_LENGTH;
+			}
+			if (buffer.readableBytes() < 2) {
+				return Protocol.INCOMPLETE_LENGTH;
+			}
+			return 2 + buffer.getUnsignedShort(buffer.readerIndex());
+		}
+
+		@Override
+		protected Object decodeProcessed(ChannelHandlerContext ctx, Channel channel, ChannelBuffer buffer) throws Exception {
+			decodeCalls++;
+			byte[] message = new byte[buffer.readUnsignedShort()];
+			buffer.readBytes(message);
+			return message;
+		}
+	}
+}
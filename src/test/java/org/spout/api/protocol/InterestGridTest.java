@@ -0,0 +1,124 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, SpoutDev <http://www.spout.org/>
+ * SpoutAPI is licensed under the SpoutDev License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://www.spout.org/SpoutDevLicenseV1.txt> for the full license,
+ * including the MIT license.
+ */
+package org.spout.api.protocol;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class InterestGridTest {
+
+	@Test
+	public void testMove() {
+		RecordingListener listener = new RecordingListener();
+		InterestGrid<String, Integer> grid = new InterestGrid<String, Integer>(listener);
+
+		grid.subscribe("a", 0, 0, 0);
+		grid.subscribe("b", 0, 0, 0);
+		grid.subscribe("b", 1, 0, 0);
+		grid.subscribe("c", 1, 0, 0);
+		grid.subscribe("d", 5, 5, 5);
+
+		grid.addEntity(7, 0, 0, 0);
+		assertEquals(2, listener.events.size());
+		assertTrue(listener.events.contains("spawn a 7"));
+		assertTrue(listener.events.contains("spawn b 7"));
+		listener.events.clear();
+
+		// b can see both cells, so only a and c are affected
+		grid.moveEntity(7, 0, 0, 0, 1, 0, 0);
+		assertEquals(2, listener.events.size());
+		assertTrue(listener.events.contains("destroy a 7"));
+		assertTrue(listener.events.contains("spawn c 7"));
+		listener.events.clear();
+
+		grid.moveEntity(7, 1, 0, 0, 1, 0, 0);
+		assertEquals(0, listener.events.size());
+
+		grid.removeEntity(7, 1, 0, 0);
+		assertEquals(2, listener.events.size());
+		assertTrue(listener.events.contains("destroy b 7"));
+		assertTrue(listener.events.contains("destroy c 7"));
+	}
+
+	@Test
+	public void testSubscribe() {
+		RecordingListener listener = new RecordingListener();
+		InterestGrid<String, Integer> grid = new InterestGrid<String, Integer>(listener);
+
+		grid.addEntity(1, -3, 2, 100);
+		grid.addEntity(2, -3, 2, 100);
+		assertEquals(0, listener.events.size());
+
+		assertTrue(grid.subscribe("a", -3, 2, 100));
+		assertEquals(2, listener.events.size());
+		assertEquals(1, grid.getSubscribers(-3, 2, 100).size());
+		listener.events.clear();
+
+		assertTrue(grid.unsubscribe("a", -3, 2, 100));
+		assertTrue(listener.events.contains("destroy a 1"));
+		assertTrue(listener.events.contains("destroy a 2"));
+		assertEquals(0, grid.getSubscribers(-3, 2, 100).size());
+	}
+
+	@Test
+	public void testCellRelease() {
+		InterestGrid<String, Integer> grid = new InterestGrid<String, Integer>(new RecordingListener());
+
+		grid.subscribe("a", 0, 0, 0);
+		grid.subscribe("a", 0, 1, 0);
+		grid.addEntity(1, 0, 2, 0);
+		assertEquals(3, grid.getCellCount());
+
+		grid.removeSubscriber("a");
+		assertEquals(1, grid.getCellCount());
+
+		grid.moveEntity(1, 0, 2, 0, 0, 3, 0);
+		assertEquals(1, grid.getCellCount());
+
+		grid.removeEntity(1, 0, 3, 0);
+		assertEquals(0, grid.getCellCount());
+	}
+
+	private static class RecordingListener implements InterestListener<String, Integer> {
+		private final List<String> events = new ArrayList<String>();
+
+		@Override
+		public void onSpawn(String subscriber, Integer entity) {
+			events.add("spawn " + subscriber + " " + entity);
+		}
+
+		@Override
+		public void onDestroy(String subscriber, Integer entity) {
+			events.add("destroy " + subscriber + " " + entity);
+		}
+	}
+}
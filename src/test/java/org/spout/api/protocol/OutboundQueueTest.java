@@ -0,0 +1,268 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, SpoutDev <http://www.spout.org/>
+ * SpoutAPI is licensed under the SpoutDev License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://www.spout.org/SpoutDevLicenseV1.txt> for the full license,
+ * including the MIT license.
+ */
+package org.spout.api.protocol;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.Channel;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.spout.api.chat.ChatArguments;
+import org.spout.api.command.Command;
+import org.spout.api.exception.UnknownPacketException;
+
+public class OutboundQueueTest {
+
+	@Test
+	public void testLimits() {
+		OutboundQueue queue = new OutboundQueue(new TestProtocol());
+		queue.setLimit(SendPriority.CHUNK, 100, OutboundQueue.OverflowPolicy.DROP_NEWEST);
+		queue.setLimit(SendPriority.ENTITY, 100, OutboundQueue.OverflowPolicy.DROP_OLDEST);
+
+		assertTrue(queue.offer(new EncodedMessage(SendPriority.CHUNK.ordinal(), buffer(60))));
+		assertFalse(queue.offer(new EncodedMessage(SendPriority.CHUNK.ordinal(), buffer(60))));
+		assertEquals(1, queue.getQueuedMessages(SendPriority.CHUNK));
+		assertEquals(60, queue.getQueuedBytes(SendPriority.CHUNK));
+		assertEquals(1, queue.getDroppedMessages(SendPriority.CHUNK));
+
+		for (int i = 0; i < 5; i++) {
+			assertTrue(queue.offer(new EncodedMessage(SendPriority.ENTITY.ordinal(), buffer(30))));
+		}
+		assertEquals(3, queue.getQueuedMessages(SendPriority.ENTITY));
+		assertEquals(90, queue.getQueuedBytes(SendPriority.ENTITY));
+		assertEquals(2, queue.getDroppedMessages(SendPriority.ENTITY));
+
+		// An oversized message is accepted by an empty class
+		assertTrue(queue.offer(new EncodedMessage(SendPriority.BULK.ordinal(), buffer(2 * 1024 * 1024))));
+	}
+
+	@Test
+	public void testMerge() {
+		OutboundQueue queue = new OutboundQueue(new TestProtocol());
+
+		queue.offer(new PositionMessage(1, buffer(10)));
+		queue.offer(new PositionMessage(2, buffer(10)));
+		queue.offer(new PositionMessage(1, buffer(20)));
+
+		assertEquals(2, queue.getQueuedMessages(SendPriority.ENTITY));
+		assertEquals(30, queue.getQueuedBytes(SendPriority.ENTITY));
+		assertEquals(1, queue.getMergedMessages(SendPriority.ENTITY));
+
+		queue.clear();
+		assertEquals(0, queue.getQueuedBytes(SendPriority.ENTITY));
+		queue.offer(new PositionMessage(1, buffer(10)));
+		assertEquals(1, queue.getQueuedMessages(SendPriority.ENTITY));
+	}
+
+	@Test
+	public void testEntityOverflow() {
+		OutboundQueue queue = new OutboundQueue(new TestProtocol());
+		queue.setLimit(SendPriority.ENTITY, 100, OutboundQueue.OverflowPolicy.DROP_MERGEABLE);
+
+		EncodedMessage spawn = new EncodedMessage(SendPriority.ENTITY.ordinal(), buffer(40));
+		assertTrue(queue.offer(spawn));
+		assertTrue(queue.offer(new PositionMessage(1, buffer(30))));
+		assertTrue(queue.offer(new PositionMessage(2, buffer(30))));
+
+		// The oldest position update makes room, and spawns and destroys are never dropped
+		EncodedMessage destroy = new EncodedMessage(SendPriority.ENTITY.ordinal(), buffer(30));
+		assertTrue(queue.offer(destroy));
+		assertEquals(1, queue.getDroppedMessages(SendPriority.ENTITY));
+		assertTrue(queue.offer(new EncodedMessage(SendPriority.ENTITY.ordinal(), buffer(30))));
+		assertEquals(2, queue.getDroppedMessages(SendPriority.ENTITY));
+		assertEquals(3, queue.getQueuedMessages(SendPriority.ENTITY));
+		assertEquals(100, queue.getQueuedBytes(SendPriority.ENTITY));
+
+		// Over the limit with nothing mergeable left, only new position updates are dropped
+		assertFalse(queue.offer(new PositionMessage(3, buffer(10))));
+		assertTrue(queue.offer(new EncodedMessage(SendPriority.ENTITY.ordinal(), buffer(10))));
+		assertEquals(4, queue.getQueuedMessages(SendPriority.ENTITY));
+
+		List<Object> written = flush(queue, 4);
+		assertSame(spawn, written.get(0));
+		assertSame(destroy, written.get(1));
+	}
+
+	@Test
+	public void testMergeOrder() {
+		OutboundQueue queue = new OutboundQueue(new TestProtocol());
+		PositionMessage first = new PositionMessage(1, buffer(10));
+		EncodedMessage destroy = new EncodedMessage(SendPriority.ENTITY.ordinal(), buffer(10));
+		PositionMessage merged = new PositionMessage(1, buffer(10));
+		queue.offer(first);
+		queue.offer(destroy);
+		queue.offer(merged);
+
+		// The merged update must not be sent before the destroy offered after the message it replaced
+		List<Object> written = flush(queue, 2);
+		assertSame(destroy, written.get(0));
+		assertSame(merged, written.get(1));
+		assertEquals(0, queue.getQueuedMessages(SendPriority.ENTITY));
+
+		// Repeated merges while the channel is not writable do not grow the queue
+		for (int i = 0; i < 1000; i++) {
+			queue.offer(new PositionMessage(i & 3, buffer(10)));
+		}
+		assertEquals(4, queue.getQueuedMessages(SendPriority.ENTITY));
+		assertEquals(40, queue.getQueuedBytes(SendPriority.ENTITY));
+		assertEquals(4, flush(queue, 4).size());
+	}
+
+	@Test
+	public void testDisconnect() {
+		OutboundQueue queue = new OutboundQueue(new TestProtocol());
+		// Chunks are never dropped, so a client which cannot take them any more is disconnected
+		assertTrue(queue.offer(new EncodedMessage(SendPriority.CHUNK.ordinal(), buffer(3 * 1024 * 1024))));
+		assertFalse(queue.isOverflowed());
+		assertFalse(queue.offer(new EncodedMessage(SendPriority.CHUNK.ordinal(), buffer(2 * 1024 * 1024))));
+		assertTrue(queue.isOverflowed());
+		assertEquals(0, queue.getDroppedMessages(SendPriority.CHUNK));
+
+		Channel channel = mock(Channel.class);
+		when(channel.isConnected()).thenReturn(true);
+		when(channel.isWritable()).thenReturn(true);
+		queue.flush(channel);
+		verify(channel).close();
+		verify(channel, never()).write(any());
+		assertFalse(queue.isOverflowed());
+		assertEquals(0, queue.getQueuedBytes(SendPriority.CHUNK));
+	}
+
+	@Test
+	public void testControlLimit() {
+		OutboundQueue queue = new OutboundQueue(new TestProtocol());
+		Channel channel = mock(Channel.class);
+		when(channel.isConnected()).thenReturn(true);
+		when(channel.isWritable()).thenReturn(false);
+
+		// Control messages wait for the channel like the other classes, within a limit
+		queue.send(channel, new EncodedMessage(SendPriority.CONTROL.ordinal(), buffer(10)));
+		verify(channel, never()).write(any());
+		assertEquals(1, queue.getQueuedMessages(SendPriority.CONTROL));
+		for (int i = 0; i < 1024 && !queue.isOverflowed(); i++) {
+			queue.send(channel, new EncodedMessage(SendPriority.CONTROL.ordinal(), buffer(1024)));
+		}
+		verify(channel).close();
+	}
+
+	@Test
+	public void testEntityHardLimit() {
+		OutboundQueue queue = new OutboundQueue(new TestProtocol());
+		queue.setLimit(SendPriority.ENTITY, 100, OutboundQueue.OverflowPolicy.DROP_MERGEABLE);
+		assertTrue(queue.offer(new EncodedMessage(SendPriority.ENTITY.ordinal(), buffer(100))));
+		assertTrue(queue.offer(new EncodedMessage(SendPriority.ENTITY.ordinal(), buffer(100))));
+		assertFalse(queue.isOverflowed());
+		assertFalse(queue.offer(new EncodedMessage(SendPriority.ENTITY.ordinal(), buffer(1))));
+		assertTrue(queue.isOverflowed());
+	}
+
+	private static List<Object> flush(OutboundQueue queue, int expected) {
+		Channel channel = mock(Channel.class);
+		when(channel.isConnected()).thenReturn(true);
+		when(channel.isWritable()).thenReturn(true);
+		queue.flush(channel);
+		ArgumentCaptor<Object> written = ArgumentCaptor.forClass(Object.class);
+		verify(channel, times(expected)).write(written.capture());
+		return written.getAllValues();
+	}
+
+	private static ChannelBuffer buffer(int length) {
+		ChannelBuffer buffer = ChannelBuffers.buffer(length);
+		buffer.writerIndex(length);
+		return buffer;
+	}
+
+	private static class PositionMessage extends EncodedMessage implements MergeableMessage {
+		private final int entityId;
+
+		public PositionMessage(int entityId, ChannelBuffer frame) {
+			super(SendPriority.ENTITY.ordinal(), frame);
+			this.entityId = entityId;
+		}
+
+		@Override
+		public Object getMergeKey() {
+			return entityId;
+		}
+	}
+
+	/**
+	 * A protocol which uses the opcode of encoded messages as the priority ordinal
+	 */
+	private static class TestProtocol extends Protocol {
+		public TestProtocol() {
+			super("OutboundQueueTest", 0, null, null);
+		}
+
+		@Override
+		public SendPriority getSendPriority(Message message) {
+			return SendPriority.values()[((EncodedMessage) message).getOpcode()];
+		}
+
+		@Override
+		public MessageCodec<?> readHeader(ChannelBuffer buf) throws UnknownPacketException {
+			return null;
+		}
+
+		@Override
+		public ChannelBuffer writeHeader(MessageCodec<?> codec, ChannelBuffer data) {
+			return null;
+		}
+
+		@Override
+		public Message getKickMessage(ChatArguments message) {
+			return null;
+		}
+
+		@Override
+		public Message getCommandMessage(Command command, ChatArguments arguments) {
+			return null;
+		}
+
+		@Override
+		public Message getIntroductionMessage(String playerName) {
+			return null;
+		}
+
+		@Override
+		public void initializeSession(Session session) {
+		}
+	}
+}
@@ -0,0 +1,92 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, SpoutDev <http://www.spout.org/>
+ * SpoutAPI is licensed under the SpoutDev License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://www.spout.org/SpoutDevLicenseV1.txt> for the full license,
+ * including the MIT license.
+ */
+package org.spout.api.protocol;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import org.junit.Test;
+import org.spout.api.geo.discrete.Point;
+import org.spout.api.geo.discrete.Transform;
+import org.spout.api.math.Quaternion;
+import org.spout.api.math.Vector3;
+
+public class QuantizedTransformTest {
+	@Test
+	public void testPositionRounding() {
+		QuantizedTransform q = QuantizedTransform.quantize(transform(1.01F, -2.49F / 32F, 100.5F / 32F, 0, 0, 0), 32F, 256);
+		// 32.32 rounds down, -2.49 rounds to -2, 100.5 rounds up
+		assertEquals(32, q.getX());
+		assertEquals(-2, q.getY());
+		assertEquals(101, q.getZ());
+	}
+
+	@Test
+	public void testAngleWrapping() {
+		QuantizedTransform q = QuantizedTransform.quantize(transform(0, 0, 0, 359.9F, -90F, 180F), 32F, 256);
+		// Angles are wrapped into [0, rotationScale)
+		assertEquals(0, q.getYaw());
+		assertEquals(192, q.getPitch());
+		assertEquals(128, q.getRoll());
+
+		q = QuantizedTransform.quantize(transform(0, 0, 0, -1F, -359F, 721F), 32F, 256);
+		assertEquals(255, q.getYaw());
+		assertEquals(1, q.getPitch());
+		assertEquals(1, q.getRoll());
+	}
+
+	@Test
+	public void testChanges() {
+		QuantizedTransform a = new QuantizedTransform(1, 2, 3, 4, 5, 6);
+		QuantizedTransform moved = new QuantizedTransform(1, 2, 4, 4, 5, 6);
+		QuantizedTransform turned = new QuantizedTransform(1, 2, 3, 4, 5, 7);
+
+		assertTrue(a.isPositionChanged(null));
+		assertTrue(a.isRotationChanged(null));
+		assertTrue(moved.isPositionChanged(a));
+		assertFalse(moved.isRotationChanged(a));
+		assertFalse(turned.isPositionChanged(a));
+		assertTrue(turned.isRotationChanged(a));
+
+		QuantizedTransform copy = new QuantizedTransform(1, 2, 3, 4, 5, 6);
+		assertEquals(a, copy);
+		assertEquals(a.hashCode(), copy.hashCode());
+		assertFalse(a.equals(moved));
+		assertFalse(a.equals(turned));
+	}
+
+	static Transform transform(float x, float y, float z, float yaw, float pitch, float roll) {
+		Quaternion rotation = mock(Quaternion.class);
+		when(rotation.getYaw()).thenReturn(yaw);
+		when(rotation.getPitch()).thenReturn(pitch);
+		when(rotation.getRoll()).thenReturn(roll);
+		return new Transform(new Point(null, x, y, z), rotation, Vector3.ONE);
+	}
+}
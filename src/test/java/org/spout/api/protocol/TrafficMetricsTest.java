@@ -0,0 +1,81 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, SpoutDev <http://www.spout.org/>
+ * SpoutAPI is licensed under the SpoutDev License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://www.spout.org/SpoutDevLicenseV1.txt> for the full license,
+ * including the MIT license.
+ */
+package org.spout.api.protocol;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Map;
+
+import org.junit.Test;
+
+public class TrafficMetricsTest {
+	private static final int THREADS = 4;
+	private static final int MESSAGES = 10000;
+
+	@Test
+	public void testConcurrentRecording() throws InterruptedException {
+		final TrafficMetrics engine = new TrafficMetrics();
+		final TrafficMetrics session = new TrafficMetrics(engine);
+
+		Thread[] threads = new Thread[THREADS];
+		for (int t = 0; t < THREADS; t++) {
+			threads[t] = new Thread() {
+				@Override
+				public void run() {
+					for (int i = 0; i < MESSAGES; i++) {
+						session.recordInbound(0x0D, 42, 10);
+						session.recordOutbound(0x1000, 7, 3);
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		TrafficStatistics position = session.getStatistics(0x0D);
+		assertEquals(THREADS * MESSAGES, position.getInboundCount());
+		assertEquals(THREADS * MESSAGES * 42L, position.getInboundBytes());
+		assertEquals(THREADS * MESSAGES * 10L, position.getInboundNanos());
+		assertEquals(0, position.getOutboundCount());
+
+		TrafficStatistics custom = engine.getStatistics(0x1000);
+		assertEquals(THREADS * MESSAGES, custom.getOutboundCount());
+		assertEquals(THREADS * MESSAGES * 7L, custom.getOutboundBytes());
+
+		Map<Integer, TrafficStatistics> all = engine.getStatistics();
+		assertEquals(2, all.size());
+
+		TrafficStatistics total = engine.getTotal();
+		assertEquals(-1, total.getOpcode());
+		assertEquals(THREADS * MESSAGES, total.getInboundCount());
+		assertEquals(THREADS * MESSAGES, total.getOutboundCount());
+
+		assertEquals(0, session.getStatistics(1).getInboundCount());
+	}
+}
@@ -0,0 +1,117 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, SpoutDev <http://www.spout.org/>
+ * SpoutAPI is licensed under the SpoutDev License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://www.spout.org/SpoutDevLicenseV1.txt> for the full license,
+ * including the MIT license.
+ */
+package org.spout.api.protocol.builder;
+
+import static org.junit.Assert.assertEquals;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.junit.Test;
+
+public class GenericMessageTest {
+
+	private static final FieldRef<Integer> FIRST = new FieldRef<Integer>(0);
+	private static final FieldRef<Byte> SECOND = new FieldRef<Byte>(1);
+	private static final FieldRef<byte[]> NAME = new FieldRef<byte[]>(2);
+	private static final FieldRef<Long> AFTER_NAME = new FieldRef<Long>(3);
+
+	private static final CompoundMessageField ROOT = new CompoundMessageField(new MessageField[] {
+			new IntMessageField(), new ByteMessageField(), new ByteArrayField(), new LongMessageField()});
+
+	@Test
+	public void testFieldAccess() throws Exception {
+		ChannelBuffer input = ChannelBuffers.dynamicBuffer();
+		input.writeInt(0x12345678);
+		input.writeByte(-3);
+		input.writeShort(5);
+		input.writeBytes(new byte[] {1, 2, 3, 4, 5});
+		input.writeLong(0x123456789ABCDEFL);
+
+		assertEquals(0, ROOT.getFixedOffset(0));
+		assertEquals(4, ROOT.getFixedOffset(1));
+		assertEquals(5, ROOT.getFixedOffset(2));
+		assertEquals(-1, ROOT.getFixedOffset(3));
+
+		TestMessage message = new TestMessage().decode(false, input);
+
+		assertEquals(0x12345678, message.getInt(FIRST));
+		assertEquals(-3, message.getByte(SECOND));
+		assertEquals(253, message.getUnsignedByte(new FieldRef<Short>(1)));
+		assertEquals(5, message.get(NAME).length);
+		assertEquals(0x123456789ABCDEFL, message.getLong(AFTER_NAME));
+		assertEquals(0, message.buffer.readerIndex());
+	}
+
+	private static class TestMessage extends GenericMessage<TestMessage> {
+		public TestMessage() {
+			super(TestMessage.class, 0);
+		}
+
+		@Override
+		public CompoundMessageField getFieldRoot() {
+			return ROOT;
+		}
+	}
+
+	private static class ByteArrayField extends MessageFieldImpl {
+		@Override
+		public MessageField getCompressed() {
+			return null;
+		}
+
+		@Override
+		public int getLength(ChannelBuffer buffer) {
+			return 2 + buffer.getUnsignedShort(buffer.readerIndex());
+		}
+
+		@Override
+		public int skip(ChannelBuffer buffer) {
+			int length = buffer.readUnsignedShort();
+			buffer.skipBytes(length);
+			return length + 2;
+		}
+
+		@Override
+		public byte[] read(ChannelBuffer buffer) {
+			byte[] array = new byte[buffer.readUnsignedShort()];
+			buffer.readBytes(array);
+			return array;
+		}
+
+		@Override
+		public void write(ChannelBuffer buffer, Object value) {
+			byte[] array = (byte[]) value;
+			buffer.writeShort(array.length);
+			buffer.writeBytes(array);
+		}
+
+		@Override
+		public void transfer(ChannelBuffer sourceBuffer, ChannelBuffer targetBuffer) {
+			write(targetBuffer, read(sourceBuffer));
+		}
+	}
+}
@@ -0,0 +1,109 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, SpoutDev <http://www.spout.org/>
+ * SpoutAPI is licensed under the SpoutDev License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://www.spout.org/SpoutDevLicenseV1.txt> for the full license,
+ * including the MIT license.
+ */
+package org.spout.api.protocol.fake;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.spout.api.chat.ChatArguments;
+import org.spout.api.command.Command;
+import org.spout.api.exception.UnknownPacketException;
+import org.spout.api.protocol.CodecLookupService;
+import org.spout.api.protocol.Message;
+import org.spout.api.protocol.MessageCodec;
+import org.spout.api.protocol.Protocol;
+import org.spout.api.protocol.Session;
+
+/**
+ * A protocol with a 4 byte header, made of a short opcode and a short body length
+ */
+public class FakeProtocol extends Protocol {
+	public static final int HEADER_SIZE = 4;
+
+	public FakeProtocol(Class<?>... codecs) throws Exception {
+		super("FakeProtocol", 0, new FakeCodecLookupService(codecs), null);
+	}
+
+	@Override
+	public MessageCodec<?> readHeader(ChannelBuffer buf) throws UnknownPacketException {
+		int opcode = buf.readUnsignedShort();
+		buf.readUnsignedShort();
+		MessageCodec<?> codec = getCodecLookupService().find(opcode);
+		if (codec == null) {
+			throw new UnknownPacketException(opcode);
+		}
+		return codec;
+	}
+
+	@Override
+	public int getFrameLength(ChannelBuffer buf) {
+		if (buf.readableBytes() < HEADER_SIZE) {
+			return INCOMPLETE_LENGTH;
+		}
+		return HEADER_SIZE + buf.getUnsignedShort(buf.readerIndex() + 2);
+	}
+
+	@Override
+	public ChannelBuffer writeHeader(MessageCodec<?> codec, ChannelBuffer data) {
+		ChannelBuffer header = ChannelBuffers.buffer(HEADER_SIZE);
+		header.writeShort(codec.getOpcode());
+		header.writeShort(data.readableBytes());
+		return header;
+	}
+
+	@Override
+	public int getMaxHeaderSize() {
+		return HEADER_SIZE;
+	}
+
+	@Override
+	public Message getKickMessage(ChatArguments message) {
+		return null;
+	}
+
+	@Override
+	public Message getCommandMessage(Command command, ChatArguments arguments) {
+		return null;
+	}
+
+	@Override
+	public Message getIntroductionMessage(String playerName) {
+		return null;
+	}
+
+	@Override
+	public void initializeSession(Session session) {
+	}
+
+	private static class FakeCodecLookupService extends CodecLookupService {
+		@SuppressWarnings({"unchecked", "rawtypes"})
+		public FakeCodecLookupService(Class<?>... codecs) throws Exception {
+			for (Class<?> codec : codecs) {
+				bind((Class) codec);
+			}
+		}
+	}
+}
@@ -0,0 +1,159 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, SpoutDev <http://www.spout.org/>
+ * SpoutAPI is licensed under the SpoutDev License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://www.spout.org/SpoutDevLicenseV1.txt> for the full license,
+ * including the MIT license.
+ */
+package org.spout.api.scheduler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+import org.spout.api.geo.cuboid.Region;
+
+public class AsyncTaskExecutorTest {
+	@Test
+	public void testPooled() throws InterruptedException {
+		AsyncTaskExecutor executor = new AsyncTaskExecutor("Test Pool", 2, false);
+		assertFalse(executor.isVirtual());
+		testExecutor(executor, 2);
+	}
+
+	@Test
+	public void testDefault() throws InterruptedException {
+		AsyncTaskExecutor executor = new AsyncTaskExecutor("Test Default", 2);
+		assertEquals(AsyncTaskExecutor.isVirtualThreadSupported(), executor.isVirtual());
+		if (executor.isVirtual()) {
+			// Far more blocked tasks than there would be pool threads
+			testExecutor(executor, 200);
+		} else {
+			testExecutor(executor, 2);
+		}
+	}
+
+	private void testExecutor(AsyncTaskExecutor executor, int tasks) throws InterruptedException {
+		final CountDownLatch started = new CountDownLatch(tasks);
+		final CountDownLatch release = new CountDownLatch(1);
+		final AtomicReference<Thread> lastThread = new AtomicReference<Thread>();
+		Worker[] workers = new Worker[tasks];
+		for (int i = 0; i < tasks; i++) {
+			workers[i] = executor.execute(new TestTask(i), new Runnable() {
+				@Override
+				public void run() {
+					lastThread.set(Thread.currentThread());
+					started.countDown();
+					try {
+						release.await();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+			});
+		}
+		// Extra task, which must wait in pooled mode
+		Worker extra = executor.execute(new TestTask(-1), new Runnable() {
+			@Override
+			public void run() {
+			}
+		});
+
+		assertTrue(started.await(5000, TimeUnit.MILLISECONDS));
+		assertTrue(executor.getActiveCount() >= tasks);
+		long end = System.currentTimeMillis() + 5000;
+		while (executor.getParkedCount() < tasks && System.currentTimeMillis() < end) {
+			Thread.sleep(1);
+		}
+		assertEquals(tasks, executor.getParkedCount());
+		if (!executor.isVirtual()) {
+			assertEquals(1, executor.getQueuedCount());
+			assertEquals(null, extra.getThread());
+		}
+		for (int i = 0; i < tasks; i++) {
+			assertEquals(i, workers[i].getTaskId());
+			assertTrue(workers[i].getThread() != null);
+		}
+		boolean found = false;
+		for (Worker worker : executor.getActiveWorkers()) {
+			found |= worker.getThread() == lastThread.get();
+		}
+		assertTrue(found);
+
+		release.countDown();
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(5000));
+		assertEquals(0, executor.getActiveCount());
+		assertEquals(0, executor.getQueuedCount());
+		assertEquals(-1, extra.getTaskId());
+		if (!executor.isVirtual()) {
+			// Completed workers do not hold on to the pool threads
+			assertEquals(null, extra.getThread());
+			for (Worker worker : workers) {
+				assertEquals(null, worker.getThread());
+			}
+		}
+	}
+
+	private static class TestTask implements Task {
+		private final int id;
+
+		public TestTask(int id) {
+			this.id = id;
+		}
+
+		@Override
+		public int getTaskId() {
+			return id;
+		}
+
+		@Override
+		public Object getOwner() {
+			return this;
+		}
+
+		@Override
+		public boolean isSync() {
+			return false;
+		}
+
+		@Override
+		public boolean isAlive() {
+			return true;
+		}
+
+		@Override
+		public boolean isExecuting() {
+			return false;
+		}
+
+		@Override
+		public Task getChildTask(Region region) {
+			return null;
+		}
+	}
+}
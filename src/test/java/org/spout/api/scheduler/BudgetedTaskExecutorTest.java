@@ -0,0 +1,138 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, SpoutDev <http://www.spout.org/>
+ * SpoutAPI is licensed under the SpoutDev License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://www.spout.org/SpoutDevLicenseV1.txt> for the full license,
+ * including the MIT license.
+ */
+package org.spout.api.scheduler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class BudgetedTaskExecutorTest {
+	@Test
+	public void testPriorityOrder() {
+		BudgetedTaskExecutor executor = new BudgetedTaskExecutor();
+		final List<String> order = new ArrayList<String>();
+		executor.submit(new Record(order, "low"), TaskPriority.LOW);
+		executor.submit(new Record(order, "critical"), TaskPriority.CRITICAL);
+		executor.submit(new Record(order, "high1"), TaskPriority.HIGH);
+		executor.submit(new Record(order, "high2"), TaskPriority.HIGH);
+		assertEquals(4, executor.getQueuedTasks());
+
+		assertEquals(4, executor.runTasks(System.currentTimeMillis(), Long.MAX_VALUE / 2));
+		assertEquals(0, executor.getQueuedTasks());
+		assertEquals("critical", order.get(0));
+		assertEquals("high1", order.get(1));
+		assertEquals("high2", order.get(2));
+		assertEquals("low", order.get(3));
+	}
+
+	@Test
+	public void testDeferral() {
+		BudgetedTaskExecutor executor = new BudgetedTaskExecutor();
+		final List<String> order = new ArrayList<String>();
+		executor.submit(new Record(order, "critical"), TaskPriority.CRITICAL);
+		executor.submit(new Record(order, "high"), TaskPriority.HIGH);
+		executor.submit(new Record(order, "low"), TaskPriority.LOW);
+		// Read after submitting, so the tasks have waited at least as long as the test assumes
+		long now = System.currentTimeMillis();
+
+		// No budget, only critical tasks may run
+		assertEquals(1, executor.runTasks(now, 0));
+		assertEquals(1, order.size());
+		assertEquals("critical", order.get(0));
+
+		// The high priority task has now waited its full window, so runs without budget
+		assertEquals(1, executor.runTasks(now + TaskPriority.HIGH.getMaxDeferred() + 1, 0));
+		assertEquals("high", order.get(1));
+
+		assertEquals(1, executor.runTasks(now + TaskPriority.LOW.getMaxDeferred() + 1, 0));
+		assertEquals("low", order.get(2));
+
+		for (BudgetedTaskExecutor.PriorityStatistics statistics : executor.getStatistics()) {
+			assertEquals(0, statistics.getQueued());
+			assertEquals(1, statistics.getExecuted());
+			if (statistics.getPriority() == TaskPriority.LOW) {
+				assertEquals(2, statistics.getDeferrals());
+				assertTrue(statistics.getMaxLatency() > TaskPriority.HIGH.getMaxDeferred());
+			} else if (statistics.getPriority() == TaskPriority.CRITICAL) {
+				assertEquals(0, statistics.getDeferrals());
+			}
+		}
+	}
+
+	@Test
+	public void testResubmit() {
+		final BudgetedTaskExecutor executor = new BudgetedTaskExecutor();
+		final int[] runs = new int[1];
+		executor.submit(new Runnable() {
+			@Override
+			public void run() {
+				runs[0]++;
+				executor.submit(this, TaskPriority.CRITICAL);
+			}
+		}, TaskPriority.CRITICAL);
+
+		// A task which queues itself runs once per call
+		assertEquals(1, executor.runTasks(System.currentTimeMillis(), Long.MAX_VALUE / 2));
+		assertEquals(1, executor.runTasks(System.currentTimeMillis(), Long.MAX_VALUE / 2));
+		assertEquals(2, runs[0]);
+		assertEquals(1, executor.getQueuedTasks());
+	}
+
+	@Test
+	public void testException() {
+		BudgetedTaskExecutor executor = new BudgetedTaskExecutor();
+		final List<String> order = new ArrayList<String>();
+		executor.submit(new Runnable() {
+			@Override
+			public void run() {
+				throw new IllegalStateException("Expected");
+			}
+		}, TaskPriority.HIGH);
+		executor.submit(new Record(order, "after"), TaskPriority.HIGH);
+		assertEquals(2, executor.runTasks(System.currentTimeMillis(), Long.MAX_VALUE / 2));
+		assertEquals(1, order.size());
+	}
+
+	private static class Record implements Runnable {
+		private final List<String> order;
+		private final String name;
+
+		public Record(List<String> order, String name) {
+			this.order = order;
+			this.name = name;
+		}
+
+		@Override
+		public void run() {
+			order.add(name);
+		}
+	}
+}
@@ -0,0 +1,186 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, SpoutDev <http://www.spout.org/>
+ * SpoutAPI is licensed under the SpoutDev License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://www.spout.org/SpoutDevLicenseV1.txt> for the full license,
+ * including the MIT license.
+ */
+package org.spout.api.scheduler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TaskWheelTest {
+	private static final long TICK = 50;
+
+	@Test
+	public void testExpiry() {
+		Random r = new Random(7);
+		TaskWheel<Long> wheel = new TaskWheel<Long>(0, TICK, 64);
+		final List<long[]> fired = new ArrayList<long[]>();
+		final long[] now = new long[1];
+		TaskWheel.Handler<Long> handler = new TaskWheel.Handler<Long>() {
+			@Override
+			public void onExpire(Long task, long dueTime) {
+				assertEquals(task.longValue(), dueTime);
+				fired.add(new long[] {dueTime, now[0]});
+			}
+		};
+		int count = 5000;
+		for (int i = 0; i < count; i++) {
+			// Up to several rotations of the wheel ahead
+			long due = 1 + r.nextInt(64 * 50 * 10);
+			wheel.schedule(due, due, TaskPriority.NORMAL);
+		}
+		assertEquals(count, wheel.size());
+		for (now[0] = 0; now[0] <= 64 * 50 * 10 + TICK; now[0] += TICK) {
+			wheel.advance(now[0], false, handler);
+		}
+		assertEquals(count, fired.size());
+		assertEquals(0, wheel.size());
+		for (long[] f : fired) {
+			// Never early, and no more than one tick late
+			assertTrue(f[1] >= f[0]);
+			assertTrue(f[1] - f[0] < TICK);
+		}
+	}
+
+	@Test
+	public void testCancel() {
+		TaskWheel<String> wheel = new TaskWheel<String>(0, TICK, 8);
+		long a = wheel.schedule("a", 100, TaskPriority.NORMAL);
+		long b = wheel.schedule("b", 100, TaskPriority.NORMAL);
+		assertTrue(wheel.isScheduled(a));
+		assertTrue(wheel.cancel(a));
+		assertFalse(wheel.cancel(a));
+		assertFalse(wheel.isScheduled(a));
+
+		// The freed entry is reused, but the old handle must not cancel the new task
+		long c = wheel.schedule("c", 100, TaskPriority.NORMAL);
+		assertFalse(wheel.cancel(a));
+		assertTrue(wheel.isScheduled(c));
+
+		final List<String> fired = new ArrayList<String>();
+		wheel.advance(100, false, new TaskWheel.Handler<String>() {
+			@Override
+			public void onExpire(String task, long dueTime) {
+				fired.add(task);
+			}
+		});
+		assertEquals(2, fired.size());
+		assertTrue(fired.contains("b"));
+		assertTrue(fired.contains("c"));
+		assertFalse(wheel.isScheduled(b));
+		assertFalse(wheel.cancel(c));
+	}
+
+	@Test
+	public void testSameTickOrder() {
+		TaskWheel<Integer> wheel = new TaskWheel<Integer>(0, TICK, 8);
+		final List<Integer> fired = new ArrayList<Integer>();
+		TaskWheel.Handler<Integer> handler = new TaskWheel.Handler<Integer>() {
+			@Override
+			public void onExpire(Integer task, long dueTime) {
+				fired.add(task);
+			}
+		};
+		long[] handles = new long[10];
+		for (int i = 0; i < 10; i++) {
+			handles[i] = wheel.schedule(i, 100, TaskPriority.NORMAL);
+			// Shares the slot, but expires a full rotation later
+			wheel.schedule(100 + i, 100 + 8 * TICK, TaskPriority.NORMAL);
+		}
+		// Cancel the head, the tail and one from the middle of the slot
+		wheel.cancel(handles[0]);
+		wheel.cancel(handles[5]);
+		wheel.cancel(handles[9]);
+		wheel.schedule(10, 100, TaskPriority.NORMAL);
+
+		wheel.advance(100, false, handler);
+		assertEquals(8, fired.size());
+		int[] expected = {1, 2, 3, 4, 6, 7, 8, 10};
+		for (int i = 0; i < expected.length; i++) {
+			assertEquals(expected[i], fired.get(i).intValue());
+		}
+
+		fired.clear();
+		wheel.advance(100 + 8 * TICK, false, handler);
+		assertEquals(10, fired.size());
+		for (int i = 0; i < 10; i++) {
+			assertEquals(100 + i, fired.get(i).intValue());
+		}
+		assertEquals(0, wheel.size());
+	}
+
+	@Test
+	public void testDeferral() {
+		TaskWheel<TaskPriority> wheel = new TaskWheel<TaskPriority>(0, TICK, 64);
+		final List<TaskPriority> fired = new ArrayList<TaskPriority>();
+		TaskWheel.Handler<TaskPriority> handler = new TaskWheel.Handler<TaskPriority>() {
+			@Override
+			public void onExpire(TaskPriority task, long dueTime) {
+				fired.add(task);
+			}
+		};
+		for (int i = 0; i < 20; i++) {
+			wheel.schedule(TaskPriority.CRITICAL, 50, TaskPriority.CRITICAL);
+			wheel.schedule(TaskPriority.HIGH, 50, TaskPriority.HIGH);
+			wheel.schedule(TaskPriority.LOWEST, 50, TaskPriority.LOWEST);
+		}
+
+		// While overloaded, only critical tasks run on time
+		wheel.advance(50, true, handler);
+		assertEquals(20, fired.size());
+		for (TaskPriority p : fired) {
+			assertTrue(p == TaskPriority.CRITICAL);
+		}
+		assertEquals(40, wheel.getDeferredCount());
+
+		// High priority tasks reach their 150ms limit, and run even though the tick is still overloaded
+		fired.clear();
+		for (long t = 100; t <= 200; t += TICK) {
+			wheel.advance(t, true, handler);
+		}
+		assertEquals(20, fired.size());
+		for (TaskPriority p : fired) {
+			assertTrue(p == TaskPriority.HIGH);
+		}
+
+		// Once the load drops, the lowest priority tasks are spread over the following ticks
+		fired.clear();
+		int ticks = 0;
+		while (wheel.size() > 0) {
+			int expired = wheel.advance(250 + ticks * TICK, false, handler);
+			assertTrue(expired < 20);
+			ticks++;
+		}
+		assertEquals(20, fired.size());
+		assertTrue(ticks > 1);
+	}
+}
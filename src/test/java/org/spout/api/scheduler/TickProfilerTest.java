@@ -0,0 +1,144 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, SpoutDev <http://www.spout.org/>
+ * SpoutAPI is licensed under the SpoutDev License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://www.spout.org/SpoutDevLicenseV1.txt> for the full license,
+ * including the MIT license.
+ */
+package org.spout.api.scheduler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+
+import org.junit.Test;
+import org.spout.api.geo.cuboid.Region;
+
+public class TickProfilerTest {
+	private static final int[] STAGES = {TickStage.TICKSTART, TickStage.STAGE1, TickStage.PHYSICS, TickStage.FINALIZE, TickStage.PRESNAPSHOT, TickStage.SNAPSHOT};
+
+	@Test
+	public void testStageNames() {
+		assertEquals("LIGHTING", TickStage.getStage(TickStage.LIGHTING));
+		assertEquals("FINALIZE", TickStage.getStage(TickStage.FINALIZE));
+		assertEquals("SNAPSHOT", TickStage.getStage(TickStage.SNAPSHOT));
+		assertEquals("STAGE1, FINALIZE", TickStage.getAllStages(TickStage.STAGE1 | TickStage.FINALIZE));
+	}
+
+	@Test
+	public void testRecording() throws InterruptedException {
+		TickProfiler profiler = new TickProfiler(4, 1000, 1, 0);
+		Region region = mock(Region.class);
+		when(region.getX()).thenReturn(1);
+		when(region.getY()).thenReturn(-2);
+		when(region.getZ()).thenReturn(3);
+		TickProfiler.RegionKey key = new TickProfiler.RegionKey(null, 1, -2, 3);
+		for (long tick = 1; tick <= 6; tick++) {
+			for (int stage : STAGES) {
+				profiler.startStage(stage, tick);
+				if (stage == TickStage.PHYSICS) {
+					profiler.recordRegion(region, 1000);
+					Thread.sleep(2);
+				}
+			}
+			profiler.endTick();
+		}
+		assertEquals(6, profiler.getCompletedTicks());
+		List<TickProfiler.TickRecord> ticks = profiler.getRecentTicks(10);
+		// Only the capacity is kept
+		assertEquals(4, ticks.size());
+		assertEquals(3, ticks.get(0).getTick());
+		assertEquals(6, ticks.get(3).getTick());
+		for (TickProfiler.TickRecord record : ticks) {
+			assertTrue(record.getStageTime(TickStage.PHYSICS) >= 2000000L);
+			assertTrue(record.getDuration() >= record.getStageTime(TickStage.PHYSICS));
+			assertEquals(0, record.getStageTime(TickStage.LIGHTING));
+			// Records are keyed by coordinates, so they do not hold on to the region
+			assertEquals(Long.valueOf(1000), record.getRegionTimes().get(key));
+		}
+		assertEquals(Long.valueOf(6000), profiler.getRegionTotals().get(region));
+
+		long total = 0;
+		for (long count : profiler.getHistogram()) {
+			total += count;
+		}
+		assertEquals(6, total);
+		assertEquals(0, profiler.getOverrunDumps().size());
+	}
+
+	@Test
+	public void testRecordingBetweenTicks() {
+		TickProfiler profiler = new TickProfiler(4, 1000, 1, 0);
+		Region region = mock(Region.class);
+		TickProfiler.RegionKey key = new TickProfiler.RegionKey(region);
+		profiler.startStage(TickStage.TICKSTART, 1);
+		profiler.recordRegion(region, 1000);
+		profiler.endTick();
+		// Time recorded after the end of a tick is charged to the next tick
+		profiler.recordRegion(region, 500);
+		profiler.startStage(TickStage.TICKSTART, 2);
+		profiler.endTick();
+
+		List<TickProfiler.TickRecord> ticks = profiler.getRecentTicks(2);
+		assertEquals(Long.valueOf(1000), ticks.get(0).getRegionTimes().get(key));
+		assertEquals(Long.valueOf(500), ticks.get(1).getRegionTimes().get(key));
+		assertEquals(Long.valueOf(1500), profiler.getRegionTotals().get(region));
+	}
+
+	@Test
+	public void testOverrunDump() throws InterruptedException {
+		TickProfiler profiler = new TickProfiler(16, 20, 2, 2);
+		for (long tick = 1; tick <= 8; tick++) {
+			profiler.startStage(TickStage.TICKSTART, tick);
+			profiler.startStage(TickStage.STAGE1, tick);
+			if (tick == 4) {
+				Thread.sleep(30);
+			}
+			profiler.startStage(TickStage.SNAPSHOT, tick);
+			profiler.endTick();
+		}
+		List<TickProfiler.OverrunDump> dumps = profiler.getOverrunDumps();
+		assertEquals(1, dumps.size());
+		TickProfiler.OverrunDump dump = dumps.get(0);
+		assertEquals(4, dump.getOverrun().getTick());
+		List<TickProfiler.TickRecord> ticks = dump.getTicks();
+		assertEquals(5, ticks.size());
+		for (int i = 0; i < 5; i++) {
+			assertEquals(2 + i, ticks.get(i).getTick());
+		}
+		assertSame(dump.getOverrun(), ticks.get(2));
+		assertTrue(dump.getOverrun().getStageTime(TickStage.STAGE1) >= 30000000L);
+		assertTrue(dump.toString().contains("> Tick 4"));
+		long[] histogram = profiler.getHistogram();
+		long slow = 0;
+		for (int i = 0; i < histogram.length; i++) {
+			if (TickProfiler.getHistogramLowerBound(i) >= 16) {
+				slow += histogram[i];
+			}
+		}
+		assertEquals(1, slow);
+	}
+}
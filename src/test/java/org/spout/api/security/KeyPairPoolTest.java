@@ -0,0 +1,117 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, SpoutDev <http://www.spout.org/>
+ * SpoutAPI is licensed under the SpoutDev License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://www.spout.org/SpoutDevLicenseV1.txt> for the full license,
+ * including the MIT license.
+ */
+package org.spout.api.security;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.LinkedList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.bouncycastle.crypto.AsymmetricBlockCipher;
+import org.bouncycastle.crypto.AsymmetricCipherKeyPair;
+import org.junit.Test;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+public class KeyPairPoolTest {
+	private static final int KEY_SIZE = 512;
+
+	@Test
+	public void testPool() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			KeyPairPool pool = new KeyPairPool(SecurityHandler.getInstance(), executor, KEY_SIZE, "RSA", 2);
+
+			AsymmetricCipherKeyPair first = pool.take().get(30, TimeUnit.SECONDS);
+			AsymmetricCipherKeyPair second = pool.take().get(30, TimeUnit.SECONDS);
+			assertNotNull(first);
+			assertNotNull(second);
+			assertNotSame(first, second);
+
+			long end = System.currentTimeMillis() + 30000;
+			while (pool.getAvailable() < pool.getCapacity() && System.currentTimeMillis() < end) {
+				Thread.sleep(10);
+			}
+			assertEquals(pool.getCapacity(), pool.getAvailable());
+			assertNotNull(pool.poll());
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testWaitingFirst() throws Exception {
+		final LinkedList<Runnable> tasks = new LinkedList<Runnable>();
+		Executor executor = new Executor() {
+			@Override
+			public void execute(Runnable task) {
+				tasks.add(task);
+			}
+		};
+		KeyPairPool pool = new KeyPairPool(SecurityHandler.getInstance(), executor, KEY_SIZE, "RSA", 3);
+		pool.refill();
+		assertEquals(3, tasks.size());
+
+		// The caller is served by the first generation to finish, not one queued behind the refill
+		ListenableFuture<AsymmetricCipherKeyPair> first = pool.take();
+		ListenableFuture<AsymmetricCipherKeyPair> second = pool.take();
+		assertEquals(5, tasks.size());
+		tasks.poll().run();
+		assertTrue(first.isDone());
+		assertNotNull(first.get());
+		assertEquals(0, pool.getAvailable());
+		tasks.poll().run();
+		assertTrue(second.isDone());
+
+		while (!tasks.isEmpty()) {
+			tasks.poll().run();
+		}
+		assertEquals(3, pool.getAvailable());
+	}
+
+	@Test
+	public void testAsyncDecrypt() throws Exception {
+		SecurityHandler handler = SecurityHandler.getInstance();
+		AsymmetricCipherKeyPair pair = handler.getKeyPairPool(KEY_SIZE, "RSA").take().get(30, TimeUnit.SECONDS);
+		byte[] secret = new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16};
+
+		AsymmetricBlockCipher encrypt = handler.getAsymmetricCipher("RSA", "PKCS1");
+		encrypt.init(SecurityHandler.ENCRYPT_MODE, pair.getPublic());
+		byte[] encrypted = handler.processAll(encrypt, secret);
+
+		AsymmetricBlockCipher decrypt = handler.getAsymmetricCipher("RSA", "PKCS1");
+		decrypt.init(SecurityHandler.DECRYPT_MODE, pair.getPrivate());
+		assertArrayEquals(secret, handler.processAllAsync(decrypt, encrypted).get(30, TimeUnit.SECONDS));
+	}
+}
@@ -0,0 +1,90 @@
+/*
+ * This file is part of SpoutAPI.
+ *
+ * Copyright (c) 2011-2012, SpoutDev <http://www.spout.org/>
+ * SpoutAPI is licensed under the SpoutDev License Version 1.
+ *
+ * SpoutAPI is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * In addition, 180 days after any changes are published, you can use the
+ * software, incorporating those changes, under the terms of the MIT license,
+ * as described in the SpoutDev License Version 1.
+ *
+ * SpoutAPI is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License,
+ * the MIT license and the SpoutDev License Version 1 along with this program.
+ * If not, see <http://www.gnu.org/licenses/> for the GNU Lesser General Public
+ * License and see <http://www.spout.org/SpoutDevLicenseV1.txt> for the full license,
+ * including the MIT license.
+ */
+package org.spout.api.security;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.util.Random;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.bouncycastle.crypto.BufferedBlockCipher;
+import org.bouncycastle.crypto.engines.AESEngine;
+import org.bouncycastle.crypto.modes.CFBBlockCipher;
+import org.bouncycastle.crypto.params.KeyParameter;
+import org.bouncycastle.crypto.params.ParametersWithIV;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.junit.Test;
+import org.spout.api.protocol.ChannelProcessor;
+import org.spout.api.protocol.fake.FakeChannelHandlerContext;
+
+public class StreamCipherChannelProcessorTest {
+
+	private final int LENGTH = 65536;
+
+	@Test
+	public void jceMatchesBouncyCastle() throws Exception {
+		Random r = new Random();
+		byte[] key = new byte[16];
+		r.nextBytes(key);
+		byte[] input = new byte[LENGTH];
+		r.nextBytes(input);
+
+		Cipher jceCipher = Cipher.getInstance("AES/CFB8/NoPadding");
+		jceCipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(key, "AES"), new IvParameterSpec(key));
+		ChannelProcessor encrypt = new StreamCipherChannelProcessor(jceCipher, 512);
+
+		BufferedBlockCipher bcCipher = new BufferedBlockCipher(new CFBBlockCipher(new AESEngine(), 8));
+		bcCipher.init(SecurityHandler.DECRYPT_MODE, new ParametersWithIV(new KeyParameter(key), key));
+		ChannelProcessor decrypt = new StreamCipherChannelProcessor(bcCipher, 512);
+
+		ChannelHandlerContext ctx = new FakeChannelHandlerContext();
+
+		ChannelBuffer encrypted = ChannelBuffers.dynamicBuffer();
+		int i = 0;
+		while (i < LENGTH) {
+			int length = Math.min(r.nextInt(2048) + 1, LENGTH - i);
+			encrypted.writeBytes(encrypt.write(ctx, ChannelBuffers.wrappedBuffer(input, i, length)));
+			i += length;
+		}
+
+		ChannelBuffer decrypted = null;
+		while (encrypted.readable()) {
+			int length = Math.min(r.nextInt(2048) + 1, encrypted.readableBytes());
+			ChannelBuffer fragment = encrypted.readBytes(length);
+			decrypted = decrypted == null ? decrypt.write(ctx, fragment) : decrypt.write(ctx, fragment, decrypted);
+		}
+
+		byte[] output = new byte[LENGTH];
+		decrypted.readBytes(output);
+		assertArrayEquals(input, output);
+	}
+}
@@ -26,13 +26,19 @@
  */
 package org.spout.api.util;
 
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.Random;
 
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
 import org.junit.Test;
 
 import org.spout.api.util.list.ByteCircularBufferFIFO;
@@ -116,6 +122,147 @@ public class VarIntTest {
 		in.close();
 	}
 
+	@Test
+	public void testBuffers() throws IOException {
+		int[] ints = getTestInts();
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		for (int i = 0; i < LENGTH; i++) {
+			VarInt.writeInt(out, ints[i]);
+		}
+		byte[] streamBytes = out.toByteArray();
+
+		ChannelBuffer buf = ChannelBuffers.dynamicBuffer();
+		ChannelBuffer littleEndian = ChannelBuffers.dynamicBuffer(ByteOrder.LITTLE_ENDIAN, 256);
+		ByteBuffer byteBuffer = ByteBuffer.allocate(streamBytes.length);
+		for (int i = 0; i < LENGTH; i++) {
+			VarInt.writeInt(buf, ints[i]);
+			VarInt.writeInt(littleEndian, ints[i]);
+			VarInt.writeInt(byteBuffer, ints[i]);
+		}
+
+		// All the variants must produce the stream format
+		assertArrayEquals(streamBytes, toArray(buf));
+		assertArrayEquals(streamBytes, toArray(littleEndian));
+		assertArrayEquals(streamBytes, byteBuffer.array());
+
+		byteBuffer.flip();
+		for (int i = 0; i < LENGTH; i++) {
+			assertEquals(ints[i], VarInt.readInt(buf));
+			assertEquals(ints[i], VarInt.readInt(littleEndian));
+			assertEquals(ints[i], VarInt.readInt(byteBuffer));
+		}
+
+		long[] longs = new long[] {0, 1, 127, 128, 32511, 32512, -1, Long.MIN_VALUE, Long.MAX_VALUE, 1L << 40};
+		for (long l : longs) {
+			VarInt.writeLong(buf, l);
+			VarInt.writeLong(littleEndian, l);
+		}
+		assertEquals(buf.readableBytes(), littleEndian.readableBytes());
+		for (long l : longs) {
+			assertEquals(l, VarInt.readLong(buf));
+			assertEquals(l, VarInt.readLong(littleEndian));
+		}
+	}
+
+	@Test
+	public void testBulk() {
+		int[] ints = getTestInts();
+		long[] longs = new long[LENGTH];
+		Random r = new Random();
+		for (int i = 0; i < LENGTH; i++) {
+			longs[i] = (i & 1) == 0 ? r.nextLong() : r.nextInt(65536) - 32768;
+		}
+
+		for (boolean zigzag : new boolean[] {false, true}) {
+			ChannelBuffer heap = ChannelBuffers.dynamicBuffer();
+			ChannelBuffer direct = ChannelBuffers.directBuffer(LENGTH * 14);
+			VarInt.writeInts(heap, ints, 0, LENGTH, zigzag);
+			VarInt.writeLongs(heap, longs, 0, LENGTH, zigzag);
+			VarInt.writeInts(direct, ints, 0, LENGTH, zigzag);
+			VarInt.writeLongs(direct, longs, 0, LENGTH, zigzag);
+			assertEquals(heap, direct);
+
+			int[] intResult = new int[LENGTH];
+			long[] longResult = new long[LENGTH];
+			VarInt.readInts(heap, intResult, 0, LENGTH, zigzag);
+			VarInt.readLongs(heap, longResult, 0, LENGTH, zigzag);
+			assertArrayEquals(ints, intResult);
+			assertArrayEquals(longs, longResult);
+			assertEquals(0, heap.readableBytes());
+
+			ByteBuffer byteBuffer = ByteBuffer.allocate(LENGTH * 14);
+			VarInt.writeInts(byteBuffer, ints, 0, LENGTH, zigzag);
+			VarInt.writeLongs(byteBuffer, longs, 0, LENGTH, zigzag);
+			byteBuffer.flip();
+			intResult = new int[LENGTH];
+			longResult = new long[LENGTH];
+			VarInt.readInts(byteBuffer, intResult, 0, LENGTH, zigzag);
+			VarInt.readLongs(byteBuffer, longResult, 0, LENGTH, zigzag);
+			assertArrayEquals(ints, intResult);
+			assertArrayEquals(longs, longResult);
+			assertEquals(0, byteBuffer.remaining());
+		}
+
+		assertEquals(1, VarInt.getSize(VarInt.encodeZigZag(-1)));
+		assertEquals(-1, VarInt.decodeZigZag(VarInt.encodeZigZag(-1)));
+		assertEquals(Long.MIN_VALUE, VarInt.decodeZigZag(VarInt.encodeZigZag(Long.MIN_VALUE)));
+	}
+
+	@Test
+	public void testBulkSpeed() throws IOException {
+		int[] ints = getTestInts();
+		int[] result = new int[LENGTH];
+		ChannelBuffer buf = ChannelBuffers.dynamicBuffer(LENGTH * 5);
+		VarInt.writeInts(buf, ints, 0, LENGTH, false);
+		byte[] bytes = toArray(buf);
+
+		for (int i = 0; i < 10; i++) {
+			readStream(bytes, result);
+			buf.readerIndex(0);
+			VarInt.readInts(buf, result, 0, LENGTH, false);
+		}
+
+		long startTime = System.nanoTime();
+		readStream(bytes, result);
+		long streamTime = System.nanoTime() - startTime;
+
+		buf.readerIndex(0);
+		startTime = System.nanoTime();
+		VarInt.readInts(buf, result, 0, LENGTH, false);
+		long bulkTime = System.nanoTime() - startTime;
+
+		assertArrayEquals(ints, result);
+		System.out.println("Time to read " + LENGTH + " ints from a stream was " + streamTime + "ns");
+		System.out.println("Time to read " + LENGTH + " ints from a channel buffer in bulk was " + bulkTime + "ns");
+	}
+
+	private static void readStream(byte[] bytes, int[] result) throws IOException {
+		ByteArrayInputStream in = new ByteArrayInputStream(bytes);
+		for (int i = 0; i < result.length; i++) {
+			result[i] = VarInt.readInt(in);
+		}
+	}
+
+	private static byte[] toArray(ChannelBuffer buf) {
+		byte[] array = new byte[buf.readableBytes()];
+		buf.getBytes(buf.readerIndex(), array);
+		return array;
+	}
+
+	private static int[] getTestInts() {
+		int[] ints = new int[LENGTH];
+		Random r = new Random();
+		for (int i = 0; i < ints.length; i++) {
+			ints[i] = (i & 1) == 0 ? r.nextInt() : r.nextInt(65536) - 32768;
+		}
+		for (int i = 0; i < 2048; i++) {
+			ints[2048 + i] = threshold1 - 1024 + i;
+			ints[4096 + i] = threshold2 - 1024 + i;
+		}
+		return ints;
+	}
+
 	private void matchString(String message, String s1, String s2) {
 		boolean match = (s1 == s2) || (s1 != null && s1.equals(s2));
 		assertTrue(message, match);